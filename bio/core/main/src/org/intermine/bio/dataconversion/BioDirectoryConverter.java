@@ -101,7 +101,7 @@ public abstract class BioDirectoryConverter extends DirectoryConverter
      * @param name the DataSource name
      * @return the DataSource Item
      */
-    public String getDataSource(String name) {
+    public synchronized String getDataSource(String name) {
         if (name == null) {
             return null;
         }
@@ -126,7 +126,7 @@ public abstract class BioDirectoryConverter extends DirectoryConverter
      * @param dataSourceRefId the DataSource referenced by the the DataSet
      * @return the DataSet Item
      */
-    public String getDataSet(String title, String dataSourceRefId) {
+    public synchronized String getDataSet(String title, String dataSourceRefId) {
         String refId = dataSets.get(title);
         if (refId == null) {
             Item dataSet = createItem("DataSet");
@@ -148,7 +148,7 @@ public abstract class BioDirectoryConverter extends DirectoryConverter
      * @param taxonId NCBI taxonomy id of organism to create
      * @return the refId representing the Organism Item
      */
-    public String getOrganism(String taxonId) {
+    public synchronized String getOrganism(String taxonId) {
         String refId = organisms.get(taxonId);
         if (refId == null) {
             Item organism = createItem("Organism");
@@ -175,8 +175,8 @@ public abstract class BioDirectoryConverter extends DirectoryConverter
      * @throws ObjectStoreException if the synonym can't be stored
      * @return the synonym item or null if this is a duplicate
      */
-    public Item createCrossReference(String subjectId, String value, String dataSource,
-            boolean store) throws ObjectStoreException {
+    public synchronized Item createCrossReference(String subjectId, String value,
+            String dataSource, boolean store) throws ObjectStoreException {
         if (StringUtils.isEmpty(value)) {
             return null;
         }
@@ -205,7 +205,7 @@ public abstract class BioDirectoryConverter extends DirectoryConverter
      * @throws ObjectStoreException if the synonym can't be stored
      * @return the synonym item or null if this is a duplicate
      */
-    public Item createSynonym(String subjectId, String value, boolean store)
+    public synchronized Item createSynonym(String subjectId, String value, boolean store)
         throws ObjectStoreException {
         if (StringUtils.isEmpty(value)) {
             return null;
@@ -227,7 +227,7 @@ public abstract class BioDirectoryConverter extends DirectoryConverter
     /**
      * @return ID represening the Ontology object
      */
-    public String getSequenceOntologyRefId() {
+    public synchronized String getSequenceOntologyRefId() {
         if (sequenceOntologyRefId == null) {
             sequenceOntologyRefId = BioConverterUtil.getOntology(this);
         }
@@ -92,7 +92,7 @@ public abstract class BioFileConverter extends FileConverter
     /**
      * @return ID represening the Ontology object
      */
-    public String getSequenceOntologyRefId() {
+    public synchronized String getSequenceOntologyRefId() {
         if (sequenceOntologyRefId == null) {
             sequenceOntologyRefId = BioConverterUtil.getOntology(this);
         }
@@ -104,7 +104,7 @@ public abstract class BioFileConverter extends FileConverter
      * @param name the DataSource name
      * @return the DataSource Item
      */
-    public String getDataSource(String name) {
+    public synchronized String getDataSource(String name) {
         if (name == null) {
             return null;
         }
@@ -131,7 +131,7 @@ public abstract class BioFileConverter extends FileConverter
      * @param dataSourceRefId the DataSource referenced by the the DataSet
      * @return the DataSet Item
      */
-    public String getDataSet(String title, String dataSourceRefId) {
+    public synchronized String getDataSet(String title, String dataSourceRefId) {
         String refId = dataSets.get(title);
         if (refId == null) {
             Item dataSet = createItem("DataSet");
@@ -173,7 +173,7 @@ public abstract class BioFileConverter extends FileConverter
      * @throws ObjectStoreException if the synonym can't be stored
      * @return the synonym item or null if this is a duplicate
      */
-    public Item createSynonym(String subjectId, String value, boolean store)
+    public synchronized Item createSynonym(String subjectId, String value, boolean store)
         throws ObjectStoreException {
         if (StringUtils.isEmpty(value)) {
             return null;
@@ -203,8 +203,8 @@ public abstract class BioFileConverter extends FileConverter
      * @throws ObjectStoreException if the synonym can't be stored
      * @return the synonym item or null if this is a duplicate
      */
-    public Item createCrossReference(String subjectId, String value, String dataSource,
-            boolean store)
+    public synchronized Item createCrossReference(String subjectId, String value,
+            String dataSource, boolean store)
         throws ObjectStoreException {
         if (StringUtils.isEmpty(value)) {
             return null;
@@ -229,7 +229,7 @@ public abstract class BioFileConverter extends FileConverter
      * @param taxonId NCBI taxonomy id of organism to create
      * @return the refId representing the Organism Item
      */
-    public String getOrganism(String taxonId) {
+    public synchronized String getOrganism(String taxonId) {
         String refId = organisms.get(taxonId);
         if (refId == null) {
             Item organism = createItem("Organism");
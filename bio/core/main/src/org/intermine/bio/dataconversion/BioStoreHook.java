@@ -162,12 +162,18 @@ public class BioStoreHook implements DataConverterStoreHook
             }
             String soRefId = dataConverter.getUniqueItemId(soName);
             if (StringUtils.isEmpty(soRefId)) {
-                Item soterm = dataConverter.createItem("SOTerm");
-                soterm.setAttribute("name", soName);
-                soterm.setReference("ontology", ontology);
-                dataConverter.store(soterm);
-                soRefId = soterm.getIdentifier();
-                dataConverter.addUniqueItemId(soName, soRefId);
+                // the converter may be storing items from several threads
+                synchronized (dataConverter) {
+                    soRefId = dataConverter.getUniqueItemId(soName);
+                    if (StringUtils.isEmpty(soRefId)) {
+                        Item soterm = dataConverter.createItem("SOTerm");
+                        soterm.setAttribute("name", soName);
+                        soterm.setReference("ontology", ontology);
+                        dataConverter.store(soterm);
+                        soRefId = soterm.getIdentifier();
+                        dataConverter.addUniqueItemId(soName, soRefId);
+                    }
+                }
             }
             return soRefId;
         } catch (IOException e) {
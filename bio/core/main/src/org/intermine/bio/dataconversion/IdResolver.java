@@ -15,6 +15,7 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -56,6 +57,8 @@ public class IdResolver
     protected Map<MultiKey, Map<String, Set<String>>> orgIdMainMaps = new MultiKeyMap();
     @SuppressWarnings("unchecked")
     protected Map<MultiKey, Map<String, Set<String>>> orgIdSynMaps = new MultiKeyMap();
+    // data read from a compiled cache file, for the keys not in the maps above
+    private IdResolverIndex index = null;
 
     /**
      * Construct and empty IdResolver
@@ -79,7 +82,7 @@ public class IdResolver
      * @param className which class to resolve
      */
     protected void checkTaxonId(String taxonId, String className) {
-        if (!orgIdMaps.containsKey(new MultiKey(taxonId, className))) {
+        if (!hasTaxonAndClassName(taxonId, className)) {
             throw new IllegalArgumentException(className + " IdResolver has no data for taxonId: '"
                                                + taxonId + "'.");
         }
@@ -94,7 +97,11 @@ public class IdResolver
      */
     public boolean isPrimaryIdentifier(String taxonId, String className, String id) {
         checkTaxonId(taxonId, className);
-        return orgIdMaps.get(new MultiKey(taxonId, className)).containsKey(id);
+        MultiKey key = new MultiKey(taxonId, className);
+        if (isIndexed(key)) {
+            return index.isPrimaryIdentifier(key, id);
+        }
+        return orgIdMaps.get(key).containsKey(id);
     }
 
     /**
@@ -118,6 +125,10 @@ public class IdResolver
      */
     public Set<String> resolveId(String taxonId, String className, String id) {
         checkTaxonId(taxonId, className);
+        MultiKey key = new MultiKey(taxonId, className);
+        if (isIndexed(key)) {
+            return index.resolveId(key, id);
+        }
         // if this is a primary identifier, just return it
         if (isPrimaryIdentifier(taxonId, className, id)) {
             return Collections.singleton(id);
@@ -192,6 +203,10 @@ public class IdResolver
      */
     public Set<String> getSynonyms(String taxonId, String className, String primaryIdentifier) {
         checkTaxonId(taxonId, className);
+        MultiKey key = new MultiKey(taxonId, className);
+        if (isIndexed(key)) {
+            return index.getSynonyms(key, primaryIdentifier);
+        }
         if (!isPrimaryIdentifier(taxonId, className, primaryIdentifier)) {
             return null;
         }
@@ -218,6 +233,10 @@ public class IdResolver
      */
     public int countResolutions(String taxonId, String className, String id) {
         checkTaxonId(taxonId, className);
+        MultiKey key = new MultiKey(taxonId, className);
+        if (isIndexed(key)) {
+            return index.countResolutions(key, id);
+        }
         Set<String> resolvedIds = resolveId(taxonId, className, id);
         return resolvedIds == null ? 0 : resolvedIds.size();
     }
@@ -248,7 +267,7 @@ public class IdResolver
      */
     public boolean hasTaxons(Set<String> taxonIds) {
         Set<String> taxonIdSet = new HashSet<String>();
-        for (MultiKey key : orgIdMaps.keySet()) {
+        for (MultiKey key : getKeys()) {
             taxonIdSet.add((String) key.getKey(0));
         }
         return taxonIdSet.containsAll(taxonIds);
@@ -260,7 +279,7 @@ public class IdResolver
      */
     public Set<String> getTaxons() {
         Set<String> taxonIdSet = new LinkedHashSet<String>();
-        for (MultiKey key : orgIdMaps.keySet()) {
+        for (MultiKey key : getKeys()) {
             taxonIdSet.add((String) key.getKey(0));
         }
         return taxonIdSet;
@@ -273,7 +292,7 @@ public class IdResolver
      */
     public boolean hasClassName(String className) {
         Set<String> clsNameSet = new HashSet<String>();
-        for (MultiKey key : orgIdMaps.keySet()) {
+        for (MultiKey key : getKeys()) {
             clsNameSet.add((String) key.getKey(1));
         }
         return clsNameSet.contains(className);
@@ -285,7 +304,7 @@ public class IdResolver
      */
     public Set<String> getClassNames() {
         Set<String> clsNameSet = new HashSet<String>();
-        for (MultiKey key : orgIdMaps.keySet()) {
+        for (MultiKey key : getKeys()) {
             clsNameSet.add((String) key.getKey(1));
         }
         return clsNameSet;
@@ -298,7 +317,8 @@ public class IdResolver
      * @return true if the resolver has data for this taxon ID and data type
      */
     public boolean hasTaxonAndClassName(String taxonId, String className) {
-        return orgIdMaps.keySet().contains(new MultiKey(taxonId, className));
+        MultiKey key = new MultiKey(taxonId, className);
+        return orgIdMaps.containsKey(key) || isIndexed(key);
     }
 
     /**
@@ -344,7 +364,7 @@ public class IdResolver
             }
         }
 
-        return orgIdMaps.keySet().containsAll(keySet);
+        return getKeys().containsAll(keySet);
     }
 
     /**
@@ -353,7 +373,7 @@ public class IdResolver
      */
     public Map<String, Set<String>> getTaxonsAndClassNames() {
         Map<String, Set<String>> taxonIdAndClsNameMap = new HashMap<String, Set<String>>();
-        for (MultiKey key : orgIdMaps.keySet()) {
+        for (MultiKey key : getKeys()) {
             String taxonId = (String) key.getKey(0);
             String className = (String) key.getKey(1);
             if (taxonIdAndClsNameMap.get(taxonId) == null) {
@@ -447,6 +467,10 @@ public class IdResolver
     */
     protected void addEntry(String taxonId, String className, String primaryIdentifier,
             Collection<String> ids, Boolean mainId) {
+        if (isIndexed(new MultiKey(taxonId, className))) {
+            // move the compiled data into the maps so that it can be added to
+            index.copyTo(new MultiKey(taxonId, className), this);
+        }
         Map<String, Set<String>> idMap = orgIdMaps.get(new MultiKey(taxonId, className));
         if (idMap == null) {
             idMap = new LinkedHashMap<String, Set<String>>();
@@ -499,6 +523,12 @@ public class IdResolver
      */
     public void writeToFile(File f) throws IOException {
         LOG.info("Writing id resolver to file: " + f.getName());
+        if (index != null) {
+            for (MultiKey key : new ArrayList<MultiKey>(index.getKeys())) {
+                index.copyTo(key, this);
+            }
+            index = null;
+        }
         FileWriter fw = new FileWriter(f, true); // append if true
 //        FileWriter fw = new FileWriter(f);
         for (MultiKey key : orgIdMaps.keySet()) {
@@ -551,11 +581,22 @@ public class IdResolver
 
 
     /**
-     * Read contents of an IdResolver from file, allows for caching during a build.
+     * Read contents of an IdResolver from file, allows for caching during a build.  The first
+     * time a file is read into an empty IdResolver a compiled copy of it is written alongside it,
+     * which later calls memory-map instead of reading the text until the file is changed.
      * @param f the file to read from
      * @throws IOException if problem reading from file
      */
     public void populateFromFile(File f) throws IOException {
+        boolean empty = orgIdMaps.isEmpty() && index == null;
+        if (empty) {
+            index = IdResolverIndex.open(f);
+            if (index != null) {
+                LOG.info("Using compiled id resolver for " + f + " with data for "
+                        + index.getKeys().size() + " taxon ids and classes");
+                return;
+            }
+        }
         BufferedReader reader = new BufferedReader(new FileReader(f));
         String line = null;
         while ((line = reader.readLine()) != null) {
@@ -580,6 +621,27 @@ public class IdResolver
             }
         }
         reader.close();
+        if (empty) {
+            try {
+                IdResolverIndex.write(this, f);
+            } catch (IOException e) {
+                LOG.warn("Could not write compiled id resolver for " + f, e);
+            }
+        }
+    }
+
+    private boolean isIndexed(MultiKey key) {
+        return index != null && index.hasKey(key);
+    }
+
+    // the taxon id and class name pairs of all the data
+    private Set<MultiKey> getKeys() {
+        if (index == null) {
+            return orgIdMaps.keySet();
+        }
+        Set<MultiKey> keys = new LinkedHashSet<MultiKey>(orgIdMaps.keySet());
+        keys.addAll(index.getKeys());
+        return keys;
     }
 
     // TODO populate part from file with given taxons and classes, what if there
@@ -0,0 +1,545 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.collections.keyvalue.MultiKey;
+import org.apache.log4j.Logger;
+
+/**
+ * A compiled, read-only copy of the contents of an IdResolver cache file, which is memory-mapped
+ * rather than read into HashMaps.  It is written next to the text cache file the first time that
+ * file is read, and used instead of it for as long as the text file is unchanged.
+ *
+ * All the identifiers are held once each in a table sorted by their UTF-8 bytes.  Each taxon id
+ * and class has sorted tables of primary identifiers, main identifiers and synonyms, which refer
+ * to the identifiers by their position in that table, so resolving an identifier is a few binary
+ * searches and only the primary identifiers found are turned into Strings.
+ */
+final class IdResolverIndex
+{
+    private static final Logger LOG = Logger.getLogger(IdResolverIndex.class);
+
+    /** The suffix added to the name of the text cache file. */
+    static final String SUFFIX = ".compiled";
+
+    private static final int MAGIC = 0x49445243;
+    private static final int VERSION = 1;
+    // magic, version, text length, text modified time, string count
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4;
+    private static final int PRIMARY_ENTRY_SIZE = 12;
+    private static final int LOOKUP_ENTRY_SIZE = 8;
+
+    private final ByteBuffer buffer;
+    private final int stringCount;
+    private final int stringBytesStart;
+    private final Map<MultiKey, Table> tables = new LinkedHashMap<MultiKey, Table>();
+
+    private IdResolverIndex(ByteBuffer buffer) {
+        this.buffer = buffer;
+        stringCount = buffer.getInt(HEADER_SIZE - 4);
+        stringBytesStart = HEADER_SIZE + 4 * (stringCount + 1);
+        int directory = buffer.getInt(buffer.capacity() - 4);
+        int tableCount = buffer.getInt(directory);
+        int pos = directory + 4;
+        for (int i = 0; i < tableCount; i++) {
+            Table table = new Table();
+            String taxonId = getString(buffer.getInt(pos));
+            String className = getString(buffer.getInt(pos + 4));
+            table.primaryStart = buffer.getInt(pos + 8);
+            table.primaryCount = buffer.getInt(pos + 12);
+            table.mainStart = buffer.getInt(pos + 16);
+            table.mainCount = buffer.getInt(pos + 20);
+            table.synonymStart = buffer.getInt(pos + 24);
+            table.synonymCount = buffer.getInt(pos + 28);
+            tables.put(new MultiKey(taxonId, className), table);
+            pos += 32;
+        }
+    }
+
+    /**
+     * Map the compiled file for the given text cache file, if it exists and was made from the
+     * current contents of the text file.
+     *
+     * @param textFile the text cache file written by IdResolver.writeToFile()
+     * @return the index, or null if there is no usable compiled file
+     */
+    static IdResolverIndex open(File textFile) {
+        File f = getFile(textFile);
+        if (!f.exists()) {
+            return null;
+        }
+        try {
+            RandomAccessFile raf = new RandomAccessFile(f, "r");
+            try {
+                FileChannel channel = raf.getChannel();
+                if (channel.size() < HEADER_SIZE + 8 || channel.size() > Integer.MAX_VALUE) {
+                    return null;
+                }
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+                        || buffer.getLong(8) != textFile.length()
+                        || buffer.getLong(16) != textFile.lastModified()) {
+                    LOG.info("Compiled id resolver " + f + " is out of date");
+                    return null;
+                }
+                return new IdResolverIndex(buffer);
+            } finally {
+                raf.close();
+            }
+        } catch (IOException e) {
+            LOG.warn("Could not read compiled id resolver " + f, e);
+            return null;
+        }
+    }
+
+    /**
+     * Return the compiled file for a text cache file.
+     *
+     * @param textFile the text cache file
+     * @return the compiled file
+     */
+    static File getFile(File textFile) {
+        return new File(textFile.getPath() + SUFFIX);
+    }
+
+    /**
+     * Return the taxon id and class name pairs that this index has data for.
+     *
+     * @return the keys
+     */
+    Set<MultiKey> getKeys() {
+        return tables.keySet();
+    }
+
+    /**
+     * Return true if this index has data for the given taxon id and class name.
+     *
+     * @param key the taxon id and class name
+     * @return true if there is data for the key
+     */
+    boolean hasKey(MultiKey key) {
+        return tables.containsKey(key);
+    }
+
+    /**
+     * Check whether an identifier is a primary identifier.
+     *
+     * @param key the taxon id and class name, which must be in this index
+     * @param id the identifier
+     * @return true if the identifier is a primary identifier
+     */
+    boolean isPrimaryIdentifier(MultiKey key, String id) {
+        int ordinal = findString(id);
+        Table table = tables.get(key);
+        return ordinal >= 0
+            && find(table.primaryStart, table.primaryCount, PRIMARY_ENTRY_SIZE, ordinal) >= 0;
+    }
+
+    /**
+     * Return the list of primary identifiers an identifier resolves to, in the way
+     * IdResolver.resolveId() does.
+     *
+     * @param key the taxon id and class name, which must be in this index
+     * @param id the identifier
+     * @return the position of a list of primary identifiers, -1 if the identifier is itself a
+     * primary identifier or -2 if it does not resolve
+     */
+    private int resolve(MultiKey key, String id) {
+        int ordinal = findString(id);
+        if (ordinal < 0) {
+            return -2;
+        }
+        Table table = tables.get(key);
+        if (find(table.primaryStart, table.primaryCount, PRIMARY_ENTRY_SIZE, ordinal) >= 0) {
+            return -1;
+        }
+        int entry = find(table.mainStart, table.mainCount, LOOKUP_ENTRY_SIZE, ordinal);
+        if (entry < 0) {
+            entry = find(table.synonymStart, table.synonymCount, LOOKUP_ENTRY_SIZE, ordinal);
+        }
+        if (entry < 0 || buffer.getInt(entry + 4) < 0) {
+            return -2;
+        }
+        return buffer.getInt(entry + 4);
+    }
+
+    /**
+     * Resolve an identifier to a set of primary identifiers.
+     *
+     * @param key the taxon id and class name, which must be in this index
+     * @param id the identifier
+     * @return the matching primary identifiers
+     */
+    Set<String> resolveId(MultiKey key, String id) {
+        int list = resolve(key, id);
+        if (list == -1) {
+            return Collections.singleton(id);
+        }
+        if (list == -2) {
+            return Collections.emptySet();
+        }
+        return getList(list, new LinkedHashSet<String>());
+    }
+
+    /**
+     * Count the primary identifiers an identifier resolves to without reading them.
+     *
+     * @param key the taxon id and class name, which must be in this index
+     * @param id the identifier
+     * @return the number of matching primary identifiers
+     */
+    int countResolutions(MultiKey key, String id) {
+        int list = resolve(key, id);
+        if (list == -1) {
+            return 1;
+        }
+        return (list == -2) ? 0 : buffer.getInt(list);
+    }
+
+    /**
+     * Return the main identifiers and synonyms of a primary identifier.
+     *
+     * @param key the taxon id and class name, which must be in this index
+     * @param primaryIdentifier the primary identifier
+     * @return the identifiers, or null if the identifier is not a primary identifier
+     */
+    Set<String> getSynonyms(MultiKey key, String primaryIdentifier) {
+        int ordinal = findString(primaryIdentifier);
+        Table table = tables.get(key);
+        int entry = (ordinal < 0) ? -1
+            : find(table.primaryStart, table.primaryCount, PRIMARY_ENTRY_SIZE, ordinal);
+        if (entry < 0) {
+            return null;
+        }
+        Set<String> ids = new LinkedHashSet<String>();
+        getList(buffer.getInt(entry + 4), ids);
+        getList(buffer.getInt(entry + 8), ids);
+        return ids;
+    }
+
+    /**
+     * Add all the data for a taxon id and class to an IdResolver, and forget it here.
+     *
+     * @param key the taxon id and class name
+     * @param resolver the IdResolver to add entries to
+     */
+    void copyTo(MultiKey key, IdResolver resolver) {
+        Table table = tables.remove(key);
+        if (table == null) {
+            return;
+        }
+        String taxonId = (String) key.getKey(0);
+        String className = (String) key.getKey(1);
+        for (int i = 0; i < table.primaryCount; i++) {
+            int entry = table.primaryStart + i * PRIMARY_ENTRY_SIZE;
+            String primaryId = getString(buffer.getInt(entry));
+            List<String> mainIds = getList(buffer.getInt(entry + 4), new ArrayList<String>());
+            List<String> synonyms = getList(buffer.getInt(entry + 8), new ArrayList<String>());
+            if (!mainIds.isEmpty() || synonyms.isEmpty()) {
+                resolver.addEntry(taxonId, className, primaryId, mainIds, Boolean.TRUE);
+            }
+            if (!synonyms.isEmpty()) {
+                resolver.addEntry(taxonId, className, primaryId, synonyms, Boolean.FALSE);
+            }
+        }
+    }
+
+    private <C extends Collection<String>> C getList(int pos, C ids) {
+        if (pos >= 0) {
+            int size = buffer.getInt(pos);
+            for (int i = 0; i < size; i++) {
+                ids.add(getString(buffer.getInt(pos + 4 + 4 * i)));
+            }
+        }
+        return ids;
+    }
+
+    // binary search a table of entries starting with a string ordinal, returning the position of
+    // the entry or -1
+    private int find(int start, int count, int entrySize, int ordinal) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int value = buffer.getInt(start + mid * entrySize);
+            if (value < ordinal) {
+                low = mid + 1;
+            } else if (value > ordinal) {
+                high = mid - 1;
+            } else {
+                return start + mid * entrySize;
+            }
+        }
+        return -1;
+    }
+
+    // binary search the string table, returning the ordinal of the string or -1
+    private int findString(String s) {
+        if (s == null) {
+            return -1;
+        }
+        byte[] bytes = toBytes(s);
+        int low = 0;
+        int high = stringCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int start = stringBytesStart + buffer.getInt(HEADER_SIZE + 4 * mid);
+            int end = stringBytesStart + buffer.getInt(HEADER_SIZE + 4 * (mid + 1));
+            int cmp = compare(start, end, bytes);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private int compare(int start, int end, byte[] bytes) {
+        int length = Math.min(end - start, bytes.length);
+        for (int i = 0; i < length; i++) {
+            int diff = (buffer.get(start + i) & 0xff) - (bytes[i] & 0xff);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return (end - start) - bytes.length;
+    }
+
+    private String getString(int ordinal) {
+        int start = stringBytesStart + buffer.getInt(HEADER_SIZE + 4 * ordinal);
+        int end = stringBytesStart + buffer.getInt(HEADER_SIZE + 4 * (ordinal + 1));
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static byte[] toBytes(String s) {
+        try {
+            return s.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Write the contents of an IdResolver to the compiled file for a text cache file.
+     *
+     * @param resolver the IdResolver, holding exactly what was read from the text file
+     * @param textFile the text cache file
+     * @throws IOException if the file cannot be written
+     */
+    static void write(IdResolver resolver, File textFile) throws IOException {
+        Set<String> strings = new HashSet<String>();
+        for (MultiKey key : resolver.orgIdMaps.keySet()) {
+            strings.add((String) key.getKey(0));
+            strings.add((String) key.getKey(1));
+            addStrings(strings, resolver.orgIdMaps.get(key));
+            addStrings(strings, resolver.orgMainMaps.get(key));
+            addStrings(strings, resolver.orgSynMaps.get(key));
+        }
+        List<byte[]> sorted = new ArrayList<byte[]>(strings.size());
+        for (String s : strings) {
+            sorted.add(toBytes(s));
+        }
+        strings = null;
+        Collections.sort(sorted, new Comparator<byte[]>() {
+            @Override
+            public int compare(byte[] a, byte[] b) {
+                int length = Math.min(a.length, b.length);
+                for (int i = 0; i < length; i++) {
+                    int diff = (a[i] & 0xff) - (b[i] & 0xff);
+                    if (diff != 0) {
+                        return diff;
+                    }
+                }
+                return a.length - b.length;
+            }
+        });
+        Map<String, Integer> ordinals = new HashMap<String, Integer>(sorted.size() * 2);
+        for (int i = 0; i < sorted.size(); i++) {
+            ordinals.put(new String(sorted.get(i), "UTF-8"), new Integer(i));
+        }
+
+        File f = getFile(textFile);
+        File tmp = new File(f.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(tmp)));
+        boolean done = false;
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(textFile.length());
+            out.writeLong(textFile.lastModified());
+            out.writeInt(sorted.size());
+            int offset = 0;
+            for (byte[] bytes : sorted) {
+                out.writeInt(offset);
+                offset += bytes.length;
+            }
+            out.writeInt(offset);
+            for (byte[] bytes : sorted) {
+                out.write(bytes);
+            }
+            sorted = null;
+
+            List<int[]> directory = new ArrayList<int[]>();
+            for (MultiKey key : resolver.orgIdMaps.keySet()) {
+                int[] entry = new int[8];
+                entry[0] = ordinals.get(key.getKey(0)).intValue();
+                entry[1] = ordinals.get(key.getKey(1)).intValue();
+                writePrimaries(out, ordinals, resolver, key, entry);
+                writeLookup(out, ordinals, resolver.orgMainMaps.get(key), entry, 4);
+                writeLookup(out, ordinals, resolver.orgSynMaps.get(key), entry, 6);
+                directory.add(entry);
+                checkSize(out);
+            }
+            int directoryStart = out.size();
+            out.writeInt(directory.size());
+            for (int[] entry : directory) {
+                for (int value : entry) {
+                    out.writeInt(value);
+                }
+            }
+            out.writeInt(directoryStart);
+            checkSize(out);
+            done = true;
+        } finally {
+            out.close();
+            if (!done) {
+                tmp.delete();
+            }
+        }
+        if (!tmp.renameTo(f)) {
+            tmp.delete();
+            throw new IOException("Could not rename " + tmp + " to " + f);
+        }
+        LOG.info("Wrote compiled id resolver " + f + " (" + f.length() + " bytes)");
+    }
+
+    private static void addStrings(Set<String> strings, Map<String, Set<String>> map) {
+        if (map != null) {
+            for (Map.Entry<String, Set<String>> entry : map.entrySet()) {
+                strings.add(entry.getKey());
+                strings.addAll(entry.getValue());
+            }
+        }
+    }
+
+    // write the lists of main ids and synonyms of each primary identifier, then the sorted
+    // table of primary identifiers
+    private static void writePrimaries(DataOutputStream out, Map<String, Integer> ordinals,
+            IdResolver resolver, MultiKey key, int[] entry) throws IOException {
+        Map<String, Set<String>> idMap = resolver.orgIdMaps.get(key);
+        Map<String, Set<String>> mainIds = resolver.orgIdMainMaps.get(key);
+        Map<String, Set<String>> synonyms = resolver.orgIdSynMaps.get(key);
+        int[][] table = new int[idMap.size()][];
+        int i = 0;
+        for (String primaryId : idMap.keySet()) {
+            table[i++] = new int[] {ordinals.get(primaryId).intValue(),
+                writeList(out, ordinals, (mainIds == null) ? null : mainIds.get(primaryId)),
+                writeList(out, ordinals, (synonyms == null) ? null : synonyms.get(primaryId))};
+        }
+        entry[2] = writeTable(out, table);
+        entry[3] = table.length;
+    }
+
+    private static void writeLookup(DataOutputStream out, Map<String, Integer> ordinals,
+            Map<String, Set<String>> lookup, int[] entry, int index) throws IOException {
+        if (lookup == null) {
+            lookup = Collections.emptyMap();
+        }
+        int[][] table = new int[lookup.size()][];
+        int i = 0;
+        for (Map.Entry<String, Set<String>> e : lookup.entrySet()) {
+            table[i++] = new int[] {ordinals.get(e.getKey()).intValue(),
+                writeList(out, ordinals, e.getValue())};
+        }
+        entry[index] = writeTable(out, table);
+        entry[index + 1] = table.length;
+    }
+
+    private static int writeList(DataOutputStream out, Map<String, Integer> ordinals,
+            Set<String> ids) throws IOException {
+        if (ids == null || ids.isEmpty()) {
+            return -1;
+        }
+        int pos = out.size();
+        out.writeInt(ids.size());
+        for (String id : ids) {
+            out.writeInt(ordinals.get(id).intValue());
+        }
+        return pos;
+    }
+
+    private static int writeTable(DataOutputStream out, int[][] table) throws IOException {
+        Arrays.sort(table, new Comparator<int[]>() {
+            @Override
+            public int compare(int[] a, int[] b) {
+                return (a[0] < b[0]) ? -1 : ((a[0] == b[0]) ? 0 : 1);
+            }
+        });
+        int pos = out.size();
+        for (int[] row : table) {
+            for (int value : row) {
+                out.writeInt(value);
+            }
+        }
+        return pos;
+    }
+
+    private static void checkSize(DataOutputStream out) throws IOException {
+        // DataOutputStream.size() stops at Integer.MAX_VALUE
+        if (out.size() == Integer.MAX_VALUE) {
+            throw new IOException("Id resolver is too large to compile");
+        }
+    }
+
+    private static class Table
+    {
+        int primaryStart;
+        int primaryCount;
+        int mainStart;
+        int mainCount;
+        int synonymStart;
+        int synonymCount;
+    }
+}
@@ -13,10 +13,8 @@ package org.intermine.bio.task;
 import org.apache.tools.ant.BuildException;
 import org.intermine.bio.dataconversion.OboConverter;
 import org.intermine.dataconversion.ItemWriter;
-import org.intermine.dataconversion.ObjectStoreItemWriter;
 import org.intermine.metadata.Model;
 import org.intermine.objectstore.ObjectStoreWriter;
-import org.intermine.objectstore.ObjectStoreWriterFactory;
 import org.intermine.task.ConverterTask;
 
 /**
@@ -30,7 +28,7 @@ public class OboConverterTask extends ConverterTask
 {
 //    protected static final Logger LOG = Logger.getLogger(OboConverterTask.class);
 
-    private String file, ontologyName, osName, url, termClass;
+    private String file, ontologyName, url, termClass;
 
     /**
      * Set the input file name
@@ -48,15 +46,6 @@ public class OboConverterTask extends ConverterTask
         this.ontologyName = ontologyName;
     }
 
-    /**
-     * Set the objectstore name
-     * @param osName the model name
-     */
-    @Override
-    public void setOsName(String osName) {
-        this.osName = osName;
-    }
-
     /**
      * Set the url for the source of the ontology
      *
@@ -87,7 +76,7 @@ public class OboConverterTask extends ConverterTask
         if (ontologyName == null) {
             throw new BuildException("ontologyName attribute is not set");
         }
-        if (osName == null) {
+        if (getOsName() == null) {
             throw new BuildException("model attribute is not set");
         }
         if (termClass == null) {
@@ -97,8 +86,8 @@ public class OboConverterTask extends ConverterTask
         ObjectStoreWriter osw = null;
         ItemWriter writer = null;
         try {
-            osw = ObjectStoreWriterFactory.getObjectStoreWriter(osName);
-            writer = new ObjectStoreItemWriter(osw);
+            osw = getObjectStoreWriter();
+            writer = getItemWriter(osw);
             Model model = Model.getInstanceByName(getModelName());
 
             OboConverter converter;
@@ -113,8 +102,12 @@ public class OboConverterTask extends ConverterTask
             throw new BuildException(e);
         } finally {
             try {
-                writer.close();
-                osw.close();
+                if (writer != null) {
+                    writer.close();
+                }
+                if (osw != null) {
+                    osw.close();
+                }
             } catch (Exception e) {
                 throw new BuildException(e);
             }
@@ -224,4 +224,49 @@ public class IdResolverTest extends TestCase
         assertEquals(resolver.orgMainMaps, readFromFile.orgMainMaps);
         assertEquals(resolver.orgSynMaps, readFromFile.orgSynMaps);
     }
+
+    public void testCompiledRoundTrip() throws Exception {
+        File f = getResolverCache();
+        resolver.writeToFile(f);
+        new IdResolver().populateFromFile(f);
+        File compiled = new File(f.getPath() + ".compiled");
+        assertTrue(compiled.exists());
+
+        IdResolver readFromFile = new IdResolver();
+        readFromFile.populateFromFile(f);
+        // read from the compiled file, so nothing is in the maps
+        assertTrue(readFromFile.orgIdMaps.isEmpty());
+        assertEquals(resolver.getTaxonsAndClassNames(), readFromFile.getTaxonsAndClassNames());
+        String[] ids = new String[] {primaryId1, primaryId2, primaryId3, mainId1, mainId2, mainId3,
+            mainId4, synonym1, synonym2, synonym3, synonym4, "unknown"};
+        for (MultiKey key : resolver.orgIdMaps.keySet()) {
+            String taxonId = (String) key.getKey(0);
+            String className = (String) key.getKey(1);
+            for (String id : ids) {
+                assertEquals(resolver.resolveId(taxonId, className, id),
+                        readFromFile.resolveId(taxonId, className, id));
+                assertEquals(resolver.countResolutions(taxonId, className, id),
+                        readFromFile.countResolutions(taxonId, className, id));
+                assertEquals(resolver.getSynonyms(taxonId, className, id),
+                        readFromFile.getSynonyms(taxonId, className, id));
+            }
+        }
+
+        // adding to compiled data moves it into the maps
+        readFromFile.addEntry(taxId2, clsName1, primaryId2, SynonymSet1, false);
+        assertEquals(Collections.singleton(primaryId1),
+                readFromFile.resolveId(taxId2, clsName1, mainId3));
+        assertEquals(Collections.singleton(primaryId1),
+                readFromFile.resolveId(taxId2, clsName1, synonym3));
+        assertEquals(Collections.singleton(primaryId2),
+                readFromFile.resolveId(taxId2, clsName1, synonym1));
+
+        // a changed text file is read again
+        resolver.writeToFile(f);
+        IdResolver reread = new IdResolver();
+        reread.populateFromFile(f);
+        assertFalse(reread.orgIdMaps.isEmpty());
+        compiled.delete();
+        f.delete();
+    }
 }
@@ -20,17 +20,21 @@ import org.intermine.xml.full.Item;
 
 /**
  * Data about one feature from the feature table in chado.  This exists to avoid having lots of
- * Item objects in memory.
+ * Item objects in memory.  Once a FeatureData has been put in a FeatureDataMap it holds no
+ * data itself and reads and writes the entry in the map instead.
  *
  * @author Kim Rutherford
  */
 class FeatureData
 {
+    private FeatureDataMap store = null;
+    private int entry;
+
     private String md5checksum;
-    OrganismData organismData;
+    private OrganismData organismData;
     private String uniqueName;
     private String chadoFeatureName;
-    private Set<String> existingSynonyms = new TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
+    private Set<String> existingSynonyms;
     private String itemIdentifier;
     private String interMineType;
     private Integer intermineObjectId;
@@ -58,11 +62,66 @@ class FeatureData
         NAME_MAP.put(SequenceProcessor.LENGTH_STRING, new Short(LENGTH_SET));
     }
 
+    /**
+     * Create a new FeatureData that holds its own data.
+     */
+    FeatureData() {
+        existingSynonyms = new TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
+    }
+
+    /**
+     * Create a view of an entry in a FeatureDataMap.
+     * @param store the map
+     * @param entry the entry number
+     */
+    FeatureData(FeatureDataMap store, int entry) {
+        this.store = store;
+        this.entry = entry;
+    }
+
+    /**
+     * Make this FeatureData a view of an entry of a FeatureDataMap, dropping its own copy of the
+     * data, which the map must already hold.
+     * @param newStore the map
+     * @param newEntry the entry number
+     */
+    void attach(FeatureDataMap newStore, int newEntry) {
+        this.store = newStore;
+        this.entry = newEntry;
+        md5checksum = null;
+        organismData = null;
+        uniqueName = null;
+        chadoFeatureName = null;
+        existingSynonyms = null;
+        itemIdentifier = null;
+        interMineType = null;
+        intermineObjectId = null;
+    }
+
+    /**
+     * Return the map holding the data for this feature.
+     * @return the FeatureDataMap, or null if this FeatureData holds its own data
+     */
+    FeatureDataMap getStore() {
+        return store;
+    }
+
+    /**
+     * Return the number of the entry in the FeatureDataMap for this feature.
+     * @return the entry number
+     */
+    int getEntry() {
+        return entry;
+    }
+
     /**
      * Return the id of the Item representing this feature.
      * @return the ID
      */
     public Integer getIntermineObjectId() {
+        if (store != null) {
+            return store.getIntermineObjectId(entry);
+        }
         return intermineObjectId;
     }
 
@@ -72,6 +131,10 @@ class FeatureData
      * @param intermineObjectId the intermineObjectId to set
      */
     public void setIntermineObjectId(Integer intermineObjectId) {
+        if (store != null) {
+            store.setIntermineObjectId(entry, intermineObjectId);
+            return;
+        }
         this.intermineObjectId = intermineObjectId;
     }
 
@@ -133,6 +196,9 @@ class FeatureData
      * @return the name
      */
     public String getChadoFeatureName() {
+        if (store != null) {
+            return store.getChadoFeatureName(entry);
+        }
         return chadoFeatureName;
     }
 
@@ -141,6 +207,10 @@ class FeatureData
      * @param chadoFeatureName the chadoFeatureName to set
      */
     public void setChadoFeatureName(String chadoFeatureName) {
+        if (store != null) {
+            store.setChadoFeatureName(entry, chadoFeatureName);
+            return;
+        }
         this.chadoFeatureName = chadoFeatureName;
     }
 
@@ -149,6 +219,9 @@ class FeatureData
      * @return the uniquename
      */
     public String getChadoFeatureUniqueName() {
+        if (store != null) {
+            return store.getUniqueName(entry);
+        }
         return uniqueName;
     }
 
@@ -157,6 +230,9 @@ class FeatureData
      * @return the uniqueName
      */
     public  String getUniqueName() {
+        if (store != null) {
+            return store.getUniqueName(entry);
+        }
         return uniqueName;
     }
 
@@ -165,6 +241,10 @@ class FeatureData
      * @param uniqueName the new uniqueName
      */
     public void setUniqueName(String uniqueName) {
+        if (store != null) {
+            store.setUniqueName(entry, uniqueName);
+            return;
+        }
         this.uniqueName = uniqueName;
     }
 
@@ -173,6 +253,9 @@ class FeatureData
      * @return the new InterMine Item identifier
      */
     public String getItemIdentifier() {
+        if (store != null) {
+            return store.getItemIdentifier(entry);
+        }
         return itemIdentifier;
     }
 
@@ -181,6 +264,10 @@ class FeatureData
      * @param itemIdentifier the new item identifier
      */
     public void setItemIdentifier(String itemIdentifier) {
+        if (store != null) {
+            store.setItemIdentifier(entry, itemIdentifier);
+            return;
+        }
         this.itemIdentifier = itemIdentifier;
     }
 
@@ -189,14 +276,32 @@ class FeatureData
      * @return the OrganismData object
      */
     public OrganismData getOrganismData() {
+        if (store != null) {
+            return store.getOrganismData(entry);
+        }
         return organismData;
     }
 
+    /**
+     * Set the OrganismData object for the organism this feature comes from.
+     * @param organismData the OrganismData object
+     */
+    public void setOrganismData(OrganismData organismData) {
+        if (store != null) {
+            store.setOrganismData(entry, organismData);
+            return;
+        }
+        this.organismData = organismData;
+    }
+
     /**
      * Return the InterMine type of this object
      * @return the InterMine type
      */
     public String getInterMineType() {
+        if (store != null) {
+            return store.getInterMineType(entry);
+        }
         return interMineType;
     }
 
@@ -205,6 +310,10 @@ class FeatureData
      * @param interMineType the type to set
      */
     public void setInterMineType(String interMineType) {
+        if (store != null) {
+            store.setInterMineType(entry, interMineType);
+            return;
+        }
         this.interMineType = interMineType;
     }
 
@@ -218,7 +327,7 @@ class FeatureData
      * @return true if the flag is set
      */
     public boolean getFlag(short flag) {
-        return (flags & shift(flag)) != 0;
+        return (getFlags() & shift(flag)) != 0;
     }
 
     /**
@@ -227,18 +336,35 @@ class FeatureData
      * @param value the new value
      */
     public void setFlag(short flag, boolean value) {
+        short newFlags = getFlags();
         if (value) {
-            flags |= shift(flag);
+            newFlags |= shift(flag);
+        } else {
+            newFlags &= ~shift(flag);
+        }
+        if (store != null) {
+            store.setFlags(entry, newFlags);
         } else {
-            flags &= ~shift(flag);
+            flags = newFlags;
         }
     }
 
+    /**
+     * Return all the flags.
+     * @return the flags
+     */
+    short getFlags() {
+        return (store == null) ? flags : store.getFlags(entry);
+    }
+
     /**
      * Return the MD5 checksum of the residues of this feature.
      * @return the checksum
      */
     public String getChecksum() {
+        if (store != null) {
+            return store.getChecksum(entry);
+        }
         return md5checksum;
     }
 
@@ -247,6 +373,10 @@ class FeatureData
      * @param md5checksum the new md5checksum
      */
     public void setMd5checksum(String md5checksum) {
+        if (store != null) {
+            store.setChecksum(entry, md5checksum);
+            return;
+        }
         this.md5checksum = md5checksum;
     }
 
@@ -256,6 +386,9 @@ class FeatureData
      * @return the existingSynonyms
      */
     public final Set<String> getExistingSynonyms() {
+        if (store != null) {
+            return store.getSynonyms(entry);
+        }
         return existingSynonyms;
     }
 
@@ -267,7 +400,31 @@ class FeatureData
      * @param synonym identifier that has just been created as a synonym
      */
     public void addExistingSynonym(String synonym) {
+        if (store != null) {
+            store.addSynonym(entry, synonym);
+            return;
+        }
         existingSynonyms.add(synonym);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (store == null || !(o instanceof FeatureData)) {
+            return this == o;
+        }
+        FeatureData other = (FeatureData) o;
+        return store == other.store && entry == other.entry;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return (store == null) ? System.identityHashCode(this) : entry;
+    }
+
 }
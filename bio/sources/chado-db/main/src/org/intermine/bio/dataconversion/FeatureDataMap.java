@@ -0,0 +1,602 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.log4j.Logger;
+import org.intermine.bio.util.OrganismData;
+
+/**
+ * A Map from chado feature id to FeatureData that holds the details of each feature in arrays
+ * rather than in one object per feature. The strings (unique names, names, checksums and
+ * synonyms) are kept outside the Java heap in a memory-mapped temporary file, and the InterMine
+ * types, organisms and the prefixes of item identifiers are held once each in a dictionary.
+ *
+ * A FeatureData that is put in the map becomes a view of its entry, so changes made to it later
+ * are seen by every other FeatureData fetched from the map for the same feature.
+ */
+class FeatureDataMap extends AbstractMap<Integer, FeatureData>
+{
+    private static final Logger LOG = Logger.getLogger(FeatureDataMap.class);
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int CHUNK_SIZE = 1 << 26;
+    private static final long NULL_OFFSET = -1L;
+    private static final long SAME_AS_UNIQUE_NAME = -2L;
+    private static final int NULL_OBJECT_ID = Integer.MIN_VALUE;
+    private static final short NULL_INDEX = -1;
+
+    // open addressing table from feature id to entry number + 1, 0 meaning an empty position
+    private int[] featureIds = new int[64];
+    private int[] entries = new int[64];
+    private int size = 0;
+
+    // the columns, indexed by entry number
+    private int entryCount = 0;
+    private long[] uniqueNames = new long[64];
+    private long[] chadoFeatureNames = new long[64];
+    private long[] itemIdentifiers = new long[64];
+    private long[] checksums = new long[64];
+    private long[] synonyms = new long[64];
+    private int[] intermineObjectIds = new int[64];
+    private short[] interMineTypes = new short[64];
+    private short[] organisms = new short[64];
+    private short[] flags = new short[64];
+
+    private final List<String> typeNames = new ArrayList<String>();
+    private final Map<String, Short> typeIndexes = new HashMap<String, Short>();
+    private final List<OrganismData> organismDatas = new ArrayList<OrganismData>();
+    private final Map<OrganismData, Short> organismIndexes =
+        new IdentityHashMap<OrganismData, Short>();
+    private final List<String> identifierPrefixes = new ArrayList<String>();
+    private final Map<String, Integer> prefixIndexes = new HashMap<String, Integer>();
+
+    private Arena arena = null;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean containsKey(Object key) {
+        return (key instanceof Integer) && findPosition(((Integer) key).intValue()) >= 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public FeatureData get(Object key) {
+        if (!(key instanceof Integer)) {
+            return null;
+        }
+        int pos = findPosition(((Integer) key).intValue());
+        return (pos < 0) ? null : new FeatureData(this, entries[pos] - 1);
+    }
+
+    /**
+     * Add a feature to the map. Unless the FeatureData is already held by another
+     * FeatureDataMap, it becomes a view of the new entry.
+     * @param featureId the chado feature id
+     * @param fdat the details of the feature
+     * @return the FeatureData previously stored for the feature id, or null
+     */
+    @Override
+    public FeatureData put(Integer featureId, FeatureData fdat) {
+        if (fdat == null) {
+            throw new NullPointerException("FeatureDataMap cannot hold null values");
+        }
+        int entry;
+        if (fdat.getStore() == this) {
+            entry = fdat.getEntry();
+        } else {
+            entry = addEntry(fdat);
+            if (fdat.getStore() == null) {
+                fdat.attach(this, entry);
+            }
+        }
+        int id = featureId.intValue();
+        int pos = findPosition(id);
+        if (pos >= 0) {
+            FeatureData old = new FeatureData(this, entries[pos] - 1);
+            entries[pos] = entry + 1;
+            return old;
+        }
+        if ((size + 1) * 4 > featureIds.length * 3) {
+            rehash(featureIds.length * 2);
+            pos = findPosition(id);
+        }
+        pos = -pos - 1;
+        featureIds[pos] = id;
+        entries[pos] = entry + 1;
+        size++;
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public FeatureData remove(Object key) {
+        if (!(key instanceof Integer)) {
+            return null;
+        }
+        int pos = findPosition(((Integer) key).intValue());
+        if (pos < 0) {
+            return null;
+        }
+        FeatureData old = new FeatureData(this, entries[pos] - 1);
+        // shift back any later entries of the same probe sequence into the gap
+        int mask = featureIds.length - 1;
+        int gap = pos;
+        int next = (gap + 1) & mask;
+        while (entries[next] != 0) {
+            int home = hash(featureIds[next]) & mask;
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                featureIds[gap] = featureIds[next];
+                entries[gap] = entries[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        entries[gap] = 0;
+        size--;
+        return old;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        Arrays.fill(entries, 0);
+        size = 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<Map.Entry<Integer, FeatureData>> entrySet() {
+        return new AbstractSet<Map.Entry<Integer, FeatureData>>() {
+            @Override
+            public Iterator<Map.Entry<Integer, FeatureData>> iterator() {
+                return new Iterator<Map.Entry<Integer, FeatureData>>() {
+                    private int pos = advance(0);
+
+                    private int advance(int from) {
+                        int i = from;
+                        while (i < entries.length && entries[i] == 0) {
+                            i++;
+                        }
+                        return i;
+                    }
+
+                    public boolean hasNext() {
+                        return pos < entries.length;
+                    }
+
+                    public Map.Entry<Integer, FeatureData> next() {
+                        if (pos >= entries.length) {
+                            throw new NoSuchElementException();
+                        }
+                        Map.Entry<Integer, FeatureData> next =
+                            new SimpleImmutableEntry<Integer, FeatureData>(
+                                new Integer(featureIds[pos]),
+                                new FeatureData(FeatureDataMap.this, entries[pos] - 1));
+                        pos = advance(pos + 1);
+                        return next;
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private static int hash(int featureId) {
+        int h = featureId * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    // returns the position of the feature id, or -(insertion point + 1) if it is not present
+    private int findPosition(int featureId) {
+        int mask = featureIds.length - 1;
+        int pos = hash(featureId) & mask;
+        while (entries[pos] != 0) {
+            if (featureIds[pos] == featureId) {
+                return pos;
+            }
+            pos = (pos + 1) & mask;
+        }
+        return -pos - 1;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldFeatureIds = featureIds;
+        int[] oldEntries = entries;
+        featureIds = new int[capacity];
+        entries = new int[capacity];
+        for (int i = 0; i < oldEntries.length; i++) {
+            if (oldEntries[i] != 0) {
+                int pos = -findPosition(oldFeatureIds[i]) - 1;
+                featureIds[pos] = oldFeatureIds[i];
+                entries[pos] = oldEntries[i];
+            }
+        }
+    }
+
+    private int addEntry(FeatureData fdat) {
+        if (entryCount == uniqueNames.length) {
+            int capacity = entryCount * 2;
+            uniqueNames = Arrays.copyOf(uniqueNames, capacity);
+            chadoFeatureNames = Arrays.copyOf(chadoFeatureNames, capacity);
+            itemIdentifiers = Arrays.copyOf(itemIdentifiers, capacity);
+            checksums = Arrays.copyOf(checksums, capacity);
+            synonyms = Arrays.copyOf(synonyms, capacity);
+            intermineObjectIds = Arrays.copyOf(intermineObjectIds, capacity);
+            interMineTypes = Arrays.copyOf(interMineTypes, capacity);
+            organisms = Arrays.copyOf(organisms, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+        }
+        int entry = entryCount++;
+        uniqueNames[entry] = putString(fdat.getUniqueName());
+        chadoFeatureNames[entry] = NULL_OFFSET;
+        setChadoFeatureName(entry, fdat.getChadoFeatureName());
+        itemIdentifiers[entry] = NULL_OFFSET;
+        setItemIdentifier(entry, fdat.getItemIdentifier());
+        checksums[entry] = putString(fdat.getChecksum());
+        synonyms[entry] = NULL_OFFSET;
+        for (String synonym : fdat.getExistingSynonyms()) {
+            addSynonym(entry, synonym);
+        }
+        setIntermineObjectId(entry, fdat.getIntermineObjectId());
+        setInterMineType(entry, fdat.getInterMineType());
+        setOrganismData(entry, fdat.getOrganismData());
+        flags[entry] = fdat.getFlags();
+        return entry;
+    }
+
+    String getUniqueName(int entry) {
+        return getString(uniqueNames[entry]);
+    }
+
+    void setUniqueName(int entry, String uniqueName) {
+        if (chadoFeatureNames[entry] == SAME_AS_UNIQUE_NAME) {
+            chadoFeatureNames[entry] = putString(getUniqueName(entry));
+        }
+        uniqueNames[entry] = putString(uniqueName);
+    }
+
+    String getChadoFeatureName(int entry) {
+        long offset = chadoFeatureNames[entry];
+        return getString((offset == SAME_AS_UNIQUE_NAME) ? uniqueNames[entry] : offset);
+    }
+
+    void setChadoFeatureName(int entry, String chadoFeatureName) {
+        if (chadoFeatureName != null && chadoFeatureName.equals(getUniqueName(entry))) {
+            chadoFeatureNames[entry] = SAME_AS_UNIQUE_NAME;
+        } else {
+            chadoFeatureNames[entry] = putString(chadoFeatureName);
+        }
+    }
+
+    // identifiers like "3_123" are held as the prefix number and the number, anything else is
+    // held in the arena as -(offset + 2)
+    String getItemIdentifier(int entry) {
+        long value = itemIdentifiers[entry];
+        if (value == NULL_OFFSET) {
+            return null;
+        }
+        if (value < 0) {
+            return getString(-value - 2);
+        }
+        return identifierPrefixes.get((int) (value >>> 32)) + ((int) value);
+    }
+
+    void setItemIdentifier(int entry, String itemIdentifier) {
+        if (itemIdentifier == null) {
+            itemIdentifiers[entry] = NULL_OFFSET;
+            return;
+        }
+        long packed = packIdentifier(itemIdentifier);
+        itemIdentifiers[entry] = (packed >= 0) ? packed : -putString(itemIdentifier) - 2;
+    }
+
+    private long packIdentifier(String identifier) {
+        int start = identifier.lastIndexOf('_') + 1;
+        int length = identifier.length() - start;
+        if (start == 0 || length < 1 || length > 9
+                || (length > 1 && identifier.charAt(start) == '0')) {
+            return -1;
+        }
+        int number = 0;
+        for (int i = start; i < identifier.length(); i++) {
+            char c = identifier.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            number = number * 10 + (c - '0');
+        }
+        String prefix = identifier.substring(0, start);
+        Integer prefixIndex = prefixIndexes.get(prefix);
+        if (prefixIndex == null) {
+            prefixIndex = new Integer(identifierPrefixes.size());
+            identifierPrefixes.add(prefix);
+            prefixIndexes.put(prefix, prefixIndex);
+        }
+        return (((long) prefixIndex.intValue()) << 32) | number;
+    }
+
+    String getChecksum(int entry) {
+        return getString(checksums[entry]);
+    }
+
+    void setChecksum(int entry, String checksum) {
+        checksums[entry] = putString(checksum);
+    }
+
+    Integer getIntermineObjectId(int entry) {
+        int id = intermineObjectIds[entry];
+        return (id == NULL_OBJECT_ID) ? null : new Integer(id);
+    }
+
+    void setIntermineObjectId(int entry, Integer intermineObjectId) {
+        intermineObjectIds[entry] =
+            (intermineObjectId == null) ? NULL_OBJECT_ID : intermineObjectId.intValue();
+    }
+
+    String getInterMineType(int entry) {
+        short index = interMineTypes[entry];
+        return (index == NULL_INDEX) ? null : typeNames.get(index);
+    }
+
+    void setInterMineType(int entry, String interMineType) {
+        if (interMineType == null) {
+            interMineTypes[entry] = NULL_INDEX;
+            return;
+        }
+        Short index = typeIndexes.get(interMineType);
+        if (index == null) {
+            index = new Short(checkDictionarySize(typeNames.size()));
+            typeNames.add(interMineType);
+            typeIndexes.put(interMineType, index);
+        }
+        interMineTypes[entry] = index.shortValue();
+    }
+
+    OrganismData getOrganismData(int entry) {
+        short index = organisms[entry];
+        return (index == NULL_INDEX) ? null : organismDatas.get(index);
+    }
+
+    void setOrganismData(int entry, OrganismData organismData) {
+        if (organismData == null) {
+            organisms[entry] = NULL_INDEX;
+            return;
+        }
+        Short index = organismIndexes.get(organismData);
+        if (index == null) {
+            index = new Short(checkDictionarySize(organismDatas.size()));
+            organismDatas.add(organismData);
+            organismIndexes.put(organismData, index);
+        }
+        organisms[entry] = index.shortValue();
+    }
+
+    private static short checkDictionarySize(int size) {
+        if (size >= Short.MAX_VALUE) {
+            throw new IllegalStateException("too many distinct values in FeatureDataMap");
+        }
+        return (short) size;
+    }
+
+    short getFlags(int entry) {
+        return flags[entry];
+    }
+
+    void setFlags(int entry, short newFlags) {
+        flags[entry] = newFlags;
+    }
+
+    /**
+     * Return a view of the synonyms of an entry. Lookups ignore case, as they do in the TreeSet
+     * used by a FeatureData that isn't in a map.
+     */
+    Set<String> getSynonyms(final int entry) {
+        return new AbstractSet<String>() {
+            @Override
+            public boolean contains(Object o) {
+                return (o instanceof String) && hasSynonym(entry, (String) o);
+            }
+
+            @Override
+            public boolean add(String synonym) {
+                return addSynonym(entry, synonym);
+            }
+
+            @Override
+            public Iterator<String> iterator() {
+                Set<String> sorted = new TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
+                for (long node = synonyms[entry]; node != NULL_OFFSET; node = arena.getLong(node)) {
+                    sorted.add(getString(node + 8));
+                }
+                return sorted.iterator();
+            }
+
+            @Override
+            public int size() {
+                int count = 0;
+                for (long node = synonyms[entry]; node != NULL_OFFSET; node = arena.getLong(node)) {
+                    count++;
+                }
+                return count;
+            }
+        };
+    }
+
+    private boolean hasSynonym(int entry, String synonym) {
+        for (long node = synonyms[entry]; node != NULL_OFFSET; node = arena.getLong(node)) {
+            if (synonym.equalsIgnoreCase(getString(node + 8))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // each synonym is a node of the arena holding the offset of the previous one, then the string
+    boolean addSynonym(int entry, String synonym) {
+        if (synonym == null) {
+            throw new NullPointerException("synonym cannot be null");
+        }
+        if (hasSynonym(entry, synonym)) {
+            return false;
+        }
+        byte[] bytes = synonym.getBytes(UTF8);
+        long node = getArena().allocate(8 + 4 + bytes.length);
+        arena.putLong(node, synonyms[entry]);
+        arena.putBytes(node + 8, bytes);
+        synonyms[entry] = node;
+        return true;
+    }
+
+    private long putString(String s) {
+        if (s == null) {
+            return NULL_OFFSET;
+        }
+        byte[] bytes = s.getBytes(UTF8);
+        long offset = getArena().allocate(4 + bytes.length);
+        arena.putBytes(offset, bytes);
+        return offset;
+    }
+
+    private String getString(long offset) {
+        if (offset == NULL_OFFSET) {
+            return null;
+        }
+        return new String(arena.getBytes(offset), UTF8);
+    }
+
+    private Arena getArena() {
+        if (arena == null) {
+            try {
+                arena = new Arena();
+            } catch (IOException e) {
+                throw new RuntimeException("failed to create temporary file for feature data", e);
+            }
+        }
+        return arena;
+    }
+
+    /**
+     * Space for the strings of the map, in chunks mapped from a temporary file that is deleted
+     * as soon as it is opened. Nothing stored in the arena is ever freed, as features are only
+     * rarely renamed.
+     */
+    private static final class Arena
+    {
+        private final RandomAccessFile file;
+        private final List<MappedByteBuffer> chunks = new ArrayList<MappedByteBuffer>();
+        private int position = CHUNK_SIZE;
+
+        Arena() throws IOException {
+            File tempFile = File.createTempFile("chado-features", ".tmp");
+            file = new RandomAccessFile(tempFile, "rw");
+            if (!tempFile.delete()) {
+                tempFile.deleteOnExit();
+            }
+        }
+
+        long allocate(int length) {
+            if (length > CHUNK_SIZE) {
+                throw new IllegalArgumentException("value too long for FeatureDataMap: " + length);
+            }
+            if (position + length > CHUNK_SIZE) {
+                try {
+                    long start = ((long) chunks.size()) * CHUNK_SIZE;
+                    chunks.add(file.getChannel().map(FileChannel.MapMode.READ_WRITE, start,
+                            CHUNK_SIZE));
+                } catch (IOException e) {
+                    throw new RuntimeException("failed to map temporary file for feature data", e);
+                }
+                position = 0;
+                LOG.info("feature data now uses " + chunks.size() + " chunks of " + CHUNK_SIZE
+                        + " bytes");
+            }
+            long offset = ((long) (chunks.size() - 1)) * CHUNK_SIZE + position;
+            position += length;
+            return offset;
+        }
+
+        long getLong(long offset) {
+            return chunk(offset).getLong((int) (offset % CHUNK_SIZE));
+        }
+
+        void putLong(long offset, long value) {
+            chunk(offset).putLong((int) (offset % CHUNK_SIZE), value);
+        }
+
+        byte[] getBytes(long offset) {
+            MappedByteBuffer chunk = chunk(offset);
+            int start = (int) (offset % CHUNK_SIZE);
+            byte[] bytes = new byte[chunk.getInt(start)];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = chunk.get(start + 4 + i);
+            }
+            return bytes;
+        }
+
+        void putBytes(long offset, byte[] bytes) {
+            MappedByteBuffer chunk = chunk(offset);
+            int start = (int) (offset % CHUNK_SIZE);
+            chunk.putInt(start, bytes.length);
+            for (int i = 0; i < bytes.length; i++) {
+                chunk.put(start + 4 + i, bytes[i]);
+            }
+        }
+
+        private MappedByteBuffer chunk(long offset) {
+            return chunks.get((int) (offset / CHUNK_SIZE));
+        }
+    }
+}
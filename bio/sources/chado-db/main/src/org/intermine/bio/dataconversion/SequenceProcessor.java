@@ -60,8 +60,8 @@ public class SequenceProcessor extends ChadoProcessor
     private static final Logger LOG = Logger.getLogger(SequenceProcessor.class);
 
     // a map from chado feature id to FeatureData objects, populated by processFeatureTable()
-    // and used to get object types, Item IDs etc. (see FeatureData)
-    protected Map<Integer, FeatureData> featureMap = new HashMap<Integer, FeatureData>();
+    // and used to get object types, Item IDs etc. (see FeatureData and FeatureDataMap)
+    protected Map<Integer, FeatureData> featureMap = new FeatureDataMap();
 
     // we don't configure anything by default, so the process methods do their default actions
     private static final MultiKeyMap DEFAULT_CONFIG = new MultiKeyMap();
@@ -479,7 +479,7 @@ public class SequenceProcessor extends ChadoProcessor
         fdat.setUniqueName(uniqueName);
         fdat.setChadoFeatureName(name);
         fdat.setInterMineType(feature.getClassName());
-        fdat.organismData = organismData;
+        fdat.setOrganismData(organismData);
         fdat.setMd5checksum(md5checksum);
         return fdat;
     }
@@ -629,7 +629,7 @@ public class SequenceProcessor extends ChadoProcessor
                 FeatureData srcFeatureData = featureMap.get(srcFeatureId);
                 if (featureMap.containsKey(featureId)) {
                     FeatureData featureData = featureMap.get(featureId);
-                    int taxonId = featureData.organismData.getTaxonId();
+                    int taxonId = featureData.getOrganismData().getTaxonId();
                     Item location =
                             makeLocation(start, end, strand, srcFeatureData, featureData, taxonId,
                                     featureId);
@@ -858,7 +858,7 @@ public class SequenceProcessor extends ChadoProcessor
                 MultiKey key = new MultiKey(relType, subjectFeatureData.getInterMineType(),
                         relationType, objectClass);
                 List<ConfigAction> actionList =
-                        getConfig(subjectData.organismData.getTaxonId()).get(key);
+                        getConfig(subjectData.getOrganismData().getTaxonId()).get(key);
 
                 if (actionList != null) {
                     if (actionList.size() == 0
@@ -1041,7 +1041,7 @@ public class SequenceProcessor extends ChadoProcessor
                 }
                 accession  = fixIdentifier(fdat, accession);
 
-                int taxonId = fdat.organismData.getTaxonId();
+                int taxonId = fdat.getOrganismData().getTaxonId();
                 Map<MultiKey, List<ConfigAction>> orgConfig =
                         getConfig(taxonId);
                 List<ConfigAction> actionList = orgConfig.get(key);
@@ -1119,7 +1119,7 @@ public class SequenceProcessor extends ChadoProcessor
 
                 FeatureData fdat = featureMap.get(featureId);
                 MultiKey key = new MultiKey("prop", fdat.getInterMineType(), propTypeName);
-                int taxonId = fdat.organismData.getTaxonId();
+                int taxonId = fdat.getOrganismData().getTaxonId();
                 List<ConfigAction> actionList = getConfig(taxonId).get(key);
                 if (actionList == null) {
                     // no actions configured for this prop
@@ -1190,7 +1190,7 @@ public class SequenceProcessor extends ChadoProcessor
             if (featureMap.containsKey(featureId)) {
                 FeatureData fdat = featureMap.get(featureId);
                 MultiKey key = new MultiKey("library", fdat.getInterMineType(), propTypeName);
-                int taxonId = fdat.organismData.getTaxonId();
+                int taxonId = fdat.getOrganismData().getTaxonId();
                 List<ConfigAction> actionList = getConfig(taxonId).get(key);
                 if (actionList == null) {
                     // no actions configured for this prop
@@ -1248,7 +1248,7 @@ public class SequenceProcessor extends ChadoProcessor
             if (featureMap.containsKey(featureId)) {
                 FeatureData fdat = featureMap.get(featureId);
                 MultiKey key = new MultiKey("anatomyterm", fdat.getInterMineType(), null);
-                int taxonId = fdat.organismData.getTaxonId();
+                int taxonId = fdat.getOrganismData().getTaxonId();
                 List<ConfigAction> actionList = getConfig(taxonId).get(key);
                 if (actionList == null) {
                     // no actions configured for this prop
@@ -1309,7 +1309,7 @@ public class SequenceProcessor extends ChadoProcessor
 
             MultiKey key = new MultiKey("cvterm", fdat.getInterMineType(), cvName);
 
-            int taxonId = fdat.organismData.getTaxonId();
+            int taxonId = fdat.getOrganismData().getTaxonId();
 
             List<ConfigAction> actionList = getConfig(taxonId).get(key);
             if (actionList == null) {
@@ -1480,7 +1480,7 @@ public class SequenceProcessor extends ChadoProcessor
                 MultiKey key =
                         new MultiKey("synonym", fdat.getInterMineType(),
                                 synonymTypeName, isCurrent);
-                int taxonId = fdat.organismData.getTaxonId();
+                int taxonId = fdat.getOrganismData().getTaxonId();
                 Map<MultiKey, List<ConfigAction>> orgConfig = getConfig(taxonId);
                 List<ConfigAction> actionList = orgConfig.get(key);
 
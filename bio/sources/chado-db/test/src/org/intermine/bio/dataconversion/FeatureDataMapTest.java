@@ -0,0 +1,120 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class FeatureDataMapTest extends TestCase
+{
+    public FeatureDataMapTest(String arg) {
+        super(arg);
+    }
+
+    private FeatureData makeFeatureData(int i) {
+        FeatureData fdat = new FeatureData();
+        fdat.setUniqueName("FBgn" + i);
+        fdat.setChadoFeatureName((i % 2 == 0) ? "FBgn" + i : "gene" + i);
+        fdat.setItemIdentifier((i % 3 == 0) ? "0_" + i : "feature-" + i);
+        fdat.setInterMineType((i % 2 == 0) ? "Gene" : "Exon");
+        fdat.setIntermineObjectId((i % 5 == 0) ? null : new Integer(i * 10));
+        fdat.setMd5checksum("d41d8cd98f00b204e9800998ecf8427e");
+        fdat.setFlag(FeatureData.SYMBOL_SET, i % 2 == 0);
+        fdat.addExistingSynonym("syn" + i);
+        return fdat;
+    }
+
+    public void testPutAndGet() {
+        FeatureDataMap map = new FeatureDataMap();
+        for (int i = 0; i < 1000; i++) {
+            assertNull(map.put(new Integer(i * 7), makeFeatureData(i)));
+        }
+        assertEquals(1000, map.size());
+        for (int i = 0; i < 1000; i++) {
+            FeatureData fdat = map.get(new Integer(i * 7));
+            assertEquals("FBgn" + i, fdat.getUniqueName());
+            assertEquals((i % 2 == 0) ? "FBgn" + i : "gene" + i, fdat.getChadoFeatureName());
+            assertEquals((i % 3 == 0) ? "0_" + i : "feature-" + i, fdat.getItemIdentifier());
+            assertEquals((i % 2 == 0) ? "Gene" : "Exon", fdat.getInterMineType());
+            assertEquals((i % 5 == 0) ? null : new Integer(i * 10), fdat.getIntermineObjectId());
+            assertEquals("d41d8cd98f00b204e9800998ecf8427e", fdat.getChecksum());
+            assertEquals(i % 2 == 0, fdat.getFlag(FeatureData.SYMBOL_SET));
+            assertFalse(fdat.getFlag(FeatureData.LENGTH_SET));
+            assertTrue(fdat.getExistingSynonyms().contains("SYN" + i));
+            assertFalse(fdat.getExistingSynonyms().contains("syn" + (i + 1)));
+            assertNull(fdat.getOrganismData());
+        }
+        assertNull(map.get(new Integer(1)));
+        assertFalse(map.containsKey(new Integer(1)));
+        assertNull(map.get("0"));
+    }
+
+    public void testChangesAreStored() {
+        FeatureDataMap map = new FeatureDataMap();
+        FeatureData fdat = makeFeatureData(2);
+        map.put(new Integer(2), fdat);
+
+        fdat.setFlag(FeatureData.LENGTH_SET, true);
+        fdat.addExistingSynonym("other");
+        fdat.addExistingSynonym("OTHER");
+        map.get(new Integer(2)).setUniqueName("FBgn_renamed");
+
+        FeatureData fetched = map.get(new Integer(2));
+        assertTrue(fetched.getFlag(FeatureData.LENGTH_SET));
+        assertEquals(2, fetched.getExistingSynonyms().size());
+        assertTrue(fetched.getExistingSynonyms().contains("Other"));
+        assertEquals("FBgn_renamed", fdat.getUniqueName());
+        // the name was the same as the old unique name
+        assertEquals("FBgn2", fdat.getChadoFeatureName());
+        assertEquals(fdat, fetched);
+        assertEquals(fdat.hashCode(), fetched.hashCode());
+    }
+
+    public void testRemoveAndIterate() {
+        FeatureDataMap map = new FeatureDataMap();
+        Map<Integer, String> expected = new HashMap<Integer, String>();
+        for (int i = 0; i < 500; i++) {
+            map.put(new Integer(i), makeFeatureData(i));
+            expected.put(new Integer(i), "FBgn" + i);
+        }
+        for (int i = 0; i < 500; i += 3) {
+            assertEquals("FBgn" + i, map.remove(new Integer(i)).getUniqueName());
+            expected.remove(new Integer(i));
+        }
+        assertNull(map.remove(new Integer(0)));
+        assertEquals(expected.size(), map.size());
+
+        Map<Integer, String> actual = new HashMap<Integer, String>();
+        for (Map.Entry<Integer, FeatureData> entry : map.entrySet()) {
+            actual.put(entry.getKey(), entry.getValue().getUniqueName());
+        }
+        assertEquals(expected, actual);
+        for (Integer key : expected.keySet()) {
+            assertTrue(map.containsKey(key));
+        }
+    }
+
+    public void testCopyBetweenMaps() {
+        FeatureDataMap map = new FeatureDataMap();
+        map.put(new Integer(1), makeFeatureData(1));
+        FeatureDataMap copy = new FeatureDataMap();
+        copy.putAll(map);
+
+        FeatureData original = map.get(new Integer(1));
+        FeatureData copied = copy.get(new Integer(1));
+        assertEquals("gene1", copied.getChadoFeatureName());
+        copied.setChadoFeatureName("changed");
+        assertEquals("gene1", original.getChadoFeatureName());
+        assertFalse(original.equals(copied));
+    }
+}
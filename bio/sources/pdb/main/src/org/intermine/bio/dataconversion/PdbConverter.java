@@ -28,6 +28,7 @@ import org.biojava.nbio.structure.ExperimentalTechnique;
 import org.biojava.nbio.structure.PDBHeader;
 import org.biojava.nbio.structure.Structure;
 import org.biojava.nbio.structure.io.PDBFileReader;
+import org.intermine.dataconversion.FileProcessor;
 import org.intermine.dataconversion.ItemWriter;
 import org.intermine.metadata.Model;
 import org.intermine.metadata.StringUtil;
@@ -94,16 +95,22 @@ public class PdbConverter extends BioDirectoryConverter
             throw new RuntimeException("no valid PDB directories found.");
         }
 
-        // one dir per org
+        // one dir per org, whose files may be converted concurrently
         for (File dir : directoriesToProcess) {
-            String taxonId = dir.getName();
-            File[] filesToProcess = dir.listFiles();
-            proteins = new HashMap<String, String>();
-            for (File f : filesToProcess) {
+            final String taxonId = dir.getName();
+            List<File> pdbFiles = new ArrayList<File>();
+            for (File f : dir.listFiles()) {
                 if (f.getName().endsWith(".pdb")) {
-                    processPDBFile(f, taxonId);
+                    pdbFiles.add(f);
                 }
             }
+            proteins = new HashMap<String, String>();
+            processFiles(pdbFiles, new FileProcessor() {
+                @Override
+                public void process(File f) throws Exception {
+                    processPDBFile(f, taxonId);
+                }
+            });
         }
     }
 
@@ -177,7 +184,7 @@ public class PdbConverter extends BioDirectoryConverter
         store(proteinStructure);
     }
 
-    private String getProtein(String accession, String taxonId)
+    private synchronized String getProtein(String accession, String taxonId)
         throws SAXException {
         String refId = proteins.get(accession);
         if (refId == null) {
@@ -104,8 +104,11 @@ public class BEDExporter implements Exporter
             throw new ExportException("No columns with sequence");
         }
         try {
-            while (resultIt.hasNext()) {
-                List<ResultElement> row = resultIt.next();
+            // Load the locations of a window of features at a time
+            Iterator<List<ResultElement>> rows = new FeaturePrefetcher(resultIt, featureIndexes,
+                    "chromosome", "chromosomeLocation", "organism");
+            while (rows.hasNext()) {
+                List<ResultElement> row = rows.next();
                 exportRow(row);
             }
             finishLastRow();
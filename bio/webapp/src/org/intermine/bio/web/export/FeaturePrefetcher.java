@@ -0,0 +1,184 @@
+package org.intermine.bio.web.export;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.intermine.api.results.ResultElement;
+import org.intermine.model.FastPathObject;
+import org.intermine.model.InterMineObject;
+import org.intermine.objectstore.ObjectStore;
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.objectstore.proxy.ProxyReference;
+
+/**
+ * Passes on the rows to be exported, reading them a window at a time so that the objects the
+ * exporters use for the features in a window can be loaded in bulk, a few queries per window,
+ * instead of one query per feature as each row is written.
+ *
+ * The objects to load are given as reference paths from the features, such as
+ * "chromosomeLocation.locatedOn" or "sequence", and are placed in the ObjectStore's object cache,
+ * where the features' references find them. They are held until the next window is read, so that
+ * they are not dropped from the cache before they are used.
+ */
+public class FeaturePrefetcher implements Iterator<List<ResultElement>>
+{
+    private static final Logger LOG = Logger.getLogger(FeaturePrefetcher.class);
+
+    /** The number of rows read ahead */
+    public static final int WINDOW_SIZE = 1000;
+    private static final int IDS_PER_QUERY = 1000;
+
+    private final Iterator<? extends List<ResultElement>> rows;
+    private final List<Integer> featureIndexes;
+    private final List<String[]> referencePaths = new ArrayList<String[]>();
+    private final LinkedList<List<ResultElement>> window = new LinkedList<List<ResultElement>>();
+    private List<Object> loaded = new ArrayList<Object>();
+
+    /**
+     * Constructor.
+     *
+     * @param rows the rows to export
+     * @param featureIndexes the indexes of the columns holding the features
+     * @param referencePaths dot-separated paths of references from the features to the objects
+     * to load, eg. "chromosomeLocation.locatedOn"
+     */
+    public FeaturePrefetcher(Iterator<? extends List<ResultElement>> rows,
+            List<Integer> featureIndexes, String... referencePaths) {
+        this.rows = rows;
+        this.featureIndexes = featureIndexes;
+        for (String referencePath : referencePaths) {
+            this.referencePaths.add(referencePath.split("\\."));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasNext() {
+        if (window.isEmpty()) {
+            readWindow();
+        }
+        return !window.isEmpty();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<ResultElement> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return window.removeFirst();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    private void readWindow() {
+        // Let go of the objects of the last window
+        loaded = new ArrayList<Object>();
+        while (window.size() < WINDOW_SIZE && rows.hasNext()) {
+            window.add(rows.next());
+        }
+        List<FastPathObject> features = new ArrayList<FastPathObject>();
+        for (List<ResultElement> row : window) {
+            for (Integer index : featureIndexes) {
+                ResultElement re = (index.intValue() < row.size()) ? row.get(index) : null;
+                if (re != null && re.getObject() != null) {
+                    features.add(re.getObject());
+                }
+            }
+        }
+        for (String[] referencePath : referencePaths) {
+            List<FastPathObject> objects = features;
+            for (String fieldName : referencePath) {
+                objects = loadReferences(objects, fieldName);
+            }
+        }
+    }
+
+    /**
+     * Loads the objects that the given objects refer to with a field, and returns them.
+     */
+    private List<FastPathObject> loadReferences(List<FastPathObject> objects, String fieldName) {
+        List<FastPathObject> retval = new ArrayList<FastPathObject>();
+        Map<ObjectStore, Set<Integer>> toLoad = new IdentityHashMap<ObjectStore, Set<Integer>>();
+        Set<Integer> seen = new HashSet<Integer>();
+        for (FastPathObject o : objects) {
+            Object reference;
+            try {
+                reference = o.getFieldProxy(fieldName);
+            } catch (IllegalArgumentException e) {
+                // This kind of object doesn't have the reference
+                continue;
+            } catch (IllegalAccessException e) {
+                // Nor this, for dynamic classes
+                continue;
+            }
+            if (reference instanceof ProxyReference) {
+                ProxyReference proxy = (ProxyReference) reference;
+                if (!seen.add(proxy.getId())) {
+                    // Many features share a chromosome or organism
+                    continue;
+                }
+                InterMineObject cached = proxy.getObjectStore().pilferObjectById(proxy.getId());
+                if (cached != null) {
+                    retval.add(cached);
+                    loaded.add(cached);
+                } else {
+                    Set<Integer> ids = toLoad.get(proxy.getObjectStore());
+                    if (ids == null) {
+                        ids = new LinkedHashSet<Integer>();
+                        toLoad.put(proxy.getObjectStore(), ids);
+                    }
+                    ids.add(proxy.getId());
+                }
+            } else if (reference instanceof FastPathObject) {
+                retval.add((FastPathObject) reference);
+            }
+        }
+        for (Map.Entry<ObjectStore, Set<Integer>> entry : toLoad.entrySet()) {
+            ObjectStore os = entry.getKey();
+            List<Integer> ids = new ArrayList<Integer>(entry.getValue());
+            try {
+                for (int i = 0; i < ids.size(); i += IDS_PER_QUERY) {
+                    for (InterMineObject o : os.getObjectsByIds(ids.subList(i,
+                                    Math.min(i + IDS_PER_QUERY, ids.size())))) {
+                        loaded.add(os.cacheObjectById(o.getId(), o));
+                        retval.add(o);
+                    }
+                }
+            } catch (ObjectStoreException e) {
+                // Leave the references to load themselves one by one
+                LOG.warn("Failed to prefetch " + ids.size() + " " + fieldName + " references", e);
+            }
+        }
+        return retval;
+    }
+}
@@ -193,8 +193,11 @@ public class GFF3Exporter implements Exporter
         }
         try {
             // LOG.info("SOO:" + cNames.toString());
-            while (resultIt.hasNext()) {
-                List<ResultElement> row = resultIt.next();
+            // Load the locations of a window of features at a time
+            Iterator<List<ResultElement>> rows = new FeaturePrefetcher(resultIt, featureIndexes,
+                    "chromosome", "chromosomeLocation");
+            while (rows.hasNext()) {
+                List<ResultElement> row = rows.next();
                 exportRow(row, unionPathCollection, newPathCollection);
             }
 
@@ -10,17 +10,16 @@ package org.intermine.bio.web.export;
  *
  */
 
+import java.io.BufferedOutputStream;
 import java.io.OutputStream;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
-import org.apache.commons.collections.keyvalue.MultiKey;
 import org.apache.log4j.Logger;
 import org.biojava.bio.Annotation;
 import org.biojava.bio.seq.DNATools;
@@ -66,9 +65,8 @@ public class SequenceExporter implements Exporter
     private int writtenResultsCount = 0;
     private final Map<String, List<FieldDescriptor>> classKeys;
     private static final String NEGATIVE_STRAND = "-1";
+    private static final int BUFFER_SIZE = 65536;
     private int extension; // must > 0
-    // Map to hold DNA sequence of a whole chromosome in memory
-    private static Map<MultiKey, String> chromosomeSequenceMap = new HashMap<MultiKey, String>();
     private List<Path> paths = Collections.emptyList();
     private static final Logger LOG = Logger.getLogger(SequenceExporter.class);
 
@@ -141,9 +139,21 @@ public class SequenceExporter implements Exporter
         // duplicates
         IntPresentSet exportedIDs = new IntPresentSet();
 
+        // Load the sequences and locations of a window of features at a time
+        Iterator<List<ResultElement>> rows;
+        if (extension > 0) {
+            rows = new FeaturePrefetcher(resultIt, Collections.singletonList(featureIndex),
+                    "chromosomeLocation.locatedOn", "chromosome.sequence", "organism");
+        } else {
+            rows = new FeaturePrefetcher(resultIt, Collections.singletonList(featureIndex),
+                    "chromosomeLocation.locatedOn", "sequence");
+        }
+        // writeFasta makes a PrintStream per sequence, so buffer the writes it makes
+        OutputStream buffered = new BufferedOutputStream(out, BUFFER_SIZE);
+
         try {
-            while (resultIt.hasNext()) {
-                List<ResultElement> row = resultIt.next();
+            while (rows.hasNext()) {
+                List<ResultElement> row = rows.next();
 
                 StringBuffer header = new StringBuffer();
 
@@ -198,16 +208,16 @@ public class SequenceExporter implements Exporter
                                 "sequence_" + exportedIDs.size());
                     }
                 }
-                SeqIOTools.writeFasta(out, bioSequence);
+                SeqIOTools.writeFasta(buffered, bioSequence);
                 writtenResultsCount++;
                 exportedIDs.add(objectId);
             }
 
             if (writtenResultsCount == 0) {
-                out.write("Nothing was found for export".getBytes(Charset.forName("UTF-8")));
+                buffered.write("Nothing was found for export".getBytes(Charset.forName("UTF-8")));
             }
 
-            out.flush();
+            buffered.flush();
         } catch (Exception e) {
             throw new ExportException("Export failed.", e);
         }
@@ -255,16 +265,6 @@ public class SequenceExporter implements Exporter
         String org = feature.getOrganism().getShortName();
         String strand = feature.getChromosomeLocation().getStrand();
 
-        String chrResidueString;
-        if (chromosomeSequenceMap.get(new MultiKey(chrName, org)) == null) {
-            chrResidueString = chr.getSequence().getResidues()
-                    .toString();
-            chromosomeSequenceMap.put(
-                    new MultiKey(chrName, strand, org), chr.getSequence().getResidues().toString());
-        } else {
-            chrResidueString = chromosomeSequenceMap.get(new MultiKey(chrName, strand, org));
-        }
-
         if (extension > 0) {
             start = start - extension;
             end = end + extension;
@@ -277,8 +277,9 @@ public class SequenceExporter implements Exporter
                 + start + "_" + end + "_"
                 + org.replace("\\. ", "_");
 
-        Sequence seq = DNATools.createDNASequence(chrResidueString.substring(start - 1, end),
-                        seqName);
+        // Only read the pages of the chromosome's sequence that hold the region
+        Sequence seq = DNATools.createDNASequence(
+                chr.getSequence().getResidues().subSequence(start - 1, end).toString(), seqName);
 
         if (NEGATIVE_STRAND.equals(strand)) {
             try {
@@ -0,0 +1,304 @@
+package org.intermine.task;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.tools.ant.BuildException;
+
+/**
+ * Runs a list of post-processing steps, running steps at the same time when they don't touch the
+ * same data.
+ *
+ * The data each step reads and writes is declared by name in a Properties object, with entries
+ * such as "create-references.reads = BioEntity" and "create-references.writes = BioEntity". A
+ * step waits for every step listed before it that writes something it reads or writes, or that
+ * reads something it writes. Capitalised names are model classes, and "*" stands for all of
+ * them; other names, such as those of indexes, are things made from the data. A step with no
+ * declaration, such as do-sources, waits for every step before it, and every step after waits
+ * for it. With one thread the steps are run one at a time in the order they are listed. As a
+ * step only ever waits for steps listed before it, the declarations can't make steps wait for
+ * each other in a cycle.
+ *
+ * As each step completes its name and time are appended to a file, so that after a failure the
+ * steps can be resumed, leaving out those that completed.
+ */
+public abstract class PostProcessScheduler
+{
+    /** The name of all the model classes */
+    public static final String ALL = "*";
+    /** The suffix of the declaration of the data a step reads */
+    public static final String READS = ".reads";
+    /** The suffix of the declaration of the data a step writes */
+    public static final String WRITES = ".writes";
+
+    private final List<String> steps;
+    private final int threads;
+    private final File completedFile;
+    private final Map<String, Set<String>> reads = new HashMap<String, Set<String>>();
+    private final Map<String, Set<String>> writes = new HashMap<String, Set<String>>();
+    private final Set<String> barriers = new HashSet<String>();
+
+    /**
+     * Constructor.
+     *
+     * @param steps the names of the steps, in the order they are listed
+     * @param dependencies the data read and written by each step
+     * @param threads the number of steps that may run at once
+     * @param completedFile the file in which completed steps are recorded
+     * @throws IllegalArgumentException if threads is less than one, or a declaration is neither
+     * of the data a step reads nor of the data it writes
+     */
+    public PostProcessScheduler(List<String> steps, Properties dependencies, int threads,
+            File completedFile) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1, not " + threads);
+        }
+        for (String name : dependencies.stringPropertyNames()) {
+            if (!name.endsWith(READS) && !name.endsWith(WRITES)) {
+                throw new IllegalArgumentException("Unknown kind of dependency: " + name
+                        + " - expected a name ending with " + READS + " or " + WRITES);
+            }
+        }
+        this.steps = steps;
+        this.threads = threads;
+        this.completedFile = completedFile;
+        for (String step : steps) {
+            String stepReads = dependencies.getProperty(step + READS);
+            String stepWrites = dependencies.getProperty(step + WRITES);
+            if (stepReads == null && stepWrites == null) {
+                barriers.add(step);
+            }
+            reads.put(step, parseNames(stepReads));
+            writes.put(step, parseNames(stepWrites));
+        }
+    }
+
+    /**
+     * Runs a step. This is called from several threads at once if there is more than one.
+     *
+     * @param step the name of the step
+     * @throws Exception if the step fails
+     */
+    protected abstract void runStep(String step) throws Exception;
+
+    /**
+     * Runs the steps, waiting for them all to finish. If a step fails no more steps are started,
+     * and the exception is thrown once the steps already running have finished.
+     *
+     * @param resume if true, leave out the steps recorded as completed by an earlier run,
+     * otherwise forget them
+     */
+    public void run(boolean resume) {
+        Set<String> done = new HashSet<String>();
+        if (resume) {
+            done.addAll(readCompleted());
+        } else if (completedFile.exists() && !completedFile.delete()) {
+            throw new BuildException("failed to delete " + completedFile);
+        }
+        List<String> toRun = new ArrayList<String>();
+        for (String step : steps) {
+            if (done.contains(step)) {
+                System.out.print(" skipping completed post process: " + step + "\n");
+            } else {
+                toRun.add(step);
+            }
+        }
+
+        Map<String, List<String>> waitsFor = new HashMap<String, List<String>>();
+        for (int i = 0; i < toRun.size(); i++) {
+            List<String> before = new ArrayList<String>();
+            for (int j = 0; j < i; j++) {
+                if ((threads == 1 && j == i - 1) || conflict(toRun.get(j), toRun.get(i))) {
+                    before.add(toRun.get(j));
+                }
+            }
+            waitsFor.put(toRun.get(i), before);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CompletionService<String> completion = new ExecutorCompletionService<String>(executor);
+        Set<String> started = new HashSet<String>();
+        int running = 0;
+        Throwable failure = null;
+        try {
+            while (true) {
+                if (failure == null) {
+                    // Start steps only when there is a thread free, so that a step waiting for
+                    // a thread isn't started after a failure
+                    for (String step : toRun) {
+                        if (running >= threads) {
+                            break;
+                        }
+                        if (!started.contains(step) && done.containsAll(waitsFor.get(step))) {
+                            started.add(step);
+                            completion.submit(new Step(step));
+                            running++;
+                        }
+                    }
+                }
+                if (running == 0) {
+                    break;
+                }
+                try {
+                    done.add(completion.take().get());
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                }
+                running--;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BuildException("interrupted while running post processes", e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (failure instanceof BuildException) {
+            throw (BuildException) failure;
+        } else if (failure != null) {
+            throw new BuildException(failure);
+        }
+    }
+
+    /**
+     * Returns true if one of the steps writes something the other reads or writes.
+     */
+    private boolean conflict(String first, String second) {
+        return barriers.contains(first) || barriers.contains(second)
+            || overlap(writes.get(first), reads.get(second))
+            || overlap(writes.get(first), writes.get(second))
+            || overlap(reads.get(first), writes.get(second));
+    }
+
+    private static boolean overlap(Set<String> a, Set<String> b) {
+        for (String name : a) {
+            if (b.contains(name) || (ALL.equals(name) && hasModelClass(b))
+                    || (isModelClass(name) && b.contains(ALL))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasModelClass(Set<String> names) {
+        for (String name : names) {
+            if (isModelClass(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isModelClass(String name) {
+        return Character.isUpperCase(name.charAt(0));
+    }
+
+    private static Set<String> parseNames(String names) {
+        Set<String> retval = new LinkedHashSet<String>();
+        if (names != null) {
+            for (String name : names.split(",")) {
+                if (name.trim().length() > 0) {
+                    retval.add(name.trim());
+                }
+            }
+        }
+        return retval;
+    }
+
+    private Set<String> readCompleted() {
+        Set<String> retval = new HashSet<String>();
+        if (!completedFile.exists()) {
+            return retval;
+        }
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(completedFile));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String step = line.split("\t")[0].trim();
+                if (step.length() > 0) {
+                    retval.add(step);
+                }
+            }
+        } catch (IOException e) {
+            throw new BuildException("failed to read " + completedFile, e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+        return retval;
+    }
+
+    private synchronized void recordCompleted(String step, long millis) throws IOException {
+        File dir = completedFile.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.exists()) {
+            dir.mkdirs();
+        }
+        FileWriter writer = new FileWriter(completedFile, true);
+        try {
+            writer.write(step + "\t" + millis + "\n");
+        } finally {
+            writer.close();
+        }
+    }
+
+    private class Step implements Callable<String>
+    {
+        private final String name;
+
+        Step(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String call() throws Exception {
+            System.out.print(" executing post process: " + name + "\n");
+            long start = System.currentTimeMillis();
+            try {
+                runStep(name);
+            } catch (Exception e) {
+                System.err.print("Post process " + name + " failed after "
+                        + (System.currentTimeMillis() - start) + "ms\n");
+                throw e;
+            }
+            long millis = System.currentTimeMillis() - start;
+            recordCompleted(name, millis);
+            System.out.print(" finished post process: " + name + " in " + millis + "ms\n");
+            return name;
+        }
+    }
+}
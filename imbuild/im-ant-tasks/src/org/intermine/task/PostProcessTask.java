@@ -11,11 +11,17 @@ package org.intermine.task;
  */
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Properties;
 
 import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.BuildListener;
 import org.apache.tools.ant.Task;
 import org.apache.tools.ant.taskdefs.Ant;
 import org.apache.tools.ant.taskdefs.Property;
@@ -32,7 +38,11 @@ import org.intermine.task.project.UserProperty;
  * Class that operates on the PostProcessing section of a Mines project.xml file.
  *
  * The class will iterate over the post processes in the project.xml in the order that they are
- * listed in.
+ * listed in.  If the postprocess.threads property is more than one, post processes that don't
+ * touch the same data run at the same time - see PostProcessScheduler.  Each completed post
+ * process is recorded, and running with postprocess.resume=true leaves those out, continuing
+ * after a failure.  Each post process runs in an Ant project of its own, so that the user
+ * properties it sets aren't seen by the others.
  *
  * If there is a do-source postprocess all the sources included in the project.xml will
  * be examined to see if they have a post process step of their own, if so, it will be called.
@@ -46,6 +56,22 @@ public class PostProcessTask extends Task
      */
     public static final String POSTPROCESSOR_CLASS = "postprocessor.class";
 
+    /**
+     * The property that sets how many post-processes may run at once, by default one.
+     */
+    public static final String THREADS = "postprocess.threads";
+
+    /**
+     * The property that, if true, makes a run of all the post-processes leave out those that
+     * completed in the last run.
+     */
+    public static final String RESUME = "postprocess.resume";
+
+    /**
+     * The resource declaring the data each post-process reads and writes.
+     */
+    public static final String DEPENDENCIES_FILE = "postprocess.dependencies.properties";
+
     private Reference classPathRef;
     private File projectXml;
     private Project project;
@@ -104,14 +130,24 @@ public class PostProcessTask extends Task
 
         // Default - do it all
         if ("".equals(action)) {
-            for (String name: project.getPostProcesses().keySet()) {
-                System.out.print(" executing post process: " + name + "\n");
-
-                if (DO_SOURCES.equals(name)) {
-                    doAllSourcePostProcessing();
-                } else {
-                    doCorePostProcess(name);
+            PostProcessScheduler scheduler = new PostProcessScheduler(
+                    new ArrayList<String>(project.getPostProcesses().keySet()),
+                    loadDependencies(), getThreads(), getCompletedFile()) {
+                @Override
+                protected void runStep(String name) {
+                    if (DO_SOURCES.equals(name)) {
+                        doAllSourcePostProcessing();
+                    } else {
+                        doCorePostProcess(name);
+                    }
                 }
+            };
+            try {
+                scheduler.run(Boolean.parseBoolean(getProject().getProperty(RESUME)));
+            } catch (BuildException e) {
+                System.err.print("Post processing failed, run again with -D" + RESUME
+                        + "=true to continue from the post processes that didn't complete\n");
+                throw e;
             }
 
         // ok - do a specific task only
@@ -133,17 +169,18 @@ public class PostProcessTask extends Task
 
         PostProcess p = project.getPostProcesses().get(postProcessName);
         try {
-            Task pp = newPostProcessTask();
-            setProperty(pp, "operation", postProcessName);
-
+            org.apache.tools.ant.Project stepProject = newStepProject();
             for (UserProperty up: p.getUserProperties()) {
                 if (up.isLocation()) {
-                    pp.getProject().setUserProperty(up.getName(), up.getLocation());
+                    stepProject.setUserProperty(up.getName(), up.getLocation());
                 } else {
-                    pp.getProject().setUserProperty(up.getName(), up.getValue());
+                    stepProject.setUserProperty(up.getName(), up.getValue());
                 }
             }
 
+            Task pp = newPostProcessTask(stepProject);
+            setProperty(pp, "operation", postProcessName);
+
             pp.getClass().getMethod("execute", new Class[0]).invoke(pp, new Object[0]);
         } catch (Exception err) {
             throw new BuildException("error running PostProcessTask (action: "
@@ -224,21 +261,81 @@ public class PostProcessTask extends Task
         }
     }
 
-    private Task newPostProcessTask() {
+    /**
+     * Read the data each post process reads and writes from the postprocess classpath.
+     */
+    private Properties loadDependencies() {
+        Properties dependencies = new Properties();
+        InputStream is = getPostProcessClassLoader().getResourceAsStream(DEPENDENCIES_FILE);
+        if (is == null) {
+            System.err.print("no " + DEPENDENCIES_FILE + " found, post processes will run one at"
+                    + " a time\n");
+            return dependencies;
+        }
+        try {
+            dependencies.load(is);
+            is.close();
+        } catch (IOException e) {
+            throw new BuildException("failed to read " + DEPENDENCIES_FILE, e);
+        }
+        return dependencies;
+    }
+
+    private int getThreads() {
+        String threads = getProject().getProperty(THREADS);
+        if (threads == null) {
+            return 1;
+        }
+        try {
+            return Integer.parseInt(threads.trim());
+        } catch (NumberFormatException e) {
+            throw new BuildException(THREADS + " must be a number, not: " + threads);
+        }
+    }
+
+    private File getCompletedFile() {
+        return new File(new File(getProject().getBaseDir(), "build"), "postprocess.completed");
+    }
+
+    private ClassLoader getPostProcessClassLoader() {
         // use ant's ClasspathUtils to construct the postprocess operation task with the current
         // ClassLoader (and make sure all instances share a ClassLoader. This is important as
         // database connections are only reused within a ClassLoader - by default a different one
         // is used each time and we run out of database connections.
         Path path = (Path) classPathRef.getReferencedObject();
-        ClassLoader cl = ClasspathUtils.getClassLoaderForPath(getProject(),
-                path, path.toString(), false, true);
+        return ClasspathUtils.getClassLoaderForPath(getProject(), path, path.toString(), false,
+                true);
+    }
+
+    /**
+     * Create an Ant project with the properties and listeners of this task's project, for one
+     * post process to set its user properties in.  The post processes may run at the same time,
+     * and Ant projects aren't safe to change from several threads.
+     */
+    private org.apache.tools.ant.Project newStepProject() {
+        org.apache.tools.ant.Project parent = getProject();
+        org.apache.tools.ant.Project stepProject = new org.apache.tools.ant.Project();
+        stepProject.setBaseDir(parent.getBaseDir());
+        for (Object listener : parent.getBuildListeners()) {
+            stepProject.addBuildListener((BuildListener) listener);
+        }
+        parent.copyUserProperties(stepProject);
+        Hashtable<?, ?> properties = parent.getProperties();
+        for (Map.Entry<?, ?> entry : properties.entrySet()) {
+            stepProject.setNewProperty((String) entry.getKey(), (String) entry.getValue());
+        }
+        return stepProject;
+    }
+
+    private Task newPostProcessTask(org.apache.tools.ant.Project stepProject) {
+        ClassLoader cl = getPostProcessClassLoader();
         String className = "org.intermine.bio.postprocess.PostProcessOperationsTask";
         // use reflection to avoid depending on the bio/postprocess project
         Object pp = ClasspathUtils.newInstance(className, cl);
 
         try {
             setProperty(pp, "objectStoreWriter", "osw.production");
-            setProperty(pp, "project", getProject());
+            setProperty(pp, "project", stepProject);
         } catch (Exception err) {
             throw new BuildException("error setting up PostProcessTask", err);
         }
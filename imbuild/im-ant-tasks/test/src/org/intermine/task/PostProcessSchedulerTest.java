@@ -0,0 +1,240 @@
+package org.intermine.task;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.tools.ant.BuildException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the order in which PostProcessScheduler runs steps, and its errors.
+ */
+public class PostProcessSchedulerTest
+{
+    private File completedFile;
+    private Properties dependencies;
+    // "+step" when a step starts and "-step" when it finishes
+    private List<String> events;
+
+    @Before
+    public void setUp() throws Exception {
+        completedFile = File.createTempFile("postprocess", ".completed");
+        completedFile.delete();
+        dependencies = new Properties();
+        events = Collections.synchronizedList(new ArrayList<String>());
+    }
+
+    @After
+    public void tearDown() {
+        completedFile.delete();
+    }
+
+    @Test
+    public void testOneThreadRunsInListedOrder() {
+        declare("a", "Gene", "x");
+        declare("b", "Protein", "y");
+        declare("c", "Gene", "z");
+        new RecordingScheduler(steps("a", "b", "c"), 1).run(false);
+        assertEquals(Arrays.asList("+a", "-a", "+b", "-b", "+c", "-c"), events);
+    }
+
+    @Test
+    public void testIndependentStepsRunTogether() {
+        declare("a", "Gene", "x");
+        declare("b", "Protein", "y");
+        final CountDownLatch bothStarted = new CountDownLatch(2);
+        new RecordingScheduler(steps("a", "b"), 2) {
+            @Override
+            protected void runStep(String step) throws Exception {
+                bothStarted.countDown();
+                // Each step only finishes once the other has started
+                assertTrue("steps didn't run at the same time",
+                        bothStarted.await(10, TimeUnit.SECONDS));
+                super.runStep(step);
+            }
+        }.run(false);
+        assertEquals(4, events.size());
+    }
+
+    @Test
+    public void testConflictingStepsWait() {
+        declare("a", "Location", "BioEntity");
+        declare("b", "BioEntity", "index");
+        declare("c", "Protein", "other-index");
+        new RecordingScheduler(steps("a", "b", "c"), 3).run(false);
+        // b reads what a writes
+        assertTrue(events.indexOf("-a") < events.indexOf("+b"));
+        assertEquals(6, events.size());
+    }
+
+    @Test
+    public void testAllModelClasses() {
+        declare("a", "Location", "Gene");
+        declare("b", "*", "index");
+        declare("c", "index", "other-index");
+        new RecordingScheduler(steps("a", "b", "c"), 3).run(false);
+        // "*" covers the classes a writes, and c reads what b writes
+        assertTrue(events.indexOf("-a") < events.indexOf("+b"));
+        assertTrue(events.indexOf("-b") < events.indexOf("+c"));
+    }
+
+    @Test
+    public void testUndeclaredStepRunsAlone() {
+        declare("a", "Gene", "x");
+        declare("c", "Protein", "y");
+        new RecordingScheduler(steps("a", "do-sources", "c"), 3).run(false);
+        assertEquals(Arrays.asList("+a", "-a", "+do-sources", "-do-sources", "+c", "-c"),
+                events);
+    }
+
+    @Test
+    public void testMutualConflictsRunInListedOrder() {
+        // Each reads what the other writes, which can't become a cycle as only the later waits
+        declare("a", "Gene", "Protein");
+        declare("b", "Protein", "Gene");
+        new RecordingScheduler(steps("b", "a"), 2).run(false);
+        assertEquals(Arrays.asList("+b", "-b", "+a", "-a"), events);
+    }
+
+    @Test
+    public void testUnknownKindOfDependency() {
+        dependencies.setProperty("a.depends", "b");
+        try {
+            new RecordingScheduler(steps("a", "b"), 2);
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("a.depends"));
+        }
+    }
+
+    @Test
+    public void testTooFewThreads() {
+        try {
+            new RecordingScheduler(steps("a"), 0);
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testFailurePropagates() {
+        declare("a", "Gene", "x");
+        declare("b", "Protein", "y");
+        declare("c", "x", "z");
+        declare("d", "Protein", "w");
+        final CountDownLatch failed = new CountDownLatch(1);
+        final RuntimeException failure = new RuntimeException("a failed");
+        RecordingScheduler scheduler = new RecordingScheduler(steps("a", "b", "c", "d"), 2) {
+            @Override
+            protected void runStep(String step) throws Exception {
+                if ("a".equals(step)) {
+                    events.add("+a");
+                    failed.countDown();
+                    throw failure;
+                }
+                if ("b".equals(step)) {
+                    // still running when a fails
+                    failed.await(10, TimeUnit.SECONDS);
+                }
+                super.runStep(step);
+            }
+        };
+        try {
+            scheduler.run(false);
+            fail("Expected a BuildException");
+        } catch (BuildException e) {
+            assertSame(failure, e.getCause());
+        }
+        // b was already running, so it completed, but no more steps were started
+        assertTrue(events.contains("-b"));
+        assertFalse(events.contains("+c"));
+        assertFalse(events.contains("+d"));
+    }
+
+    @Test
+    public void testResumeLeavesOutCompletedSteps() {
+        declare("a", "Gene", "x");
+        declare("b", "Protein", "y");
+        declare("c", "Gene", "z");
+        final Set<String> failing = Collections.newSetFromMap(
+                new ConcurrentHashMap<String, Boolean>());
+        failing.add("b");
+        RecordingScheduler scheduler = new RecordingScheduler(steps("a", "b", "c"), 1) {
+            @Override
+            protected void runStep(String step) throws Exception {
+                if (failing.contains(step)) {
+                    throw new BuildException(step + " failed");
+                }
+                super.runStep(step);
+            }
+        };
+        try {
+            scheduler.run(false);
+            fail("Expected a BuildException");
+        } catch (BuildException e) {
+            assertEquals("b failed", e.getMessage());
+        }
+        assertEquals(Arrays.asList("+a", "-a"), events);
+
+        failing.clear();
+        events.clear();
+        scheduler.run(true);
+        assertEquals(Arrays.asList("+b", "-b", "+c", "-c"), events);
+
+        // Without resume, everything runs again
+        events.clear();
+        scheduler.run(false);
+        assertEquals(6, events.size());
+    }
+
+    private void declare(String step, String reads, String writes) {
+        dependencies.setProperty(step + PostProcessScheduler.READS, reads);
+        dependencies.setProperty(step + PostProcessScheduler.WRITES, writes);
+    }
+
+    private static List<String> steps(String... names) {
+        return Arrays.asList(names);
+    }
+
+    private class RecordingScheduler extends PostProcessScheduler
+    {
+        RecordingScheduler(List<String> steps, int threads) {
+            super(steps, dependencies, threads, completedFile);
+        }
+
+        @Override
+        protected void runStep(String step) throws Exception {
+            events.add("+" + step);
+            // give any step that shouldn't be running a chance to start
+            Thread.sleep(20);
+            events.add("-" + step);
+        }
+    }
+}
@@ -15,6 +15,7 @@ import java.util.Map;
 
 import org.intermine.api.bag.BagManager;
 import org.intermine.api.bag.BagQueryConfig;
+import org.intermine.api.bag.BagQueryIndex;
 import org.intermine.api.bag.BagQueryRunner;
 import org.intermine.api.mines.FriendlyMineManager;
 import org.intermine.api.profile.Profile;
@@ -22,6 +23,7 @@ import org.intermine.api.profile.ProfileManager;
 import org.intermine.api.profile.TagManager;
 import org.intermine.api.query.MemoryQueryStore;
 import org.intermine.api.query.PathQueryExecutor;
+import org.intermine.api.query.QueryResultCache;
 import org.intermine.api.query.QueryStore;
 import org.intermine.api.query.WebResultsExecutor;
 import org.intermine.api.template.TemplateManager;
@@ -33,6 +35,7 @@ import org.intermine.metadata.Model;
 import org.intermine.objectstore.ObjectStore;
 import org.intermine.objectstore.ObjectStoreSummary;
 import org.intermine.objectstore.ObjectStoreWriter;
+import org.intermine.util.PropertiesUtil;
 
 /**
  * InterMineAPI provides access to manager objects for the main parts of an InterMine application:
@@ -64,6 +67,7 @@ public class InterMineAPI
     private final Map<Profile, PathQueryExecutor> pqeCache =
         new IdentityHashMap<Profile, PathQueryExecutor>();
     private ObjectStoreWriter userProfile;
+    private QueryResultCache queryResultCache;
 
     /**
      * Protected no-argument constructor only used for building test implementations of this class.
@@ -96,6 +100,8 @@ public class InterMineAPI
         this.trackerDelegate = trackerDelegate;
         this.linkRedirector = linkRedirector;
         this.queryStore = new MemoryQueryStore(1024);
+        this.queryResultCache = QueryResultCache.fromProperties(objectStore,
+                PropertiesUtil.getProperties());
         initUserProfileResources(userProfileWriter);
     }
 
@@ -106,6 +112,8 @@ public class InterMineAPI
      */
     protected void initUserProfileResources(ObjectStoreWriter userProfileWriter) {
         this.profileManager = new ProfileManager(objectStore, userProfileWriter);
+        // Read the tags now, rather than in the first request that needs them
+        profileManager.getTagManager().loadIndex();
         Profile superUser = profileManager.getSuperuserProfile(classKeys);
         this.bagManager = new BagManager(superUser, model);
         this.templateManager =
@@ -114,6 +122,8 @@ public class InterMineAPI
                 new TemplateSummariser(objectStore, userProfileWriter, oss);
         this.bagQueryRunner =
                 new BagQueryRunner(objectStore, classKeys, bagQueryConfig, templateManager);
+        this.bagQueryRunner.setIndex(BagQueryIndex.fromProperties(objectStore,
+                PropertiesUtil.getProperties()));
     }
 
     /**
@@ -201,12 +211,22 @@ public class InterMineAPI
             if (retval == null) {
                 retval = new PathQueryExecutor(objectStore, profile,
                         bagQueryRunner, bagManager);
+                retval.setResultCache(queryResultCache);
                 pqeCache.put(profile, retval);
             }
             return retval;
         }
     }
 
+    /**
+     * The cache of path-query results shared by the path-query executors, or null if result
+     * caching is switched off.
+     * @return the queryResultCache
+     */
+    public QueryResultCache getQueryResultCache() {
+        return queryResultCache;
+    }
+
     /**
      * The bag-query runner is the object that performs look-up queries used when
      * constructing bags from lists of identifiers, and in path-queries when
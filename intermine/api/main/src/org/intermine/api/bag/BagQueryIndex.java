@@ -0,0 +1,474 @@
+package org.intermine.api.bag;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.regex.Pattern;
+
+import org.apache.log4j.Logger;
+import org.intermine.objectstore.ObjectStore;
+import org.intermine.objectstore.query.Query;
+import org.intermine.objectstore.query.Results;
+import org.intermine.objectstore.query.ResultsBatches;
+
+/**
+ * An in-memory index of the identifiers matched by bag queries, so that BagQueryRunner can
+ * resolve a large upload without running a query with every identifier in it.
+ *
+ * <p>There is an index for each combination of type, BagQuery and extra field value. It is built
+ * the first time it is needed, by running the bag query with a single "*" wildcard, which fetches
+ * every identifier that the query could ever match. The identifiers are held lower-cased in a
+ * sorted array, with the ids of the objects they match and the values as they are in the
+ * database, so that plain identifiers are found by binary search and wildcards with a fixed
+ * beginning are found by scanning only the identifiers that start with it.</p>
+ *
+ * <p>Each index records the ObjectStore sequence numbers of the tables its query reads. If the
+ * data changes, the index is discarded and BagQueryRunner falls back to running the bag query
+ * until the index is built again. An index with more than the maximum number of identifiers is
+ * not kept, and the least recently used indexes are discarded to keep the total under the same
+ * maximum.</p>
+ */
+public class BagQueryIndex
+{
+    private static final Logger LOG = Logger.getLogger(BagQueryIndex.class);
+
+    /** Property for the maximum number of identifiers held across all indexes */
+    public static final String MAX_ENTRIES_PROPERTY = "bagQueryIndex.maxEntries";
+
+    private static final int DEFAULT_MAX_ENTRIES = 2000000;
+    private static final String REGEX_CHARACTERS = "\\.[]{}()+?^$|*";
+
+    private final ObjectStore os;
+    private final int maxEntries;
+    private final LinkedHashMap<String, Index> indexes =
+        new LinkedHashMap<String, Index>(16, 0.75F, true);
+    private final Map<String, Stamp> tooLarge = new HashMap<String, Stamp>();
+    private final Map<String, FutureTask<Index>> building =
+        new HashMap<String, FutureTask<Index>>();
+    private int entries = 0;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * Construct a BagQueryIndex.
+     *
+     * @param os the ObjectStore to run bag queries in
+     * @param maxEntries the maximum number of identifiers to hold, across all indexes
+     */
+    public BagQueryIndex(ObjectStore os, int maxEntries) {
+        this.os = os;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Construct a BagQueryIndex configured from the webapp properties. Returns null if the index
+     * has been switched off by setting the maximum number of identifiers to zero.
+     *
+     * @param os the ObjectStore to run bag queries in
+     * @param props the properties to read the configuration from
+     * @return a new BagQueryIndex, or null
+     */
+    public static BagQueryIndex fromProperties(ObjectStore os, Properties props) {
+        int maxEntries = Integer.parseInt(props.getProperty(MAX_ENTRIES_PROPERTY,
+                    String.valueOf(DEFAULT_MAX_ENTRIES)).trim());
+        if (maxEntries <= 0) {
+            return null;
+        }
+        return new BagQueryIndex(os, maxEntries);
+    }
+
+    /**
+     * Returns the index of the identifiers matched by a bag query, building it if necessary.
+     * Returns null if the query cannot be indexed, in which case it should be run as usual. If
+     * another thread is already building the index, this waits for it rather than building it
+     * again.
+     *
+     * @param type the qualified class name of the type being searched for
+     * @param bq the BagQuery
+     * @param extraFieldValue the value used if any extra constraint is configured
+     * @return an Index, or null
+     */
+    public Index getIndex(String type, final BagQuery bq, final String extraFieldValue) {
+        final String key = type + "|" + bq + "|" + extraFieldValue;
+        FutureTask<Index> task;
+        boolean builder = false;
+        synchronized (this) {
+            Index index = indexes.get(key);
+            if (index != null) {
+                if (index.stamp.isCurrent(os)) {
+                    hits++;
+                    return index;
+                }
+                LOG.info("Data has changed, discarding identifier index for " + key);
+                remove(key);
+            }
+            misses++;
+            Stamp large = tooLarge.get(key);
+            if (large != null) {
+                if (large.isCurrent(os)) {
+                    return null;
+                }
+                tooLarge.remove(key);
+            }
+            task = building.get(key);
+            if (task == null) {
+                task = new FutureTask<Index>(new Callable<Index>() {
+                    @Override
+                    public Index call() {
+                        return buildIndex(key, bq, extraFieldValue);
+                    }
+                });
+                building.put(key, task);
+                builder = true;
+            }
+        }
+        if (builder) {
+            try {
+                task.run();
+                Index index = task.get();
+                if (index != null) {
+                    add(key, index);
+                }
+                return index;
+            } catch (InterruptedException e) {
+                // Can't happen, as the task has already run
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException e) {
+                LOG.warn("Could not build identifier index for " + key, e.getCause());
+                return null;
+            } finally {
+                synchronized (this) {
+                    building.remove(key);
+                }
+            }
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            // Logged by the thread that built it
+            return null;
+        }
+    }
+
+    /**
+     * Runs a bag query with a "*" wildcard and builds an Index of its results.
+     *
+     * @param key the key of the index, for logging
+     * @param bq the BagQuery
+     * @param extraFieldValue the value used if any extra constraint is configured
+     * @return an Index, or null if the query cannot be indexed or has too many identifiers
+     */
+    Index buildIndex(String key, BagQuery bq, String extraFieldValue) {
+        Query q;
+        try {
+            q = bq.getQueryForWildcards(Collections.singleton("*"), extraFieldValue);
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (IllegalArgumentException e) {
+            // Query couldn't handle extra value, or has no BagConstraint
+            return null;
+        }
+        Set<Object> components = os.getComponentsForQuery(q);
+        Stamp stamp = new Stamp(components, os.getSequence(components));
+        long start = System.currentTimeMillis();
+        Results res = os.execute(q, ResultsBatches.DEFAULT_BATCH_SIZE, true, true, false);
+        Index index = Index.build(res, maxEntries, stamp);
+        if (index == null) {
+            LOG.info("Not indexing identifiers for " + key + ", as there are more than "
+                    + maxEntries);
+            synchronized (this) {
+                tooLarge.put(key, stamp);
+            }
+            return null;
+        }
+        LOG.info("Built identifier index for " + key + " with " + index.size()
+                + " identifiers in " + (System.currentTimeMillis() - start) + " ms");
+        return index;
+    }
+
+    private synchronized void add(String key, Index index) {
+        remove(key);
+        indexes.put(key, index);
+        entries += index.size();
+        Iterator<Map.Entry<String, Index>> iter = indexes.entrySet().iterator();
+        while (entries > maxEntries && iter.hasNext()) {
+            Map.Entry<String, Index> evicted = iter.next();
+            if (evicted.getValue() != index) {
+                entries -= evicted.getValue().size();
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes every index.
+     */
+    public synchronized void clear() {
+        indexes.clear();
+        tooLarge.clear();
+        entries = 0;
+    }
+
+    /**
+     * Returns a summary of the size and effectiveness of the indexes, for logging.
+     *
+     * @return a String description
+     */
+    public synchronized String getStatistics() {
+        return "BagQueryIndex: " + indexes.size() + " indexes, " + entries + " identifiers, "
+            + hits + " hits, " + misses + " misses";
+    }
+
+    private void remove(String key) {
+        Index old = indexes.remove(key);
+        if (old != null) {
+            entries -= old.size();
+        }
+    }
+
+    /**
+     * Returns the part of a lower-cased wildcard that every match must start with, which is the
+     * part before the first "*" or regular expression character.
+     *
+     * @param wildcard a lower-cased wildcard
+     * @return a String, which may be empty
+     */
+    static String getFixedPrefix(String wildcard) {
+        for (int i = 0; i < wildcard.length(); i++) {
+            if (REGEX_CHARACTERS.indexOf(wildcard.charAt(i)) != -1) {
+                return wildcard.substring(0, i);
+            }
+        }
+        return wildcard;
+    }
+
+    /**
+     * The sequence numbers of the database components a bag query reads, at the time it was run.
+     */
+    static class Stamp
+    {
+        private final Set<Object> components;
+        private final Map<Object, Integer> sequence;
+
+        Stamp(Set<Object> components, Map<Object, Integer> sequence) {
+            this.components = components;
+            this.sequence = sequence;
+        }
+
+        boolean isCurrent(ObjectStore os) {
+            return sequence.equals(os.getSequence(components));
+        }
+    }
+
+    /**
+     * The identifiers matched by one bag query.
+     */
+    public static class Index
+    {
+        private final String[] keys;
+        private final int[] starts;
+        private final int[] ids;
+        private final String[] values;
+        private final Stamp stamp;
+
+        private Index(String[] keys, int[] starts, int[] ids, String[] values, Stamp stamp) {
+            this.keys = keys;
+            this.starts = starts;
+            this.ids = ids;
+            this.values = values;
+            this.stamp = stamp;
+        }
+
+        /**
+         * Builds an Index from the results of a bag query, which have the id of the object in
+         * the first column and identifiers in the rest.
+         *
+         * @param rows the rows of results
+         * @param maxEntries the maximum number of identifiers to index
+         * @param stamp the sequence numbers of the database components the query reads
+         * @return an Index, or null if there are too many identifiers
+         */
+        static Index build(Iterable<?> rows, int maxEntries, Stamp stamp) {
+            List<String> lowerList = new ArrayList<String>();
+            List<String> originalList = new ArrayList<String>();
+            int[] rowIds = new int[16];
+            for (Object rowObj : rows) {
+                List<?> row = (List<?>) rowObj;
+                int id = ((Integer) row.get(0)).intValue();
+                for (int i = 1; i < row.size(); i++) {
+                    Object fieldObject = row.get(i);
+                    if (fieldObject != null) {
+                        int count = lowerList.size();
+                        if (count >= maxEntries) {
+                            return null;
+                        }
+                        String field = String.valueOf(fieldObject);
+                        originalList.add(field);
+                        lowerList.add(field.toLowerCase());
+                        if (count == rowIds.length) {
+                            rowIds = Arrays.copyOf(rowIds, count * 2);
+                        }
+                        rowIds[count] = id;
+                    }
+                }
+            }
+            String[] lowers = lowerList.toArray(new String[lowerList.size()]);
+            String[] originals = originalList.toArray(new String[originalList.size()]);
+            int[] order = new int[lowers.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            sort(order, new int[order.length], 0, order.length, lowers, rowIds, originals);
+            String[] keys = new String[order.length];
+            int[] starts = new int[order.length + 1];
+            int[] ids = new int[order.length];
+            String[] values = new String[order.length];
+            int keyCount = 0;
+            int size = 0;
+            String lastKey = null;
+            for (int i : order) {
+                String key = lowers[i];
+                int id = rowIds[i];
+                String value = originals[i];
+                if (!key.equals(lastKey)) {
+                    keys[keyCount] = key;
+                    starts[keyCount] = size;
+                    keyCount++;
+                    lastKey = key;
+                } else if ((ids[size - 1] == id) && values[size - 1].equals(value)) {
+                    // The same identifier of the same object, from another field
+                    continue;
+                }
+                ids[size] = id;
+                values[size] = value;
+                size++;
+            }
+            starts[keyCount] = size;
+            return new Index(Arrays.copyOf(keys, keyCount), Arrays.copyOf(starts, keyCount + 1),
+                    Arrays.copyOf(ids, size), Arrays.copyOf(values, size), stamp);
+        }
+
+        /**
+         * Merge sorts part of an array of positions in the given arrays, by lower-cased
+         * identifier, then id, then identifier. This sorts ints rather than Integers, so that
+         * an index of millions of identifiers needs no more than an extra array of ints.
+         */
+        private static void sort(int[] order, int[] temp, int from, int to, String[] lowers,
+                int[] rowIds, String[] originals) {
+            if (to - from < 8) {
+                for (int i = from + 1; i < to; i++) {
+                    int value = order[i];
+                    int j = i;
+                    while ((j > from)
+                            && (compare(order[j - 1], value, lowers, rowIds, originals) > 0)) {
+                        order[j] = order[j - 1];
+                        j--;
+                    }
+                    order[j] = value;
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            sort(order, temp, from, middle, lowers, rowIds, originals);
+            sort(order, temp, middle, to, lowers, rowIds, originals);
+            System.arraycopy(order, from, temp, from, to - from);
+            int left = from;
+            int right = middle;
+            for (int i = from; i < to; i++) {
+                boolean takeLeft = (right >= to) || ((left < middle)
+                        && (compare(temp[left], temp[right], lowers, rowIds, originals) <= 0));
+                order[i] = takeLeft ? temp[left++] : temp[right++];
+            }
+        }
+
+        private static int compare(int a, int b, String[] lowers, int[] rowIds,
+                String[] originals) {
+            int retval = lowers[a].compareTo(lowers[b]);
+            if (retval == 0) {
+                retval = (rowIds[a] < rowIds[b]) ? -1 : ((rowIds[a] == rowIds[b]) ? 0 : 1);
+            }
+            if (retval == 0) {
+                retval = originals[a].compareTo(originals[b]);
+            }
+            return retval;
+        }
+
+        /**
+         * Returns the number of identifiers in the index.
+         *
+         * @return an int
+         */
+        public int size() {
+            return ids.length;
+        }
+
+        /**
+         * Returns the ids of the objects that an identifier matches.
+         *
+         * @param input the identifier
+         * @param caseSensitive true if the identifier has to match case too
+         * @return a Set of ids, which is empty if there are no matches
+         */
+        public Set<Integer> lookup(String input, boolean caseSensitive) {
+            Set<Integer> retval = new LinkedHashSet<Integer>();
+            int keyNo = Arrays.binarySearch(keys, input.toLowerCase());
+            if (keyNo >= 0) {
+                for (int j = starts[keyNo]; j < starts[keyNo + 1]; j++) {
+                    if (!caseSensitive || values[j].equals(input)) {
+                        retval.add(new Integer(ids[j]));
+                    }
+                }
+            }
+            return retval;
+        }
+
+        /**
+         * Returns the ids of the objects that a wildcard matches.
+         *
+         * @param wildcard the wildcard, lower-cased
+         * @param pattern the wildcard as a regular expression
+         * @return a Set of ids, which is empty if there are no matches
+         */
+        public Set<Integer> lookupWildcard(String wildcard, Pattern pattern) {
+            Set<Integer> retval = new LinkedHashSet<Integer>();
+            String prefix = getFixedPrefix(wildcard);
+            int keyNo = Arrays.binarySearch(keys, prefix);
+            if (keyNo < 0) {
+                keyNo = -keyNo - 1;
+            }
+            for (; (keyNo < keys.length) && keys[keyNo].startsWith(prefix); keyNo++) {
+                if (pattern.matcher(keys[keyNo]).matches()) {
+                    for (int j = starts[keyNo]; j < starts[keyNo + 1]; j++) {
+                        retval.add(new Integer(ids[j]));
+                    }
+                }
+            }
+            return retval;
+        }
+    }
+}
@@ -336,4 +336,29 @@ public class BagQueryResult
     public void addUnresolved(Collection<String> unresolvedIdentifiers) {
         unresolved.addAll(unresolvedIdentifiers);
     }
+
+    /**
+     * Adds the matches, issues and unresolved identifiers of another result to this one, for
+     * example when the input was resolved in parts.
+     *
+     * @param other another BagQueryResult
+     */
+    public void addAll(BagQueryResult other) {
+        for (Map.Entry<Integer, List> entry : other.matches.entrySet()) {
+            for (Object input : entry.getValue()) {
+                addMatch((String) input, entry.getKey());
+            }
+        }
+        for (Map.Entry<String, Map<String, Map<String, List>>> typeEntry
+                : other.issues.entrySet()) {
+            for (Map.Entry<String, Map<String, List>> queryEntry
+                    : typeEntry.getValue().entrySet()) {
+                for (Map.Entry<String, List> inputEntry : queryEntry.getValue().entrySet()) {
+                    addIssue(typeEntry.getKey(), queryEntry.getKey(), inputEntry.getKey(),
+                            inputEntry.getValue());
+                }
+            }
+        }
+        unresolved.addAll(other.unresolved);
+    }
 }
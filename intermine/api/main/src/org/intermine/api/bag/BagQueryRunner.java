@@ -51,6 +51,7 @@ public class BagQueryRunner
     private Map<String, List<FieldDescriptor>> classKeys;
     private BagQueryConfig bagQueryConfig;
     private TemplateManager templateManager;
+    private BagQueryIndex index = null;
 
     /**
      * Construct with configured bag queries and a map of type -&gt; key fields.
@@ -70,6 +71,15 @@ public class BagQueryRunner
         this.templateManager = templateManager;
     }
 
+    /**
+     * Sets the index used to resolve identifiers without running the bag queries.
+     *
+     * @param index a BagQueryIndex, or null to run the bag queries every time
+     */
+    public void setIndex(BagQueryIndex index) {
+        this.index = index;
+    }
+
     /**
      * Given an input list of string identifiers search for corresponding objects. First run a
      * default query then any queries configured for the specified type.
@@ -112,6 +122,7 @@ public class BagQueryRunner
 
         Map<String, String> lowerCaseInput = new HashMap<String, String>();
         List<String> cleanInput = new ArrayList<String>();
+        Set<String> cleanInputSet = new HashSet<String>();
         List<String> wildcardInput = new ArrayList<String>();
         Map<String, Pattern> patterns = new HashMap<String, Pattern>();
 
@@ -121,6 +132,7 @@ public class BagQueryRunner
                 if (!doWildcards || "*".equals(inputString) || inputString.indexOf('*') == -1) {
                     if (!lowerCaseInput.containsKey(inputString.toLowerCase())) {
                         cleanInput.add(inputString);
+                        cleanInputSet.add(inputString);
                         lowerCaseInput.put(inputString.toLowerCase(), inputString);
                     }
                 // wildcard + a string
@@ -152,9 +164,24 @@ public class BagQueryRunner
         boolean matchOnFirst = bagQueryConfig.getMatchOnFirst();
 
         for (BagQuery bq : queries) {
+            BagQueryIndex.Index bqIndex = null;
+            if ((index != null) && ((!unresolved.isEmpty() || !matchOnFirst)
+                        || !wildcardInput.isEmpty())) {
+                bqIndex = index.getIndex(typeCls.getName(), bq, extraFieldValue);
+            }
             // run the next query on identifiers not yet resolved
             // OR all identifiers if matchOnFirst = FALSE
-            if (!unresolved.isEmpty() || !matchOnFirst) {
+            if (bqIndex != null && (!unresolved.isEmpty() || !matchOnFirst)) {
+                Map<String, Set<Integer>> resMap = new HashMap<String, Set<Integer>>();
+                Set<String> toProcess = (matchOnFirst) ? unresolved : unresolvedOriginal;
+                for (String inputString : new ArrayList<String>(toProcess)) {
+                    for (Integer id : bqIndex.lookup(inputString, caseSensitive)) {
+                        processMatch(resMap, unresolved, id, inputString);
+                    }
+                }
+                addResults(resMap, unresolved, bqr, bq.getMessage(), typeCls, false,
+                            matchOnFirst, bq.matchesAreIssues());
+            } else if (!unresolved.isEmpty() || !matchOnFirst) {
                 Map<String, Set<Integer>> resMap = new HashMap<String, Set<Integer>>();
                 try {
                     Set<String> toProcess = (matchOnFirst) ? unresolved : unresolvedOriginal;
@@ -169,7 +196,7 @@ public class BagQueryRunner
                                 String field = String.valueOf(fieldObject);
                                 String lowerField = field.toLowerCase();
                                 if (caseSensitive) {
-                                    if (cleanInput.contains(field)) {
+                                    if (cleanInputSet.contains(field)) {
                                         processMatch(resMap, unresolved, id, field);
                                     }
                                 } else if (lowerCaseInput.containsKey(lowerField)) {
@@ -188,7 +215,17 @@ public class BagQueryRunner
                 addResults(resMap, unresolved, bqr, bq.getMessage(), typeCls, false,
                             matchOnFirst, bq.matchesAreIssues());
             }
-            if (!wildcardInput.isEmpty()) {
+            if (bqIndex != null && !wildcardInput.isEmpty()) {
+                Map<String, Set<Integer>> resMap = new HashMap<String, Set<Integer>>();
+                for (String wildcard : wildcardInput) {
+                    for (Integer id : bqIndex.lookupWildcard(wildcard.toLowerCase(),
+                                patterns.get(wildcard))) {
+                        processMatch(resMap, wildcardUnresolved, id, wildcard);
+                    }
+                }
+                addWildcardResults(resMap, wildcardUnresolved, wildcardUnresolvedOriginal, bqr,
+                        bq, typeCls, matchOnFirst);
+            } else if (!wildcardInput.isEmpty()) {
                 Map<String, Set<Integer>> resMap = new HashMap<String, Set<Integer>>();
 
                 Query q = bq.getQueryForWildcards(wildcardInput, extraFieldValue);
@@ -208,20 +245,8 @@ public class BagQueryRunner
                         }
                     }
                 }
-                for (Map.Entry<String, Set<Integer>> entry : resMap.entrySet()) {
-                    // This is a dummy issue just to give a message when running queries
-                    bqr.addIssue(BagQueryResult.WILDCARD, bq.getMessage(),
-                            entry.getKey(), new ArrayList<Object>(entry.getValue()));
-                    if (matchOnFirst) {
-                        addResults(resMap, wildcardUnresolved, bqr, bq.getMessage(),
-                                typeCls, true, matchOnFirst, bq.matchesAreIssues());
-                    } else {
-                        addResults(resMap, wildcardUnresolvedOriginal, bqr, bq.getMessage(),
-                                typeCls, true, matchOnFirst, bq.matchesAreIssues());
-                    }
-
-                }
-
+                addWildcardResults(resMap, wildcardUnresolved, wildcardUnresolvedOriginal, bqr,
+                        bq, typeCls, matchOnFirst);
             }
         }
 
@@ -231,6 +256,24 @@ public class BagQueryRunner
         return bqr;
     }
 
+    private void addWildcardResults(Map<String, Set<Integer>> resMap,
+            Set<String> wildcardUnresolved, Set<String> wildcardUnresolvedOriginal,
+            BagQueryResult bqr, BagQuery bq, Class<?> typeCls, boolean matchOnFirst)
+        throws InterMineException {
+        for (Map.Entry<String, Set<Integer>> entry : resMap.entrySet()) {
+            // This is a dummy issue just to give a message when running queries
+            bqr.addIssue(BagQueryResult.WILDCARD, bq.getMessage(),
+                    entry.getKey(), new ArrayList<Object>(entry.getValue()));
+            if (matchOnFirst) {
+                addResults(resMap, wildcardUnresolved, bqr, bq.getMessage(),
+                        typeCls, true, matchOnFirst, bq.matchesAreIssues());
+            } else {
+                addResults(resMap, wildcardUnresolvedOriginal, bqr, bq.getMessage(),
+                        typeCls, true, matchOnFirst, bq.matchesAreIssues());
+            }
+        }
+    }
+
     private static void processMatch(Map<String, Set<Integer>> resMap, Set<String> unresolved,
         Integer id, String field) {
         Set<Integer> ids = resMap.get(field);
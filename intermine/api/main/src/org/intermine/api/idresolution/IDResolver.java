@@ -10,27 +10,63 @@ package org.intermine.api.idresolution;
  *
  */
 
+import java.io.UnsupportedEncodingException;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
+import org.apache.log4j.Logger;
+import org.intermine.api.bag.BagQueryResult;
 import org.intermine.api.bag.BagQueryRunner;
 import org.intermine.api.bag.BagQueryUpgrade;
+import org.intermine.util.PropertiesUtil;
 
 /**
+ * Runs ID resolution jobs in the background and keeps them until their results are collected.
+ *
+ * Jobs are run by a fixed number of worker threads, configured by the idresolution.workers
+ * property. Small jobs go first, and the jobs of different users take turns (see JobScheduler).
+ * Jobs with more identifiers than idresolution.chunkSize are resolved in parts, so their
+ * progress can be followed. Finished jobs are kept for idresolution.resultTtl minutes, and the
+ * result of a successful job is given straight back to any identical job submitted in that
+ * time.
  *
  * @author Alex
  *
  */
 public final class IDResolver
 {
+    private static final Logger LOG = Logger.getLogger(IDResolver.class);
+
+    /** Property for the number of jobs to run at once */
+    public static final String WORKERS_PROPERTY = "idresolution.workers";
+    /** Property for the number of identifiers to resolve in one part of a large job */
+    public static final String CHUNK_SIZE_PROPERTY = "idresolution.chunkSize";
+    /** Property for the number of identifiers up to which a job is run before larger ones */
+    public static final String SMALL_JOB_SIZE_PROPERTY = "idresolution.smallJobSize";
+    /** Property for the number of minutes to keep finished jobs and their results */
+    public static final String RESULT_TTL_PROPERTY = "idresolution.resultTtl";
+
+    private static final int DEFAULT_WORKERS = 4;
+    private static final int DEFAULT_CHUNK_SIZE = 10000;
+    private static final int DEFAULT_SMALL_JOB_SIZE = 1000;
+    private static final int DEFAULT_RESULT_TTL = 180;
+    private static final int MAX_CACHED_RESULTS = 100;
 
     /**
      * list of jobs
      */
     private final Map<UUID, Job> jobs = new ConcurrentHashMap<UUID, Job>();
+    private final Map<UUID, Long> finishedAt = new ConcurrentHashMap<UUID, Long>();
+    private final LinkedHashMap<String, CachedResult> results
+        = new LinkedHashMap<String, CachedResult>(16, 0.75F, true);
 
     private static IDResolver instance = new IDResolver();
 
@@ -42,10 +78,40 @@ public final class IDResolver
         return instance;
     }
 
-    private ExecutorService threadPool;
+    private JobScheduler scheduler = null;
+    private int chunkSize;
+    private long resultTtl;
 
     private IDResolver() {
-        this.threadPool = Executors.newCachedThreadPool();
+        // The workers are started when the first job is submitted, once the properties are set
+    }
+
+    private synchronized JobScheduler getScheduler() {
+        if (scheduler == null) {
+            Properties props = PropertiesUtil.getProperties();
+            int workers = getIntProperty(props, WORKERS_PROPERTY, DEFAULT_WORKERS);
+            int smallJobSize = getIntProperty(props, SMALL_JOB_SIZE_PROPERTY,
+                    DEFAULT_SMALL_JOB_SIZE);
+            chunkSize = getIntProperty(props, CHUNK_SIZE_PROPERTY, DEFAULT_CHUNK_SIZE);
+            resultTtl = getIntProperty(props, RESULT_TTL_PROPERTY, DEFAULT_RESULT_TTL)
+                * 60L * 1000L;
+            scheduler = new JobScheduler(workers, smallJobSize);
+            LOG.info("Running ID resolution jobs on " + workers + " threads");
+        }
+        return scheduler;
+    }
+
+    private static int getIntProperty(Properties props, String name, int defaultValue) {
+        String value = props.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Math.max(Integer.parseInt(value.trim()), 1);
+        } catch (NumberFormatException e) {
+            LOG.warn("Invalid value for " + name + ": " + value);
+            return defaultValue;
+        }
     }
 
     /**
@@ -81,9 +147,35 @@ public final class IDResolver
      * @return job
      */
     public Job submit(BagQueryRunner runner, JobInput input) {
+        return submit(runner, input, null);
+    }
+
+    /**
+     *
+     * @param runner bag query runner
+     * @param input input
+     * @param owner the user the job is run for, or null for an anonymous user
+     * @return job
+     */
+    public Job submit(BagQueryRunner runner, JobInput input, String owner) {
+        JobScheduler jobScheduler = getScheduler();
         UUID id = UUID.randomUUID();
-        Job job = new ResolutionJob(id, runner, input);
-        return submitJob(id, job);
+        String key = makeKey(input);
+        BagQueryResult cached = getCachedResult(key, runner);
+        if (cached != null) {
+            Job job = new ResolutionJob(id, runner, input, cached);
+            jobs.put(id, job);
+            finishedAt.put(id, new Long(System.currentTimeMillis()));
+            return job;
+        }
+        ResolutionJob job = new ResolutionJob(id, runner, input);
+        jobs.put(id, job);
+        List<Runnable> tasks = job.split(chunkSize);
+        for (Runnable task : tasks) {
+            jobScheduler.submit(owner, input.getIds().size(),
+                    new JobTask(id, job, task, key, runner));
+        }
+        return job;
     }
 
     /**
@@ -92,14 +184,21 @@ public final class IDResolver
      * @return job
      */
     public Job submit(BagQueryUpgrade upgrade) {
-        UUID id = UUID.randomUUID();
-        Job job = new UpgradeJob(id, upgrade);
-        return submitJob(id, job);
+        return submit(upgrade, null);
     }
 
-    private Job submitJob(UUID id, Job job) {
+    /**
+     *
+     * @param upgrade upgrade
+     * @param owner the user the job is run for, or null for an anonymous user
+     * @return job
+     */
+    public Job submit(BagQueryUpgrade upgrade, String owner) {
+        JobScheduler jobScheduler = getScheduler();
+        UUID id = UUID.randomUUID();
+        Job job = new UpgradeJob(id, upgrade);
         jobs.put(id, job);
-        threadPool.submit(job);
+        jobScheduler.submit(owner, Integer.MAX_VALUE, new JobTask(id, job, job, null, null));
         return job;
     }
 
@@ -113,10 +212,157 @@ public final class IDResolver
             return null;
         }
         try {
-            return jobs.remove(UUID.fromString(uid));
+            UUID id = UUID.fromString(uid);
+            finishedAt.remove(id);
+            return jobs.remove(id);
         } catch (IllegalArgumentException e) {
             return null;
         }
     }
 
+    /**
+     * Removes the jobs, and the cached results, that finished longer ago than the configured
+     * time to keep them.
+     */
+    public void removeExpiredJobs() {
+        getScheduler();
+        long cutOff = System.currentTimeMillis() - resultTtl;
+        Iterator<Map.Entry<UUID, Long>> iter = finishedAt.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<UUID, Long> entry = iter.next();
+            if (entry.getValue().longValue() < cutOff) {
+                jobs.remove(entry.getKey());
+                iter.remove();
+            }
+        }
+        synchronized (results) {
+            Iterator<CachedResult> resultIter = results.values().iterator();
+            while (resultIter.hasNext()) {
+                if (resultIter.next().finishedAt < cutOff) {
+                    resultIter.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops running jobs. Jobs that have not started will not be run.
+     */
+    public synchronized void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            scheduler = null;
+        }
+    }
+
+    private BagQueryResult getCachedResult(String key, BagQueryRunner runner) {
+        if (key == null) {
+            return null;
+        }
+        synchronized (results) {
+            CachedResult cached = results.get(key);
+            if (cached == null) {
+                return null;
+            }
+            if (cached.runner != runner
+                    || cached.finishedAt < System.currentTimeMillis() - resultTtl) {
+                results.remove(key);
+                return null;
+            }
+            return cached.result;
+        }
+    }
+
+    private void finished(UUID id, Job job, String key, BagQueryRunner runner) {
+        if (job.getStatus() == Job.JobStatus.SUCCESS || job.getStatus() == Job.JobStatus.ERROR) {
+            long now = System.currentTimeMillis();
+            if (jobs.containsKey(id) && !finishedAt.containsKey(id)) {
+                finishedAt.put(id, new Long(now));
+            }
+            if (key != null && job.getStatus() == Job.JobStatus.SUCCESS) {
+                synchronized (results) {
+                    if (!results.containsKey(key)) {
+                        results.put(key, new CachedResult(runner, job.getResult(), now));
+                        Iterator<CachedResult> iter = results.values().iterator();
+                        while (results.size() > MAX_CACHED_RESULTS && iter.hasNext()) {
+                            iter.next();
+                            iter.remove();
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a hash of everything that affects the result of resolving some input.
+     */
+    private static String makeKey(JobInput input) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            StringBuilder sb = new StringBuilder();
+            sb.append(input.getType()).append('\u0000').append(input.getExtraValue())
+                .append('\u0000').append(input.getCaseSensitive()).append('\u0000')
+                .append(input.getWildCards());
+            md.update(sb.toString().getBytes("UTF-8"));
+            for (String id : input.getIds()) {
+                md.update((byte) 0);
+                md.update(String.valueOf(id).getBytes("UTF-8"));
+            }
+            return new BigInteger(1, md.digest()).toString(16);
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        } catch (UnsupportedEncodingException e) {
+            return null;
+        }
+    }
+
+    /**
+     * A task of a job, which records when the job finishes.
+     */
+    private class JobTask implements Runnable
+    {
+        private final UUID id;
+        private final Job job;
+        private final Runnable task;
+        private final String key;
+        private final BagQueryRunner runner;
+
+        JobTask(UUID id, Job job, Runnable task, String key, BagQueryRunner runner) {
+            this.id = id;
+            this.job = job;
+            this.task = task;
+            this.key = key;
+            this.runner = runner;
+        }
+
+        @Override
+        public void run() {
+            if (!jobs.containsKey(id)) {
+                // The job has been removed, so nobody wants the result
+                return;
+            }
+            try {
+                task.run();
+            } finally {
+                finished(id, job, key, runner);
+            }
+        }
+    }
+
+    /**
+     * The result of a successful job.
+     */
+    private static class CachedResult
+    {
+        private final BagQueryRunner runner;
+        private final BagQueryResult result;
+        private final long finishedAt;
+
+        CachedResult(BagQueryRunner runner, BagQueryResult result, long finishedAt) {
+            this.runner = runner;
+            this.result = result;
+            this.finishedAt = finishedAt;
+        }
+    }
 }
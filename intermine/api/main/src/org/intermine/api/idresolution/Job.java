@@ -88,4 +88,9 @@ public interface Job extends Runnable
      */
     String getType();
 
+    /**
+     * @return how much of the job has been done, as a percentage
+     */
+    int getProgress();
+
 }
@@ -0,0 +1,155 @@
+package org.intermine.api.idresolution;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Runs the tasks that ID resolution jobs are made of on a fixed number of worker threads, so
+ * that many large uploads at once cannot use up all the database connections.
+ *
+ * Tasks of small jobs are run first, in the order they were submitted, so that interactive users
+ * are not kept waiting behind large uploads. The remaining tasks are queued separately for each
+ * owner, and the owners take turns, so that one user submitting many large jobs does not hold up
+ * everyone else.
+ */
+class JobScheduler
+{
+    private static final Logger LOG = Logger.getLogger(JobScheduler.class);
+
+    private final int smallJobSize;
+    private final LinkedList<Runnable> smallTasks = new LinkedList<Runnable>();
+    private final LinkedHashMap<String, LinkedList<Runnable>> tasksByOwner
+        = new LinkedHashMap<String, LinkedList<Runnable>>();
+    private final List<Thread> workers = new ArrayList<Thread>();
+    private boolean shutdown = false;
+
+    /**
+     * Constructor.
+     *
+     * @param workerCount the number of tasks to run at once
+     * @param smallJobSize jobs with up to this many identifiers are run before all others
+     */
+    JobScheduler(int workerCount, int smallJobSize) {
+        this.smallJobSize = smallJobSize;
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(new Worker(), "ID resolution worker " + (i + 1));
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+
+    /**
+     * Queues a task.
+     *
+     * @param owner the user the task is run for, or null for an anonymous user
+     * @param jobSize the number of identifiers in the job the task is part of
+     * @param task the task
+     */
+    synchronized void submit(String owner, int jobSize, Runnable task) {
+        if (shutdown) {
+            throw new IllegalStateException("ID resolution has been shut down");
+        }
+        if (jobSize <= smallJobSize) {
+            smallTasks.add(task);
+        } else {
+            String key = (owner == null) ? "" : owner;
+            LinkedList<Runnable> tasks = tasksByOwner.get(key);
+            if (tasks == null) {
+                tasks = new LinkedList<Runnable>();
+                tasksByOwner.put(key, tasks);
+            }
+            tasks.add(task);
+        }
+        notify();
+    }
+
+    /**
+     * Returns the number of tasks waiting to be run.
+     *
+     * @return an int
+     */
+    synchronized int getQueueLength() {
+        int retval = smallTasks.size();
+        for (List<Runnable> tasks : tasksByOwner.values()) {
+            retval += tasks.size();
+        }
+        return retval;
+    }
+
+    /**
+     * Stops the workers. Tasks that have not started are not run.
+     */
+    void shutdown() {
+        synchronized (this) {
+            shutdown = true;
+            smallTasks.clear();
+            tasksByOwner.clear();
+            notifyAll();
+        }
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+    }
+
+    private synchronized Runnable take() throws InterruptedException {
+        while (!shutdown) {
+            if (!smallTasks.isEmpty()) {
+                return smallTasks.removeFirst();
+            }
+            Iterator<Map.Entry<String, LinkedList<Runnable>>> iter
+                = tasksByOwner.entrySet().iterator();
+            if (iter.hasNext()) {
+                // Take from the owner that has waited longest, and send them to the back
+                Map.Entry<String, LinkedList<Runnable>> entry = iter.next();
+                iter.remove();
+                Runnable task = entry.getValue().removeFirst();
+                if (!entry.getValue().isEmpty()) {
+                    tasksByOwner.put(entry.getKey(), entry.getValue());
+                }
+                return task;
+            }
+            wait();
+        }
+        return null;
+    }
+
+    private class Worker implements Runnable
+    {
+        @Override
+        public void run() {
+            while (true) {
+                Runnable task;
+                try {
+                    task = take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (task == null) {
+                    return;
+                }
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    LOG.error("ID resolution task failed", e);
+                }
+            }
+        }
+    }
+}
@@ -11,7 +11,13 @@ package org.intermine.api.idresolution;
  */
 
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import org.intermine.api.bag.BagQueryResult;
@@ -26,13 +32,16 @@ public class ResolutionJob implements Job
     private final JobInput input;
     private final BagQueryRunner runner;
 
-    private BagQueryResult result;
+    private volatile BagQueryResult result;
+    private BagQueryResult partialResult = null;
 
     private boolean isComplete = false;
-    private Exception error = null;
-    private Date startedAt;
-    private JobStatus status = JobStatus.PENDING;
+    private volatile Exception error = null;
+    private volatile Date startedAt;
+    private volatile JobStatus status = JobStatus.PENDING;
     private final String uid;
+    private volatile int chunks = 1;
+    private volatile int chunksDone = 0;
 
     /**
      * @param id user id
@@ -46,27 +55,117 @@ public class ResolutionJob implements Job
         uid = id.toString();
     }
 
+    /**
+     * Create a job that has already completed, with the result of an identical earlier job.
+     *
+     * @param id user id
+     * @param runner bag query runner
+     * @param in input
+     * @param result the result of resolving the same input
+     */
+    public ResolutionJob(UUID id, BagQueryRunner runner, JobInput in, BagQueryResult result) {
+        this(id, runner, in);
+        this.result = result;
+        this.startedAt = new Date();
+        this.chunksDone = chunks;
+        this.status = JobStatus.SUCCESS;
+    }
+
     /*
      * @see org.intermine.api.idresolution.JJob#run()
      */
     @Override
     public void run() {
-        this.status = JobStatus.RUNNING;
-        startedAt = new Date();
+        runChunk(input.getIds());
+    }
+
+    /**
+     * Splits the job into tasks that each resolve part of the input, so that a huge input does
+     * not hold a worker for the whole time and its progress can be followed. The job succeeds
+     * when every task has run. Identifiers that differ only in case are resolved once, as they
+     * would be if the input was resolved all at once.
+     *
+     * @param chunkSize the maximum number of identifiers to resolve in one task
+     * @return a List of tasks, which is just this job if the input is small enough
+     */
+    public synchronized List<Runnable> split(int chunkSize) {
+        Collection<String> ids = input.getIds();
+        if (ids.size() <= chunkSize || status != JobStatus.PENDING) {
+            return Collections.<Runnable>singletonList(this);
+        }
+        Map<String, String> distinct = new LinkedHashMap<String, String>();
+        for (String id : ids) {
+            if (id != null && !distinct.containsKey(id.toLowerCase())) {
+                distinct.put(id.toLowerCase(), id);
+            }
+        }
+        List<String> all = new ArrayList<String>(distinct.values());
+        List<Runnable> retval = new ArrayList<Runnable>();
+        for (int start = 0; start < all.size(); start += chunkSize) {
+            final List<String> chunk = all.subList(start, Math.min(start + chunkSize, all.size()));
+            retval.add(new Runnable() {
+                @Override
+                public void run() {
+                    runChunk(chunk);
+                }
+            });
+        }
+        chunks = Math.max(retval.size(), 1);
+        return retval;
+    }
+
+    private void runChunk(Collection<String> ids) {
+        synchronized (this) {
+            if (status == JobStatus.ERROR) {
+                // An earlier part failed
+                return;
+            }
+            if (status == JobStatus.PENDING) {
+                startedAt = new Date();
+                partialResult = new BagQueryResult();
+                status = JobStatus.RUNNING;
+            }
+        }
         try {
-            this.result = runner.search(
+            BagQueryResult chunkResult = runner.search(
                     input.getType(),
-                    input.getIds(),
+                    ids,
                     input.getExtraValue(),
                     input.getWildCards(),
                     input.getCaseSensitive());
-            this.status = JobStatus.SUCCESS;
+            synchronized (this) {
+                if (status == JobStatus.ERROR) {
+                    return;
+                }
+                if (chunks == 1) {
+                    partialResult = chunkResult;
+                } else {
+                    partialResult.addAll(chunkResult);
+                }
+                chunksDone++;
+                if (chunksDone == chunks) {
+                    result = partialResult;
+                    partialResult = null;
+                    status = JobStatus.SUCCESS;
+                }
+            }
         } catch (Exception e) {
-            error = e;
-            this.status = JobStatus.ERROR;
+            synchronized (this) {
+                error = e;
+                partialResult = null;
+                status = JobStatus.ERROR;
+            }
         }
     }
 
+    /**
+     * @return how much of the input has been resolved, as a percentage
+     */
+    @Override
+    public int getProgress() {
+        return (status == JobStatus.SUCCESS) ? 100 : (100 * chunksDone) / chunks;
+    }
+
     /**
      * @return type
      */
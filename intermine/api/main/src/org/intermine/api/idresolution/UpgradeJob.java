@@ -90,4 +90,9 @@ public class UpgradeJob implements Job
         return startedAt;
     }
 
+    @Override
+    public int getProgress() {
+        return (status == JobStatus.SUCCESS) ? 100 : 0;
+    }
+
 }
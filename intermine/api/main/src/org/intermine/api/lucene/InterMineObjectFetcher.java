@@ -10,6 +10,7 @@ package org.intermine.api.lucene;
  *
  */
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -48,7 +49,7 @@ import org.intermine.objectstore.query.QueryObjectReference;
 import org.intermine.objectstore.query.Results;
 import org.intermine.objectstore.query.ResultsRow;
 import org.intermine.pathquery.PathException;
-import org.intermine.util.ObjectPipe;
+import org.intermine.util.BatchingObjectPipe;
 
 /**
  * thread to fetch all intermineobjects (with exceptions) from database, create
@@ -59,10 +60,11 @@ import org.intermine.util.ObjectPipe;
 public class InterMineObjectFetcher extends Thread
 {
     private static final Logger LOG = Logger.getLogger(InterMineObjectFetcher.class);
+    private static final int DOCUMENT_BATCH_SIZE = 500;
 
     final ObjectStore os;
     final Map<String, List<FieldDescriptor>> classKeys;
-    final ObjectPipe<Document> indexingQueue;
+    final BatchingObjectPipe<Document> indexingQueue;
     final Set<Class<? extends InterMineObject>> ignoredClasses;
     final Map<Class<? extends InterMineObject>, Set<String>> ignoredFields;
     final Map<Class<? extends InterMineObject>, String[]> specialReferences;
@@ -106,7 +108,7 @@ public class InterMineObjectFetcher extends Thread
      * @param attributePrefixes prefixes to be ignored
      */
     public InterMineObjectFetcher(ObjectStore os, Map<String, List<FieldDescriptor>> classKeys,
-            ObjectPipe<Document> indexingQueue,
+            BatchingObjectPipe<Document> indexingQueue,
             Set<Class<? extends InterMineObject>> ignoredClasses,
             Map<Class<? extends InterMineObject>, Set<String>> ignoredFields,
             Map<Class<? extends InterMineObject>, String[]> specialReferences,
@@ -393,6 +395,8 @@ public class InterMineObjectFetcher extends Thread
         int size = results.size();
         LOG.info("Query returned " + size + " results");
 
+        List<Document> docs = new ArrayList<Document>(DOCUMENT_BATCH_SIZE);
+
         //iterate over objects
         while (it.hasNext()) {
             ResultsRow<InterMineObject> row = it.next();
@@ -406,13 +410,17 @@ public class InterMineObjectFetcher extends Thread
             for (InterMineObject object : row) {
                 Document doc = handleObject(object, seenClasses, referenceResults);
 
-                // finally add doc to queue
-                indexingQueue.put(doc);
-
+                // finally add doc to queue, in batches to reduce handoffs to the indexer
+                docs.add(doc);
+                if (docs.size() >= DOCUMENT_BATCH_SIZE) {
+                    indexingQueue.putAll(docs);
+                    docs.clear();
+                }
             }
 
             i++;
         }
+        indexingQueue.putAll(docs);
         return i;
     }
 
@@ -72,7 +72,7 @@ import org.intermine.objectstore.ObjectStore;
 import org.intermine.objectstore.ObjectStoreException;
 import org.intermine.objectstore.intermine.ObjectStoreInterMineImpl;
 import org.intermine.sql.Database;
-import org.intermine.util.ObjectPipe;
+import org.intermine.util.BatchingObjectPipe;
 
 import com.browseengine.bobo.api.BoboBrowser;
 import com.browseengine.bobo.api.BoboIndexReader;
@@ -118,7 +118,8 @@ public final class KeywordSearch
 
     private static IndexReader reader = null;
     private static BoboIndexReader boboIndexReader = null;
-    private static ObjectPipe<Document> indexingQueue = new ObjectPipe<Document>(100000);
+    private static BatchingObjectPipe<Document> indexingQueue =
+        new BatchingObjectPipe<Document>(100000);
     private static LuceneIndexContainer index = null;
 
     private static Properties properties = null;
@@ -0,0 +1,222 @@
+package org.intermine.api.profile;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A cache of the profiles of logged in users, keyed by username. Looking up a profile takes no
+ * locks. When the cache grows beyond its maximum size the profiles that have been used least
+ * recently are evicted, until it is back to nine tenths of that size.
+ *
+ * An evicted profile is still held through a weak reference, so that as long as something else,
+ * such as a session, still holds it, looking it up returns the same Profile object rather than
+ * letting a second copy of the user's data be loaded. It is then held strongly again.
+ */
+class ProfileCache
+{
+    private final int maxSize;
+    private final ConcurrentMap<String, CacheEntry> entries
+        = new ConcurrentHashMap<String, CacheEntry>();
+    private final ConcurrentMap<String, EvictedProfile> evicted
+        = new ConcurrentHashMap<String, EvictedProfile>();
+    private final ReferenceQueue<Profile> collected = new ReferenceQueue<Profile>();
+    private final Object evictionLock = new Object();
+
+    /**
+     * Constructor.
+     *
+     * @param maxSize the number of profiles to keep
+     */
+    ProfileCache(int maxSize) {
+        this.maxSize = Math.max(maxSize, 1);
+    }
+
+    /**
+     * Returns the profile of a user, if it is in the cache.
+     *
+     * @param username the name of the user
+     * @return the Profile, or null
+     */
+    Profile get(String username) {
+        if (username == null) {
+            return null;
+        }
+        CacheEntry entry = entries.get(username);
+        if (entry == null) {
+            return revive(username);
+        }
+        entry.lastUsed = System.nanoTime();
+        return entry.profile;
+    }
+
+    /**
+     * Returns whether the profile of a user is in the cache.
+     *
+     * @param username the name of the user
+     * @return true if it is in the cache
+     */
+    boolean containsKey(String username) {
+        if (username == null) {
+            return false;
+        }
+        if (entries.containsKey(username)) {
+            return true;
+        }
+        EvictedProfile ref = evicted.get(username);
+        return ref != null && ref.get() != null;
+    }
+
+    /**
+     * Adds a profile to the cache.
+     *
+     * @param username the name of the user
+     * @param profile the Profile
+     */
+    void put(String username, Profile profile) {
+        entries.put(username, new CacheEntry(profile));
+        evicted.remove(username);
+        expungeCollected();
+        if (entries.size() > maxSize) {
+            evict();
+        }
+    }
+
+    /**
+     * Removes the profile of a user from the cache.
+     *
+     * @param username the name of the user
+     */
+    void remove(String username) {
+        if (username != null) {
+            entries.remove(username);
+            evicted.remove(username);
+        }
+    }
+
+    /**
+     * Returns the number of profiles held strongly in the cache, which doesn't include evicted
+     * profiles that are still in use elsewhere.
+     *
+     * @return an int
+     */
+    int size() {
+        return entries.size();
+    }
+
+    private void evict() {
+        synchronized (evictionLock) {
+            if (entries.size() <= maxSize) {
+                return;
+            }
+            // Take the times first, so that they cannot change while sorting
+            List<Snapshot> byAge = new ArrayList<Snapshot>();
+            for (Map.Entry<String, CacheEntry> entry : entries.entrySet()) {
+                byAge.add(new Snapshot(entry.getKey(), entry.getValue()));
+            }
+            Collections.sort(byAge);
+            int toRemove = byAge.size() - (maxSize * 9 / 10);
+            for (int i = 0; i < toRemove; i++) {
+                Snapshot snapshot = byAge.get(i);
+                EvictedProfile ref = new EvictedProfile(snapshot.username,
+                        snapshot.entry.profile, collected);
+                evicted.put(snapshot.username, ref);
+                // Leave alone a profile that has been put back or removed in the meantime
+                if (!entries.remove(snapshot.username, snapshot.entry)) {
+                    evicted.remove(snapshot.username, ref);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns an evicted profile that is still in use, holding it strongly again.
+     */
+    private Profile revive(String username) {
+        EvictedProfile ref = evicted.get(username);
+        if (ref == null) {
+            return null;
+        }
+        Profile profile = ref.get();
+        if (profile == null) {
+            evicted.remove(username, ref);
+            return null;
+        }
+        CacheEntry existing = entries.putIfAbsent(username, new CacheEntry(profile));
+        evicted.remove(username, ref);
+        if (existing != null) {
+            // Put back by another Thread in the meantime
+            return existing.profile;
+        }
+        if (entries.size() > maxSize) {
+            evict();
+        }
+        return profile;
+    }
+
+    /**
+     * Forgets the evicted profiles that have been garbage collected.
+     */
+    private void expungeCollected() {
+        Reference<? extends Profile> ref;
+        while ((ref = collected.poll()) != null) {
+            EvictedProfile evictedProfile = (EvictedProfile) ref;
+            evicted.remove(evictedProfile.username, evictedProfile);
+        }
+    }
+
+    private static class CacheEntry
+    {
+        private final Profile profile;
+        private volatile long lastUsed;
+
+        CacheEntry(Profile profile) {
+            this.profile = profile;
+            this.lastUsed = System.nanoTime();
+        }
+    }
+
+    private static class EvictedProfile extends WeakReference<Profile>
+    {
+        private final String username;
+
+        EvictedProfile(String username, Profile profile, ReferenceQueue<Profile> queue) {
+            super(profile, queue);
+            this.username = username;
+        }
+    }
+
+    private static class Snapshot implements Comparable<Snapshot>
+    {
+        private final String username;
+        private final CacheEntry entry;
+        private final long lastUsed;
+
+        Snapshot(String username, CacheEntry entry) {
+            this.username = username;
+            this.entry = entry;
+            this.lastUsed = entry.lastUsed;
+        }
+
+        @Override
+        public int compareTo(Snapshot other) {
+            return lastUsed < other.lastUsed ? -1 : (lastUsed == other.lastUsed ? 0 : 1);
+        }
+    }
+}
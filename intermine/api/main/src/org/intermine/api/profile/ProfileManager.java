@@ -10,8 +10,6 @@ package org.intermine.api.profile;
  *
  */
 
-import static java.util.Collections.singleton;
-
 import java.io.Reader;
 import java.io.StringReader;
 import java.security.Principal;
@@ -31,6 +29,8 @@ import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
@@ -70,12 +70,17 @@ import org.intermine.pathquery.PathQuery;
 import org.intermine.pathquery.PathQueryBinding;
 import org.intermine.template.TemplateQuery;
 import org.intermine.template.xml.TemplateQueryBinding;
-import org.intermine.util.CacheMap;
 import org.intermine.util.PasswordHasher;
 import org.intermine.util.PropertiesUtil;
 
 /**
- * Class to manage and persist user profile data such as saved bags
+ * Class to manage and persist user profile data such as saved bags.
+ *
+ * Profiles that have been loaded are kept in a cache of at most profileCache.maxSize profiles,
+ * which is read without locking, as are the tokens used to authenticate web service requests.
+ * A profile evicted from the cache while still in use, for example by a session, is found again
+ * rather than loaded a second time.
+ * Changes to a user's data, and the loading of their profile, hold a lock for that user only.
  * @author Mark Woodbridge
  * @author Daniela Butano
  * @author Alex Kalderimis
@@ -86,16 +91,23 @@ public class ProfileManager
 
     protected ObjectStore os;
     protected ObjectStoreWriter uosw;
-    protected CacheMap<String, Profile> profileCache = new CacheMap<String, Profile>();
+    /** Property for the number of profiles to keep in memory */
+    public static final String PROFILE_CACHE_SIZE_PROPERTY = "profileCache.maxSize";
+    private static final int DEFAULT_PROFILE_CACHE_SIZE = 1000;
+    private static final int USER_LOCKS = 64;
+
+    private final ProfileCache profileCache;
+    private final Object[] userLocks = new Object[USER_LOCKS];
+    private volatile Map<String, List<FieldDescriptor>> classKeys = null;
     private String superuser = null;
     /** Number determining format of queries in the database */
     protected int pathQueryFormat;
 
     private final Map<String, LimitedAccessToken> limitedAccessTokens
-        = new HashMap<String, LimitedAccessToken>();
+        = new ConcurrentHashMap<String, LimitedAccessToken>();
 
     private final Map<UUID, PermanentToken> permanentTokens
-        = new HashMap<UUID, PermanentToken>();
+        = new ConcurrentHashMap<UUID, PermanentToken>();
 
     /**
      * Construct a ProfileManager for the webapp
@@ -105,8 +117,23 @@ public class ProfileManager
     public ProfileManager(ObjectStore os, ObjectStoreWriter userProfileOS) {
         this.os = os;
         this.uosw = userProfileOS;
+        for (int i = 0; i < USER_LOCKS; i++) {
+            userLocks[i] = new Object();
+        }
+        Properties props = PropertiesUtil.getProperties();
+        int cacheSize = DEFAULT_PROFILE_CACHE_SIZE;
+        String cacheSizeValue = props.getProperty(PROFILE_CACHE_SIZE_PROPERTY);
+        if (cacheSizeValue != null) {
+            try {
+                cacheSize = Integer.parseInt(cacheSizeValue.trim());
+            } catch (NumberFormatException e) {
+                LOG.warn("Invalid value for " + PROFILE_CACHE_SIZE_PROPERTY + ": "
+                        + cacheSizeValue);
+            }
+        }
+        profileCache = new ProfileCache(cacheSize);
         //retrieve the super user
-        String superUserName = PropertiesUtil.getProperties().getProperty("superuser.account");
+        String superUserName = props.getProperty("superuser.account");
         UserProfile superuserProfile = new UserProfile();
         superuserProfile.setUsername(superUserName);
         Set<String> fieldNames = new HashSet<String>();
@@ -236,6 +263,15 @@ public class ProfileManager
         uosw.close();
     }
 
+    /**
+     * Returns the lock to hold while changing the data of, or loading the profile of, a user.
+     * Users share a fixed number of locks, so that they need not be cleaned up.
+     */
+    private Object getUserLock(String username) {
+        int hash = (username == null) ? 0 : username.hashCode();
+        return userLocks[(hash & Integer.MAX_VALUE) % USER_LOCKS];
+    }
+
     /**
      * Check whether a user already has a Profile
      * @param username the username
@@ -262,13 +298,15 @@ public class ProfileManager
      * @param username the username
      * @param password the password
      */
-    public synchronized void setPassword(String username, String password) {
-        UserProfile userProfile = getUserProfile(username);
-        userProfile.setPassword(PasswordHasher.hashPassword(password));
-        try {
-            uosw.store(userProfile);
-        } catch (ObjectStoreException e) {
-            throw new RuntimeException(e);
+    public void setPassword(String username, String password) {
+        synchronized (getUserLock(username)) {
+            UserProfile userProfile = getUserProfile(username);
+            userProfile.setPassword(PasswordHasher.hashPassword(password));
+            try {
+                uosw.store(userProfile);
+            } catch (ObjectStoreException e) {
+                throw new RuntimeException(e);
+            }
         }
     }
 
@@ -290,7 +328,7 @@ public class ProfileManager
      * @param classKeys the classkeys
      * @return the Profile, or null if one doesn't exist
      */
-    public synchronized Profile getProfile(String username, String password,
+    public Profile getProfile(String username, String password,
                         Map<String, List<FieldDescriptor>> classKeys) {
         if (hasProfile(username) && validPassword(username, password)) {
             return getProfile(username, classKeys);
@@ -303,7 +341,7 @@ public class ProfileManager
      * @param password the password
      * @return the Profile, or null if one doesn't exist
      */
-    public synchronized Profile getProfile(String username, String password) {
+    public Profile getProfile(String username, String password) {
         if (hasProfile(username)) {
             if (getUserProfile(username).getLocalAccount()) {
                 if (validPassword(username, password)) {
@@ -321,9 +359,12 @@ public class ProfileManager
      * @param username the username
      * @return the Profile, or null if one doesn't exist
      */
-    public synchronized Profile getProfile(String username) {
-        Map<String, List<FieldDescriptor>> classKeys = getClassKeys(os.getModel());
-        return getProfile(username, classKeys);
+    public Profile getProfile(String username) {
+        Profile profile = profileCache.get(username);
+        if (profile != null) {
+            return profile;
+        }
+        return getProfile(username, getClassKeys(os.getModel()));
     }
 
     /**
@@ -332,23 +373,29 @@ public class ProfileManager
      * @return user's profile
      */
     public Profile getProfile(int id) {
-        Map<String, List<FieldDescriptor>> classKeys = getClassKeys(os.getModel());
         UserProfile up;
         try {
             up = (UserProfile) uosw.getObjectById(id, UserProfile.class);
         } catch (ObjectStoreException e) {
             throw new RuntimeException("Error retrieving profile", e);
         }
-        if (up != null && profileCache.containsKey(up.getUsername())) {
-            return profileCache.get(up.getUsername());
-        }
-        return wrapUserProfile(up, classKeys);
+        return wrapUserProfile(up, getClassKeys(os.getModel()));
     }
 
     /**
-     * Load keys that describe how objects should be uniquely identified
+     * Load keys that describe how objects should be uniquely identified. They are read once, and
+     * kept for the lifetime of this ProfileManager.
      */
     private Map<String, List<FieldDescriptor>> getClassKeys(Model model) {
+        Map<String, List<FieldDescriptor>> retval = classKeys;
+        if (retval == null) {
+            retval = readClassKeys(model);
+            classKeys = retval;
+        }
+        return retval;
+    }
+
+    private Map<String, List<FieldDescriptor>> readClassKeys(Model model) {
         Properties classKeyProps = new Properties();
         try {
             classKeyProps.load(getClass().getClassLoader()
@@ -394,15 +441,16 @@ public class ProfileManager
             }
 
             TagManager tagManager = getTagManager();
-            for (Tag tag : tagManager.getUserTags(userProfile.getUsername())) {
-                tagManager.deleteTag(tag);
-            }
+            List<Tag> deletedTags = tagManager.getUserTags(userProfile.getUsername());
+            tagManager.deleteTagsInTransaction(deletedTags);
             SharedBagManager sbm = SharedBagManager.getInstance(this);
             sbm.removeAllSharesInvolving(userId);
             sbm.removeAllInvitesBy(userId);
 
             uosw.delete(userProfile);
             uosw.commitTransaction();
+            // Only now that the tags are gone for good are they dropped from memory
+            tagManager.removeFromIndex(deletedTags);
         } catch (ObjectStoreException e) {
             if (uosw.isInTransaction()) {
                 uosw.abortTransaction();
@@ -422,7 +470,7 @@ public class ProfileManager
      * @param classKeys the classkeys
      * @return the Profile, or null if one doesn't exist
      */
-    public synchronized Profile getProfile(String username, Map<String,
+    public Profile getProfile(String username, Map<String,
                         List<FieldDescriptor>> classKeys) {
         if (username == null) {
             return null;
@@ -456,11 +504,35 @@ public class ProfileManager
         return wrapUserProfile(userProfile, classKeys);
     }
 
-    private synchronized Profile wrapUserProfile(UserProfile userProfile,
+    private Profile wrapUserProfile(UserProfile userProfile,
             Map<String, List<FieldDescriptor>> classKeys) {
         if (userProfile == null) {
             return null;
         }
+        String username = userProfile.getUsername();
+        Profile profile = profileCache.get(username);
+        if (profile != null) {
+            return profile;
+        }
+        synchronized (getUserLock(username)) {
+            // Another request may have loaded the profile while we waited
+            profile = profileCache.get(username);
+            if (profile != null) {
+                return profile;
+            }
+            profile = loadProfile(userProfile, classKeys);
+            profileCache.put(username, profile);
+        }
+        //only after saving the profile in the cache,
+        //we can update the user repository with shared bags
+        //if we do in the constructor we could generate loops.
+        //This is done without holding the lock, as it may load the profiles of other users.
+        profile.updateUserRepositoryWithSharedBags();
+        return profile;
+    }
+
+    private Profile loadProfile(UserProfile userProfile,
+            Map<String, List<FieldDescriptor>> classKeys) {
         Map<String, InterMineBag> savedBags = new HashMap<String, InterMineBag>();
         Map<String, InvalidBag> savedInvalidBags = new HashMap<String, InvalidBag>();
         Query q = new Query();
@@ -476,7 +548,8 @@ public class ProfileManager
             // will cause this to fail. Allow three retries.
             ConcurrentModificationException lastError = null;
             boolean succeeded = false;
-            for (int attemptsRemaining = 3; attemptsRemaining >= 0; attemptsRemaining--) {
+            for (int attemptsRemaining = 3; attemptsRemaining >= 0 && !succeeded;
+                    attemptsRemaining--) {
                 try {
                     Results bags = uosw.execute(q, 1000, false, false, true);
                     for (Iterator<?> i = bags.iterator(); i.hasNext();) {
@@ -565,11 +638,6 @@ public class ProfileManager
                 userProfile.getPassword(),
                 savedQueries, bags, savedTemplates, userProfile.getApiKey(),
                 userProfile.getLocalAccount(), userProfile.getSuperuser());
-        profileCache.put(userProfile.getUsername(), profile);
-        //only after saving the profile in the cache,
-        //we can update the user repository with shared bags
-        //if we do in the constructor we could generate loops
-        profile.updateUserRepositoryWithSharedBags();
         return profile;
     }
 
@@ -587,24 +655,27 @@ public class ProfileManager
      * Synchronise a user's Profile with the backing store
      * @param profile the Profile
      */
-    public synchronized void saveProfile(Profile profile) {
+    public void saveProfile(Profile profile) {
         Integer userId = profile.getUserId();
-        try {
-            UserProfile userProfile = getUserProfile(userId);
+        synchronized (getUserLock(profile.getUsername())) {
+            try {
+                UserProfile userProfile = getUserProfile(userId);
 
-            if (userProfile == null) {
-                throw new RuntimeException("Cannot save this profile: The UserProfile is null");
-            }
+                if (userProfile == null) {
+                    throw new RuntimeException(
+                            "Cannot save this profile: The UserProfile is null");
+                }
 
-            userProfile.setApiKey(profile.getApiKey());
+                userProfile.setApiKey(profile.getApiKey());
 
-            syncSavedQueries(profile, userProfile);
-            syncTemplates(profile, userProfile);
+                syncSavedQueries(profile, userProfile);
+                syncTemplates(profile, userProfile);
 
-            uosw.store(userProfile);
-            profile.setUserId(userProfile.getId());
-        } catch (ObjectStoreException e) {
-            throw new RuntimeException(e);
+                uosw.store(userProfile);
+                profile.setUserId(userProfile.getId());
+            } catch (ObjectStoreException e) {
+                throw new RuntimeException(e);
+            }
         }
     }
 
@@ -666,7 +737,7 @@ public class ProfileManager
      * @param password the password
      * @return new profile
      */
-    public synchronized Profile createNewProfile(String username, String password) {
+    public Profile createNewProfile(String username, String password) {
         return createBasicLocalProfile(username, password, null);
     }
 
@@ -697,21 +768,23 @@ public class ProfileManager
      * @param apiKey The API key for this user.
      * @return The profile.
      */
-    public synchronized Profile createBasicLocalProfile(
+    public Profile createBasicLocalProfile(
             String username,
             String password,
             String apiKey) {
-        if (this.hasProfile(username)) {
-            throw new RuntimeException("Cannot create account: there already exists a user"
-                    + " with that name");
-        }
+        synchronized (getUserLock(username)) {
+            if (this.hasProfile(username)) {
+                throw new RuntimeException("Cannot create account: there already exists a user"
+                        + " with that name");
+            }
 
-        Profile p = new Profile(
-                this, username, null, password,
-                Profile.NO_QUERIES, Profile.NO_BAGS, Profile.NO_TEMPLATES,
-                apiKey, true, false);
-        createProfile(p);
-        return p;
+            Profile p = new Profile(
+                    this, username, null, password,
+                    Profile.NO_QUERIES, Profile.NO_BAGS, Profile.NO_TEMPLATES,
+                    apiKey, true, false);
+            createProfile(p);
+            return p;
+        }
     }
 
     /**
@@ -722,7 +795,7 @@ public class ProfileManager
      * @param apiKey The API key for this user.
      * @return The profile.
      */
-    public synchronized Profile createSuperUser(
+    public Profile createSuperUser(
             String username,
             String password,
             String apiKey) {
@@ -739,7 +812,7 @@ public class ProfileManager
      *
      * @param profile a Profile object
      */
-    public synchronized void createProfile(Profile profile) {
+    public void createProfile(Profile profile) {
         UserProfile userProfile = new UserProfile();
         userProfile.setUsername(profile.getUsername());
         userProfile.setLocalAccount(profile.isLocal());
@@ -749,16 +822,18 @@ public class ProfileManager
         }
         userProfile.setSuperuser(profile.isSuperUser);
 
-        try {
-            uosw.store(userProfile);
-            profile.setUserId(userProfile.getId());
-            for (InterMineBag bag : profile.getSavedBags().values()) {
-                bag.setProfileId(userProfile.getId());
+        synchronized (getUserLock(profile.getUsername())) {
+            try {
+                uosw.store(userProfile);
+                profile.setUserId(userProfile.getId());
+                for (InterMineBag bag : profile.getSavedBags().values()) {
+                    bag.setProfileId(userProfile.getId());
+                }
+            } catch (ObjectStoreException e) {
+                throw new RuntimeException(e);
             }
-        } catch (ObjectStoreException e) {
-            throw new RuntimeException(e);
+            saveProfile(profile);
         }
-        saveProfile(profile);
     }
 
     /**
@@ -766,7 +841,7 @@ public class ProfileManager
      * @param profile The profile to generate the new API key for.
      * @return A new API access key
      */
-    public synchronized String generateApiKey(Profile profile) {
+    public String generateApiKey(Profile profile) {
         String newApiKey = TextUtil.generateRandomUniqueString();
         profile.setApiKey(newApiKey);
         return newApiKey;
@@ -777,7 +852,7 @@ public class ProfileManager
      * @param profile the user profile
      * @return the generated key
      */
-    public synchronized String generateSingleUseKey(Profile profile) {
+    public String generateSingleUseKey(Profile profile) {
         String key = TextUtil.generateRandomUniqueString();
         LimitedAccessToken token = new SingleAccessToken(profile);
         limitedAccessTokens.put(key, token);
@@ -789,7 +864,7 @@ public class ProfileManager
      * @param profile the profile which token is valid
      * @return the token
      */
-    public synchronized String generate24hrKey(Profile profile) {
+    public String generate24hrKey(Profile profile) {
         String key = TextUtil.generateRandomUniqueString();
         LimitedAccessToken token = new DayToken(profile);
         limitedAccessTokens.put(key, token);
@@ -805,15 +880,10 @@ public class ProfileManager
         if (profile == null) {
             throw new NullPointerException("profile should not be null.");
         }
-        synchronized (limitedAccessTokens) {
-            Set<String> tokens = limitedAccessTokens.keySet();
-            Iterator<String> itr = tokens.iterator();
-            while (itr.hasNext()) {
-                String key = itr.next();
-                LimitedAccessToken token = limitedAccessTokens.get(key);
-                if (profile.equals(token.getProfile())) {
-                    itr.remove();
-                }
+        Iterator<LimitedAccessToken> itr = limitedAccessTokens.values().iterator();
+        while (itr.hasNext()) {
+            if (profile.equals(itr.next().getProfile())) {
+                itr.remove();
             }
         }
     }
@@ -823,10 +893,10 @@ public class ProfileManager
      * @param token the token to verify
      * @return true if is suitable for using in the future.
      */
-    public synchronized boolean tokenHasMoreUses(String token) {
+    public boolean tokenHasMoreUses(String token) {
         if (token != null) {
-            if (limitedAccessTokens.containsKey(token)) {
-                LimitedAccessToken lat = limitedAccessTokens.get(token);
+            LimitedAccessToken lat = limitedAccessTokens.get(token);
+            if (lat != null) {
                 if (lat.isValid()) {
                     return lat.hasMoreUses();
                 } else {
@@ -881,20 +951,22 @@ public class ProfileManager
      *
      * @param profile a Profile object
      */
-    public synchronized void createProfileWithoutBags(Profile profile) {
+    public void createProfileWithoutBags(Profile profile) {
         UserProfile userProfile = new UserProfile();
         userProfile.setUsername(profile.getUsername());
         if (profile.getPassword() != null) {
             userProfile.setPassword(PasswordHasher.hashPassword(profile.getPassword()));
         }
         userProfile.setSuperuser(profile.isSuperUser);
-        try {
-            uosw.store(userProfile);
-            profile.setUserId(userProfile.getId());
-        } catch (ObjectStoreException e) {
-            throw new RuntimeException(e);
+        synchronized (getUserLock(profile.getUsername())) {
+            try {
+                uosw.store(userProfile);
+                profile.setUserId(userProfile.getId());
+            } catch (ObjectStoreException e) {
+                throw new RuntimeException(e);
+            }
+            saveProfile(profile);
         }
-        saveProfile(profile);
     }
 
     /**
@@ -902,7 +974,7 @@ public class ProfileManager
      * @param username the username
      * @return the relevant UserProfile
      */
-    public synchronized UserProfile getUserProfile(String username) {
+    public UserProfile getUserProfile(String username) {
         UserProfile profile = new UserProfile();
         profile.setUsername(username);
         Set<String> fieldNames = new HashSet<String>();
@@ -921,7 +993,7 @@ public class ProfileManager
      * @param userId the id of the user
      * @return the relevant UserProfile
      */
-    public synchronized UserProfile getUserProfile(Integer userId) {
+    public UserProfile getUserProfile(Integer userId) {
         if (userId == null) {
             return null;
         }
@@ -937,7 +1009,7 @@ public class ProfileManager
      *
      * @return the usernames
      */
-    public synchronized List<String> getProfileUserNames() {
+    public List<String> getProfileUserNames() {
         Query q = new Query();
         QueryClass qcUserProfile = new QueryClass(UserProfile.class);
         QueryField qfUserName = new QueryField(qcUserProfile, "username");
@@ -962,7 +1034,7 @@ public class ProfileManager
      * @param profileId the id of the profile.
      * @return the name of the user, or null.
      */
-    public synchronized String getProfileUserName(int profileId) {
+    public String getProfileUserName(int profileId) {
         try {
             UserProfile profile = (UserProfile) uosw.getObjectById(profileId, UserProfile.class);
             return profile.getUsername();
@@ -994,21 +1066,7 @@ public class ProfileManager
      * @throws ObjectStoreException If we have trouble accessing the data-store.
      */
     public Collection<Profile> getAllSuperUsers() throws ObjectStoreException {
-        Set<Profile> superUsers = new HashSet<Profile>();
-        for (String name: getAllSuperNames()) {
-            superUsers.add(getProfile(name));
-        }
-        return superUsers;
-    }
-
-    private Iterable<String> getAllSuperNames() throws ObjectStoreException {
-        Set<String> names = new HashSet<String>();
-        UserProfile example = new UserProfile();
-        example.setSuperuser(true);
-        for (UserProfile up: uosw.getObjectsByExample(example, singleton("superuser"))) {
-            names.add(up.getUsername());
-        }
-        return names;
+        return new HashSet<Profile>(getSuperUsersProfile());
     }
 
     /**
@@ -1026,7 +1084,7 @@ public class ProfileManager
     }
 
     private final Map<String, PasswordChangeToken> passwordChangeTokens
-        = new HashMap<String, PasswordChangeToken>();
+        = new ConcurrentHashMap<String, PasswordChangeToken>();
 
     /**
      * Creates a password change token assigned to the given username that will expire after a day.
@@ -1035,7 +1093,7 @@ public class ProfileManager
      * @return a String containing the token
      * @throws IllegalArgumentException if the username does not match a profile
      */
-    public synchronized String createPasswordChangeToken(String username) {
+    public String createPasswordChangeToken(String username) {
         if (hasProfile(username)) {
             Date expiry = new Date(System.currentTimeMillis() + 24 * 60 * 60 * 1000);
             String token = TextUtil.generateRandomUniqueString();
@@ -1053,8 +1111,8 @@ public class ProfileManager
      * @return the username associated with the token
      * @throws IllegalArgumentException if the token is invalid
      */
-    public synchronized String getUsernameForToken(String token) {
-        PasswordChangeToken retval = passwordChangeTokens.get(token);
+    public String getUsernameForToken(String token) {
+        PasswordChangeToken retval = (token == null) ? null : passwordChangeTokens.get(token);
         if (retval != null) {
             if (retval.isValid()) {
                 return retval.getUsername();
@@ -1074,12 +1132,12 @@ public class ProfileManager
      * @return the username hat has the new password
      * @throws IllegalArgumentException if the token is invalid
      */
-    public synchronized String changePasswordWithToken(String token, String password) {
-        PasswordChangeToken pct = passwordChangeTokens.get(token);
+    public String changePasswordWithToken(String token, String password) {
+        PasswordChangeToken pct = (token == null) ? null : passwordChangeTokens.remove(token);
         if (pct != null) {
             if (pct.isValid()) {
+                // The token has been removed, so it cannot be used twice
                 setPassword(pct.getUsername(), password);
-                passwordChangeTokens.remove(token);
                 return pct.getUsername();
             }
         }
@@ -1145,8 +1203,12 @@ public class ProfileManager
             return isValid();
         }
 
-        public void use() {
-            // No op stub.
+        /**
+         * Record a use of this token. The default implementation just checks it is valid.
+         * @return Whether the token could be used.
+         */
+        public boolean use() {
+            return isValid();
         }
     }
 
@@ -1160,7 +1222,7 @@ public class ProfileManager
     private static class SingleAccessToken extends LimitedAccessToken
     {
         private final int maxUses = 1;
-        private int uses = 0;
+        private final AtomicInteger uses = new AtomicInteger();
 
         public SingleAccessToken(Profile profile) {
             super(profile);
@@ -1173,12 +1235,13 @@ public class ProfileManager
 
         @Override
         public boolean isValid() {
-            return uses < maxUses;
+            return uses.get() < maxUses;
         }
 
         @Override
-        public void use() {
-            uses++;
+        public boolean use() {
+            // Two requests with the same token cannot both succeed
+            return uses.incrementAndGet() <= maxUses;
         }
     }
 
@@ -1351,13 +1414,13 @@ public class ProfileManager
      */
     public ApiPermission getPermission(String token, Map<String, List<FieldDescriptor>> classKeys) {
         ApiPermission permission;
-        if (limitedAccessTokens.containsKey(token)) {
-            LimitedAccessToken t = limitedAccessTokens.get(token);
-            if (!t.isValid()) {
+        LimitedAccessToken t = (token == null) ? null : limitedAccessTokens.get(token);
+        if (t != null) {
+            if (!t.use()) {
+                limitedAccessTokens.remove(token);
                 throw new AuthenticationException("This token (" + token + ")is invalid.");
             }
             Profile p = t.getProfile();
-            t.use();
             if (!t.isValid()) {
                 limitedAccessTokens.remove(token);
             }
@@ -1528,12 +1591,32 @@ public class ProfileManager
      * @return the profile list
      */
     public List<Profile> getSuperUsersProfile() {
-        List<Profile> superusersProfile = new ArrayList<Profile>();
-        List<String> superusers = getSuperUsers();
-        for (String su : superusers) {
-            superusersProfile.add(getProfile(su));
+        // Fetch all the user profiles in one query, rather than one query per user
+        Query q = new Query();
+        QueryClass qc = new QueryClass(UserProfile.class);
+        q.addToSelect(qc);
+        q.addFrom(qc);
+        q.setConstraint(new SimpleConstraint(new QueryField(qc, "superuser"),
+                    ConstraintOp.EQUALS, QueryValue.TRUE));
+
+        ConcurrentModificationException lastError = null;
+        for (int attemptsRemaining = 3; attemptsRemaining >= 0; attemptsRemaining--) {
+            List<UserProfile> userProfiles = new ArrayList<UserProfile>();
+            try {
+                for (Object o: uosw.executeSingleton(q)) {
+                    userProfiles.add((UserProfile) o);
+                }
+            } catch (ConcurrentModificationException e) {
+                lastError = e;
+                continue;
+            }
+            List<Profile> superusersProfile = new ArrayList<Profile>();
+            for (UserProfile up : userProfiles) {
+                superusersProfile.add(wrapUserProfile(up, getClassKeys(os.getModel())));
+            }
+            return superusersProfile;
         }
-        return superusersProfile;
+        throw lastError;
     }
 
     /**
@@ -1572,7 +1655,7 @@ public class ProfileManager
 
     private PreferencesManager preferencesManager = null;
 
-    private PreferencesManager getPreferencesManager() {
+    private synchronized PreferencesManager getPreferencesManager() {
         if (preferencesManager == null) {
             preferencesManager = new PreferencesManager(uosw);
         }
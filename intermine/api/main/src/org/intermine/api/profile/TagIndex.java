@@ -0,0 +1,215 @@
+package org.intermine.api.profile;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.collections.keyvalue.MultiKey;
+import org.intermine.model.userprofile.Tag;
+
+/**
+ * All the tags in the userprofile database, held in memory and indexed by the tagged object,
+ * by tag name, by user and by type, so that TagManager can answer lookups without a query.
+ *
+ * This class is not thread-safe: TagManager guards it with a read-write lock.
+ */
+class TagIndex
+{
+    private static final Comparator<Entry> BY_NAME = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry a, Entry b) {
+            String aName = a.tag.getTagName();
+            String bName = b.tag.getTagName();
+            int retval;
+            if (aName == null || bName == null) {
+                retval = (aName == null ? 0 : 1) - (bName == null ? 0 : 1);
+            } else {
+                retval = aName.compareTo(bName);
+            }
+            if (retval == 0) {
+                retval = a.tag.getId().compareTo(b.tag.getId());
+            }
+            return retval;
+        }
+    };
+
+    private final Map<Integer, Entry> byId = new HashMap<Integer, Entry>();
+    private final Map<MultiKey, List<Entry>> byObjectAndUser
+        = new HashMap<MultiKey, List<Entry>>();
+    private final Map<MultiKey, List<Entry>> byObject = new HashMap<MultiKey, List<Entry>>();
+    private final Map<String, List<Entry>> byName = new HashMap<String, List<Entry>>();
+    private final Map<String, List<Entry>> byUser = new HashMap<String, List<Entry>>();
+    private final Map<String, List<Entry>> byType = new HashMap<String, List<Entry>>();
+
+    /**
+     * Adds a tag to the index.
+     *
+     * @param tag the tag, which must have an ID
+     * @param userName the name of the user the tag belongs to, or null if it has none
+     */
+    void add(Tag tag, String userName) {
+        // A tag that is already indexed is put back under its current values
+        remove(tag.getId());
+        Entry entry = new Entry(tag, userName);
+        byId.put(tag.getId(), entry);
+        addTo(byObjectAndUser, objectKey(tag.getType(), tag.getObjectIdentifier(), userName),
+                entry);
+        addTo(byObject, objectKey(tag.getType(), tag.getObjectIdentifier()), entry);
+        addTo(byName, tag.getTagName(), entry);
+        addTo(byUser, userName, entry);
+        addTo(byType, tag.getType(), entry);
+    }
+
+    /**
+     * Removes a tag from the index.
+     *
+     * @param id the ID of the tag
+     * @return true if the tag was in the index
+     */
+    boolean remove(Integer id) {
+        Entry entry = byId.remove(id);
+        if (entry == null) {
+            return false;
+        }
+        Tag tag = entry.tag;
+        removeFrom(byObjectAndUser, objectKey(tag.getType(), tag.getObjectIdentifier(),
+                    entry.userName), entry);
+        removeFrom(byObject, objectKey(tag.getType(), tag.getObjectIdentifier()), entry);
+        removeFrom(byName, tag.getTagName(), entry);
+        removeFrom(byUser, entry.userName, entry);
+        removeFrom(byType, tag.getType(), entry);
+        return true;
+    }
+
+    /**
+     * Returns a tag by its ID.
+     *
+     * @param id the ID
+     * @return the Tag, or null if it is not in the index
+     */
+    Tag get(Integer id) {
+        Entry entry = byId.get(id);
+        return (entry == null) ? null : entry.tag;
+    }
+
+    /**
+     * Returns whether there are any tags that belong to a user.
+     *
+     * @param userName the name of the user
+     * @return true if the user has tags
+     */
+    boolean hasUser(String userName) {
+        return byUser.containsKey(userName);
+    }
+
+    /**
+     * Returns the number of tags in the index.
+     *
+     * @return an int
+     */
+    int size() {
+        return byId.size();
+    }
+
+    /**
+     * Returns the tags that match all of the arguments, ordered by tag name. Null arguments match
+     * any value.
+     *
+     * @param tagName the tag name
+     * @param objectIdentifier the identifier of the tagged object
+     * @param type the tag type
+     * @param userName the name of the user the tags belong to
+     * @return a new List of Tags
+     */
+    List<Tag> find(String tagName, String objectIdentifier, String type, String userName) {
+        // Start from the smallest set of tags that we have an index for
+        Collection<Entry> candidates;
+        if (objectIdentifier != null && type != null) {
+            if (userName != null) {
+                candidates = byObjectAndUser.get(objectKey(type, objectIdentifier, userName));
+            } else {
+                candidates = byObject.get(objectKey(type, objectIdentifier));
+            }
+        } else if (tagName != null) {
+            candidates = byName.get(tagName);
+        } else if (userName != null) {
+            candidates = byUser.get(userName);
+        } else if (type != null) {
+            candidates = byType.get(type);
+        } else {
+            candidates = byId.values();
+        }
+        if (candidates == null) {
+            return new ArrayList<Tag>();
+        }
+        List<Entry> matches = new ArrayList<Entry>();
+        for (Entry entry : candidates) {
+            Tag tag = entry.tag;
+            if ((tagName == null || tagName.equals(tag.getTagName()))
+                    && (objectIdentifier == null
+                        || objectIdentifier.equals(tag.getObjectIdentifier()))
+                    && (type == null || type.equals(tag.getType()))
+                    && (userName == null || userName.equals(entry.userName))) {
+                matches.add(entry);
+            }
+        }
+        Collections.sort(matches, BY_NAME);
+        List<Tag> retval = new ArrayList<Tag>(matches.size());
+        for (Entry entry : matches) {
+            retval.add(entry.tag);
+        }
+        return retval;
+    }
+
+    private static MultiKey objectKey(String type, String objectIdentifier) {
+        return new MultiKey(type, objectIdentifier);
+    }
+
+    private static MultiKey objectKey(String type, String objectIdentifier, String userName) {
+        return new MultiKey(type, objectIdentifier, userName);
+    }
+
+    private static <K> void addTo(Map<K, List<Entry>> map, K key, Entry entry) {
+        List<Entry> entries = map.get(key);
+        if (entries == null) {
+            entries = new ArrayList<Entry>(2);
+            map.put(key, entries);
+        }
+        entries.add(entry);
+    }
+
+    private static <K> void removeFrom(Map<K, List<Entry>> map, K key, Entry entry) {
+        List<Entry> entries = map.get(key);
+        if (entries != null) {
+            entries.remove(entry);
+            if (entries.isEmpty()) {
+                map.remove(key);
+            }
+        }
+    }
+
+    private static final class Entry
+    {
+        private final Tag tag;
+        private final String userName;
+
+        Entry(Tag tag, String userName) {
+            this.tag = tag;
+            this.userName = userName;
+        }
+    }
+}
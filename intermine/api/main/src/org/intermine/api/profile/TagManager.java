@@ -13,16 +13,18 @@ package org.intermine.api.profile;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import org.apache.commons.collections.keyvalue.MultiKey;
 import org.apache.log4j.Logger;
 import org.intermine.api.search.TaggingEvent;
 import org.intermine.api.search.TaggingEvent.TagChange;
@@ -32,27 +34,28 @@ import org.intermine.api.tag.TagTypes;
 import org.intermine.metadata.ClassDescriptor;
 import org.intermine.metadata.CollectionDescriptor;
 import org.intermine.metadata.ReferenceDescriptor;
+import org.intermine.model.InterMineObject;
 import org.intermine.model.userprofile.Tag;
 import org.intermine.model.userprofile.UserProfile;
 import org.intermine.objectstore.ObjectStore;
 import org.intermine.objectstore.ObjectStoreException;
 import org.intermine.objectstore.ObjectStoreWriter;
-import org.intermine.metadata.ConstraintOp;
-import org.intermine.objectstore.query.ConstraintSet;
-import org.intermine.objectstore.query.ContainsConstraint;
 import org.intermine.objectstore.query.Query;
 import org.intermine.objectstore.query.QueryClass;
 import org.intermine.objectstore.query.QueryField;
-import org.intermine.objectstore.query.QueryObjectReference;
-import org.intermine.objectstore.query.QueryValue;
-import org.intermine.objectstore.query.SimpleConstraint;
-import org.intermine.objectstore.query.SingletonResults;
-import org.intermine.util.CacheMap;
+import org.intermine.objectstore.query.Results;
+import org.intermine.objectstore.query.ResultsRow;
 import org.intermine.util.DynamicUtil;
 
 /**
  * Manager class for tags. Implements retrieving, adding and deleting tags in user profile
  * database.
+ *
+ * All the tags are held in memory in a TagIndex, which is loaded in one go the first time it is
+ * needed, and lookups are answered from it without a query. Many lookups can run at once; adding
+ * or deleting a tag writes it to the database and then updates the index; tags deleted in a
+ * transaction are only dropped from the index once it is committed. Tags must therefore only be
+ * changed through this class while the webapp is running.
  * @author Jakub Kulaviak <jakub@flymine.org>
  * @author Alex Kalderimis
  * @author Daniela Butano
@@ -61,7 +64,10 @@ public class TagManager
 {
     private static final Logger LOG = Logger.getLogger(TagManager.class);
     protected ObjectStoreWriter osWriter;
-    private CacheMap<MultiKey, List<Tag>> tagCache = null;
+    private volatile TagIndex index = null;
+    private final ReadWriteLock indexLock = new ReentrantReadWriteLock();
+    private final AtomicLong indexHits = new AtomicLong();
+    private final AtomicLong indexMisses = new AtomicLong();
 
     /** What we tell users when they give us an invalid tag name **/
     public static final String INVALID_NAME_MSG = "Invalid name. "
@@ -80,9 +86,55 @@ public class TagManager
      * Delete a tag object from the database.
      * @param tag Tag object
      */
-    public synchronized void deleteTag(Tag tag) {
+    public void deleteTag(Tag tag) {
+        deleteFromDatabase(tag);
+        removeFromIndex(Collections.singleton(tag));
+    }
+
+    /**
+     * Delete tag objects from the database, within the transaction that the caller has begun on
+     * the user profile ObjectStoreWriter. The tags are still returned by lookups until the
+     * caller has committed the transaction and passed them to removeFromIndex(), so that a
+     * transaction that is rolled back leaves the tags held in memory as they were.
+     *
+     * @param tags the Tag objects
+     * @throws IllegalStateException if the ObjectStoreWriter is not in a transaction
+     */
+    public void deleteTagsInTransaction(Collection<Tag> tags) {
+        try {
+            if (!osWriter.isInTransaction()) {
+                throw new IllegalStateException("Not in a transaction");
+            }
+        } catch (ObjectStoreException e) {
+            throw new RuntimeException("Delete tag failed", e);
+        }
+        for (Tag tag : tags) {
+            deleteFromDatabase(tag);
+        }
+    }
+
+    /**
+     * Removes tags that have been deleted from the database from the tags held in memory. Call
+     * this once the transaction in which deleteTagsInTransaction() deleted them is committed.
+     *
+     * @param tags the Tag objects
+     */
+    public void removeFromIndex(Collection<Tag> tags) {
+        indexLock.writeLock().lock();
+        try {
+            // If the tags are not loaded yet, they will be read without these
+            if (index != null) {
+                for (Tag tag : tags) {
+                    index.remove(tag.getId());
+                }
+            }
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+
+    private void deleteFromDatabase(Tag tag) {
         try {
-            tagCache = null;
             osWriter.delete(tag);
         } catch (ObjectStoreException e) {
             LOG.error("delete tag failed" + e);
@@ -331,7 +383,19 @@ public class TagManager
      * @param id intermine object id
      * @return Tag
      */
-    public synchronized Tag getTagById(int id) {
+    public Tag getTagById(int id) {
+        TagIndex tagIndex = getIndex();
+        indexLock.readLock().lock();
+        try {
+            Tag tag = tagIndex.get(new Integer(id));
+            if (tag != null) {
+                indexHits.incrementAndGet();
+                return tag;
+            }
+        } finally {
+            indexLock.readLock().unlock();
+        }
+        indexMisses.incrementAndGet();
         try {
             return (Tag) osWriter.getObjectById(new Integer(id), Tag.class);
         } catch (ObjectStoreException e) {
@@ -339,22 +403,6 @@ public class TagManager
         }
     }
 
-    /**
-     * Helper method for getTags.
-     * @param cs The constraint set being built up.
-     * @param qc The class the constrain on.
-     * @param fieldName The field to constrain.
-     * @param value The value to constrain to.
-     */
-    private static void constrain(ConstraintSet cs, QueryClass qc, String fieldName, String value) {
-        if (value != null) {
-            QueryValue qv = new QueryValue(value);
-            QueryField qf = new QueryField(qc, fieldName);
-            SimpleConstraint c = new SimpleConstraint(qf, ConstraintOp.EQUALS, qv);
-            cs.addConstraint(c);
-        }
-    }
-
     /**
      * Return all the tags with the given tag name, optionally filtered by tag-type.
      * @param tagName The name of the tag. Must not be null.
@@ -392,94 +440,113 @@ public class TagManager
      * @return the matching Tags
      * @deprecated There are typed methods that are more suitable. Use them instead.
      */
-    @SuppressWarnings({ "unchecked", "rawtypes" })
     @Deprecated
-    public synchronized List<Tag> getTags(String tagName, String taggedObjectId, String type,
+    public List<Tag> getTags(String tagName, String taggedObjectId, String type,
                         String userName) {
         if (type != null) {
             checkTagType(type);
         }
 
-        Map<MultiKey, List<Tag>> cache = getTagCache();
-        MultiKey key = makeKey(tagName, taggedObjectId, type, userName);
-
-        if (cache.containsKey(key)) {
-            return cache.get(key);
+        TagIndex tagIndex = getIndex();
+        List<Tag> tags;
+        boolean knownUser;
+        indexLock.readLock().lock();
+        try {
+            tags = tagIndex.find(tagName, taggedObjectId, type, userName);
+            knownUser = userName == null || tagIndex.hasUser(userName);
+        } finally {
+            indexLock.readLock().unlock();
         }
-
-        // if there isn't a cache for user, than check if user exists
-        // for performance reasons don't put this check at the method beginning
-        if (userName != null) {
+        if (knownUser) {
+            indexHits.incrementAndGet();
+        } else {
+            // A user with no tags may not exist at all, which only the database can tell us
+            indexMisses.incrementAndGet();
             checkUserExists(userName);
         }
-
-        Query q = new Query();
-        QueryClass qc = new QueryClass(Tag.class);
-
-        q.addFrom(qc);
-        q.addToSelect(qc);
-
-        QueryField orderByField = new QueryField(qc, "tagName");
-
-        q.addToOrderBy(orderByField);
-
-        ConstraintSet cs = new ConstraintSet(ConstraintOp.AND);
-
-        constrain(cs, qc, "tagName", tagName);
-        constrain(cs, qc, "objectIdentifier", taggedObjectId);
-        constrain(cs, qc, "type", type);
-
-        if (userName != null) {
-            QueryClass userProfileQC = new QueryClass(UserProfile.class);
-            q.addFrom(userProfileQC);
-            QueryValue qv = new QueryValue(userName);
-            QueryField qf = new QueryField(userProfileQC, "username");
-            SimpleConstraint c = new SimpleConstraint(qf, ConstraintOp.EQUALS, qv);
-            cs.addConstraint(c);
-
-            QueryObjectReference qr = new QueryObjectReference(qc, "userProfile");
-
-            ContainsConstraint cc =
-                new ContainsConstraint(qr, ConstraintOp.CONTAINS, userProfileQC);
-            cs.addConstraint(cc);
-        }
-        q.setConstraint(cs);
-
-        ObjectStore userprofileOS = osWriter.getObjectStore();
-        SingletonResults results = userprofileOS.executeSingleton(q);
-        addToCache(cache, key, ((List) results));
-        return ((List) results);
+        return tags;
     }
 
-    private static MultiKey makeKey(String tagName, String objectIdentifier, String type,
-                             String userName) {
-        return new MultiKey(tagName, objectIdentifier, type, userName);
+    /**
+     * Loads all the tags into memory, if they are not there already. Other methods do this when
+     * it is first needed, so calling this is only necessary to avoid making the first request
+     * wait.
+     */
+    public void loadIndex() {
+        getIndex();
     }
 
-    private static void addToCache(Map<MultiKey, List<Tag>> cache, MultiKey key,
-            List<Tag> results) {
-
-        cache.put(key, new ArrayList<Tag>(results));
+    /**
+     * Returns the number of lookups that were answered from the tags held in memory.
+     *
+     * @return a long
+     */
+    public long getIndexHits() {
+        return indexHits.get();
+    }
 
-        Iterator<?> resIter = results.iterator();
+    /**
+     * Returns the number of lookups that needed a query to the database.
+     *
+     * @return a long
+     */
+    public long getIndexMisses() {
+        return indexMisses.get();
+    }
+
+    private TagIndex getIndex() {
+        TagIndex retval = index;
+        if (retval == null) {
+            indexLock.writeLock().lock();
+            try {
+                retval = index;
+                if (retval == null) {
+                    retval = readIndex();
+                    index = retval;
+                }
+            } finally {
+                indexLock.writeLock().unlock();
+            }
+        }
+        return retval;
+    }
 
-        while (resIter.hasNext()) {
-            Tag tag = (Tag) resIter.next();
+    /**
+     * Reads all the tags from the database, with two queries: one for the tags and one for the
+     * names of the users they belong to.
+     */
+    private TagIndex readIndex() {
+        long start = System.currentTimeMillis();
+        ObjectStore userprofileOS = osWriter.getObjectStore();
 
-            Object[] tagKeys = new Object[4];
-            tagKeys[0] = tag.getTagName();
-            tagKeys[1] = tag.getObjectIdentifier();
-            tagKeys[2] = tag.getType();
-            tagKeys[3] = tag.getUserProfile().getUsername();
+        Query userQuery = new Query();
+        QueryClass userProfileQC = new QueryClass(UserProfile.class);
+        userQuery.addFrom(userProfileQC);
+        userQuery.addToSelect(new QueryField(userProfileQC, "id"));
+        userQuery.addToSelect(new QueryField(userProfileQC, "username"));
+        Map<Integer, String> userNames = new HashMap<Integer, String>();
+        Results users = userprofileOS.execute(userQuery, 10000, true, false, false);
+        for (Object o : users) {
+            ResultsRow<?> row = (ResultsRow<?>) o;
+            userNames.put((Integer) row.get(0), (String) row.get(1));
         }
 
-    }
-
-    private Map<MultiKey, List<Tag>> getTagCache() {
-        if (tagCache == null) {
-            tagCache  = new CacheMap<MultiKey, List<Tag>>();
+        Query tagQuery = new Query();
+        QueryClass qc = new QueryClass(Tag.class);
+        tagQuery.addFrom(qc);
+        tagQuery.addToSelect(qc);
+        TagIndex retval = new TagIndex();
+        Results tags = userprofileOS.execute(tagQuery, 10000, true, false, false);
+        for (Object o : tags) {
+            Tag tag = (Tag) ((ResultsRow<?>) o).get(0);
+            // Read the ID of the user from the reference, rather than loading the user
+            InterMineObject ref = tag.proxGetUserProfile();
+            String userName = (ref == null) ? null : userNames.get(ref.getId());
+            retval.add(tag, userName);
         }
-        return tagCache;
+        LOG.info("Loaded " + retval.size() + " tags in "
+                + (System.currentTimeMillis() - start) + "ms");
+        return retval;
     }
 
     /**
@@ -499,7 +566,7 @@ public class TagManager
      * @throws TagNamePermissionException If the user does not have the required
      *         permissions to add this tag.
      */
-    public synchronized Tag addTag(
+    public Tag addTag(
             String tagName,
             String objectIdentifier,
             String type,
@@ -547,7 +614,7 @@ public class TagManager
      * @throws TagNameException If the name is invalid (contains illegal characters)
      * @throws TagNamePermissionException If this tag name is restricted.
      */
-    public synchronized Tag addTag(String tagName, WebSearchable ws, Profile profile)
+    public Tag addTag(String tagName, WebSearchable ws, Profile profile)
         throws TagNameException, TagNamePermissionException {
         Tag ret = addTag(tagName, ws.getName(), ws.getTagType(), profile);
         ws.fireEvent(new TaggingEvent(ws, tagName, TagChange.ADDED));
@@ -563,7 +630,7 @@ public class TagManager
      * @throws TagNameException If the name is invalid (contains illegal characters)
      * @throws TagNamePermissionException If this tag name is restricted.
      */
-    public synchronized Tag addTag(String tagName, ClassDescriptor cld, Profile profile)
+    public Tag addTag(String tagName, ClassDescriptor cld, Profile profile)
         throws TagNameException, TagNamePermissionException {
         return addTag(tagName, cld.getName(), TagTypes.CLASS, profile);
     }
@@ -577,7 +644,7 @@ public class TagManager
      * @throws TagNameException If the name is invalid (contains illegal characters)
      * @throws TagNamePermissionException If this tag name is restricted.
      */
-    public synchronized Tag addTag(String tagName, ReferenceDescriptor ref, Profile profile)
+    public Tag addTag(String tagName, ReferenceDescriptor ref, Profile profile)
         throws TagNameException, TagNamePermissionException {
         String objIdentifier = ref.getClassDescriptor().getSimpleName() + "." + ref.getName();
         if (ref instanceof CollectionDescriptor) {
@@ -600,7 +667,7 @@ public class TagManager
      * @param username The username of the user to associate this tag with.
      * @return the new Tag
      */
-    synchronized Tag addTag(String tagName, String objectIdentifier,
+    Tag addTag(String tagName, String objectIdentifier,
             String type, String username) {
 
         checkUserExists(username);
@@ -623,15 +690,19 @@ public class TagManager
         tag.setType(type);
         tag.setUserProfile(userProfile);
 
-        CacheMap<MultiKey, List<Tag>> cacheWas = tagCache;
         try {
-            tagCache = null;
             osWriter.store(tag);
-            return tag;
         } catch (ObjectStoreException e) {
-            tagCache = cacheWas;
             throw new RuntimeException("cannot set tag", e);
         }
+        TagIndex tagIndex = getIndex();
+        indexLock.writeLock().lock();
+        try {
+            tagIndex.add(tag, username);
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+        return tag;
     }
 
     private static void checkTagType(String type) {
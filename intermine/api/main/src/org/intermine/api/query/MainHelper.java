@@ -44,6 +44,7 @@ import org.intermine.metadata.FieldDescriptor;
 import org.intermine.metadata.Model;
 import org.intermine.metadata.TypeUtil;
 import org.intermine.metadata.Util;
+import org.intermine.model.InterMineObject;
 import org.intermine.objectstore.ObjectStore;
 import org.intermine.objectstore.ObjectStoreException;
 import org.intermine.objectstore.query.BagConstraint;
@@ -1111,6 +1112,48 @@ public final class MainHelper
         return logic;
     }
 
+    /**
+     * Changes the SELECT list of a Query made by makeQuery() so that it fetches the values in the
+     * view of the PathQuery rather than the objects that hold them, so that no objects have to be
+     * built to read a few of their fields. The id of each object is also selected, so that the
+     * query still returns a row for each combination of objects, even if the values are the same.
+     * This can only be done if the Query selects nothing but objects, which is when the PathQuery
+     * has no outer joins.
+     *
+     * @param q a Query made by makeQuery()
+     * @param pathQuery the PathQuery the Query was made from
+     * @param pathToQueryNode the Map populated by makeQuery()
+     * @return true if the SELECT list was changed, false if the Query was left as it was
+     */
+    public static boolean selectValuesOnly(Query q, PathQuery pathQuery,
+            Map<String, QuerySelectable> pathToQueryNode) {
+        List<QuerySelectable> select = new ArrayList<QuerySelectable>();
+        for (String view : pathQuery.getView()) {
+            QuerySelectable qs = pathToQueryNode.get(view);
+            if (!(qs instanceof QueryField)) {
+                return false;
+            }
+            if (!select.contains(qs)) {
+                select.add(qs);
+            }
+        }
+        for (QuerySelectable qs : q.getSelect()) {
+            if (!(qs instanceof QueryClass)
+                    || !InterMineObject.class.isAssignableFrom(qs.getType())) {
+                return false;
+            }
+            QueryField id = new QueryField((QueryClass) qs, "id");
+            if (!select.contains(id)) {
+                select.add(id);
+            }
+        }
+        q.clearSelect();
+        for (QuerySelectable qs : select) {
+            q.addToSelect(qs);
+        }
+        return true;
+    }
+
     /**
      * Generate a query from a PathQuery, to summarise a particular column of results.
      *
@@ -1206,6 +1249,77 @@ public final class MainHelper
                 pathToQueryNode, occurancesOnly);
     }
 
+    /**
+     * Generate a query that returns the value of a column for every row of the results of a
+     * PathQuery, or for a sample of them, for the column to be summarised in one pass. When
+     * sampling, the rows whose objects have IDs adding up to a multiple of the sample rate are
+     * returned, so that whether a row is in the sample does not depend on the column's value.
+     *
+     * @param pathQuery the PathQuery
+     * @param summaryPath a String path of the column to summarise
+     * @param savedBags the current saved bags map
+     * @param bagQueryRunner a BagQueryRunner to execute bag queries
+     * @param sampleRate 1 for every row, or n for a sample of one row in n
+     * @return a query with the value of the column as its only column
+     * @throws ObjectStoreException if there is a problem creating the query
+     */
+    public static Query makeSummaryValuesQuery(
+            PathQuery pathQuery,
+            String summaryPath,
+            Map<String, InterMineBag> savedBags,
+            BagQueryRunner bagQueryRunner,
+            int sampleRate) throws ObjectStoreException {
+        Query occurrences = makeSummaryQuery(pathQuery, summaryPath, savedBags,
+                new HashMap<String, QuerySelectable>(), bagQueryRunner, true);
+        QueryField qf = (QueryField) occurrences.getSelect().get(0);
+        Query subQ = (Query) qf.getFromElement();
+        if (sampleRate > 1) {
+            // Sample on all the objects of a row rather than on the object holding the column, as
+            // many rows share that object when it is at the end of a many-to-one reference, and
+            // would be kept or dropped together. The IDs are reduced before they are added so
+            // that the sum cannot overflow.
+            QueryValue rate = new QueryValue(new Integer(sampleRate));
+            QueryEvaluable rowHash = null;
+            for (QuerySelectable qs : subQ.getSelect()) {
+                if (qs instanceof QueryClass) {
+                    QueryEvaluable idHash = new QueryExpression(new QueryField((QueryClass) qs,
+                                "id"), QueryExpression.MODULO, rate);
+                    rowHash = (rowHash == null) ? idHash
+                        : new QueryExpression(rowHash, QueryExpression.ADD, idHash);
+                }
+            }
+            QueryHelper.addAndConstraint(subQ, new SimpleConstraint(
+                        new QueryExpression(rowHash, QueryExpression.MODULO, rate),
+                        ConstraintOp.EQUALS, new QueryValue(new Integer(0))));
+        }
+        Query q = new Query();
+        q.addFrom(subQ);
+        q.addToSelect(qf);
+        q.setDistinct(false);
+        return q;
+    }
+
+    /**
+     * Returns whether the summary of a column is a histogram rather than a count of the
+     * occurrences of each value.
+     *
+     * @param valuesQuery a query made by makeSummaryValuesQuery
+     * @return true if the column is numeric and not configured to be summarised as occurrences
+     */
+    public static boolean isHistogramSummary(Query valuesQuery) {
+        QueryField qf = (QueryField) valuesQuery.getSelect().get(0);
+        List<QuerySelectable> innerSelect = ((Query) qf.getFromElement()).getSelect();
+        return isHistogramSummary(qf.getType(),
+                (QueryField) innerSelect.get(innerSelect.size() - 1));
+    }
+
+    private static boolean isHistogramSummary(Class<?> summaryType, QueryField origQf) {
+        String className = Util.getFriendlyName(((QueryClass) origQf.getFromElement())
+                .getType());
+        return isNumeric(summaryType)
+            && !SummaryConfig.summariseAsOccurrences(className + "." + origQf.getFieldName());
+    }
+
     private static Query recursiveMakeSummaryQuery(
             Map<String, QuerySelectable>
             origPathToQueryNode,
@@ -1350,12 +1464,8 @@ public final class MainHelper
         Class<?> summaryType = qf.getType();
 
         QueryField origQf = (QueryField) origPathToQueryNode.get(summaryPath);
-        String fieldName = origQf.getFieldName();
-        String className = Util.getFriendlyName(((QueryClass) origQf.getFromElement())
-                .getType());
 
-        if (!occurancesOnly && isNumeric(summaryType)
-                && (!SummaryConfig.summariseAsOccurrences(className + "." + fieldName))) {
+        if (!occurancesOnly && isHistogramSummary(summaryType, origQf)) {
             return getHistogram(subQ, qf, pathToQueryNode);
         } else if ((summaryType == String.class) || (summaryType == Boolean.class)
                 || (summaryType == Long.class) || (summaryType == Integer.class)
@@ -1691,6 +1801,26 @@ public final class MainHelper
             return Integer.valueOf(
                     PropertiesUtil.getProperties().getProperty("querySummary.no-of-bins", "20"));
         }
+
+        /**
+         * Returns the estimated number of rows above which a column is summarised approximately
+         * rather than with an exact summary query.
+         * @return The number of rows.
+         */
+        public static int getApproximateThreshold() {
+            return Integer.parseInt(PropertiesUtil.getProperties()
+                    .getProperty("querySummary.approximateThreshold", "1000000"));
+        }
+
+        /**
+         * Returns the number of rows an approximate summary reads at most, above which the column
+         * is sampled.
+         * @return The number of rows.
+         */
+        public static int getMaxScanRows() {
+            return Integer.parseInt(PropertiesUtil.getProperties()
+                    .getProperty("querySummary.maxScanRows", "5000000"));
+        }
     }
 
     /**
@@ -10,9 +10,11 @@ package org.intermine.api.query;
  *
  */
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -50,6 +52,7 @@ public class PathQueryExecutor extends QueryExecutor
     public static final int DEFAULT_BATCH_SIZE = 5000;
     private static final long MAX_WAIT_TIME = 2000;
     private int batchSize = DEFAULT_BATCH_SIZE;
+    private QueryResultCache resultCache = null;
 
     /**
      * Sets batch size.
@@ -60,6 +63,15 @@ public class PathQueryExecutor extends QueryExecutor
         this.batchSize = size;
     }
 
+    /**
+     * Sets the cache used to answer paged requests without re-running identical queries.
+     *
+     * @param resultCache the shared result cache, or null to run every query
+     */
+    public void setResultCache(QueryResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+
     /**
      * Constructor with necessary objects.
      *
@@ -117,6 +129,18 @@ public class PathQueryExecutor extends QueryExecutor
         Map<String, BagQueryResult> returnBagQueryResults = new HashMap<String, BagQueryResult>();
 
         Query q = makeQuery(pathQuery, returnBagQueryResults, pathToQueryNode);
+        String cacheKey = null;
+        Map<Object, Integer> sequence = null;
+        if (resultCache != null) {
+            cacheKey = QueryResultCache.makeKey(pathQuery, bagManager.getCurrentBags(profile));
+            List<List<ResultElement>> cached = resultCache.get(cacheKey, pathQuery, q, start,
+                    limit);
+            if (cached != null) {
+                Results results = os.execute(q, batchSize, true, true, false);
+                return new CachedResultIterator(pathQuery, q, results, pathToQueryNode, cached);
+            }
+            sequence = resultCache.getSequence(q);
+        }
         Results results = os.execute(q, batchSize, true, true, false);
         // Prime the results -- although lazy, ExportResults are always fetched to be
         // evaluated, and we want errors thrown here, not later when they are swallowed
@@ -127,6 +151,59 @@ public class PathQueryExecutor extends QueryExecutor
             // Ignore, it just means it's empty.
         }
 
+        if (cacheKey != null) {
+            return new CachingResultIterator(pathQuery, q, results, pathToQueryNode, start, limit,
+                    resultCache, cacheKey, sequence);
+        }
+        return new ResultIterator(pathQuery, q, results, pathToQueryNode, start, limit);
+    }
+
+    /**
+     * Executes a path query for which only the values in the view are wanted, as for a tabular
+     * export, and returns results as iterator over rows. Where the query has no outer joins, only
+     * the values are fetched from the database, and the ResultElements hold no objects, so their
+     * getObject(), getId() and getType() methods return null. Otherwise, this is the same as
+     * execute(PathQuery).
+     *
+     * @param pathQuery path query to be executed
+     * @return results
+     * @throws ObjectStoreException if something goes wrong with the database
+     */
+    public ExportResultsIterator executeValues(PathQuery pathQuery) throws ObjectStoreException {
+        Map<String, QuerySelectable> pathToQueryNode = new HashMap<String, QuerySelectable>();
+        Map<String, BagQueryResult> returnBagQueryResults = new HashMap<String, BagQueryResult>();
+
+        Query q = makeQuery(pathQuery, returnBagQueryResults, pathToQueryNode);
+        MainHelper.selectValuesOnly(q, pathQuery, pathToQueryNode);
+        Results results = os.execute(q, batchSize, true, true, false);
+        return new ExportResultsIterator(pathQuery, q, results, pathToQueryNode);
+    }
+
+    /**
+     * Executes a path query for which only the values in the view are wanted, and returns the
+     * results in the given range as iterator over rows. The result cache is not used, as it holds
+     * rows with objects in.
+     *
+     * @param pathQuery path query to be executed
+     * @param start index of first result which will be retrieved
+     * @param limit maximum number of results
+     * @return results
+     * @throws ObjectStoreException if fail to execute query
+     * @see #executeValues(PathQuery)
+     */
+    public ExportResultsIterator executeValues(PathQuery pathQuery, final int start,
+            final int limit) throws ObjectStoreException {
+        Map<String, QuerySelectable> pathToQueryNode = new HashMap<String, QuerySelectable>();
+        Map<String, BagQueryResult> returnBagQueryResults = new HashMap<String, BagQueryResult>();
+
+        Query q = makeQuery(pathQuery, returnBagQueryResults, pathToQueryNode);
+        MainHelper.selectValuesOnly(q, pathQuery, pathToQueryNode);
+        Results results = os.execute(q, batchSize, true, true, false);
+        try {
+            results.range(0, 0);
+        } catch (IndexOutOfBoundsException e) {
+            // Ignore, it just means it's empty.
+        }
         return new ResultIterator(pathQuery, q, results, pathToQueryNode, start, limit);
     }
 
@@ -294,3 +371,122 @@ class ResultIterator extends ExportResultsIterator
         return ret;
     }
 }
+
+/**
+ * Class adapting ResultIterator to remember the rows it produces, including the ones it throws
+ * away before the start index, and to store them in a QueryResultCache once iteration is over.
+ */
+class CachingResultIterator extends ResultIterator
+{
+    private final QueryResultCache cache;
+    private final String key;
+    private final Map<Object, Integer> sequence;
+    private final int end;
+    private List<List<ResultElement>> seen = new ArrayList<List<ResultElement>>();
+
+    /**
+     * Constructor.
+     *
+     * @param pathQuery a PathQuery to run.
+     * @param q The object-store query this path-query corresponds to.
+     * @param results the results object created when executing the query
+     * @param pathToQueryNode a map from path in pathQuery to QuerySelectable in the generated
+     * ObjectStore query
+     * @param start the first row of results to be returned
+     * @param limit the number of result rows to return
+     * @param cache the cache to store the rows in
+     * @param key the cache key of the path query
+     * @param sequence the database sequence data taken before the query was run
+     * @throws ObjectStoreException if something goes wrong executing the query
+     */
+    public CachingResultIterator(PathQuery pathQuery, Query q, Results results,
+            Map<String, QuerySelectable> pathToQueryNode, int start, int limit,
+            QueryResultCache cache, String key, Map<Object, Integer> sequence)
+        throws ObjectStoreException {
+        super(pathQuery, q, results, pathToQueryNode, start, limit);
+        this.cache = cache;
+        this.key = key;
+        this.sequence = sequence;
+        this.end = (int) Math.min((long) start + limit, Integer.MAX_VALUE);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasNext() {
+        boolean retval = super.hasNext();
+        if (!retval && seen != null) {
+            // Fewer rows than were asked for means that we have seen every row
+            cache.put(key, sequence, seen, seen.size() < end);
+            seen = null;
+        }
+        return retval;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<ResultElement> next() {
+        List<ResultElement> ret = super.next();
+        if (seen != null) {
+            seen.add(ret);
+            if (seen.size() > cache.getMaxEntryRows()) {
+                seen = null;
+            }
+        }
+        return ret;
+    }
+}
+
+/**
+ * Class adapting ExportResultsIterator to return rows from a QueryResultCache instead of from
+ * the database.
+ */
+class CachedResultIterator extends ExportResultsIterator
+{
+    private final Iterator<List<ResultElement>> rows;
+
+    /**
+     * Constructor.
+     *
+     * @param pathQuery a PathQuery to run.
+     * @param q The object-store query this path-query corresponds to.
+     * @param results the results object created for the query, which will not be read
+     * @param pathToQueryNode a map from path in pathQuery to QuerySelectable in the generated
+     * ObjectStore query
+     * @param rows the cached rows to return
+     * @throws ObjectStoreException if something goes wrong
+     */
+    public CachedResultIterator(PathQuery pathQuery, Query q, Results results,
+            Map<String, QuerySelectable> pathToQueryNode, List<List<ResultElement>> rows)
+        throws ObjectStoreException {
+        super(pathQuery, q, results, pathToQueryNode);
+        this.rows = rows.iterator();
+    }
+
+    /**
+     * Does nothing, as the database is not read.
+     */
+    @Override
+    public void goFaster() {
+        // The rows are already in memory
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasNext() {
+        return rows.hasNext();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<ResultElement> next() {
+        return rows.next();
+    }
+}
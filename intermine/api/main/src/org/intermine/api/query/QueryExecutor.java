@@ -12,6 +12,7 @@ package org.intermine.api.query;
 
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.WeakHashMap;
 
@@ -20,6 +21,8 @@ import org.intermine.api.bag.BagManager;
 import org.intermine.api.bag.BagQueryRunner;
 import org.intermine.api.profile.InterMineBag;
 import org.intermine.api.profile.Profile;
+import org.intermine.api.query.MainHelper.SummaryConfig;
+import org.intermine.api.query.summary.ColumnSummary;
 import org.intermine.objectstore.ObjectStore;
 import org.intermine.objectstore.ObjectStoreException;
 import org.intermine.objectstore.query.Query;
@@ -206,6 +209,101 @@ public abstract class QueryExecutor
         return os.count(q, ObjectStore.SEQUENCE_IGNORE);
     }
 
+    private static final Map<String, ColumnSummary> SUMMARY_CACHE
+        = new CacheMap<String, ColumnSummary>();
+
+    /**
+     * Returns an approximate summary for a column in a PathQuery, if the query has too many rows
+     * to be summarised exactly in reasonable time. The rows are in the same format as those of
+     * summariseQuery(), but the counts are estimates, and only the most frequent values are
+     * included. The values of the column are read in one pass, which is a sample of the rows if
+     * there are more than the querySummary.maxScanRows property allows.
+     *
+     * @param pq The query to summarise
+     * @param summaryPath The path of the query to focus on.
+     * @param filterTerm An optional term to further filter by.
+     * @param asOccurrances If true, will only return the list of values and their counts.
+     * @return the summary rows, or null if the query is small enough to be summarised exactly
+     * @throws ObjectStoreException if there is a problem summarising
+     */
+    public List<List<Object>> summariseApproximately(PathQuery pq, String summaryPath,
+            String filterTerm, boolean asOccurrances) throws ObjectStoreException {
+        PathQuery query = withFilter(pq, summaryPath, filterTerm);
+        Query valuesQuery = makeSummaryValuesQuery(query, summaryPath, 1);
+        ColumnSummary summary = getColumnSummary(valuesQuery, query, summaryPath);
+        if (summary == null) {
+            return null;
+        }
+        if (!asOccurrances && MainHelper.isHistogramSummary(valuesQuery)) {
+            return summary.getHistogram(SummaryConfig.getNumberOfBins().intValue());
+        }
+        return summary.getOccurrences();
+    }
+
+    /**
+     * Creates a query that returns the values of a column in a PathQuery, for it to be summarised
+     * in one pass.
+     *
+     * @param pathQuery the query to convert
+     * @param summaryPath the column to summarise
+     * @param sampleRate 1 for every row, or n for a sample of one row in n
+     * @return an IQL Query object
+     * @throws ObjectStoreException if there is a problem creating the query
+     */
+    public Query makeSummaryValuesQuery(PathQuery pathQuery, String summaryPath, int sampleRate)
+        throws ObjectStoreException {
+        Map<String, InterMineBag> allBags = bagManager.getBags(profile);
+        return MainHelper.makeSummaryValuesQuery(pathQuery, summaryPath, allBags, bagQueryRunner,
+                sampleRate);
+    }
+
+    private static PathQuery withFilter(PathQuery pq, String summaryPath, String filterTerm) {
+        if (filterTerm == null || filterTerm.isEmpty()) {
+            return pq;
+        }
+        PathQuery clone = pq.clone();
+        clone.addConstraint(Constraints.contains(summaryPath, filterTerm));
+        return clone;
+    }
+
+    /**
+     * Returns the approximate summary of a column, or null if the query is estimated to have few
+     * enough rows to be summarised exactly.
+     */
+    private ColumnSummary getColumnSummary(Query valuesQuery, PathQuery pq, String summaryPath)
+        throws ObjectStoreException {
+        String cacheKey = valuesQuery.toString() + "summary-path: " + summaryPath;
+        synchronized (SUMMARY_CACHE) {
+            ColumnSummary summary = SUMMARY_CACHE.get(cacheKey);
+            if (summary != null) {
+                return summary;
+            }
+        }
+        int rows = os.estimate(valuesQuery).getRows();
+        if (rows <= SummaryConfig.getApproximateThreshold()) {
+            return null;
+        }
+        int maxScanRows = Math.max(SummaryConfig.getMaxScanRows(), 1);
+        int sampleRate = (rows + maxScanRows - 1) / maxScanRows;
+        Query q = valuesQuery;
+        if (sampleRate > 1) {
+            q = makeSummaryValuesQuery(pq, summaryPath, sampleRate);
+        }
+        long start = System.currentTimeMillis();
+        ColumnSummary summary = new ColumnSummary(sampleRate, ColumnSummary.DEFAULT_TOP_VALUES);
+        Results results = os.execute(q, summaryBatchSize, true, false, false);
+        for (Object row : results) {
+            summary.add(((List<?>) row).get(0));
+        }
+        LOG.info("Summarised " + summaryPath + " approximately (about " + summary.getCount()
+                + " rows, sampled 1 in " + sampleRate + ") in "
+                + (System.currentTimeMillis() - start) + "ms");
+        synchronized (SUMMARY_CACHE) {
+            SUMMARY_CACHE.put(cacheKey, summary);
+        }
+        return summary;
+    }
+
     private static final Map<String, Integer> COUNT_CACHE = new CacheMap<String, Integer>();
     /**
      * Get the the total number of unique column values for a given path in the
@@ -218,7 +316,8 @@ public abstract class QueryExecutor
      *
      * @param pq The query to execute.
      * @param path The path whose unique column value count we want.
-     * @return The number of different values this path can have.
+     * @return The number of different values this path can have, which is an estimate if the
+     *         query has too many rows to count them exactly.
      * @throws ObjectStoreException If there is a problem making the query.
      */
     public int uniqueColumnValues(PathQuery pq, String path) throws ObjectStoreException {
@@ -229,6 +328,12 @@ public abstract class QueryExecutor
             return COUNT_CACHE.get(cacheKey);
         } else {
             LOG.debug("Count cache miss");
+            ColumnSummary summary = getColumnSummary(makeSummaryValuesQuery(pq, path, 1), pq,
+                    path);
+            if (summary != null) {
+                // Too many rows to count exactly, so use the estimate of the approximate summary
+                return (int) summary.getDistinctCount();
+            }
             Results res = os.execute(q, summaryBatchSize, true, true, true);
             int c = res.size();
             COUNT_CACHE.put(cacheKey, c);
@@ -0,0 +1,482 @@
+package org.intermine.api.query;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.intermine.api.profile.InterMineBag;
+import org.intermine.api.results.ResultElement;
+import org.intermine.model.FastPathObject;
+import org.intermine.model.InterMineObject;
+import org.intermine.objectstore.ObjectStore;
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.objectstore.query.Query;
+import org.intermine.pathquery.OrderElement;
+import org.intermine.pathquery.OuterJoinStatus;
+import org.intermine.pathquery.PathConstraint;
+import org.intermine.pathquery.PathException;
+import org.intermine.pathquery.PathQuery;
+
+/**
+ * A size-bounded cache of flattened PathQuery results, shared between all the users of one
+ * ObjectStore, so that identical template and query requests from different clients do not
+ * re-execute in the database.
+ *
+ * <p>Entries are keyed on a canonical form of the PathQuery (view, sort order, outer joins, and
+ * constraints sorted independently of the order they were added in) together with the
+ * ObjectStoreBag of every list the query uses. Each entry also records the ObjectStore sequence
+ * numbers of the tables and bags the query reads. Whenever
+ * ObjectStoreInterMineImpl.databaseAltered fires, or a list's contents change, those sequence
+ * numbers move on and the entry is discarded the next time it is looked up.</p>
+ *
+ * <p>An entry holds the first rows of a result, so a request for any page inside those rows is
+ * a hit, and an entry that holds every row answers any page. Entries with more rows than the
+ * spill threshold are written to a local directory, if one is configured, and read back on a
+ * hit.</p>
+ */
+public class QueryResultCache
+{
+    private static final Logger LOG = Logger.getLogger(QueryResultCache.class);
+
+    /** Property for the maximum number of rows held in memory across all entries */
+    public static final String MAX_ROWS_PROPERTY = "webservice.resultCache.maxRows";
+    /** Property for the maximum number of rows held by a single entry */
+    public static final String MAX_ENTRY_ROWS_PROPERTY = "webservice.resultCache.maxEntryRows";
+    /** Property for the directory that large entries are spilled to */
+    public static final String SPILL_DIRECTORY_PROPERTY = "webservice.resultCache.spillDirectory";
+    /** Property for the number of rows above which an entry is spilled to disk */
+    public static final String SPILL_ROWS_PROPERTY = "webservice.resultCache.spillRows";
+
+    private static final int DEFAULT_MAX_ROWS = 50000;
+    private static final int DEFAULT_MAX_ENTRY_ROWS = 10000;
+    private static final int DEFAULT_SPILL_ROWS = 2000;
+    private static final int MAX_SPILLED_ENTRIES = 1000;
+    // The code of a constraint in constraint logic
+    private static final Pattern CONSTRAINT_CODE = Pattern.compile("\\b[A-Z]+\\b");
+
+    private final ObjectStore os;
+    private final int maxRows;
+    private final int maxEntryRows;
+    private final File spillDirectory;
+    private final int spillRows;
+    private final LinkedHashMap<String, Entry> entries =
+        new LinkedHashMap<String, Entry>(16, 0.75F, true);
+    private int rowsInMemory = 0;
+    private int spilledEntries = 0;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * Construct a QueryResultCache.
+     *
+     * @param os the ObjectStore that the cached queries are run in
+     * @param maxRows the maximum number of rows to hold in memory, across all entries
+     * @param maxEntryRows the maximum number of rows to hold for one query
+     * @param spillDirectory a directory to write large entries to, or null to keep everything in
+     * memory
+     * @param spillRows entries with more than this number of rows are written to spillDirectory
+     */
+    public QueryResultCache(ObjectStore os, int maxRows, int maxEntryRows, File spillDirectory,
+            int spillRows) {
+        this.os = os;
+        this.maxRows = maxRows;
+        this.maxEntryRows = maxEntryRows;
+        this.spillDirectory = spillDirectory;
+        this.spillRows = spillRows;
+        if (spillDirectory != null && !spillDirectory.isDirectory() && !spillDirectory.mkdirs()) {
+            throw new IllegalArgumentException("Cannot create result cache spill directory "
+                    + spillDirectory);
+        }
+    }
+
+    /**
+     * Construct a QueryResultCache configured from the webapp properties. Returns null if the
+     * cache has been switched off by setting the maximum number of rows to zero.
+     *
+     * @param os the ObjectStore that the cached queries are run in
+     * @param props the properties to read the configuration from
+     * @return a new QueryResultCache, or null
+     */
+    public static QueryResultCache fromProperties(ObjectStore os, Properties props) {
+        int maxRows = Integer.parseInt(props.getProperty(MAX_ROWS_PROPERTY,
+                    String.valueOf(DEFAULT_MAX_ROWS)).trim());
+        if (maxRows <= 0) {
+            return null;
+        }
+        int maxEntryRows = Integer.parseInt(props.getProperty(MAX_ENTRY_ROWS_PROPERTY,
+                    String.valueOf(DEFAULT_MAX_ENTRY_ROWS)).trim());
+        int spillRows = Integer.parseInt(props.getProperty(SPILL_ROWS_PROPERTY,
+                    String.valueOf(DEFAULT_SPILL_ROWS)).trim());
+        String spillDir = props.getProperty(SPILL_DIRECTORY_PROPERTY);
+        File spillDirectory = StringUtils.isBlank(spillDir) ? null : new File(spillDir.trim());
+        return new QueryResultCache(os, maxRows, maxEntryRows, spillDirectory, spillRows);
+    }
+
+    /**
+     * Returns the maximum number of rows that one query may contribute to the cache.
+     *
+     * @return the maximum number of rows in an entry
+     */
+    public int getMaxEntryRows() {
+        return maxEntryRows;
+    }
+
+    /**
+     * Builds the canonical cache key for a PathQuery. Two queries that differ only in the order
+     * their constraints were added, or in their descriptions, have the same key. The constraint
+     * codes are assigned in the order the constraints are added, so they are left out of the
+     * key, and constraint logic containing OR refers to the constraints by their position in
+     * the sorted list instead.
+     *
+     * @param pq the PathQuery
+     * @param allBags the lists visible to the user running the query, by name
+     * @return a String key
+     */
+    public static String makeKey(PathQuery pq, Map<String, InterMineBag> allBags) {
+        StringBuilder key = new StringBuilder();
+        key.append(pq.getModel().getName()).append("|view:").append(pq.getView());
+        key.append("|order:");
+        for (OrderElement oe : pq.getOrderBy()) {
+            key.append(oe.getOrderPath()).append(' ').append(oe.getDirection()).append(',');
+        }
+        key.append("|outer:");
+        Set<String> joins = new TreeSet<String>();
+        for (Map.Entry<String, OuterJoinStatus> entry : pq.getOuterJoinStatus().entrySet()) {
+            joins.add(entry.getKey() + "=" + entry.getValue());
+        }
+        key.append(joins);
+        key.append("|constraints:");
+        List<String> constraints = new ArrayList<String>();
+        Map<String, String> constraintsByCode = new HashMap<String, String>();
+        for (Map.Entry<PathConstraint, String> entry : pq.getConstraints().entrySet()) {
+            String constraint = entry.getKey().toString();
+            constraints.add(constraint);
+            if (entry.getValue() != null) {
+                constraintsByCode.put(entry.getValue(), constraint);
+            }
+        }
+        Collections.sort(constraints);
+        key.append(constraints);
+        String logic = pq.getConstraintLogic();
+        if (pq.getConstraints().size() > 1 && logic.toLowerCase().contains("or")) {
+            // Logic made up only of ANDs is the same whatever the constraints are called
+            Matcher codes = CONSTRAINT_CODE.matcher(logic);
+            StringBuffer canonicalLogic = new StringBuffer();
+            while (codes.find()) {
+                String constraint = constraintsByCode.get(codes.group());
+                codes.appendReplacement(canonicalLogic, (constraint == null) ? codes.group()
+                        : "#" + constraints.indexOf(constraint));
+            }
+            codes.appendTail(canonicalLogic);
+            key.append("|logic:").append(canonicalLogic);
+        }
+        key.append("|lists:");
+        Set<String> lists = new TreeSet<String>();
+        for (String bagName : pq.getBagNames()) {
+            InterMineBag bag = allBags.get(bagName);
+            if (bag == null || bag.getOsb() == null) {
+                lists.add(bagName + "=?");
+            } else {
+                lists.add(bagName + "=" + bag.getOsb().getBagId());
+            }
+        }
+        key.append(lists);
+        return key.toString();
+    }
+
+    /**
+     * Returns the sequence numbers of the database components read by the given query, to be
+     * stored with its results.
+     *
+     * @param q the ObjectStore query
+     * @return a Map of sequence data
+     */
+    public Map<Object, Integer> getSequence(Query q) {
+        return os.getSequence(os.getComponentsForQuery(q));
+    }
+
+    /**
+     * Looks up a page of results. Returns null unless the cache holds every row of the
+     * requested page and the data the query reads has not changed since the rows were stored.
+     *
+     * @param key the key, from makeKey()
+     * @param pq the PathQuery, used to reconstruct spilled rows
+     * @param q the ObjectStore query the PathQuery translates to
+     * @param start the index of the first row wanted
+     * @param limit the maximum number of rows wanted
+     * @return the rows of the page, or null on a miss
+     */
+    public List<List<ResultElement>> get(String key, PathQuery pq, Query q, int start,
+            int limit) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry != null && !entry.sequence.equals(getSequence(q))) {
+                remove(key);
+                entry = null;
+            }
+            if (entry == null || (!entry.complete && (start + (long) limit > entry.size))) {
+                misses++;
+                return null;
+            }
+            hits++;
+        }
+        List<List<ResultElement>> rows = entry.rows;
+        if (rows == null) {
+            try {
+                rows = readSpilled(entry.spillFile, pq);
+            } catch (Exception e) {
+                LOG.warn("Could not read spilled results for " + key, e);
+                synchronized (this) {
+                    if (entries.get(key) == entry) {
+                        remove(key);
+                    }
+                }
+                return null;
+            }
+        }
+        int from = Math.min(start, rows.size());
+        int to = (int) Math.min(start + (long) limit, rows.size());
+        return rows.subList(from, to);
+    }
+
+    /**
+     * Stores the first rows of a query's results.
+     *
+     * @param key the key, from makeKey()
+     * @param sequence the sequence data from getSequence(), taken before the query was run
+     * @param rows the first rows of the results
+     * @param complete true if rows holds every row of the results
+     */
+    public void put(String key, Map<Object, Integer> sequence, List<List<ResultElement>> rows,
+            boolean complete) {
+        if (rows.size() > maxEntryRows) {
+            return;
+        }
+        Entry entry = new Entry(sequence, rows.size(), complete);
+        if (spillDirectory != null && rows.size() > spillRows) {
+            try {
+                entry.spillFile = writeSpilled(rows);
+            } catch (IOException e) {
+                // Probably a non-serialisable field value - keep the rows in memory instead
+                LOG.info("Not spilling results to disk for " + key + ": " + e);
+            }
+        }
+        if (entry.spillFile == null) {
+            entry.rows = Collections.unmodifiableList(new ArrayList<List<ResultElement>>(rows));
+        }
+        synchronized (this) {
+            remove(key);
+            entries.put(key, entry);
+            if (entry.rows != null) {
+                rowsInMemory += entry.size;
+            } else {
+                spilledEntries++;
+            }
+            Iterator<Map.Entry<String, Entry>> iter = entries.entrySet().iterator();
+            while ((rowsInMemory > maxRows || spilledEntries > MAX_SPILLED_ENTRIES)
+                    && iter.hasNext()) {
+                Entry evicted = iter.next().getValue();
+                iter.remove();
+                discard(evicted);
+            }
+        }
+    }
+
+    /**
+     * Removes every entry from the cache.
+     */
+    public synchronized void clear() {
+        for (Entry entry : entries.values()) {
+            discard(entry);
+        }
+        entries.clear();
+    }
+
+    /**
+     * Returns a summary of the cache's size and effectiveness, for logging.
+     *
+     * @return a String description
+     */
+    public synchronized String getStatistics() {
+        return "QueryResultCache: " + entries.size() + " entries, " + rowsInMemory
+            + " rows in memory, " + spilledEntries + " entries on disk, " + hits + " hits, "
+            + misses + " misses";
+    }
+
+    private void remove(String key) {
+        Entry old = entries.remove(key);
+        if (old != null) {
+            discard(old);
+        }
+    }
+
+    private void discard(Entry entry) {
+        if (entry.rows != null) {
+            rowsInMemory -= entry.size;
+        } else {
+            spilledEntries--;
+            if (!entry.spillFile.delete()) {
+                LOG.warn("Could not delete spilled results " + entry.spillFile);
+            }
+        }
+    }
+
+    /**
+     * Writes rows to a spill file. Objects are written as their IDs and re-fetched from the
+     * ObjectStore when the file is read back, as InterMineObjects and Paths are not
+     * serialisable.
+     */
+    private File writeSpilled(List<List<ResultElement>> rows) throws IOException {
+        File file = File.createTempFile("results", ".spill", spillDirectory);
+        boolean done = false;
+        ObjectOutputStream out = new ObjectOutputStream(new GZIPOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(file))));
+        try {
+            out.writeInt(rows.size());
+            for (List<ResultElement> row : rows) {
+                out.writeInt(row.size());
+                for (ResultElement cell : row) {
+                    if (cell == null) {
+                        out.writeByte(0);
+                    } else if (cell.getPath() == null) {
+                        out.writeByte(1);
+                        out.writeObject(checkSerializable(cell.getField()));
+                    } else {
+                        FastPathObject o = cell.getObject();
+                        if (o != null && !(o instanceof InterMineObject)) {
+                            throw new IOException("Cannot spill object without an ID: " + o);
+                        }
+                        out.writeByte(2);
+                        out.writeObject(o == null ? null : ((InterMineObject) o).getId());
+                        out.writeUTF(cell.getPath().toStringNoConstraints());
+                        out.writeBoolean(cell.isKeyField());
+                        out.writeObject(checkSerializable(cell.getField()));
+                    }
+                }
+            }
+            done = true;
+        } finally {
+            out.close();
+            if (!done && !file.delete()) {
+                LOG.warn("Could not delete spill file " + file);
+            }
+        }
+        return file;
+    }
+
+    private static Object checkSerializable(Object o) throws IOException {
+        if (o != null && !(o instanceof Serializable)) {
+            throw new IOException("Cannot spill value of " + o.getClass());
+        }
+        return o;
+    }
+
+    private List<List<ResultElement>> readSpilled(File file, PathQuery pq)
+        throws IOException, ClassNotFoundException, ObjectStoreException, PathException {
+        ObjectInputStream in = new ObjectInputStream(new GZIPInputStream(
+                    new BufferedInputStream(new FileInputStream(file))));
+        try {
+            int rowCount = in.readInt();
+            List<List<ResultElement>> rows = new ArrayList<List<ResultElement>>(rowCount);
+            List<Object[]> objectCells = new ArrayList<Object[]>();
+            Set<Integer> ids = new HashSet<Integer>();
+            for (int i = 0; i < rowCount; i++) {
+                int cellCount = in.readInt();
+                List<ResultElement> row = new ArrayList<ResultElement>(cellCount);
+                for (int j = 0; j < cellCount; j++) {
+                    byte type = in.readByte();
+                    if (type == 0) {
+                        row.add(null);
+                    } else if (type == 1) {
+                        row.add(new ResultElement(in.readObject()));
+                    } else {
+                        Integer id = (Integer) in.readObject();
+                        String path = in.readUTF();
+                        boolean keyField = in.readBoolean();
+                        Object field = in.readObject();
+                        if (id != null) {
+                            ids.add(id);
+                        }
+                        objectCells.add(new Object[] {row, new Integer(j), id, path,
+                            Boolean.valueOf(keyField), field});
+                        row.add(null);
+                    }
+                }
+                rows.add(row);
+            }
+            // Fetch all the objects in bulk, then fill in the cells that refer to them
+            Map<Integer, InterMineObject> objects = new HashMap<Integer, InterMineObject>();
+            for (InterMineObject o : os.getObjectsByIds(ids)) {
+                objects.put(o.getId(), o);
+            }
+            for (Object[] cell : objectCells) {
+                @SuppressWarnings("unchecked")
+                List<ResultElement> row = (List<ResultElement>) cell[0];
+                Integer id = (Integer) cell[2];
+                InterMineObject o = (id == null) ? null : objects.get(id);
+                if (id != null && o == null) {
+                    throw new ObjectStoreException("Object " + id + " no longer exists");
+                }
+                ResultElement element = new ResultElement(o, pq.makePath((String) cell[3]),
+                        ((Boolean) cell[4]).booleanValue());
+                element.setField(cell[5]);
+                row.set(((Integer) cell[1]).intValue(), element);
+            }
+            return rows;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * The cached rows of one query.
+     */
+    private static class Entry
+    {
+        final Map<Object, Integer> sequence;
+        final int size;
+        final boolean complete;
+        List<List<ResultElement>> rows = null;
+        File spillFile = null;
+
+        Entry(Map<Object, Integer> sequence, int size, boolean complete) {
+            this.sequence = sequence;
+            this.size = size;
+            this.complete = complete;
+        }
+    }
+}
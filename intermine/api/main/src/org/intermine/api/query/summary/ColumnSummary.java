@@ -0,0 +1,210 @@
+package org.intermine.api.query.summary;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An approximate summary of a column of results, made in one pass over its values. The number
+ * of distinct values is estimated with a HyperLogLog, the most frequent values are found with a
+ * CountMinSketch, and the distribution of a numeric column is estimated with a TDigest, together
+ * with its exact minimum, maximum, mean and standard deviation.
+ *
+ * The values may be a sample of the column, of one value in every sampleRate. Counts are then
+ * scaled up by the sample rate, and the number of distinct values is that of the sample.
+ *
+ * The rows returned are in the same form as those of the exact summary queries made by
+ * MainHelper.makeSummaryQuery, so that they can be used in their place.
+ */
+public class ColumnSummary
+{
+    /** The number of most frequent values that are kept */
+    public static final int DEFAULT_TOP_VALUES = 1000;
+
+    private static final int SKETCH_WIDTH = 16384;
+
+    private final int sampleRate;
+    private final HyperLogLog distinct = new HyperLogLog();
+    private final CountMinSketch frequencies;
+    private final TDigest digest = new TDigest();
+    private long count = 0;
+    private boolean hasNull = false;
+
+    private Number min = null;
+    private Number max = null;
+    private long numericCount = 0;
+    private double mean = 0.0;
+    private double sumOfSquares = 0.0;
+
+    /**
+     * Constructor for a summary of every value in a column.
+     */
+    public ColumnSummary() {
+        this(1, DEFAULT_TOP_VALUES);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param sampleRate the column is sampled at one value in every sampleRate
+     * @param topValues the number of most frequent values to keep
+     */
+    public ColumnSummary(int sampleRate, int topValues) {
+        if (sampleRate < 1) {
+            throw new IllegalArgumentException("sampleRate must be at least 1, not "
+                    + sampleRate);
+        }
+        this.sampleRate = sampleRate;
+        this.frequencies = new CountMinSketch(SKETCH_WIDTH, topValues);
+    }
+
+    /**
+     * Adds a value of the column.
+     *
+     * @param value the value, which may be null
+     */
+    public void add(Object value) {
+        count++;
+        long hash = HyperLogLog.hash(value);
+        frequencies.add(value, hash);
+        if (value == null) {
+            hasNull = true;
+            return;
+        }
+        distinct.offerHash(hash);
+        if (value instanceof Number) {
+            Number number = (Number) value;
+            double x = number.doubleValue();
+            digest.add(x);
+            if (min == null || x < min.doubleValue()) {
+                min = number;
+            }
+            if (max == null || x > max.doubleValue()) {
+                max = number;
+            }
+            // Welford's method, which does not lose precision on large values
+            numericCount++;
+            double delta = x - mean;
+            mean += delta / numericCount;
+            sumOfSquares += delta * (x - mean);
+        }
+    }
+
+    /**
+     * Returns the sample rate of this summary.
+     *
+     * @return one value in every how many was summarised
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Returns whether this is a summary of a sample of the column.
+     *
+     * @return true if not every value was summarised
+     */
+    public boolean isSampled() {
+        return sampleRate > 1;
+    }
+
+    /**
+     * Returns the estimated number of values in the column.
+     *
+     * @return a long
+     */
+    public long getCount() {
+        return count * sampleRate;
+    }
+
+    /**
+     * Returns the estimated number of distinct values, counting null as a value as GROUP BY does.
+     *
+     * @return a long
+     */
+    public long getDistinctCount() {
+        return distinct.cardinality() + (hasNull ? 1 : 0);
+    }
+
+    /**
+     * Returns the estimated value below which a fraction q of the numeric values lie.
+     *
+     * @param q the fraction, from 0 to 1
+     * @return the quantile, or NaN if there are no numeric values
+     */
+    public double getQuantile(double q) {
+        return digest.quantile(q);
+    }
+
+    /**
+     * Returns the most frequent values with their estimated counts, most frequent first, in the
+     * form of rows of the item and its count.
+     *
+     * @return a List of rows
+     */
+    public List<List<Object>> getOccurrences() {
+        List<List<Object>> retval = new ArrayList<List<Object>>();
+        for (Map.Entry<Object, Long> entry : frequencies.getTopValues()) {
+            retval.add(Arrays.asList(entry.getKey(),
+                        (Object) new Long(entry.getValue().longValue() * sampleRate)));
+        }
+        return retval;
+    }
+
+    /**
+     * Returns an estimated histogram of the numeric values, in rows of the minimum, maximum,
+     * average, standard deviation, number of buckets, bucket number and bucket count. Buckets
+     * are numbered from 1 and divide the range from the minimum to 1.01 times the maximum
+     * equally. Empty buckets are left out.
+     *
+     * @param bins the number of buckets
+     * @return a List of rows
+     */
+    public List<List<Object>> getHistogram(int bins) {
+        List<List<Object>> retval = new ArrayList<List<Object>>();
+        if (numericCount == 0) {
+            return retval;
+        }
+        int buckets = bins;
+        if (min instanceof Integer || min instanceof Long) {
+            // As with the exact histogram, integers are not split into more buckets than values
+            long range = max.longValue() - min.longValue();
+            buckets = (int) Math.max(Math.min(bins, range), 1);
+        }
+        Double average = new Double(mean);
+        Double deviation = (numericCount > 1)
+            ? new Double(Math.sqrt(sumOfSquares / (numericCount - 1))) : null;
+        double low = min.doubleValue();
+        double high = max.doubleValue() * 1.01;
+        if (high <= max.doubleValue()) {
+            // The maximum is not positive, so stretch the range by 1% of its width instead
+            high = max.doubleValue() + Math.max((max.doubleValue() - low) * 0.01,
+                    Double.MIN_VALUE);
+        }
+        double width = (high - low) / buckets;
+        long countedSoFar = 0;
+        for (int bucket = 1; bucket <= buckets; bucket++) {
+            double upTo = (bucket == buckets) ? 1.0 : digest.cdf(low + width * bucket);
+            long total = Math.round(upTo * numericCount);
+            long bucketCount = total - countedSoFar;
+            countedSoFar = total;
+            if (bucketCount > 0) {
+                retval.add(Arrays.asList((Object) min, max, average, deviation,
+                            new Integer(buckets), new Integer(bucket),
+                            new Long(bucketCount * sampleRate)));
+            }
+        }
+        return retval;
+    }
+}
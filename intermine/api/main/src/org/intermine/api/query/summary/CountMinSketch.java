@@ -0,0 +1,148 @@
+package org.intermine.api.query.summary;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Counts how often the values in a stream occur, in a fixed amount of memory, and keeps track of
+ * the values that occur most often. Counts are never too low, and are too high by at most a
+ * small fraction of the total count. The values occurring most often are kept with their
+ * estimated counts, up to a fixed number of them.
+ */
+public class CountMinSketch
+{
+    private static final int DEPTH = 4;
+
+    private final int width;
+    private final long[][] table;
+    private final int capacity;
+    private final Map<Object, Candidate> candidates = new HashMap<Object, Candidate>();
+    private final TreeSet<Candidate> byCount = new TreeSet<Candidate>();
+    private long sequence = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param width the number of counters in each row of the sketch, which is rounded up to a
+     * power of two
+     * @param capacity the number of most frequent values to keep
+     */
+    public CountMinSketch(int width, int capacity) {
+        this.width = Integer.highestOneBit(Math.max(width - 1, 1)) << 1;
+        this.table = new long[DEPTH][this.width];
+        this.capacity = capacity;
+    }
+
+    /**
+     * Adds an occurrence of a value.
+     *
+     * @param value the value, which may be null
+     * @param hash the hash of the value, from HyperLogLog.hash()
+     */
+    public void add(Object value, long hash) {
+        long estimate = Long.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            long[] row = table[i];
+            int index = index(hash, i);
+            row[index]++;
+            estimate = Math.min(estimate, row[index]);
+        }
+        Candidate candidate = candidates.get(value);
+        if (candidate != null) {
+            byCount.remove(candidate);
+            candidate.count = estimate;
+            byCount.add(candidate);
+        } else if (candidates.size() < capacity) {
+            addCandidate(value, estimate);
+        } else if (capacity > 0 && estimate > byCount.first().count) {
+            Candidate least = byCount.pollFirst();
+            candidates.remove(least.value);
+            addCandidate(value, estimate);
+        }
+    }
+
+    /**
+     * Returns the estimated number of occurrences of a value.
+     *
+     * @param hash the hash of the value, from HyperLogLog.hash()
+     * @return the estimated count
+     */
+    public long estimate(long hash) {
+        long estimate = Long.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            estimate = Math.min(estimate, table[i][index(hash, i)]);
+        }
+        return estimate;
+    }
+
+    /**
+     * Returns the values that occur most often, most frequent first, with their estimated counts.
+     *
+     * @return a List of values and counts
+     */
+    public List<Map.Entry<Object, Long>> getTopValues() {
+        List<Map.Entry<Object, Long>> retval = new ArrayList<Map.Entry<Object, Long>>();
+        for (Candidate candidate : byCount.descendingSet()) {
+            retval.add(new AbstractMap.SimpleImmutableEntry<Object, Long>(
+                        candidate.value, new Long(candidate.count)));
+        }
+        return retval;
+    }
+
+    private void addCandidate(Object value, long count) {
+        Candidate candidate = new Candidate(value, count, sequence++);
+        candidates.put(value, candidate);
+        byCount.add(candidate);
+    }
+
+    /**
+     * Picks a counter in a row of the sketch, from two halves of the hash.
+     */
+    private int index(long hash, int row) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        return (h1 + row * h2) & (width - 1);
+    }
+
+    /**
+     * A value that may be one of the most frequent. Candidates with the same count are ordered by
+     * when they were first seen, so that earlier values are kept.
+     */
+    private static class Candidate implements Comparable<Candidate>
+    {
+        private final Object value;
+        private final long order;
+        private long count;
+
+        Candidate(Object value, long count, long order) {
+            this.value = value;
+            this.count = count;
+            this.order = order;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            if (count != other.count) {
+                return (count < other.count) ? -1 : 1;
+            }
+            if (order != other.order) {
+                return (order < other.order) ? 1 : -1;
+            }
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package org.intermine.api.query.summary;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+/**
+ * Estimates the number of distinct values in a stream, in a fixed amount of memory. With the
+ * default precision of 14 the estimate uses 16kB and is usually within 1% of the true count.
+ * Small counts are estimated by linear counting, which is close to exact.
+ */
+public class HyperLogLog
+{
+    /** The default number of bits of the hash used to choose a register */
+    public static final int DEFAULT_PRECISION = 14;
+
+    private final int precision;
+    private final int registerCount;
+    private final byte[] registers;
+
+    /**
+     * Constructor with the default precision.
+     */
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param precision the number of bits of the hash used to choose a register, from 4 to 16
+     */
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 16) {
+            throw new IllegalArgumentException("precision must be from 4 to 16, not "
+                    + precision);
+        }
+        this.precision = precision;
+        this.registerCount = 1 << precision;
+        this.registers = new byte[registerCount];
+    }
+
+    /**
+     * Adds a value.
+     *
+     * @param value the value, which may be null
+     */
+    public void offer(Object value) {
+        offerHash(hash(value));
+    }
+
+    /**
+     * Adds a value that has already been hashed with hash().
+     *
+     * @param hash the hash of the value
+     */
+    public void offerHash(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // The low bit stops the rank going past the end of the hash
+        long rest = (hash << precision) | (1L << (precision - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+
+    /**
+     * Returns the estimated number of distinct values added.
+     *
+     * @return a long
+     */
+    public long cardinality() {
+        double sum = 0.0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double alpha;
+        if (registerCount == 16) {
+            alpha = 0.673;
+        } else if (registerCount == 32) {
+            alpha = 0.697;
+        } else if (registerCount == 64) {
+            alpha = 0.709;
+        } else {
+            alpha = 0.7213 / (1.0 + 1.079 / registerCount);
+        }
+        double estimate = alpha * registerCount * registerCount / sum;
+        if (estimate <= 2.5 * registerCount && zeros > 0) {
+            estimate = registerCount * Math.log((double) registerCount / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Returns a 64 bit hash of a value, which is the same for values with the same string form.
+     * The hash is used by all the sketches in this package.
+     *
+     * @param value the value, which may be null
+     * @return the hash
+     */
+    public static long hash(Object value) {
+        if (value == null) {
+            return mix(0x9E3779B97F4A7C15L);
+        }
+        String string = value.toString();
+        // FNV-1a
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            hash ^= c & 0xFF;
+            hash *= 0x100000001B3L;
+            hash ^= c >>> 8;
+            hash *= 0x100000001B3L;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * Spreads the bits of a hash, so that similar values give very different hashes.
+     */
+    private static long mix(long hash) {
+        long h = hash;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
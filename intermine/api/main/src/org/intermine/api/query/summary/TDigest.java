@@ -0,0 +1,236 @@
+package org.intermine.api.query.summary;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Arrays;
+
+/**
+ * A t-digest, which estimates the distribution of a stream of numbers in a fixed amount of
+ * memory. The numbers are kept as a sorted list of centroids, each a mean and a weight, with
+ * small centroids at the ends of the distribution so that extreme quantiles stay accurate.
+ * New numbers are buffered and merged into the centroids in batches.
+ */
+public class TDigest
+{
+    /** The default compression, which keeps a few hundred centroids */
+    public static final double DEFAULT_COMPRESSION = 100.0;
+
+    private final double compression;
+    private double[] means;
+    private double[] weights;
+    private int centroidCount = 0;
+    private final double[] buffer;
+    private int buffered = 0;
+    private long count = 0;
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+
+    /**
+     * Constructor with the default compression.
+     */
+    public TDigest() {
+        this(DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param compression how many centroids to keep, roughly; larger is more accurate
+     */
+    public TDigest(double compression) {
+        this.compression = compression;
+        int size = (int) Math.ceil(compression * 2) + 10;
+        means = new double[size];
+        weights = new double[size];
+        buffer = new double[size * 5];
+    }
+
+    /**
+     * Adds a number.
+     *
+     * @param x the number
+     */
+    public void add(double x) {
+        if (Double.isNaN(x)) {
+            return;
+        }
+        if (count == 0 || x < min) {
+            min = x;
+        }
+        if (count == 0 || x > max) {
+            max = x;
+        }
+        count++;
+        buffer[buffered++] = x;
+        if (buffered == buffer.length) {
+            merge();
+        }
+    }
+
+    /**
+     * Returns the number of numbers added.
+     *
+     * @return a long
+     */
+    public long size() {
+        return count;
+    }
+
+    /**
+     * Returns the estimated fraction of the numbers that are less than or equal to x.
+     *
+     * @param x the number
+     * @return a fraction from 0 to 1, or NaN if no numbers have been added
+     */
+    public double cdf(double x) {
+        merge();
+        if (count == 0) {
+            return Double.NaN;
+        }
+        if (x < min) {
+            return 0.0;
+        }
+        if (x >= max) {
+            return 1.0;
+        }
+        double total = count;
+        // Half of the weight of each centroid is taken to lie either side of its mean
+        if (x < means[0]) {
+            return weights[0] / 2.0 * (x - min) / (means[0] - min) / total;
+        }
+        double weightSoFar = 0.0;
+        for (int i = 0; i < centroidCount - 1; i++) {
+            if (x < means[i + 1]) {
+                double left = weightSoFar + weights[i] / 2.0;
+                double between = (weights[i] + weights[i + 1]) / 2.0;
+                double gap = means[i + 1] - means[i];
+                double fraction = (gap > 0.0) ? (x - means[i]) / gap : 0.5;
+                return (left + between * fraction) / total;
+            }
+            weightSoFar += weights[i];
+        }
+        int last = centroidCount - 1;
+        double left = total - weights[last] / 2.0;
+        double gap = max - means[last];
+        double fraction = (gap > 0.0) ? (x - means[last]) / gap : 0.0;
+        return Math.min((left + weights[last] / 2.0 * fraction) / total, 1.0);
+    }
+
+    /**
+     * Returns the estimated number below which a fraction q of the numbers lie.
+     *
+     * @param q the fraction, from 0 to 1
+     * @return the quantile, or NaN if no numbers have been added
+     */
+    public double quantile(double q) {
+        if (q < 0.0 || q > 1.0) {
+            throw new IllegalArgumentException("q must be from 0 to 1, not " + q);
+        }
+        merge();
+        if (count == 0) {
+            return Double.NaN;
+        }
+        double index = q * count;
+        if (index <= weights[0] / 2.0) {
+            return min + (means[0] - min) * index / (weights[0] / 2.0);
+        }
+        double weightSoFar = 0.0;
+        for (int i = 0; i < centroidCount - 1; i++) {
+            double left = weightSoFar + weights[i] / 2.0;
+            double between = (weights[i] + weights[i + 1]) / 2.0;
+            if (index < left + between) {
+                return means[i] + (means[i + 1] - means[i]) * (index - left) / between;
+            }
+            weightSoFar += weights[i];
+        }
+        int last = centroidCount - 1;
+        double left = count - weights[last] / 2.0;
+        return means[last] + (max - means[last]) * Math.min((index - left)
+                / (weights[last] / 2.0), 1.0);
+    }
+
+    /**
+     * Returns the smallest number added.
+     *
+     * @return a double, or NaN if no numbers have been added
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * Returns the largest number added.
+     *
+     * @return a double, or NaN if no numbers have been added
+     */
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * Merges the buffered numbers into the centroids.
+     */
+    private void merge() {
+        if (buffered == 0) {
+            return;
+        }
+        Arrays.sort(buffer, 0, buffered);
+        int total = centroidCount + buffered;
+        double[] inMeans = new double[total];
+        double[] inWeights = new double[total];
+        // Merge the sorted centroids with the sorted buffer
+        int c = 0;
+        int b = 0;
+        for (int i = 0; i < total; i++) {
+            if (b >= buffered || (c < centroidCount && means[c] <= buffer[b])) {
+                inMeans[i] = means[c];
+                inWeights[i] = weights[c];
+                c++;
+            } else {
+                inMeans[i] = buffer[b];
+                inWeights[i] = 1.0;
+                b++;
+            }
+        }
+        buffered = 0;
+
+        // Combine neighbours while the combined centroid is small enough for its quantile
+        double totalWeight = count;
+        double weightSoFar = 0.0;
+        int out = 0;
+        means[0] = inMeans[0];
+        weights[0] = inWeights[0];
+        for (int i = 1; i < total; i++) {
+            double proposed = weights[out] + inWeights[i];
+            double q0 = weightSoFar / totalWeight;
+            double q2 = (weightSoFar + proposed) / totalWeight;
+            double limit = totalWeight * Math.min(maxSize(q0), maxSize(q2));
+            if (proposed <= limit) {
+                means[out] += (inMeans[i] - means[out]) * inWeights[i] / proposed;
+                weights[out] = proposed;
+            } else {
+                weightSoFar += weights[out];
+                out++;
+                if (out == means.length) {
+                    means = Arrays.copyOf(means, out * 2);
+                    weights = Arrays.copyOf(weights, out * 2);
+                }
+                means[out] = inMeans[i];
+                weights[out] = inWeights[i];
+            }
+        }
+        centroidCount = out + 1;
+    }
+
+    private double maxSize(double q) {
+        return 4.0 * q * (1.0 - q) / compression;
+    }
+}
@@ -24,6 +24,7 @@ import org.intermine.objectstore.intermine.ObjectStoreInterMineImpl;
 import org.intermine.objectstore.query.PathExpressionField;
 import org.intermine.objectstore.query.Query;
 import org.intermine.objectstore.query.QueryCollectionPathExpression;
+import org.intermine.objectstore.query.QueryField;
 import org.intermine.objectstore.query.QueryObjectPathExpression;
 import org.intermine.objectstore.query.QuerySelectable;
 import org.intermine.objectstore.query.Results;
@@ -44,7 +45,7 @@ public class ExportResultsIterator implements Iterator<List<ResultElement>>
     private Iterator<List> osIter;
     protected Iterator<List<ResultElement>> subIter;
     // This object contains a description of the collections in the input.
-    private List columns;
+    private List<Object> columns;
     private final List<Path> paths = new ArrayList<Path>();
     private final Query query;
     private int columnCount;
@@ -193,7 +194,7 @@ public class ExportResultsIterator implements Iterator<List<ResultElement>>
      * ]
      * </pre>
      */
-    private List convertColumnTypes(
+    private List<Object> convertColumnTypes(
             final List<? extends QuerySelectable> select,
             final PathQuery pq,
             final Map<String, QuerySelectable> pathToQueryNode) {
@@ -206,7 +207,7 @@ public class ExportResultsIterator implements Iterator<List<ResultElement>>
         if (pathToQueryNode == null) {
             throw new IllegalArgumentException("pathToQueryNode may not be null");
         }
-        List retval = new ArrayList();
+        List<Object> retval = new ArrayList<Object>();
         for (QuerySelectable qs : select) {
             boolean notFinished = true;
             while (notFinished) {
@@ -243,6 +244,17 @@ public class ExportResultsIterator implements Iterator<List<ResultElement>>
                 } else {
                     retval.add(convertColumnTypes(subSelect, pq, pathToQueryNode));
                 }
+            } else if (qs instanceof QueryField) {
+                // A value selected by PathQueryExecutor.executeValues(), or an object id
+                Map<Path, Integer> fieldToColumnNumber = new HashMap<Path, Integer>();
+                int columnNo = 0;
+                for (Path path : paths) {
+                    if (qs.equals(pathToQueryNode.get(path.toStringNoConstraints()))) {
+                        fieldToColumnNumber.put(path, Integer.valueOf(columnNo));
+                    }
+                    columnNo++;
+                }
+                retval.add(new ValueColumn(fieldToColumnNumber));
             } else {
                 Map<Path, Integer> fieldToColumnNumber = new HashMap<Path, Integer>();
                 int columnNo = 0;
@@ -301,6 +313,8 @@ public class ExportResultsIterator implements Iterator<List<ResultElement>>
                             new ResultElement((FastPathObject) row.get(columnNo),
                                 descEntry.getKey(), false));
                 }
+            } else if (column instanceof ValueColumn) {
+                setValues(row.get(columnNo), (ValueColumn) column, templateResults);
             } else if (!multiRow) {
                 // Check the collection size, to see if we can get away with a single row.
                 List<List> collection = (List<List>) row.get(columnNo);
@@ -355,6 +369,8 @@ public class ExportResultsIterator implements Iterator<List<ResultElement>>
                             new ResultElement((FastPathObject) row.get(columnNo),
                                 descEntry.getKey(), false));
                 }
+            } else if (column instanceof ValueColumn) {
+                setValues(row.get(columnNo), (ValueColumn) column, template);
             } else {
                 List<List> collection = (List<List>) row.get(columnNo);
                 for (List subRow : collection) {
@@ -365,6 +381,14 @@ public class ExportResultsIterator implements Iterator<List<ResultElement>>
         }
     }
 
+    private static void setValues(Object value, ValueColumn column,
+            List<ResultElement> template) {
+        for (Map.Entry<Path, Integer> descEntry : column.fieldToColumnNumber.entrySet()) {
+            template.set(descEntry.getValue().intValue(),
+                    ResultElement.forValue(value, descEntry.getKey(), false));
+        }
+    }
+
     private boolean isCollectionMultiRow(List row, List cols) {
         boolean multiRow = false;
         int columnNo = 0;
@@ -381,4 +405,22 @@ public class ExportResultsIterator implements Iterator<List<ResultElement>>
         }
         return multiRow;
     }
+
+    /**
+     * Describes a column of the results that holds a value rather than an object, and the view
+     * columns it is shown in.
+     */
+    private static class ValueColumn
+    {
+        private final Map<Path, Integer> fieldToColumnNumber;
+
+        ValueColumn(Map<Path, Integer> fieldToColumnNumber) {
+            this.fieldToColumnNumber = fieldToColumnNumber;
+        }
+
+        @Override
+        public String toString() {
+            return "Value" + fieldToColumnNumber;
+        }
+    }
 }
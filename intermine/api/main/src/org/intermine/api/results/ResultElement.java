@@ -56,6 +56,23 @@ public class ResultElement implements Serializable, ResultCell
         }
     }
 
+    private ResultElement(Path path, Object fieldValue, boolean isKeyField) {
+        this.field = fieldValue;
+        this.path = path;
+        this.keyField = isKeyField;
+    }
+
+    /**
+     * Creates a ResultElement for a value fetched without the object that holds it.
+     * @param fieldValue the value of the field
+     * @param path the Path
+     * @param isKeyField should be true if this is an identifying field
+     * @return a new ResultElement
+     */
+    public static ResultElement forValue(Object fieldValue, Path path, boolean isKeyField) {
+        return new ResultElement(path, fieldValue, isKeyField);
+    }
+
     /**
      * Create a ResultElement that displays a single raw value.
      * @param fieldValue the value to hold in this object
@@ -0,0 +1,157 @@
+package org.intermine.api.bag;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import junit.framework.TestCase;
+
+import org.intermine.objectstore.dummy.ObjectStoreDummyImpl;
+
+public class BagQueryIndexTest extends TestCase
+{
+    private BagQueryIndex.Index index;
+
+    public BagQueryIndexTest(String arg) {
+        super(arg);
+    }
+
+    public void setUp() throws Exception {
+        super.setUp();
+        List<List<Object>> rows = new ArrayList<List<Object>>();
+        rows.add(Arrays.asList((Object) new Integer(1), "EmployeeA1", "ea1"));
+        rows.add(Arrays.asList((Object) new Integer(2), "EmployeeA2", null));
+        rows.add(Arrays.asList((Object) new Integer(3), "employeea1", "EmployeeA1"));
+        rows.add(Arrays.asList((Object) new Integer(4), "EmployeeB1", new Integer(42)));
+        index = BagQueryIndex.Index.build(rows, 100, null);
+    }
+
+    private Set<Integer> ids(int... ids) {
+        Set<Integer> retval = new LinkedHashSet<Integer>();
+        for (int id : ids) {
+            retval.add(new Integer(id));
+        }
+        return retval;
+    }
+
+    public void testLookup() throws Exception {
+        assertEquals(7, index.size());
+        assertEquals(ids(1, 3), index.lookup("EMPLOYEEA1", false));
+        assertEquals(ids(1, 3), index.lookup("EmployeeA1", true));
+        assertEquals(ids(3), index.lookup("employeea1", true));
+        assertEquals(ids(), index.lookup("EMPLOYEEA1", true));
+        assertEquals(ids(4), index.lookup("42", false));
+        assertEquals(ids(), index.lookup("EmployeeC1", false));
+    }
+
+    public void testLookupWildcard() throws Exception {
+        assertEquals(ids(1, 2, 3), index.lookupWildcard("employeea*",
+                    Pattern.compile("employeea.*")));
+        assertEquals(ids(1, 3, 4), index.lookupWildcard("*1", Pattern.compile(".*1")));
+        assertEquals(ids(), index.lookupWildcard("x*", Pattern.compile("x.*")));
+    }
+
+    public void testGetFixedPrefix() throws Exception {
+        assertEquals("employee", BagQueryIndex.getFixedPrefix("employee*a"));
+        assertEquals("", BagQueryIndex.getFixedPrefix("*a"));
+        assertEquals("a", BagQueryIndex.getFixedPrefix("a.b*"));
+        assertEquals("abc", BagQueryIndex.getFixedPrefix("abc"));
+    }
+
+    public void testSortsManyIdentifiers() throws Exception {
+        Random random = new Random(42);
+        List<List<Object>> rows = new ArrayList<List<Object>>();
+        Map<String, Set<Integer>> expected = new HashMap<String, Set<Integer>>();
+        for (int id = 0; id < 2000; id++) {
+            String identifier = "Gene" + random.nextInt(500);
+            rows.add(Arrays.asList((Object) new Integer(id), identifier));
+            if (!expected.containsKey(identifier.toLowerCase())) {
+                expected.put(identifier.toLowerCase(), new TreeSet<Integer>());
+            }
+            expected.get(identifier.toLowerCase()).add(new Integer(id));
+        }
+        Collections.shuffle(rows, random);
+        BagQueryIndex.Index large = BagQueryIndex.Index.build(rows, 2000, null);
+        assertEquals(2000, large.size());
+        for (Map.Entry<String, Set<Integer>> entry : expected.entrySet()) {
+            // ids come out in order for each identifier
+            assertEquals(new ArrayList<Integer>(entry.getValue()),
+                    new ArrayList<Integer>(large.lookup(entry.getKey(), false)));
+        }
+    }
+
+    public void testConcurrentFirstUseBuildsOnce() throws Exception {
+        final AtomicInteger builds = new AtomicInteger();
+        final CountDownLatch building = new CountDownLatch(1);
+        final CountDownLatch finish = new CountDownLatch(1);
+        final BagQueryIndex bagQueryIndex = new BagQueryIndex(new ObjectStoreDummyImpl(), 100) {
+            @Override
+            Index buildIndex(String key, BagQuery bq, String extraFieldValue) {
+                builds.incrementAndGet();
+                building.countDown();
+                try {
+                    finish.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                return Index.build(Collections.singletonList(
+                            Arrays.asList((Object) new Integer(1), "a")), 100,
+                        new Stamp(Collections.emptySet(), new HashMap<Object, Integer>()));
+            }
+        };
+        final BagQueryIndex.Index[] results = new BagQueryIndex.Index[2];
+        Thread first = new Thread() {
+            @Override
+            public void run() {
+                results[0] = bagQueryIndex.getIndex("Gene", null, null);
+            }
+        };
+        Thread second = new Thread() {
+            @Override
+            public void run() {
+                results[1] = bagQueryIndex.getIndex("Gene", null, null);
+            }
+        };
+        first.start();
+        assertTrue(building.await(10, TimeUnit.SECONDS));
+        second.start();
+        // Give the second thread time to find the index being built
+        Thread.sleep(100);
+        finish.countDown();
+        first.join(10000);
+        second.join(10000);
+        assertEquals(1, builds.get());
+        assertNotNull(results[0]);
+        assertSame(results[0], results[1]);
+        assertSame(results[0], bagQueryIndex.getIndex("Gene", null, null));
+        assertEquals(1, builds.get());
+    }
+
+    public void testTooLarge() throws Exception {
+        List<List<Object>> rows = Collections.singletonList(
+                Arrays.asList((Object) new Integer(1), "a", "b", "c"));
+        assertNull(BagQueryIndex.Index.build(rows, 2, null));
+        assertNotNull(BagQueryIndex.Index.build(rows, 3, null));
+    }
+}
@@ -0,0 +1,98 @@
+package org.intermine.api.idresolution;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class JobSchedulerTest extends TestCase
+{
+    private JobScheduler scheduler;
+    private List<String> order;
+    private CountDownLatch blocker;
+
+    public JobSchedulerTest(String arg) {
+        super(arg);
+    }
+
+    public void setUp() throws Exception {
+        super.setUp();
+        scheduler = new JobScheduler(1, 10);
+        order = Collections.synchronizedList(new ArrayList<String>());
+        blocker = new CountDownLatch(1);
+    }
+
+    public void tearDown() throws Exception {
+        scheduler.shutdown();
+        super.tearDown();
+    }
+
+    private Runnable record(final String name, final CountDownLatch done) {
+        return new Runnable() {
+            public void run() {
+                order.add(name);
+                done.countDown();
+            }
+        };
+    }
+
+    private void blockWorker() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        scheduler.submit("anyone", 1, new Runnable() {
+            public void run() {
+                started.countDown();
+                try {
+                    blocker.await();
+                } catch (InterruptedException e) {
+                    // Finish
+                }
+            }
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+    }
+
+    public void testOrder() throws Exception {
+        blockWorker();
+        CountDownLatch done = new CountDownLatch(6);
+        scheduler.submit("alice", 100, record("alice1", done));
+        scheduler.submit("alice", 100, record("alice2", done));
+        scheduler.submit("alice", 100, record("alice3", done));
+        scheduler.submit("bob", 100, record("bob1", done));
+        scheduler.submit(null, 100, record("anon1", done));
+        scheduler.submit("carol", 5, record("small", done));
+        assertEquals(6, scheduler.getQueueLength());
+        blocker.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("small", "alice1", "bob1", "anon1", "alice2", "alice3"), order);
+        assertEquals(0, scheduler.getQueueLength());
+    }
+
+    public void testShutdown() throws Exception {
+        blockWorker();
+        CountDownLatch done = new CountDownLatch(1);
+        scheduler.submit("alice", 100, record("alice1", done));
+        scheduler.shutdown();
+        assertEquals(0, scheduler.getQueueLength());
+        try {
+            scheduler.submit("alice", 100, record("alice2", done));
+            fail("Expected an IllegalStateException");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        assertTrue(order.isEmpty());
+    }
+}
@@ -0,0 +1,86 @@
+package org.intermine.api.profile;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.HashMap;
+
+import junit.framework.TestCase;
+
+import org.intermine.api.template.ApiTemplate;
+
+public class ProfileCacheTest extends TestCase
+{
+    public ProfileCacheTest(String arg) {
+        super(arg);
+    }
+
+    private Profile profile(String username) {
+        return new Profile(null, username, null, null,
+                new HashMap<String, SavedQuery>(), new HashMap<String, InterMineBag>(),
+                new HashMap<String, ApiTemplate>(), null, true, false);
+    }
+
+    public void testGetPutRemove() throws Exception {
+        ProfileCache cache = new ProfileCache(10);
+        Profile alice = profile("alice");
+        cache.put("alice", alice);
+        assertSame(alice, cache.get("alice"));
+        assertTrue(cache.containsKey("alice"));
+        assertNull(cache.get("bob"));
+        assertNull(cache.get(null));
+        assertFalse(cache.containsKey(null));
+        cache.remove("alice");
+        assertNull(cache.get("alice"));
+        assertEquals(0, cache.size());
+    }
+
+    public void testEvictsLeastRecentlyUsed() throws Exception {
+        ProfileCache cache = new ProfileCache(10);
+        for (int i = 0; i < 10; i++) {
+            cache.put("user" + i, profile("user" + i));
+            Thread.sleep(1);
+        }
+        // Use the oldest one again, so that it is kept
+        assertNotNull(cache.get("user0"));
+        Thread.sleep(1);
+        cache.put("user10", profile("user10"));
+        assertEquals(9, cache.size());
+        assertTrue(cache.containsKey("user0"));
+        assertTrue(cache.containsKey("user10"));
+        assertTrue(cache.containsKey("user3"));
+    }
+
+    public void testEvictedProfileInUseIsReturned() throws Exception {
+        ProfileCache cache = new ProfileCache(10);
+        // Held here as a session would hold them
+        Profile[] profiles = new Profile[11];
+        for (int i = 0; i < 11; i++) {
+            profiles[i] = profile("user" + i);
+            cache.put("user" + i, profiles[i]);
+            Thread.sleep(1);
+        }
+        // user0 and user1 were evicted
+        assertEquals(9, cache.size());
+        assertTrue(cache.containsKey("user1"));
+        assertSame(profiles[1], cache.get("user1"));
+        // and user1 is held by the cache again
+        assertEquals(10, cache.size());
+        assertSame(profiles[3], cache.get("user3"));
+        assertEquals(10, cache.size());
+
+        cache.remove("user0");
+        assertFalse(cache.containsKey("user0"));
+        assertNull(cache.get("user0"));
+        Profile replacement = profile("user1");
+        cache.put("user1", replacement);
+        assertSame(replacement, cache.get("user1"));
+    }
+}
@@ -0,0 +1,89 @@
+package org.intermine.api.profile;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.intermine.model.userprofile.Tag;
+import org.intermine.util.DynamicUtil;
+
+public class TagIndexTest extends TestCase
+{
+    private TagIndex index;
+
+    public TagIndexTest(String arg) {
+        super(arg);
+    }
+
+    public void setUp() throws Exception {
+        super.setUp();
+        index = new TagIndex();
+        index.add(tag(1, "im:public", "list1", "bag"), "superuser");
+        index.add(tag(2, "favourite", "list1", "bag"), "bob");
+        index.add(tag(3, "favourite", "list2", "bag"), "bob");
+        index.add(tag(4, "im:public", "Employee", "class"), "superuser");
+        index.add(tag(5, "aspect:People", "list1", "bag"), "bob");
+    }
+
+    private static Tag tag(int id, String name, String objectIdentifier, String type) {
+        Tag tag = (Tag) DynamicUtil.createObject(Collections.singleton(Tag.class));
+        tag.setId(new Integer(id));
+        tag.setTagName(name);
+        tag.setObjectIdentifier(objectIdentifier);
+        tag.setType(type);
+        return tag;
+    }
+
+    private static List<Integer> ids(List<Tag> tags) {
+        List<Integer> retval = new ArrayList<Integer>();
+        for (Tag tag : tags) {
+            retval.add(tag.getId());
+        }
+        return retval;
+    }
+
+    public void testFind() throws Exception {
+        assertEquals(Arrays.asList(5, 2, 1), ids(index.find(null, "list1", "bag", null)));
+        assertEquals(Arrays.asList(5, 2), ids(index.find(null, "list1", "bag", "bob")));
+        assertEquals(Arrays.asList(2, 3), ids(index.find("favourite", null, null, "bob")));
+        assertEquals(Arrays.asList(1, 4), ids(index.find("im:public", null, null, null)));
+        assertEquals(Arrays.asList(4), ids(index.find(null, null, "class", null)));
+        assertEquals(Arrays.asList(5, 2, 3), ids(index.find(null, null, null, "bob")));
+        assertEquals(Arrays.asList(5, 2), ids(index.find(null, "list1", null, "bob")));
+        assertEquals(5, index.find(null, null, null, null).size());
+        assertTrue(index.find(null, "list3", "bag", null).isEmpty());
+        assertTrue(index.find(null, null, null, "alice").isEmpty());
+    }
+
+    public void testAddAndRemove() throws Exception {
+        assertTrue(index.hasUser("bob"));
+        assertTrue(index.remove(new Integer(2)));
+        assertFalse(index.remove(new Integer(2)));
+        assertNull(index.get(new Integer(2)));
+        assertEquals(Arrays.asList(5), ids(index.find(null, "list1", "bag", "bob")));
+        assertTrue(index.remove(new Integer(3)));
+        assertTrue(index.remove(new Integer(5)));
+        assertFalse(index.hasUser("bob"));
+
+        Tag tag = tag(6, "favourite", "list1", "bag");
+        index.add(tag, "alice");
+        assertSame(tag, index.get(new Integer(6)));
+        // Adding the same tag again replaces it
+        index.add(tag, "alice");
+        assertEquals(Arrays.asList(6), ids(index.find(null, null, null, "alice")));
+        assertEquals(3, index.size());
+    }
+}
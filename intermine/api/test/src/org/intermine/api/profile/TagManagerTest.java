@@ -64,6 +64,36 @@ public class TagManagerTest extends InterMineAPITestCase
         assertEquals(0, manager.getTagsByName(tagName, bobProfile, TagTypes.BAG).size());
     }
 
+    public void testDeleteTagsInTransaction() throws Exception {
+        manager.addTag("list1Tag", "list1", "bag", "bob");
+        manager.addTag("list2Tag", "list2", "bag", "bob");
+        ObjectStoreWriter uosw = pm.getProfileObjectStoreWriter();
+        try {
+            manager.deleteTagsInTransaction(manager.getUserTags("bob"));
+            fail("Expected an IllegalStateException outside a transaction");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        // A rolled back deletion leaves the tags in memory
+        uosw.beginTransaction();
+        try {
+            manager.deleteTagsInTransaction(manager.getUserTags("bob"));
+            assertEquals(2, manager.getUserTags("bob").size());
+        } finally {
+            uosw.abortTransaction();
+        }
+        assertEquals(2, manager.getUserTags("bob").size());
+
+        // A committed one drops them once they are removed from memory
+        List<Tag> tags = manager.getUserTags("bob");
+        uosw.beginTransaction();
+        manager.deleteTagsInTransaction(tags);
+        uosw.commitTransaction();
+        manager.removeFromIndex(tags);
+        assertEquals(0, manager.getUserTags("bob").size());
+    }
+
     public void testGetTags() throws Exception {
         manager.addTag("list1Tag", "list1", "bag", "bob");
         manager.addTag("list2Tag", "list2", "bag", "bob");
@@ -55,6 +55,7 @@ import org.intermine.objectstore.query.QueryNode;
 import org.intermine.objectstore.query.QueryObjectPathExpression;
 import org.intermine.objectstore.query.QueryObjectReference;
 import org.intermine.objectstore.query.QueryValue;
+import org.intermine.objectstore.query.QuerySelectable;
 import org.intermine.objectstore.query.Queryable;
 import org.intermine.objectstore.query.SimpleConstraint;
 import org.intermine.pathquery.LogicExpression;
@@ -518,6 +519,32 @@ public class MainHelperTest extends TestCase {
     }
 
 
+    public void testSelectValuesOnly() throws Exception {
+        PathQuery pq = new PathQuery(os.getModel());
+        pq.addViews("Employee.name", "Employee.age", "Employee.department.name");
+        Map<String, QuerySelectable> pathToQueryNode = new HashMap<String, QuerySelectable>();
+        Query q = MainHelper.makeQuery(pq, new HashMap(), pathToQueryNode, bagQueryRunner,
+                new HashMap());
+        assertTrue(MainHelper.selectValuesOnly(q, pq, pathToQueryNode));
+
+        QueryClass qc1 = (QueryClass) pathToQueryNode.get("Employee");
+        QueryClass qc2 = (QueryClass) pathToQueryNode.get("Employee.department");
+        List<QuerySelectable> expected = Arrays.asList((QuerySelectable)
+                new QueryField(qc1, "name"), new QueryField(qc1, "age"),
+                new QueryField(qc2, "name"), new QueryField(qc1, "id"),
+                new QueryField(qc2, "id"));
+        assertEquals(expected, q.getSelect());
+
+        // Outer joins select path expressions, so the objects are still needed
+        pq.setOuterJoinStatus("Employee.department", OuterJoinStatus.OUTER);
+        pathToQueryNode = new HashMap<String, QuerySelectable>();
+        q = MainHelper.makeQuery(pq, new HashMap(), pathToQueryNode, bagQueryRunner,
+                new HashMap());
+        String before = q.toString();
+        assertFalse(MainHelper.selectValuesOnly(q, pq, pathToQueryNode));
+        assertEquals(before, q.toString());
+    }
+
     // Test that NULL/NOT NULL constraints work either side of outer joins in a query but where
     // the NULL reference isn't itself an outer join.
     public void testNullReferenceOuterJoinElsewhere() throws Exception {
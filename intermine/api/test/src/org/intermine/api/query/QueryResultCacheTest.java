@@ -0,0 +1,154 @@
+package org.intermine.api.query;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.intermine.api.profile.InterMineBag;
+import org.intermine.api.results.ResultElement;
+import org.intermine.metadata.Model;
+import org.intermine.objectstore.dummy.ObjectStoreDummyImpl;
+import org.intermine.objectstore.query.Query;
+import org.intermine.pathquery.Constraints;
+import org.intermine.pathquery.PathQuery;
+import org.junit.Before;
+import org.junit.Test;
+
+public class QueryResultCacheTest {
+
+    private static final Map<String, InterMineBag> NO_BAGS = Collections.emptyMap();
+
+    private Model model;
+    private TableObjectStore os;
+    private QueryResultCache cache;
+    private Query q;
+
+    @Before
+    public void setup() {
+        model = Model.getInstanceByName("testmodel");
+        os = new TableObjectStore();
+        cache = new QueryResultCache(os, 10, 5, null, 0);
+        q = new Query();
+    }
+
+    @Test
+    public void keyIgnoresConstraintOrder() {
+        PathQuery pq1 = new PathQuery(model);
+        pq1.addViews("Employee.name", "Employee.age");
+        pq1.addConstraint(Constraints.eq("Employee.name", "EmployeeA1"));
+        pq1.addConstraint(Constraints.greaterThan("Employee.age", "10"));
+
+        // The codes are assigned in order, so here they are the other way round
+        PathQuery pq2 = new PathQuery(model);
+        pq2.addViews("Employee.name", "Employee.age");
+        pq2.addConstraint(Constraints.greaterThan("Employee.age", "10"));
+        pq2.addConstraint(Constraints.eq("Employee.name", "EmployeeA1"));
+        pq2.setDescription("Not part of the key");
+
+        assertEquals(QueryResultCache.makeKey(pq1, NO_BAGS),
+                QueryResultCache.makeKey(pq2, NO_BAGS));
+
+        PathQuery pq3 = new PathQuery(model);
+        pq3.addViews("Employee.age", "Employee.name");
+        pq3.addConstraint(Constraints.eq("Employee.name", "EmployeeA1"), "A");
+        pq3.addConstraint(Constraints.greaterThan("Employee.age", "10"), "B");
+        assertFalse(QueryResultCache.makeKey(pq1, NO_BAGS).equals(
+                QueryResultCache.makeKey(pq3, NO_BAGS)));
+    }
+
+    @Test
+    public void keyIgnoresConstraintOrderWithOrLogic() {
+        PathQuery pq1 = new PathQuery(model);
+        pq1.addViews("Employee.name", "Employee.age");
+        pq1.addConstraint(Constraints.eq("Employee.name", "EmployeeA1"));
+        pq1.addConstraint(Constraints.eq("Employee.name", "EmployeeB1"));
+        pq1.addConstraint(Constraints.greaterThan("Employee.age", "10"));
+        pq1.setConstraintLogic("(A or B) and C");
+
+        PathQuery pq2 = new PathQuery(model);
+        pq2.addViews("Employee.name", "Employee.age");
+        pq2.addConstraint(Constraints.greaterThan("Employee.age", "10"));
+        pq2.addConstraint(Constraints.eq("Employee.name", "EmployeeA1"));
+        pq2.addConstraint(Constraints.eq("Employee.name", "EmployeeB1"));
+        pq2.setConstraintLogic("(B or C) and A");
+
+        assertEquals(QueryResultCache.makeKey(pq1, NO_BAGS),
+                QueryResultCache.makeKey(pq2, NO_BAGS));
+
+        // The same constraints combined differently
+        pq2.setConstraintLogic("(A or B) and C");
+        assertFalse(QueryResultCache.makeKey(pq1, NO_BAGS).equals(
+                QueryResultCache.makeKey(pq2, NO_BAGS)));
+    }
+
+    @Test
+    public void partialPages() {
+        cache.put("key", cache.getSequence(q), makeRows(4), false);
+        assertEquals(makeRows(4).subList(1, 3), cache.get("key", null, q, 1, 2));
+        assertEquals(makeRows(4), cache.get("key", null, q, 0, 4));
+        // The entry doesn't hold every row, so it can't answer a page past its end
+        assertNull(cache.get("key", null, q, 2, 5));
+
+        cache.put("key", cache.getSequence(q), makeRows(4), true);
+        assertEquals(makeRows(4).subList(2, 4), cache.get("key", null, q, 2, 5));
+        assertEquals(0, cache.get("key", null, q, 10, 5).size());
+    }
+
+    @Test
+    public void databaseAltered() {
+        cache.put("key", cache.getSequence(q), makeRows(3), true);
+        assertEquals(makeRows(3), cache.get("key", null, q, 0, 10));
+        os.changeSequence(os.getComponentsForQuery(q));
+        assertNull(cache.get("key", null, q, 0, 10));
+    }
+
+    @Test
+    public void sizeBounds() {
+        // Too big for one entry
+        cache.put("big", cache.getSequence(q), makeRows(6), true);
+        assertNull(cache.get("big", null, q, 0, 1));
+
+        cache.put("first", cache.getSequence(q), makeRows(5), true);
+        cache.put("second", cache.getSequence(q), makeRows(5), true);
+        assertEquals(makeRows(5), cache.get("first", null, q, 0, 5));
+        // Evicts "second", as "first" has been used more recently
+        cache.put("third", cache.getSequence(q), makeRows(5), true);
+        assertNull(cache.get("second", null, q, 0, 5));
+        assertEquals(makeRows(5), cache.get("first", null, q, 0, 5));
+        assertEquals(makeRows(5), cache.get("third", null, q, 0, 5));
+    }
+
+    private static List<List<ResultElement>> makeRows(int count) {
+        List<List<ResultElement>> rows = new ArrayList<List<ResultElement>>();
+        for (int i = 0; i < count; i++) {
+            rows.add(Collections.singletonList(new ResultElement("Row " + i)));
+        }
+        return rows;
+    }
+
+    private static class TableObjectStore extends ObjectStoreDummyImpl
+    {
+        private final Set<Object> tables = Collections.<Object>singleton("employee");
+
+        @Override
+        public Set<Object> getComponentsForQuery(Query q) {
+            return tables;
+        }
+    }
+}
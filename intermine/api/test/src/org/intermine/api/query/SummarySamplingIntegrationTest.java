@@ -0,0 +1,123 @@
+package org.intermine.api.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.intermine.model.testmodel.Department;
+import org.intermine.model.testmodel.Employee;
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.objectstore.ObjectStoreWriter;
+import org.intermine.objectstore.ObjectStoreWriterFactory;
+import org.intermine.objectstore.query.Query;
+import org.intermine.objectstore.query.Results;
+import org.intermine.pathquery.Constraints;
+import org.intermine.pathquery.PathQuery;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests that sampling a many-to-one column for an approximate summary keeps every value, with
+ * counts close to the exact ones.
+ */
+public class SummarySamplingIntegrationTest {
+
+    private static final int EMP_COUNT = 8000;
+    private static final int SAMPLE_RATE = 4;
+    // The share of the employees in each department, out of 10
+    private static final int[] WEIGHTS = new int[] {4, 3, 2, 1};
+
+    private static ObjectStoreWriter osw;
+    private static Map<String, Integer> exactCounts = new HashMap<String, Integer>();
+
+    @BeforeClass
+    public static void loadData() throws ObjectStoreException {
+        osw = ObjectStoreWriterFactory.getObjectStoreWriter("osw.unittest");
+        try {
+            osw.beginTransaction();
+            Department[] departments = new Department[WEIGHTS.length];
+            for (int i = 0; i < departments.length; i++) {
+                departments[i] = new Department();
+                departments[i].setName("sampling-department-" + i);
+                osw.store(departments[i]);
+                exactCounts.put(departments[i].getName(), 0);
+            }
+            Random random = new Random(42);
+            for (int i = 0; i < EMP_COUNT; i++) {
+                int choice = random.nextInt(10);
+                int department = 0;
+                while (choice >= WEIGHTS[department]) {
+                    choice -= WEIGHTS[department];
+                    department++;
+                }
+                Employee e = new Employee();
+                e.setName("sampling-employee-" + i);
+                e.setDepartment(departments[department]);
+                osw.store(e);
+                String name = departments[department].getName();
+                exactCounts.put(name, exactCounts.get(name) + 1);
+            }
+            osw.commitTransaction();
+        } finally {
+            if (osw.isInTransaction()) {
+                osw.abortTransaction();
+            }
+        }
+    }
+
+    @AfterClass
+    public static void deleteData() throws Exception {
+        try {
+            osw.beginTransaction();
+            PathQuery pq = new PathQuery(osw.getModel());
+            pq.addViews("Employee.id", "Employee.department.id");
+            pq.addConstraint(Constraints.eq("Employee.name", "sampling-employee*"));
+            Query q = MainHelper.makeQuery(pq, new HashMap(), new HashMap(), null, new HashMap());
+            Results res = osw.execute(q, 50000, true, false, true);
+            Set<Object> departments = new HashSet<Object>();
+            for (Object row : res) {
+                osw.delete((Employee) ((List) row).get(0));
+                departments.add(((List) row).get(1));
+            }
+            for (Object department : departments) {
+                osw.delete((Department) department);
+            }
+            osw.commitTransaction();
+        } finally {
+            if (osw.isInTransaction()) {
+                osw.abortTransaction();
+            }
+            osw.close();
+        }
+    }
+
+    @Test
+    public void testManyToOneSample() throws Exception {
+        PathQuery pq = new PathQuery(osw.getModel());
+        pq.addViews("Employee.name", "Employee.department.name");
+        pq.addConstraint(Constraints.eq("Employee.name", "sampling-employee*"));
+        Query q = MainHelper.makeSummaryValuesQuery(pq, "Employee.department.name",
+                new HashMap(), null, SAMPLE_RATE);
+
+        Map<String, Integer> sampledCounts = new HashMap<String, Integer>();
+        for (Object row : osw.execute(q, 10000, true, false, true)) {
+            String name = (String) ((List) row).get(0);
+            Integer count = sampledCounts.get(name);
+            sampledCounts.put(name, (count == null) ? 1 : count + 1);
+        }
+        for (Map.Entry<String, Integer> exact : exactCounts.entrySet()) {
+            // Sampling on the department would drop whole departments
+            Integer sampled = sampledCounts.get(exact.getKey());
+            assertNotNull("No rows sampled for " + exact.getKey(), sampled);
+            assertEquals("Count for " + exact.getKey(), exact.getValue().doubleValue(),
+                    sampled.doubleValue() * SAMPLE_RATE, exact.getValue().doubleValue() * 0.25);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package org.intermine.api.query;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.intermine.api.profile.InterMineBag;
+import org.intermine.metadata.Model;
+import org.intermine.model.testmodel.Department;
+import org.intermine.model.testmodel.Employee;
+import org.intermine.objectstore.query.Constraint;
+import org.intermine.objectstore.query.ConstraintSet;
+import org.intermine.objectstore.query.Query;
+import org.intermine.objectstore.query.QueryClass;
+import org.intermine.objectstore.query.QueryEvaluable;
+import org.intermine.objectstore.query.QueryExpression;
+import org.intermine.objectstore.query.QueryField;
+import org.intermine.objectstore.query.QuerySelectable;
+import org.intermine.objectstore.query.QueryValue;
+import org.intermine.objectstore.query.SimpleConstraint;
+import org.intermine.pathquery.PathQuery;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the sampling constraint of MainHelper.makeSummaryValuesQuery() without a database, by
+ * evaluating it for made-up rows.
+ */
+public class SummarySamplingTest
+{
+    private static final int EMP_COUNT = 8000;
+    private static final int SAMPLE_RATE = 4;
+    // The share of the employees in each department, out of 10
+    private static final int[] WEIGHTS = new int[] {4, 3, 2, 1};
+    // Only one department has an id that is a multiple of the sample rate
+    private static final int[] DEPARTMENT_IDS = new int[] {8001, 8002, 8003, 8004};
+
+    private PathQuery pq;
+
+    @Before
+    public void setUp() {
+        pq = new PathQuery(Model.getInstanceByName("testmodel"));
+        pq.addViews("Employee.name", "Employee.department.name");
+    }
+
+    @Test
+    public void testSampleUsesEveryObjectOfTheRow() throws Exception {
+        Query subQ = getSubQuery(SAMPLE_RATE);
+        SimpleConstraint sample = findSampleConstraint(subQ.getConstraint());
+        assertNotNull("No sampling constraint in " + subQ, sample);
+        Set<QueryClass> expected = new HashSet<QueryClass>();
+        for (QuerySelectable qs : subQ.getSelect()) {
+            if (qs instanceof QueryClass) {
+                expected.add((QueryClass) qs);
+            }
+        }
+        assertEquals(2, expected.size());
+        Set<QueryClass> used = new HashSet<QueryClass>();
+        evaluate(sample.getArg1(), null, used);
+        assertEquals(expected, used);
+    }
+
+    @Test
+    public void testManyToOneSampleKeepsEveryValue() throws Exception {
+        Query subQ = getSubQuery(SAMPLE_RATE);
+        SimpleConstraint sample = findSampleConstraint(subQ.getConstraint());
+        QueryClass employee = null;
+        QueryClass department = null;
+        for (QuerySelectable qs : subQ.getSelect()) {
+            if ((qs instanceof QueryClass) && Employee.class.equals(qs.getType())) {
+                employee = (QueryClass) qs;
+            } else if ((qs instanceof QueryClass) && Department.class.equals(qs.getType())) {
+                department = (QueryClass) qs;
+            }
+        }
+        assertNotNull(employee);
+        assertNotNull(department);
+
+        int[] exactCounts = new int[WEIGHTS.length];
+        int[] sampledCounts = new int[WEIGHTS.length];
+        Random random = new Random(42);
+        Map<QueryClass, Integer> row = new HashMap<QueryClass, Integer>();
+        for (int employeeId = 1; employeeId <= EMP_COUNT; employeeId++) {
+            int choice = random.nextInt(10);
+            int dept = 0;
+            while (choice >= WEIGHTS[dept]) {
+                choice -= WEIGHTS[dept];
+                dept++;
+            }
+            row.put(employee, Integer.valueOf(employeeId));
+            row.put(department, Integer.valueOf(DEPARTMENT_IDS[dept]));
+            exactCounts[dept]++;
+            if (evaluate(sample.getArg1(), row, null) == 0) {
+                sampledCounts[dept]++;
+            }
+        }
+        for (int dept = 0; dept < WEIGHTS.length; dept++) {
+            // Sampling on the department alone would drop all but one department
+            assertEquals("Count for department " + dept, exactCounts[dept],
+                    sampledCounts[dept] * SAMPLE_RATE, exactCounts[dept] * 0.25);
+        }
+    }
+
+    @Test
+    public void testNoSampleForRateOne() throws Exception {
+        assertNull(findSampleConstraint(getSubQuery(1).getConstraint()));
+    }
+
+    private Query getSubQuery(int sampleRate) throws Exception {
+        Query q = MainHelper.makeSummaryValuesQuery(pq, "Employee.department.name",
+                new HashMap<String, InterMineBag>(), null, sampleRate);
+        return (Query) ((QueryField) q.getSelect().get(0)).getFromElement();
+    }
+
+    private static SimpleConstraint findSampleConstraint(Constraint c) {
+        if (c instanceof ConstraintSet) {
+            for (Constraint sub : ((ConstraintSet) c).getConstraints()) {
+                SimpleConstraint found = findSampleConstraint(sub);
+                if (found != null) {
+                    return found;
+                }
+            }
+        } else if ((c instanceof SimpleConstraint)
+                && (((SimpleConstraint) c).getArg1() instanceof QueryExpression)
+                && (((QueryExpression) ((SimpleConstraint) c).getArg1()).getOperation()
+                    == QueryExpression.MODULO)) {
+            return (SimpleConstraint) c;
+        }
+        return null;
+    }
+
+    /**
+     * Works out the value of an expression of ids, numbers, additions and remainders, for a row
+     * with the given ids, and records which QueryClasses it uses.
+     */
+    private static long evaluate(QueryEvaluable qe, Map<QueryClass, Integer> row,
+            Set<QueryClass> used) {
+        if (qe instanceof QueryValue) {
+            return ((Number) ((QueryValue) qe).getValue()).longValue();
+        } else if (qe instanceof QueryField) {
+            QueryField qf = (QueryField) qe;
+            assertEquals("id", qf.getFieldName());
+            if (used != null) {
+                used.add((QueryClass) qf.getFromElement());
+            }
+            return (row == null) ? 1 : row.get(qf.getFromElement()).longValue();
+        } else if (qe instanceof QueryExpression) {
+            QueryExpression expression = (QueryExpression) qe;
+            long a = evaluate(expression.getArg1(), row, used);
+            long b = evaluate(expression.getArg2(), row, used);
+            if (expression.getOperation() == QueryExpression.ADD) {
+                return a + b;
+            } else if (expression.getOperation() == QueryExpression.MODULO) {
+                return a % b;
+            }
+        }
+        fail("Unexpected expression " + qe);
+        return 0;
+    }
+}
@@ -0,0 +1,105 @@
+package org.intermine.api.query.summary;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class ColumnSummaryTest {
+
+    @Test
+    public void testDistinctCount() {
+        HyperLogLog small = new HyperLogLog();
+        for (int i = 0; i < 1000; i++) {
+            small.offer("value" + (i % 100));
+        }
+        assertEquals(100, small.cardinality());
+
+        HyperLogLog large = new HyperLogLog();
+        for (int i = 0; i < 500000; i++) {
+            large.offer(new Integer(i));
+        }
+        assertEquals(500000.0, large.cardinality(), 500000 * 0.03);
+    }
+
+    @Test
+    public void testTopValues() {
+        ColumnSummary summary = new ColumnSummary(1, 10);
+        Set<String> distinct = new HashSet<String>();
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            // A few common values among many rare ones
+            String value = (i % 2 == 0) ? "common" + (i % 6) : "rare" + random.nextInt(50000);
+            summary.add(value);
+            distinct.add(value);
+        }
+        summary.add(null);
+        List<List<Object>> rows = summary.getOccurrences();
+        assertEquals(10, rows.size());
+        for (int i = 0; i < 3; i++) {
+            assertTrue(String.valueOf(rows.get(i).get(0)).startsWith("common"));
+            assertEquals(50000.0 / 3, ((Long) rows.get(i).get(1)).doubleValue(), 100.0);
+        }
+        assertEquals(distinct.size() + 1.0, summary.getDistinctCount(), distinct.size() * 0.03);
+    }
+
+    @Test
+    public void testHistogram() {
+        ColumnSummary summary = new ColumnSummary();
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            summary.add(new Double(random.nextDouble() * 100.0));
+        }
+        List<List<Object>> rows = summary.getHistogram(10);
+        assertEquals(10, rows.size());
+        long total = 0;
+        for (List<Object> row : rows) {
+            assertEquals(7, row.size());
+            assertEquals(new Integer(10), row.get(4));
+            total += ((Long) row.get(6)).longValue();
+        }
+        assertEquals(100000, total);
+        assertEquals(50.0, ((Double) rows.get(0).get(2)).doubleValue(), 1.0);
+        assertEquals(100.0 / Math.sqrt(12.0), ((Double) rows.get(0).get(3)).doubleValue(), 1.0);
+        // Each bucket is 10.1 wide, so holds about 10100 values, except the last
+        assertEquals(10100.0, ((Long) rows.get(0).get(6)).doubleValue(), 500.0);
+        assertEquals(50.0, summary.getQuantile(0.5), 1.0);
+        assertEquals(99.0, summary.getQuantile(0.99), 0.5);
+    }
+
+    @Test
+    public void testIntegerHistogramAndSampling() {
+        ColumnSummary summary = new ColumnSummary(10, ColumnSummary.DEFAULT_TOP_VALUES);
+        for (int i = 0; i < 1000; i++) {
+            summary.add(new Integer(i % 5));
+        }
+        assertTrue(summary.isSampled());
+        assertEquals(10000, summary.getCount());
+        assertEquals(5, summary.getDistinctCount());
+        List<List<Object>> rows = summary.getHistogram(20);
+        long total = 0;
+        for (List<Object> row : rows) {
+            // No more buckets than the range of the values
+            assertEquals(new Integer(4), row.get(4));
+            assertEquals(new Integer(0), row.get(0));
+            assertEquals(new Integer(4), row.get(1));
+            total += ((Long) row.get(6)).longValue();
+        }
+        assertEquals(10000, total);
+    }
+}
@@ -0,0 +1,82 @@
+package org.intermine.benchmark;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.intermine.objectstore.intermine.ObjectStoreInterMineImpl;
+import org.intermine.sql.writebatch.Batch;
+import org.intermine.sql.writebatch.BatchWriterPostgresCopyImpl;
+
+/**
+ * Writes a batch of rows into a table with the Postgres COPY batch writer. The table is truncated
+ * after each batch so that every batch is written into an empty table.
+ */
+public class BatchWriterBenchmark extends Benchmark
+{
+    private static final String TABLE = "benchmark_batch_writer";
+    private static final String[] COLUMNS = new String[] {"id", "age", "name"};
+    private static final int ROWS = 1000;
+
+    private ObjectStoreInterMineImpl os;
+    private Connection c;
+    private Batch batch;
+    private int nextId = 0;
+
+    @Override
+    public void setUp(ObjectStoreInterMineImpl os) throws Exception {
+        this.os = os;
+        c = os.getConnection();
+        c.setAutoCommit(false);
+        Statement s = c.createStatement();
+        try {
+            s.execute("DROP TABLE IF EXISTS " + TABLE);
+            s.execute("CREATE TABLE " + TABLE + " (id int, age int, name text)");
+        } finally {
+            s.close();
+        }
+        c.commit();
+        batch = new Batch(new BatchWriterPostgresCopyImpl());
+    }
+
+    @Override
+    public void run() throws Exception {
+        for (int i = 0; i < ROWS; i++) {
+            Integer id = Integer.valueOf(nextId++);
+            batch.addRow(c, TABLE, id, COLUMNS, new Object[] {id, Integer.valueOf(i % 70),
+                "Row number " + id});
+        }
+        batch.flush(c);
+        Statement s = c.createStatement();
+        try {
+            s.execute("TRUNCATE " + TABLE);
+        } finally {
+            s.close();
+        }
+        c.commit();
+    }
+
+    @Override
+    public void tearDown() throws SQLException {
+        try {
+            batch.close(c);
+            Statement s = c.createStatement();
+            s.execute("DROP TABLE " + TABLE);
+            s.close();
+            c.commit();
+            c.setAutoCommit(true);
+        } finally {
+            os.releaseConnection(c);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.intermine.benchmark;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import org.intermine.objectstore.intermine.ObjectStoreInterMineImpl;
+
+/**
+ * A microbenchmark of one hot path. The BenchmarkRunner calls setUp() once, then calls run()
+ * repeatedly while timing it, then calls tearDown(). Each call to run() should do the same amount
+ * of work, and should use its results (for example by passing them to consume()) so that the
+ * JIT compiler cannot discard the work as dead code.
+ */
+public abstract class Benchmark
+{
+    private int sink = 0;
+
+    /**
+     * Returns the name that the results of this benchmark are recorded under.
+     *
+     * @return a name, unique among the benchmarks
+     */
+    public String getName() {
+        String name = getClass().getSimpleName();
+        return name.endsWith("Benchmark") ? name.substring(0, name.length() - 9) : name;
+    }
+
+    /**
+     * Prepares the data that run() works on.
+     *
+     * @param os the ObjectStore for the testmodel database
+     * @throws Exception if anything goes wrong
+     */
+    public void setUp(ObjectStoreInterMineImpl os) throws Exception {
+        // empty
+    }
+
+    /**
+     * Performs one operation of the benchmark.
+     *
+     * @throws Exception if anything goes wrong
+     */
+    public abstract void run() throws Exception;
+
+    /**
+     * Releases anything that setUp() acquired.
+     *
+     * @throws Exception if anything goes wrong
+     */
+    public void tearDown() throws Exception {
+        // empty
+    }
+
+    /**
+     * Records that a result was used, to keep it from being optimised away.
+     *
+     * @param o the result of an operation
+     */
+    protected void consume(Object o) {
+        sink += System.identityHashCode(o);
+    }
+
+    /**
+     * Returns a value derived from everything passed to consume().
+     *
+     * @return an int of no meaning
+     */
+    int getSink() {
+        return sink;
+    }
+}
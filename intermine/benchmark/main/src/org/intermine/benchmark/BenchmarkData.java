@@ -0,0 +1,125 @@
+package org.intermine.benchmark;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.intermine.metadata.ConstraintOp;
+import org.intermine.model.testmodel.Address;
+import org.intermine.model.testmodel.Company;
+import org.intermine.model.testmodel.Department;
+import org.intermine.model.testmodel.Employee;
+import org.intermine.objectstore.ObjectStore;
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.objectstore.ObjectStoreWriter;
+import org.intermine.objectstore.query.Query;
+import org.intermine.objectstore.query.QueryClass;
+import org.intermine.objectstore.query.QueryField;
+import org.intermine.objectstore.query.QueryValue;
+import org.intermine.objectstore.query.SimpleConstraint;
+import org.intermine.util.DynamicUtil;
+
+/**
+ * The testmodel data that the benchmarks read, and the queries they run over it.
+ */
+public final class BenchmarkData
+{
+    private static final Logger LOG = Logger.getLogger(BenchmarkData.class);
+
+    /** The package of the testmodel classes, for IQL queries. */
+    public static final String PACKAGE = "org.intermine.model.testmodel";
+
+    /** A range of queries, from one class to several joined classes with functions. */
+    public static final String[] IQL_QUERIES = new String[] {
+        "SELECT a1_ FROM Employee AS a1_ WHERE a1_.age > 30 ORDER BY a1_.name",
+        "SELECT a1_, a2_ FROM Company AS a1_, Department AS a2_ WHERE a1_.departments CONTAINS a2_"
+            + " AND a2_.name = 'Benchmark department 1.1'",
+        "SELECT a1_, a2_, a3_ FROM Company AS a1_, Department AS a2_, Employee AS a3_"
+            + " WHERE a1_.departments CONTAINS a2_ AND a2_.employees CONTAINS a3_"
+            + " AND (a3_.age < 25 OR a3_.name LIKE 'Benchmark employee 1.%')"
+            + " ORDER BY a1_.name, a3_.age",
+        "SELECT a1_.name AS a2_, COUNT(*) AS a3_, AVG(a4_.age) AS a5_"
+            + " FROM Department AS a1_, Employee AS a4_ WHERE a1_.employees CONTAINS a4_"
+            + " GROUP BY a1_.name ORDER BY a1_.name"
+    };
+
+    private static final int COMPANIES = 10;
+    private static final int DEPARTMENTS_PER_COMPANY = 10;
+    private static final int EMPLOYEES_PER_DEPARTMENT = 20;
+    private static final String EMPLOYEE_PREFIX = "Benchmark employee ";
+
+    private BenchmarkData() {
+        // Hidden constructor.
+    }
+
+    /**
+     * Stores the benchmark data, unless an earlier run has already stored it.
+     *
+     * @param osw an ObjectStoreWriter for the testmodel database
+     * @throws ObjectStoreException if something goes wrong
+     */
+    public static void storeIfAbsent(ObjectStoreWriter osw) throws ObjectStoreException {
+        if (isStored(osw.getObjectStore())) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        List<Object> objects = new ArrayList<Object>();
+        for (int c = 0; c < COMPANIES; c++) {
+            Address address = new Address();
+            address.setAddress("Benchmark address " + c);
+            Company company = DynamicUtil.createObject(Company.class);
+            company.setName("Benchmark company " + c);
+            company.setVatNumber(1000 + c);
+            company.setAddress(address);
+            objects.add(address);
+            objects.add(company);
+            for (int d = 0; d < DEPARTMENTS_PER_COMPANY; d++) {
+                Department department = new Department();
+                department.setName("Benchmark department " + c + "." + d);
+                department.setCompany(company);
+                objects.add(department);
+                for (int e = 0; e < EMPLOYEES_PER_DEPARTMENT; e++) {
+                    Employee employee = new Employee();
+                    employee.setName(EMPLOYEE_PREFIX + c + "." + d + "." + e);
+                    employee.setAge(20 + ((c + d + e) % 45));
+                    employee.setFullTime(e % 3 != 0);
+                    employee.setDepartment(department);
+                    employee.setAddress(address);
+                    objects.add(employee);
+                }
+            }
+        }
+        osw.beginTransaction();
+        try {
+            for (Object o : objects) {
+                osw.store(o);
+            }
+            osw.commitTransaction();
+        } catch (ObjectStoreException e) {
+            osw.abortTransaction();
+            throw e;
+        }
+        LOG.info("Stored " + objects.size() + " benchmark objects in "
+                + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    private static boolean isStored(ObjectStore os) throws ObjectStoreException {
+        Query q = new Query();
+        QueryClass qc = new QueryClass(Employee.class);
+        q.addFrom(qc);
+        q.addToSelect(qc);
+        q.setConstraint(new SimpleConstraint(new QueryField(qc, "name"), ConstraintOp.MATCHES,
+                    new QueryValue(EMPLOYEE_PREFIX + "%")));
+        return os.count(q, ObjectStore.SEQUENCE_IGNORE) > 0;
+    }
+}
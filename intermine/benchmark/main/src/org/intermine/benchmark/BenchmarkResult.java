@@ -0,0 +1,82 @@
+package org.intermine.benchmark;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+/**
+ * The timings of one benchmark: the mean and standard deviation of the time per operation over
+ * the measured iterations.
+ */
+public class BenchmarkResult
+{
+    private final String name;
+    private final double[] nanosPerOp;
+    private final long operations;
+
+    /**
+     * Constructor.
+     *
+     * @param name the name of the benchmark
+     * @param nanosPerOp the time per operation of each measured iteration, in nanoseconds
+     * @param operations the total number of operations performed in the measured iterations
+     */
+    public BenchmarkResult(String name, double[] nanosPerOp, long operations) {
+        this.name = name;
+        this.nanosPerOp = nanosPerOp.clone();
+        this.operations = operations;
+    }
+
+    /**
+     * @return the name of the benchmark
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the total number of operations measured
+     */
+    public long getOperations() {
+        return operations;
+    }
+
+    /**
+     * @return the mean time per operation, in nanoseconds
+     */
+    public double getMean() {
+        double total = 0.0;
+        for (double value : nanosPerOp) {
+            total += value;
+        }
+        return total / nanosPerOp.length;
+    }
+
+    /**
+     * @return the standard deviation of the time per operation between iterations, in
+     * nanoseconds
+     */
+    public double getStandardDeviation() {
+        if (nanosPerOp.length < 2) {
+            return 0.0;
+        }
+        double mean = getMean();
+        double total = 0.0;
+        for (double value : nanosPerOp) {
+            total += (value - mean) * (value - mean);
+        }
+        return Math.sqrt(total / (nanosPerOp.length - 1));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-28s %14.1f ns/op  +/- %5.1f%%  (%d ops)", name, getMean(),
+                100.0 * getStandardDeviation() / getMean(), operations);
+    }
+}
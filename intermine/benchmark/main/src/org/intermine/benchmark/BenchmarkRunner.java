@@ -0,0 +1,177 @@
+package org.intermine.benchmark;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.log4j.Logger;
+import org.intermine.objectstore.intermine.ObjectStoreInterMineImpl;
+
+/**
+ * Runs Benchmarks and compares their results with a baseline. Each benchmark is run for a number
+ * of warmup iterations, to let the JIT compiler settle, then for a number of measured iterations.
+ * Each iteration calls the benchmark repeatedly for a fixed length of time.
+ *
+ * Results are saved as a Properties file mapping each benchmark name to its mean time per
+ * operation in nanoseconds, and a file saved from one run can be used as the baseline of a later
+ * one.
+ */
+public class BenchmarkRunner
+{
+    private static final Logger LOG = Logger.getLogger(BenchmarkRunner.class);
+
+    private final ObjectStoreInterMineImpl os;
+    private final int warmupIterations;
+    private final int iterations;
+    private final long iterationNanos;
+
+    /**
+     * Constructor.
+     *
+     * @param os the ObjectStore for the testmodel database
+     * @param warmupIterations the number of iterations to run before measuring
+     * @param iterations the number of iterations to measure
+     * @param iterationMillis the length of each iteration, in milliseconds
+     */
+    public BenchmarkRunner(ObjectStoreInterMineImpl os, int warmupIterations, int iterations,
+            long iterationMillis) {
+        if (iterations < 1) {
+            throw new IllegalArgumentException("At least one measured iteration is needed");
+        }
+        this.os = os;
+        this.warmupIterations = warmupIterations;
+        this.iterations = iterations;
+        this.iterationNanos = iterationMillis * 1000000L;
+    }
+
+    /**
+     * Returns one instance of every benchmark.
+     *
+     * @return a List of Benchmarks
+     */
+    public static List<Benchmark> getAllBenchmarks() {
+        return Arrays.<Benchmark>asList(
+                new IqlQueryParserBenchmark(),
+                new SqlGeneratorBenchmark(),
+                new MainHelperBenchmark(),
+                new NotXmlRendererBenchmark(),
+                new NotXmlParserBenchmark(),
+                new ResultsConverterBenchmark(),
+                new ResultsBatchBenchmark(false),
+                new ResultsBatchBenchmark(true),
+                new BatchWriterBenchmark(),
+                new DataTrackerBenchmark());
+    }
+
+    /**
+     * Runs a collection of benchmarks, one after another.
+     *
+     * @param benchmarks the Benchmarks to run
+     * @return a List of results, in the same order
+     * @throws Exception if a benchmark fails
+     */
+    public List<BenchmarkResult> runAll(Collection<Benchmark> benchmarks) throws Exception {
+        List<BenchmarkResult> results = new ArrayList<BenchmarkResult>();
+        for (Benchmark benchmark : benchmarks) {
+            BenchmarkResult result = run(benchmark);
+            LOG.info(result);
+            results.add(result);
+        }
+        return results;
+    }
+
+    /**
+     * Runs one benchmark.
+     *
+     * @param benchmark the Benchmark
+     * @return its result
+     * @throws Exception if the benchmark fails
+     */
+    public BenchmarkResult run(Benchmark benchmark) throws Exception {
+        benchmark.setUp(os);
+        try {
+            for (int i = 0; i < warmupIterations; i++) {
+                runIteration(benchmark);
+            }
+            double[] nanosPerOp = new double[iterations];
+            long operations = 0;
+            for (int i = 0; i < iterations; i++) {
+                long start = System.nanoTime();
+                long ops = runIteration(benchmark);
+                nanosPerOp[i] = ((double) (System.nanoTime() - start)) / ops;
+                operations += ops;
+            }
+            LOG.debug("Benchmark " + benchmark.getName() + " finished (" + benchmark.getSink()
+                    + ")");
+            return new BenchmarkResult(benchmark.getName(), nanosPerOp, operations);
+        } finally {
+            benchmark.tearDown();
+        }
+    }
+
+    private long runIteration(Benchmark benchmark) throws Exception {
+        long end = System.nanoTime() + iterationNanos;
+        long ops = 0;
+        do {
+            benchmark.run();
+            ops++;
+        } while (System.nanoTime() < end);
+        return ops;
+    }
+
+    /**
+     * Converts results into a form that can be saved, and used as the baseline of a later run.
+     *
+     * @param results a List of results
+     * @return a Properties object mapping benchmark name to mean nanoseconds per operation
+     */
+    public static Properties toProperties(List<BenchmarkResult> results) {
+        Properties props = new Properties();
+        for (BenchmarkResult result : results) {
+            props.setProperty(result.getName(), Double.toString(result.getMean()));
+        }
+        return props;
+    }
+
+    /**
+     * Compares results against a baseline, and produces a report.
+     *
+     * @param results the results of this run
+     * @param baseline the saved results of an earlier run, or null to just report the results
+     * @param tolerance the fraction by which a benchmark may be slower than the baseline before it
+     * is counted as a regression, for example 0.1 for 10%
+     * @param regressions a List to which the names of regressed benchmarks are added
+     * @return a report with one line per benchmark
+     */
+    public static String compare(List<BenchmarkResult> results, Properties baseline,
+            double tolerance, List<String> regressions) {
+        StringBuilder report = new StringBuilder();
+        for (BenchmarkResult result : results) {
+            report.append(result);
+            String previous = (baseline == null ? null : baseline.getProperty(result.getName()));
+            if (previous != null) {
+                double before = Double.parseDouble(previous);
+                double change = (result.getMean() - before) / before;
+                report.append(String.format("  %+6.1f%% vs baseline", 100.0 * change));
+                if (change > tolerance) {
+                    report.append("  REGRESSION");
+                    regressions.add(result.getName());
+                }
+            }
+            report.append("\n");
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,75 @@
+package org.intermine.benchmark;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.sql.Connection;
+import java.sql.Statement;
+
+import org.intermine.dataloader.DataTracker;
+import org.intermine.dataloader.Source;
+import org.intermine.objectstore.intermine.ObjectStoreInterMineImpl;
+import org.intermine.sql.Database;
+
+/**
+ * Records and looks up the sources of the fields of a batch of new objects, as the data loader
+ * does while merging. The cache is smaller than the number of objects written over a run, so
+ * entries are written back to the tracker table as they are evicted.
+ */
+public class DataTrackerBenchmark extends Benchmark
+{
+    private static final String[] FIELDS = new String[] {"name", "age", "department", "address"};
+    private static final int OBJECTS = 1000;
+
+    private Database db;
+    private DataTracker dt;
+    private Source source1, source2;
+    private int nextId = 0;
+
+    @Override
+    public void setUp(ObjectStoreInterMineImpl os) throws Exception {
+        db = os.getDatabase();
+        dropTrackerTable();
+        dt = new DataTracker(db, 10000, 1000);
+        source1 = dt.stringToSource("Source1");
+        source2 = dt.stringToSource("Source2");
+    }
+
+    @Override
+    public void run() {
+        for (int i = 0; i < OBJECTS; i++) {
+            Integer id = Integer.valueOf(nextId++);
+            for (String field : FIELDS) {
+                dt.setSource(id, field, ((i + field.length()) % 2 == 0) ? source1 : source2);
+            }
+            for (String field : FIELDS) {
+                consume(dt.getSource(id, field));
+            }
+        }
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        dt.close();
+        dropTrackerTable();
+    }
+
+    private void dropTrackerTable() throws Exception {
+        Connection c = db.getConnection();
+        try {
+            c.setAutoCommit(true);
+            Statement s = c.createStatement();
+            s.execute("DROP TABLE IF EXISTS tracker");
+            s.close();
+        } finally {
+            c.close();
+        }
+    }
+}
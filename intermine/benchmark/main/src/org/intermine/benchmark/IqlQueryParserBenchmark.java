@@ -0,0 +1,27 @@
+package org.intermine.benchmark;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import org.intermine.objectstore.query.iql.IqlQuery;
+import org.intermine.objectstore.query.iql.IqlQueryParser;
+
+/**
+ * Parses each of the benchmark IQL queries into a Query.
+ */
+public class IqlQueryParserBenchmark extends Benchmark
+{
+    @Override
+    public void run() {
+        for (String iql : BenchmarkData.IQL_QUERIES) {
+            consume(IqlQueryParser.parse(new IqlQuery(iql, BenchmarkData.PACKAGE)));
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package org.intermine.benchmark;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.intermine.api.profile.InterMineBag;
+import org.intermine.api.query.MainHelper;
+import org.intermine.objectstore.intermine.ObjectStoreInterMineImpl;
+import org.intermine.objectstore.query.QuerySelectable;
+import org.intermine.pathquery.Constraints;
+import org.intermine.pathquery.OrderDirection;
+import org.intermine.pathquery.OuterJoinStatus;
+import org.intermine.pathquery.PathQuery;
+
+/**
+ * Translates some PathQueries into ObjectStore Queries.
+ */
+public class MainHelperBenchmark extends Benchmark
+{
+    private static final Map<String, InterMineBag> NO_BAGS = Collections.emptyMap();
+
+    private List<PathQuery> queries;
+
+    @Override
+    public void setUp(ObjectStoreInterMineImpl os) {
+        queries = new ArrayList<PathQuery>();
+
+        PathQuery simple = new PathQuery(os.getModel());
+        simple.addViews("Employee.name", "Employee.age", "Employee.fullTime");
+        simple.addConstraint(Constraints.greaterThan("Employee.age", "30"));
+        simple.addOrderBy("Employee.name", OrderDirection.ASC);
+        queries.add(simple);
+
+        PathQuery joined = new PathQuery(os.getModel());
+        joined.addViews("Company.name", "Company.departments.name",
+                "Company.departments.employees.name", "Company.departments.employees.age");
+        joined.addConstraint(Constraints.like("Company.name", "Benchmark*"), "A");
+        joined.addConstraint(Constraints.lessThan("Company.departments.employees.age", "25"),
+                "B");
+        joined.addConstraint(Constraints.eq("Company.departments.employees.fullTime", "true"),
+                "C");
+        joined.setConstraintLogic("A and (B or C)");
+        queries.add(joined);
+
+        PathQuery outer = new PathQuery(os.getModel());
+        outer.addViews("Department.name", "Department.company.name",
+                "Department.employees.name", "Department.employees.address.address");
+        outer.setOuterJoinStatus("Department.employees", OuterJoinStatus.OUTER);
+        outer.addConstraint(Constraints.isNotNull("Department.company.vatNumber"));
+        queries.add(outer);
+    }
+
+    @Override
+    public void run() throws Exception {
+        for (PathQuery pq : queries) {
+            consume(MainHelper.makeQuery(pq, NO_BAGS, new HashMap<String, QuerySelectable>(),
+                        null, null));
+        }
+    }
+}
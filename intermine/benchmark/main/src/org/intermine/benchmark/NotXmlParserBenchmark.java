@@ -0,0 +1,71 @@
+package org.intermine.benchmark;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.intermine.model.InterMineObject;
+import org.intermine.model.testmodel.Employee;
+import org.intermine.objectstore.intermine.NotXmlParser;
+import org.intermine.objectstore.intermine.NotXmlRenderer;
+import org.intermine.objectstore.intermine.ObjectStoreInterMineImpl;
+import org.intermine.objectstore.query.Query;
+import org.intermine.objectstore.query.QueryClass;
+
+/**
+ * Parses a page of objects from NotXml, as when reading them from the database.
+ */
+public class NotXmlParserBenchmark extends Benchmark
+{
+    private static final int OBJECTS = 100;
+
+    private ObjectStoreInterMineImpl os;
+    private List<String> notXml;
+
+    @Override
+    public void setUp(ObjectStoreInterMineImpl os) throws Exception {
+        this.os = os;
+        notXml = new ArrayList<String>();
+        for (InterMineObject o : fetchObjects(os)) {
+            notXml.add(NotXmlRenderer.render(o).toString());
+        }
+    }
+
+    @Override
+    public void run() throws Exception {
+        for (String s : notXml) {
+            consume(NotXmlParser.parse(s, os));
+        }
+    }
+
+    /**
+     * Fetches a page of Employees, which have attributes of several types and references.
+     *
+     * @param os the ObjectStore to read from
+     * @return a List of objects
+     * @throws Exception if something goes wrong
+     */
+    static List<InterMineObject> fetchObjects(ObjectStoreInterMineImpl os) throws Exception {
+        Query q = new Query();
+        QueryClass qc = new QueryClass(Employee.class);
+        q.addFrom(qc);
+        q.addToSelect(qc);
+        List<InterMineObject> objects = new ArrayList<InterMineObject>();
+        for (Object o : os.executeSingleton(q, OBJECTS, false, false, false)) {
+            objects.add((InterMineObject) o);
+            if (objects.size() >= OBJECTS) {
+                break;
+            }
+        }
+        return objects;
+    }
+}
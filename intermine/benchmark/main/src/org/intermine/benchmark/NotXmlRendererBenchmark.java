@@ -0,0 +1,37 @@
+package org.intermine.benchmark;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.List;
+
+import org.intermine.model.InterMineObject;
+import org.intermine.objectstore.intermine.NotXmlRenderer;
+import org.intermine.objectstore.intermine.ObjectStoreInterMineImpl;
+
+/**
+ * Renders a page of objects into NotXml, as when storing them.
+ */
+public class NotXmlRendererBenchmark extends Benchmark
+{
+    private List<InterMineObject> objects;
+
+    @Override
+    public void setUp(ObjectStoreInterMineImpl os) throws Exception {
+        objects = NotXmlParserBenchmark.fetchObjects(os);
+    }
+
+    @Override
+    public void run() {
+        for (InterMineObject o : objects) {
+            consume(NotXmlRenderer.render(o));
+        }
+    }
+}
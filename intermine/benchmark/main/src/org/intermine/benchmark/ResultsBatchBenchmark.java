@@ -0,0 +1,75 @@
+package org.intermine.benchmark;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.List;
+
+import org.intermine.objectstore.intermine.ObjectStoreInterMineImpl;
+import org.intermine.objectstore.query.ColumnarBatch;
+import org.intermine.objectstore.query.Query;
+import org.intermine.objectstore.query.ResultsRow;
+import org.intermine.objectstore.query.iql.IqlQuery;
+import org.intermine.objectstore.query.iql.IqlQueryParser;
+
+/**
+ * Holds a batch of attribute values the way ResultsBatches does and reads every value back, either
+ * as a List of ResultsRows or as a ColumnarBatch. The rows are fetched once, so only the cost of
+ * holding and reading them is timed. The ColumnarBatch is built in every run, as ResultsBatches
+ * builds one for every batch it fetches once setColumnar() has been called.
+ */
+public class ResultsBatchBenchmark extends Benchmark
+{
+    private static final String IQL = "SELECT a1_.name, a1_.age, a1_.fullTime, a1_.end"
+        + " FROM Employee AS a1_ ORDER BY a1_.name";
+    private static final int LIMIT = 1000;
+
+    private final boolean columnar;
+    private Query q;
+    private List<ResultsRow<Object>> rows;
+
+    /**
+     * Constructor.
+     *
+     * @param columnar true to hold the batch as a ColumnarBatch
+     */
+    public ResultsBatchBenchmark(boolean columnar) {
+        this.columnar = columnar;
+    }
+
+    @Override
+    public String getName() {
+        return columnar ? "ResultsBatchColumnar" : "ResultsBatchRows";
+    }
+
+    @Override
+    public void setUp(ObjectStoreInterMineImpl os) throws Exception {
+        q = IqlQueryParser.parse(new IqlQuery(IQL, BenchmarkData.PACKAGE));
+        rows = os.execute(q, 0, LIMIT, false, false, os.getSequence(os.getComponentsForQuery(q)));
+    }
+
+    @Override
+    public void run() throws Exception {
+        if (columnar) {
+            ColumnarBatch batch = ColumnarBatch.create(rows, q.getSelect());
+            for (int row = 0; row < batch.size(); row++) {
+                for (int column = 0; column < batch.getColumnCount(); column++) {
+                    consume(batch.getValue(row, column));
+                }
+            }
+        } else {
+            for (ResultsRow<Object> row : rows) {
+                for (Object value : row) {
+                    consume(value);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package org.intermine.benchmark;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Map;
+
+import org.intermine.objectstore.intermine.ExtraQueryTime;
+import org.intermine.objectstore.intermine.ObjectStoreInterMineImpl;
+import org.intermine.objectstore.intermine.ResultsConverter;
+import org.intermine.objectstore.intermine.SqlGenerator;
+import org.intermine.objectstore.query.Query;
+import org.intermine.objectstore.query.iql.IqlQuery;
+import org.intermine.objectstore.query.iql.IqlQueryParser;
+
+/**
+ * Runs the SQL for a query that returns a page of joined objects, and converts the rows into
+ * objects. The time includes fetching the rows over JDBC, as that happens while they are being
+ * converted.
+ */
+public class ResultsConverterBenchmark extends Benchmark
+{
+    private static final String IQL = "SELECT a1_, a2_ FROM Department AS a1_, Employee AS a2_"
+        + " WHERE a1_.employees CONTAINS a2_ ORDER BY a2_.name";
+    private static final int LIMIT = 1000;
+
+    private ObjectStoreInterMineImpl os;
+    private Connection c;
+    private Query q;
+    private String sql;
+    private Map<Object, Integer> sequence;
+
+    @Override
+    public void setUp(ObjectStoreInterMineImpl os) throws Exception {
+        this.os = os;
+        q = IqlQueryParser.parse(new IqlQuery(IQL, BenchmarkData.PACKAGE));
+        sql = SqlGenerator.generate(q, 0, LIMIT, os.getSchema(), os.getDatabase(),
+                Collections.<Object, String>emptyMap());
+        sequence = os.getSequence(os.getComponentsForQuery(q));
+        c = os.getConnection();
+    }
+
+    @Override
+    public void run() throws Exception {
+        Statement s = c.createStatement();
+        try {
+            ResultSet sqlResults = s.executeQuery(sql);
+            consume(ResultsConverter.convert(sqlResults, q, os, c, sequence, false,
+                        new ExtraQueryTime(), null, null));
+        } finally {
+            s.close();
+        }
+    }
+
+    @Override
+    public void tearDown() {
+        os.releaseConnection(c);
+    }
+}
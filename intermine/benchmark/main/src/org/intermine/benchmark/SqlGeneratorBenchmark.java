@@ -0,0 +1,53 @@
+package org.intermine.benchmark;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.intermine.objectstore.intermine.DatabaseSchema;
+import org.intermine.objectstore.intermine.ObjectStoreInterMineImpl;
+import org.intermine.objectstore.intermine.SqlGenerator;
+import org.intermine.objectstore.query.Query;
+import org.intermine.objectstore.query.iql.IqlQuery;
+import org.intermine.objectstore.query.iql.IqlQueryParser;
+import org.intermine.sql.Database;
+
+/**
+ * Generates the SQL for each of the benchmark queries.
+ */
+public class SqlGeneratorBenchmark extends Benchmark
+{
+    private static final Map<Object, String> NO_BAGS = Collections.emptyMap();
+
+    private List<Query> queries;
+    private DatabaseSchema schema;
+    private Database db;
+
+    @Override
+    public void setUp(ObjectStoreInterMineImpl os) {
+        queries = new ArrayList<Query>();
+        for (String iql : BenchmarkData.IQL_QUERIES) {
+            queries.add(IqlQueryParser.parse(new IqlQuery(iql, BenchmarkData.PACKAGE)));
+        }
+        schema = os.getSchema();
+        db = os.getDatabase();
+    }
+
+    @Override
+    public void run() throws Exception {
+        for (Query q : queries) {
+            consume(SqlGenerator.generate(q, 0, Integer.MAX_VALUE, schema, db, NO_BAGS));
+        }
+    }
+}
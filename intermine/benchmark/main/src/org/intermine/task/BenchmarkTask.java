@@ -0,0 +1,224 @@
+package org.intermine.task;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Task;
+import org.intermine.benchmark.Benchmark;
+import org.intermine.benchmark.BenchmarkData;
+import org.intermine.benchmark.BenchmarkResult;
+import org.intermine.benchmark.BenchmarkRunner;
+import org.intermine.objectstore.ObjectStore;
+import org.intermine.objectstore.ObjectStoreWriter;
+import org.intermine.objectstore.ObjectStoreWriterFactory;
+import org.intermine.objectstore.intermine.ObjectStoreInterMineImpl;
+
+/**
+ * Ant task to run the benchmarks against the testmodel database, save the results, and fail the
+ * build if any benchmark is slower than the baseline by more than the tolerance.
+ */
+public class BenchmarkTask extends Task
+{
+    private String osAlias;
+    private String include;
+    private int warmupIterations = 5;
+    private int iterations = 10;
+    private long iterationMillis = 1000;
+    private String baseline;
+    private double tolerance = 0.1;
+    private File results;
+
+    /**
+     * Set the alias of the testmodel ObjectStore. The benchmark data is stored with the
+     * ObjectStoreWriter with the matching "osw." alias.
+     *
+     * @param osAlias the ObjectStore alias
+     */
+    public void setOsAlias(String osAlias) {
+        this.osAlias = osAlias;
+    }
+
+    /**
+     * Set the names of the benchmarks to run. All of them are run if this is empty.
+     *
+     * @param include a comma-separated list of benchmark names
+     */
+    public void setInclude(String include) {
+        this.include = include;
+    }
+
+    /**
+     * @param warmupIterations the number of iterations to run before measuring
+     */
+    public void setWarmupIterations(int warmupIterations) {
+        this.warmupIterations = warmupIterations;
+    }
+
+    /**
+     * @param iterations the number of iterations to measure
+     */
+    public void setIterations(int iterations) {
+        this.iterations = iterations;
+    }
+
+    /**
+     * @param iterationMillis the length of each iteration, in milliseconds
+     */
+    public void setIterationMillis(long iterationMillis) {
+        this.iterationMillis = iterationMillis;
+    }
+
+    /**
+     * Set the results file of an earlier run to compare against. No comparison is made if this
+     * is empty.
+     *
+     * @param baseline the name of a results file
+     */
+    public void setBaseline(String baseline) {
+        this.baseline = baseline;
+    }
+
+    /**
+     * @param tolerance the fraction by which a benchmark may be slower than the baseline
+     */
+    public void setTolerance(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * @param results the file to save the results in
+     */
+    public void setResults(File results) {
+        this.results = results;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute() {
+        if (osAlias == null) {
+            throw new BuildException("osAlias attribute is not set");
+        }
+        List<BenchmarkResult> benchmarkResults;
+        ObjectStoreWriter osw = null;
+        try {
+            osw = ObjectStoreWriterFactory.getObjectStoreWriter("osw."
+                    + osAlias.substring(osAlias.indexOf('.') + 1));
+            BenchmarkData.storeIfAbsent(osw);
+            ObjectStore os = osw.getObjectStore();
+            if (!(os instanceof ObjectStoreInterMineImpl)) {
+                throw new BuildException(osAlias + " is not an ObjectStoreInterMineImpl");
+            }
+            BenchmarkRunner runner = new BenchmarkRunner((ObjectStoreInterMineImpl) os,
+                    warmupIterations, iterations, iterationMillis);
+            benchmarkResults = runner.runAll(getBenchmarks());
+        } catch (BuildException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new BuildException(e);
+        } finally {
+            if (osw != null) {
+                try {
+                    osw.close();
+                } catch (Exception e) {
+                    log("Failed to close ObjectStoreWriter: " + e);
+                }
+            }
+        }
+
+        report(benchmarkResults);
+    }
+
+    /**
+     * Logs the results with their change from the baseline, saves them, and fails if any
+     * benchmark is slower than the baseline by more than the tolerance.
+     *
+     * @param benchmarkResults the results of this run
+     * @throws BuildException if a benchmark has regressed
+     */
+    protected void report(List<BenchmarkResult> benchmarkResults) {
+        List<String> regressions = new ArrayList<String>();
+        log(BenchmarkRunner.compare(benchmarkResults, loadBaseline(), tolerance, regressions));
+        if (results != null) {
+            saveResults(BenchmarkRunner.toProperties(benchmarkResults));
+        }
+        if (!regressions.isEmpty()) {
+            throw new BuildException("Benchmarks slower than the baseline by more than "
+                    + (tolerance * 100) + "%: " + regressions);
+        }
+    }
+
+    private List<Benchmark> getBenchmarks() {
+        List<Benchmark> benchmarks = BenchmarkRunner.getAllBenchmarks();
+        if (StringUtils.isBlank(include)) {
+            return benchmarks;
+        }
+        Set<String> names = new HashSet<String>(Arrays.asList(include.trim().split("\\s*,\\s*")));
+        List<Benchmark> selected = new ArrayList<Benchmark>();
+        for (Benchmark benchmark : benchmarks) {
+            if (names.remove(benchmark.getName())) {
+                selected.add(benchmark);
+            }
+        }
+        if (!names.isEmpty()) {
+            throw new BuildException("Unknown benchmarks: " + names);
+        }
+        return selected;
+    }
+
+    private Properties loadBaseline() {
+        if (StringUtils.isBlank(baseline)) {
+            return null;
+        }
+        Properties props = new Properties();
+        try {
+            InputStream in = new FileInputStream(baseline);
+            try {
+                props.load(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            throw new BuildException("Could not read baseline " + baseline, e);
+        }
+        return props;
+    }
+
+    private void saveResults(Properties props) {
+        try {
+            OutputStream out = new FileOutputStream(results);
+            try {
+                props.store(out, "Mean nanoseconds per operation");
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            throw new BuildException("Could not write results to " + results, e);
+        }
+        log("Results saved in " + results + " - pass -Dbenchmark.baseline=" + results
+                + " to compare a later run with this one");
+    }
+}
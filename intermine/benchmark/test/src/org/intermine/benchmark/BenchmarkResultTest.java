@@ -0,0 +1,33 @@
+package org.intermine.benchmark;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class BenchmarkResultTest
+{
+    @Test
+    public void testMeanAndStandardDeviation() {
+        BenchmarkResult result = new BenchmarkResult("Test", new double[] {2.0, 4.0, 6.0}, 300);
+        assertEquals(4.0, result.getMean(), 0.0001);
+        assertEquals(2.0, result.getStandardDeviation(), 0.0001);
+        assertEquals(300, result.getOperations());
+    }
+
+    @Test
+    public void testOneIteration() {
+        BenchmarkResult result = new BenchmarkResult("Test", new double[] {5.0}, 10);
+        assertEquals(5.0, result.getMean(), 0.0001);
+        assertEquals(0.0, result.getStandardDeviation(), 0.0001);
+    }
+}
@@ -0,0 +1,156 @@
+package org.intermine.task;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
+import org.intermine.benchmark.BenchmarkResult;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the comparison of benchmark results with a baseline that decides whether the build fails.
+ */
+public class BenchmarkTaskTest
+{
+    private File baseline;
+    private File results;
+    private BenchmarkTask task;
+
+    @Before
+    public void setUp() throws Exception {
+        baseline = File.createTempFile("benchmark-baseline", ".properties");
+        results = File.createTempFile("benchmark-results", ".properties");
+        Properties props = new Properties();
+        props.setProperty("Fast", "100.0");
+        props.setProperty("Slow", "1000.0");
+        OutputStream out = new FileOutputStream(baseline);
+        try {
+            props.store(out, null);
+        } finally {
+            out.close();
+        }
+        task = new BenchmarkTask();
+        task.setProject(new Project());
+        task.setBaseline(baseline.getPath());
+        task.setTolerance(0.1);
+        task.setResults(results);
+    }
+
+    @After
+    public void tearDown() {
+        baseline.delete();
+        results.delete();
+    }
+
+    @Test
+    public void testWithinTolerance() throws Exception {
+        task.report(Arrays.asList(result("Fast", 109.0), result("Slow", 700.0)));
+        Properties saved = loadResults();
+        assertEquals("109.0", saved.getProperty("Fast"));
+        assertEquals("700.0", saved.getProperty("Slow"));
+    }
+
+    @Test
+    public void testRegression() throws Exception {
+        try {
+            task.report(Arrays.asList(result("Fast", 100.0), result("Slow", 1200.0)));
+            fail("Expected a BuildException");
+        } catch (BuildException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("[Slow]"));
+            assertFalse(e.getMessage(), e.getMessage().contains("Fast"));
+        }
+        // the results are saved even when the build fails
+        assertEquals("1200.0", loadResults().getProperty("Slow"));
+    }
+
+    @Test
+    public void testTolerance() throws Exception {
+        task.setTolerance(0.25);
+        task.report(Arrays.asList(result("Slow", 1200.0)));
+        task.setTolerance(0.0);
+        try {
+            task.report(Arrays.asList(result("Fast", 101.0)));
+            fail("Expected a BuildException");
+        } catch (BuildException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("[Fast]"));
+        }
+    }
+
+    @Test
+    public void testNotInBaseline() throws Exception {
+        task.report(Arrays.asList(result("New", 1000000.0)));
+        assertEquals("1000000.0", loadResults().getProperty("New"));
+    }
+
+    @Test
+    public void testNoBaseline() throws Exception {
+        task.setBaseline("");
+        task.report(Arrays.asList(result("Fast", 1000000.0)));
+    }
+
+    @Test
+    public void testMissingBaseline() throws Exception {
+        task.setBaseline(new File(baseline.getPath() + ".missing").getPath());
+        try {
+            task.report(new ArrayList<BenchmarkResult>());
+            fail("Expected a BuildException");
+        } catch (BuildException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testResultsAsBaseline() throws Exception {
+        List<BenchmarkResult> first = Arrays.asList(result("Fast", 50.0));
+        task.report(first);
+        task.setBaseline(results.getPath());
+        task.setResults(null);
+        task.report(Arrays.asList(result("Fast", 54.0)));
+        try {
+            task.report(Arrays.asList(result("Fast", 56.0)));
+            fail("Expected a BuildException");
+        } catch (BuildException e) {
+            // expected
+        }
+    }
+
+    private static BenchmarkResult result(String name, double nanosPerOp) {
+        return new BenchmarkResult(name, new double[] {nanosPerOp}, 1000);
+    }
+
+    private Properties loadResults() throws Exception {
+        Properties props = new Properties();
+        InputStream in = new FileInputStream(results);
+        try {
+            props.load(in);
+        } finally {
+            in.close();
+        }
+        return props;
+    }
+}
@@ -11,8 +11,18 @@ package org.intermine.dataconversion;
  */
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
 import org.intermine.metadata.Model;
@@ -25,21 +35,28 @@ import org.intermine.xml.full.Reference;
 import org.intermine.xml.full.ReferenceList;
 
 /**
- * Abstract parent class of all DataConverters
+ * Abstract parent class of all DataConverters.
+ *
+ * The identifiers, aliases and unique item ids held here may be used from several threads at
+ * once, so that subclasses can convert files or records concurrently with runConcurrently() when
+ * the converterThreads property is set.  Items are then stored through a SynchronizedItemWriter.
+ *
  * @author Mark Woodbridge
  */
 public abstract class DataConverter
 {
     private static final Logger LOG = Logger.getLogger(DataConverter.class);
 
-    private ItemWriter writer;
+    private volatile ItemWriter writer;
     private Map<String, String> aliases = new HashMap<String, String>();
     private int nextClsId = 0;
-    private Map<String, Integer> ids = new HashMap<String, Integer>();
+    private Map<String, AtomicInteger> ids = new ConcurrentHashMap<String, AtomicInteger>();
     private Model model;
     private ItemFactory itemFactory;
     private DataConverterStoreHook storeHook = null;
-    private Map<String, String> uniqueItems = new HashMap<String, String>();
+    private Map<String, String> uniqueItems =
+        Collections.synchronizedMap(new HashMap<String, String>());
+    private int threadCount = 1;
 
     /**
     * Constructor that should be called by children
@@ -73,7 +90,7 @@ public abstract class DataConverter
      * @param className the class name
      * @return the alias
      */
-    protected String alias(String className) {
+    protected synchronized String alias(String className) {
         String alias = aliases.get(className);
         if (alias != null) {
             return alias;
@@ -112,14 +129,17 @@ public abstract class DataConverter
      * @return a new identifier with the next sequential id for the given class
      */
     protected String newId(String className) {
-        Integer id = ids.get(className);
+        AtomicInteger id = ids.get(className);
         if (id == null) {
-            id = new Integer(0);
-            ids.put(className, id);
+            synchronized (ids) {
+                id = ids.get(className);
+                if (id == null) {
+                    id = new AtomicInteger(0);
+                    ids.put(className, id);
+                }
+            }
         }
-        id = new Integer(id.intValue() + 1);
-        ids.put(className, id);
-        return id.toString();
+        return Integer.toString(id.incrementAndGet());
     }
 
     /**
@@ -203,6 +223,80 @@ public abstract class DataConverter
         uniqueItems.put(key, refId);
     }
 
+    /**
+     * Set the number of threads that runConcurrently() may use, from the converter.threads
+     * property in project.xml.  If more than one, the ItemWriter is wrapped so that Items can be
+     * stored from several threads at once.
+     *
+     * @param converterThreads the number of threads
+     */
+    public void setConverterThreads(String converterThreads) {
+        threadCount = Math.max(1, Integer.parseInt(converterThreads.trim()));
+        if (threadCount > 1 && !(writer instanceof SynchronizedItemWriter)) {
+            writer = new SynchronizedItemWriter(writer);
+        }
+    }
+
+    /**
+     * Return the number of threads that runConcurrently() may use.
+     *
+     * @return the number of threads, 1 unless set with setConverterThreads()
+     */
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Run the given tasks on a pool of getThreadCount() threads, or one after the other on this
+     * thread if only one thread is to be used, and wait for them all to finish.  If any task
+     * fails, the remaining tasks are cancelled and the exception is thrown.
+     *
+     * @param tasks the tasks to run
+     * @throws Exception the first exception thrown by a task
+     */
+    protected void runConcurrently(List<? extends Callable<?>> tasks) throws Exception {
+        int threads = Math.min(threadCount, tasks.size());
+        if (threads <= 1) {
+            for (Callable<?> task : tasks) {
+                task.call();
+            }
+            return;
+        }
+        LOG.info("Running " + tasks.size() + " tasks on " + threads + " threads");
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            CompletionService<Object> completion = new ExecutorCompletionService<Object>(pool);
+            for (Callable<?> task : tasks) {
+                completion.submit(wrap(task));
+            }
+            for (int i = 0; i < tasks.size(); i++) {
+                try {
+                    completion.take().get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Exception) {
+                        throw (Exception) cause;
+                    }
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw e;
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static Callable<Object> wrap(final Callable<?> task) {
+        return new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                return task.call();
+            }
+        };
+    }
+
     /**
      * Perform any necessary clean-up after processing
      * @throws Exception if an error occurs
@@ -11,6 +11,10 @@ package org.intermine.dataconversion;
  */
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 import org.intermine.metadata.Model;
 
@@ -36,6 +40,30 @@ public abstract class DirectoryConverter extends DataConverter
      */
     public abstract void process(File dataDir) throws Exception;
 
+    /**
+     * Pass each of the given files to a FileProcessor, on getThreadCount() threads if the
+     * converterThreads property has been set.  For use by implementations of process() whose
+     * processor is safe to call from several threads at once.
+     *
+     * @param files the files to convert
+     * @param processor the FileProcessor that converts each file
+     * @throws Exception if an error occurs during processing
+     */
+    protected void processFiles(Collection<File> files, final FileProcessor processor)
+        throws Exception {
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (final File file : files) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    processor.process(file);
+                    return null;
+                }
+            });
+        }
+        runConcurrently(tasks);
+    }
+
     /**
      * Perform any necessary clean-up after post-conversion
      * @throws Exception if an error occurs
@@ -10,9 +10,15 @@ package org.intermine.dataconversion;
  *
  */
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileReader;
 import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
 
+import org.apache.log4j.Logger;
 import org.intermine.metadata.Model;
 
 /**
@@ -21,7 +27,10 @@ import org.intermine.metadata.Model;
  */
 public abstract class FileConverter extends DataConverter
 {
-    private File currentFile;
+    private static final Logger LOG = Logger.getLogger(FileConverter.class);
+
+    private volatile File currentFile;
+    private final ThreadLocal<File> threadFile = new ThreadLocal<File>();
 
     /**
      * Constructor
@@ -39,19 +48,75 @@ public abstract class FileConverter extends DataConverter
      */
     public abstract void process(Reader reader) throws Exception;
 
+    /**
+     * Return true if process() may be called for several files at once from different threads.
+     * Subclasses that keep no per-file state in fields, and use only the thread-safe methods of
+     * DataConverter to share state between files, should override this to return true.
+     *
+     * @return false unless overridden
+     */
+    protected boolean supportsConcurrentProcessing() {
+        return false;
+    }
+
+    /**
+     * Call process() for each of the given files.  The files are processed concurrently on
+     * getThreadCount() threads if the converterThreads property has been set and
+     * supportsConcurrentProcessing() returns true, otherwise one after the other.
+     *
+     * @param files the files to convert
+     * @throws Exception if an error occurs during processing
+     */
+    public void processFiles(List<File> files) throws Exception {
+        if (getThreadCount() > 1 && !supportsConcurrentProcessing()) {
+            LOG.warn(getClass().getName() + " does not support concurrent processing, "
+                    + "converting files one at a time");
+            for (File f : files) {
+                processFile(f);
+            }
+            return;
+        }
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (final File f : files) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    processFile(f);
+                    return null;
+                }
+            });
+        }
+        runConcurrently(tasks);
+    }
+
+    private void processFile(File f) throws Exception {
+        System.err .println("Processing file: " + f.getPath());
+        setCurrentFile(f);
+        BufferedReader br = new BufferedReader(new FileReader(f));
+        try {
+            process(br);
+        } finally {
+            br.close();
+            threadFile.remove();
+        }
+    }
+
     /**
      * Set the current File that is being processed.  Called by FileConverterTask.execute().
      * @param currentFile the current File that is being processed
      */
     public void setCurrentFile(File currentFile) {
         this.currentFile = currentFile;
+        threadFile.set(currentFile);
     }
 
     /**
-     * Return the File that is currently being converted.
+     * Return the File that is currently being converted.  When files are being converted
+     * concurrently this is the file being converted by the calling thread.
      * @return the current File
      */
     public File getCurrentFile() {
-        return currentFile;
+        File f = threadFile.get();
+        return (f == null) ? currentFile : f;
     }
 }
@@ -0,0 +1,26 @@
+package org.intermine.dataconversion;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+
+/**
+ * Converts one file of a directory, for DirectoryConverter.processFiles().
+ */
+public interface FileProcessor
+{
+    /**
+     * Convert a file.  This may be called from several threads at once, for different files.
+     * @param file the file to convert
+     * @throws Exception if an error occurs during processing
+     */
+    void process(File file) throws Exception;
+}
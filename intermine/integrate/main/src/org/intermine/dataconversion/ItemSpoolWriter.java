@@ -0,0 +1,310 @@
+package org.intermine.dataconversion;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.intermine.model.fulldata.Attribute;
+import org.intermine.model.fulldata.Item;
+import org.intermine.model.fulldata.Reference;
+import org.intermine.model.fulldata.ReferenceList;
+import org.intermine.objectstore.ObjectStoreException;
+
+/**
+ * Stores Items in a spool of compressed files on disk rather than in a target items database.
+ * The spool can then be read by an ObjectStoreItemSpoolImpl, which answers the queries that the
+ * ItemToObjectTranslator makes when loading the Items into the production database.
+ *
+ * Each ItemSpoolWriter writes one segment of the spool, which is a data file and an index file.
+ * The data file holds the Items in blocks that are each compressed separately, so that any Item
+ * can be read by decompressing only one block. The index file holds the identifier and class of
+ * each Item and where it is in the data file, and is only put in place when the writer is closed.
+ * Segments without an index file are ignored by the reader, so a converter that fails part of the
+ * way through leaves nothing half written.
+ *
+ * Attributes, References and ReferenceLists stored after their Item are written as separate
+ * records and added to the Item when it is read.
+ */
+public class ItemSpoolWriter implements ItemWriter
+{
+    private static final Logger LOG = Logger.getLogger(ItemSpoolWriter.class);
+
+    static final int MAGIC = 0x494d5350;
+    static final int VERSION = 1;
+    static final String DATA_SUFFIX = ".dat";
+    static final String INDEX_SUFFIX = ".idx";
+    static final String SEGMENT_PREFIX = "items-";
+    static final byte ITEM = 1;
+    static final byte ATTRIBUTE = 2;
+    static final byte REFERENCE = 3;
+    static final byte COLLECTION = 4;
+
+    private static final int BLOCK_SIZE = 256 * 1024;
+
+    private final File dataFile;
+    private final File indexFile;
+    private final DataOutputStream data;
+    private final DataOutputStream index;
+    private final File tmpIndexFile;
+    private final ByteArrayOutputStream blockBytes = new ByteArrayOutputStream(BLOCK_SIZE * 2);
+    private final DataOutputStream block = new DataOutputStream(blockBytes);
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private byte[] compressed = new byte[BLOCK_SIZE];
+    private long dataOffset = 0;
+    private final List<Long> blockOffsets = new ArrayList<Long>();
+    private int itemCount = 0;
+    private int patchCount = 0;
+    private long uncompressedSize = 0;
+    private boolean closed = false;
+
+    /**
+     * Creates a writer for a new segment in the given spool directory.
+     *
+     * @param spoolDir the directory of the spool, which is created if it does not exist
+     * @throws ObjectStoreException if the segment files cannot be created
+     */
+    public ItemSpoolWriter(File spoolDir) throws ObjectStoreException {
+        if (!spoolDir.isDirectory() && !spoolDir.mkdirs()) {
+            throw new ObjectStoreException("Could not create item spool directory " + spoolDir);
+        }
+        try {
+            synchronized (ItemSpoolWriter.class) {
+                int segment = 0;
+                while (!new File(spoolDir, SEGMENT_PREFIX + segment + DATA_SUFFIX)
+                        .createNewFile()) {
+                    segment++;
+                }
+                dataFile = new File(spoolDir, SEGMENT_PREFIX + segment + DATA_SUFFIX);
+            }
+            indexFile = new File(spoolDir, dataFile.getName().replace(DATA_SUFFIX,
+                        INDEX_SUFFIX));
+            tmpIndexFile = new File(spoolDir, indexFile.getName() + ".tmp");
+            data = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(dataFile),
+                        BLOCK_SIZE));
+            index = new DataOutputStream(new BufferedOutputStream(
+                        new FileOutputStream(tmpIndexFile)));
+            index.writeInt(MAGIC);
+            index.writeInt(VERSION);
+        } catch (IOException e) {
+            throw new ObjectStoreException("Could not create item spool segment in " + spoolDir,
+                    e);
+        }
+        LOG.info("Writing items to " + dataFile);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Integer store(Item item) throws ObjectStoreException {
+        if (StringUtils.isEmpty(item.getClassName())
+            && StringUtils.isEmpty(item.getImplementations())) {
+            throw new RuntimeException("className not set for item: " + item.getIdentifier());
+        }
+        Integer id = new Integer(itemCount);
+        try {
+            index.writeByte(ITEM);
+            writeString(index, item.getIdentifier());
+            writeString(index, item.getClassName());
+            writeLocation();
+            block.writeByte(ITEM);
+            writeString(block, item.getIdentifier());
+            writeString(block, item.getClassName());
+            writeString(block, item.getImplementations());
+            block.writeInt(item.getAttributes().size());
+            for (Attribute a : item.getAttributes()) {
+                writeString(block, a.getName());
+                writeString(block, a.getValue());
+            }
+            block.writeInt(item.getReferences().size());
+            for (Reference r : item.getReferences()) {
+                writeString(block, r.getName());
+                writeString(block, r.getRefId());
+            }
+            block.writeInt(item.getCollections().size());
+            for (ReferenceList r : item.getCollections()) {
+                writeString(block, r.getName());
+                writeString(block, r.getRefIds());
+            }
+            endRecord();
+        } catch (IOException e) {
+            throw new ObjectStoreException("Failed to write item " + item.getIdentifier()
+                    + " to " + dataFile, e);
+        }
+        itemCount++;
+        item.setId(id);
+        return id;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void store(ReferenceList refList, Integer itemId) throws ObjectStoreException {
+        storePatch(COLLECTION, itemId, refList.getName(), refList.getRefIds());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void store(Reference ref, Integer itemId) throws ObjectStoreException {
+        storePatch(REFERENCE, itemId, ref.getName(), ref.getRefId());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void store(Attribute att, Integer itemId) throws ObjectStoreException {
+        storePatch(ATTRIBUTE, itemId, att.getName(), att.getValue());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void storeAll(Collection<Item> items) throws ObjectStoreException {
+        for (Item item : items) {
+            store(item);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void close() throws ObjectStoreException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flushBlock();
+            data.close();
+            index.writeByte(0);
+            index.writeInt(blockOffsets.size());
+            for (Long offset : blockOffsets) {
+                index.writeLong(offset.longValue());
+            }
+            index.close();
+            if (!tmpIndexFile.renameTo(indexFile)) {
+                throw new IOException("Could not rename " + tmpIndexFile + " to " + indexFile);
+            }
+        } catch (IOException e) {
+            throw new ObjectStoreException("Failed to finish writing " + dataFile, e);
+        } finally {
+            deflater.end();
+        }
+        LOG.info("Wrote " + itemCount + " items and " + patchCount + " additions to "
+                + dataFile + " - " + uncompressedSize + " bytes compressed to " + dataOffset);
+    }
+
+    private void storePatch(byte type, Integer itemId, String name, String value)
+        throws ObjectStoreException {
+        if (itemId == null || itemId.intValue() < 0 || itemId.intValue() >= itemCount) {
+            throw new ObjectStoreException("No item with id " + itemId + " has been stored in "
+                    + dataFile);
+        }
+        try {
+            index.writeByte(type);
+            index.writeInt(itemId.intValue());
+            writeLocation();
+            block.writeByte(type);
+            writeString(block, name);
+            writeString(block, value);
+            endRecord();
+        } catch (IOException e) {
+            throw new ObjectStoreException("Failed to write to " + dataFile, e);
+        }
+        patchCount++;
+    }
+
+    private void writeLocation() throws IOException {
+        index.writeInt(blockOffsets.size());
+        index.writeInt(blockBytes.size());
+    }
+
+    private void endRecord() throws IOException {
+        if (blockBytes.size() >= BLOCK_SIZE) {
+            flushBlock();
+        }
+    }
+
+    private void flushBlock() throws IOException {
+        int length = blockBytes.size();
+        if (length == 0) {
+            return;
+        }
+        byte[] bytes = blockBytes.toByteArray();
+        deflater.reset();
+        deflater.setInput(bytes);
+        deflater.finish();
+        int compressedLength = 0;
+        while (!deflater.finished()) {
+            if (compressedLength == compressed.length) {
+                byte[] bigger = new byte[compressed.length * 2];
+                System.arraycopy(compressed, 0, bigger, 0, compressedLength);
+                compressed = bigger;
+            }
+            compressedLength += deflater.deflate(compressed, compressedLength,
+                    compressed.length - compressedLength);
+        }
+        blockOffsets.add(new Long(dataOffset));
+        data.writeInt(compressedLength);
+        data.writeInt(length);
+        data.write(compressed, 0, compressedLength);
+        dataOffset += 8 + compressedLength;
+        uncompressedSize += length;
+        blockBytes.reset();
+    }
+
+    /**
+     * Writes a String that may be null or longer than DataOutput.writeUTF() allows.
+     *
+     * @param out the DataOutput to write to
+     * @param s the String
+     * @throws IOException if the write fails
+     */
+    static void writeString(DataOutput out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = s.getBytes("UTF-8");
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Reads a String written by writeString().
+     *
+     * @param in the DataInput to read from
+     * @return the String, which may be null
+     * @throws IOException if the read fails
+     */
+    static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+}
@@ -0,0 +1,703 @@
+package org.intermine.dataconversion;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.apache.log4j.Logger;
+import org.intermine.metadata.ConstraintOp;
+import org.intermine.metadata.MetaDataException;
+import org.intermine.metadata.Model;
+import org.intermine.model.fulldata.Attribute;
+import org.intermine.model.fulldata.Item;
+import org.intermine.model.fulldata.Reference;
+import org.intermine.model.fulldata.ReferenceList;
+import org.intermine.objectstore.ObjectStore;
+import org.intermine.objectstore.ObjectStoreAbstractImpl;
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.objectstore.query.BagConstraint;
+import org.intermine.objectstore.query.Constraint;
+import org.intermine.objectstore.query.ConstraintSet;
+import org.intermine.objectstore.query.Query;
+import org.intermine.objectstore.query.QueryClass;
+import org.intermine.objectstore.query.QueryField;
+import org.intermine.objectstore.query.QuerySelectable;
+import org.intermine.objectstore.query.QueryValue;
+import org.intermine.objectstore.query.ResultsInfo;
+import org.intermine.objectstore.query.ResultsRow;
+import org.intermine.objectstore.query.SimpleConstraint;
+import org.intermine.util.PropertiesUtil;
+
+/**
+ * A read-only ObjectStore of the Items in a spool written by ItemSpoolWriters. It answers the
+ * queries made by the ItemToObjectTranslator - for all Items, for Items with given identifiers
+ * and for Items of a given class - so it can take the place of a target items database when
+ * loading a source into the production database. It is configured with:
+ *
+ * <pre>
+ * os.common-tgt-items-spool.class=org.intermine.dataconversion.ObjectStoreItemSpoolImpl
+ * os.common-tgt-items-spool.model=fulldata
+ * os.common-tgt-items-spool.spoolDir=/path/to/spool
+ * </pre>
+ *
+ * The spool is read the first time it is queried. Only the location and class of each Item is
+ * held in memory, in arrays, and Items are read from the data files when they are asked for.
+ * Item identifiers are looked up using an array of positions for each identifier namespace, as
+ * the ItemToObjectTranslator already relies on the part of each identifier after the underscore
+ * being a number.
+ */
+public class ObjectStoreItemSpoolImpl extends ObjectStoreAbstractImpl
+{
+    private static final Logger LOG = Logger.getLogger(ObjectStoreItemSpoolImpl.class);
+    private static final int CACHED_BLOCKS = 16;
+    private static final int SEGMENT_SHIFT = 44;
+    private static final int BLOCK_SHIFT = 20;
+    private static final int MAX_BLOCKS = 1 << (SEGMENT_SHIFT - BLOCK_SHIFT);
+    private static final int MAX_OFFSET = 1 << BLOCK_SHIFT;
+    private static final int MAX_SPARSE_GAP = 1000000;
+
+    private final File spoolDir;
+    private Spool spool = null;
+    private final Map<Long, byte[]> blockCache = new LinkedHashMap<Long, byte[]>(32, 0.75F, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+            return size() > CACHED_BLOCKS;
+        }
+    };
+    private final Inflater inflater = new Inflater();
+
+    /**
+     * Constructor.
+     *
+     * @param model the fulldata Model
+     * @param spoolDir the directory of the spool
+     */
+    public ObjectStoreItemSpoolImpl(Model model, File spoolDir) {
+        super(model);
+        this.spoolDir = spoolDir;
+    }
+
+    /**
+     * Gets an ObjectStore for the given properties.
+     *
+     * @param osAlias the alias of this objectstore
+     * @param props the properties used to configure the objectstore
+     * @return the ObjectStore
+     * @throws ObjectStoreException if the model cannot be found
+     */
+    public static ObjectStoreItemSpoolImpl getInstance(String osAlias, Properties props)
+        throws ObjectStoreException {
+        Model classpathModel;
+        try {
+            classpathModel = getModelFromClasspath(osAlias, props);
+        } catch (MetaDataException e) {
+            throw new ObjectStoreException("Cannot load model", e);
+        }
+        return new ObjectStoreItemSpoolImpl(classpathModel, getSpoolDir(osAlias, props));
+    }
+
+    /**
+     * Returns the spool directory configured for the given ObjectStore alias, so that an
+     * ItemSpoolWriter can be created without reading the spool.
+     *
+     * @param osAlias the alias of the spool ObjectStore
+     * @return the spool directory
+     */
+    public static File getSpoolDir(String osAlias) {
+        Properties props = PropertiesUtil.getPropertiesStartingWith(osAlias);
+        return getSpoolDir(osAlias, PropertiesUtil.stripStart(osAlias, props));
+    }
+
+    private static File getSpoolDir(String osAlias, Properties props) {
+        String dir = props.getProperty("spoolDir");
+        if (dir == null) {
+            return new File(System.getProperty("java.io.tmpdir"), "intermine-" + osAlias);
+        }
+        return new File(dir);
+    }
+
+    /**
+     * Returns the directory of this spool.
+     *
+     * @return a File
+     */
+    public File getSpoolDir() {
+        return spoolDir;
+    }
+
+    /**
+     * Deletes the contents of the spool of the given ObjectStore. This can be called from ant with
+     * the method-call task before a source is retrieved into the spool.
+     *
+     * @param os an ObjectStoreItemSpoolImpl
+     * @throws ObjectStoreException if the ObjectStore is not a spool or a file cannot be deleted
+     */
+    public static void clear(ObjectStore os) throws ObjectStoreException {
+        if (!(os instanceof ObjectStoreItemSpoolImpl)) {
+            throw new ObjectStoreException("Cannot clear an item spool from " + os);
+        }
+        ((ObjectStoreItemSpoolImpl) os).clear();
+    }
+
+    /**
+     * Deletes the contents of this spool.
+     *
+     * @throws ObjectStoreException if a file cannot be deleted
+     */
+    public synchronized void clear() throws ObjectStoreException {
+        closeSpool();
+        File[] files = spoolDir.listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.startsWith(ItemSpoolWriter.SEGMENT_PREFIX);
+            }
+        });
+        if (files != null) {
+            for (File file : files) {
+                if (!file.delete()) {
+                    throw new ObjectStoreException("Could not delete " + file);
+                }
+            }
+        }
+        LOG.info("Cleared item spool " + spoolDir);
+    }
+
+    /**
+     * Returns the highest number after the underscore in the identifiers of each namespace, as
+     * the ItemToObjectTranslator needs to allocate object ids.
+     *
+     * @return a Map from namespace to highest number
+     * @throws ObjectStoreException if the spool cannot be read
+     */
+    public Map<String, Integer> getNamespaceMaxima() throws ObjectStoreException {
+        Map<String, Integer> retval = new TreeMap<String, Integer>();
+        for (Map.Entry<String, Namespace> entry : getSpool().namespaces.entrySet()) {
+            retval.put(entry.getKey(), new Integer(entry.getValue().highest));
+        }
+        return retval;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<ResultsRow<Object>> execute(Query q, int start, int limit, boolean optimise,
+            boolean explain, Map<Object, Integer> sequence) throws ObjectStoreException {
+        checkStartLimit(start, limit, q);
+        Spool s = getSpool();
+        int[] positions = getPositions(s, q);
+        int size = (positions == null) ? s.size : positions.length;
+        List<ResultsRow<Object>> retval = new ArrayList<ResultsRow<Object>>();
+        int end = (int) Math.min((long) start + limit, size);
+        for (int i = start; i < end; i++) {
+            ResultsRow<Object> row = new ResultsRow<Object>();
+            row.add(readItem(s, (positions == null) ? i : positions[i]));
+            retval.add(row);
+        }
+        return retval;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ResultsInfo estimate(Query q) throws ObjectStoreException {
+        int count = count(q, SEQUENCE_IGNORE);
+        return new ResultsInfo(0, 0, count, count, count);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int count(Query q, Map<Object, Integer> sequence) throws ObjectStoreException {
+        Spool s = getSpool();
+        int[] positions = getPositions(s, q);
+        return (positions == null) ? s.size : positions.length;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isMultiConnection() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<Object> getComponentsForQuery(Query q) {
+        return Collections.emptySet();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Integer getSerial() throws ObjectStoreException {
+        throw new ObjectStoreException("ObjectStoreItemSpoolImpl is read-only");
+    }
+
+    /**
+     * Works out which Items a query is for.
+     *
+     * @param s the Spool
+     * @param q a Query for Items, constrained by identifier, className or both
+     * @return the positions of the Items in the spool, in order, or null for every Item
+     * @throws ObjectStoreException if the query is not one this ObjectStore can answer
+     */
+    private int[] getPositions(Spool s, Query q) throws ObjectStoreException {
+        List<QuerySelectable> select = q.getSelect();
+        if (select.size() != 1 || q.getFrom().size() != 1
+                || select.get(0) != q.getFrom().iterator().next()
+                || !(select.get(0) instanceof QueryClass)
+                || !Item.class.equals(((QueryClass) select.get(0)).getType())
+                || !q.getOrderBy().isEmpty() || !q.getGroupBy().isEmpty()) {
+            throw new ObjectStoreException("Query not supported by ObjectStoreItemSpoolImpl: "
+                    + q);
+        }
+        QueryClass qc = (QueryClass) select.get(0);
+        List<Constraint> constraints = new ArrayList<Constraint>();
+        if (q.getConstraint() instanceof ConstraintSet
+                && q.getConstraint().getOp() == ConstraintOp.AND) {
+            constraints.addAll(((ConstraintSet) q.getConstraint()).getConstraints());
+        } else if (q.getConstraint() != null) {
+            constraints.add(q.getConstraint());
+        }
+        Collection<?> identifiers = null;
+        boolean constrainClass = false;
+        String className = null;
+        for (Constraint c : constraints) {
+            String fieldName = null;
+            if (c instanceof BagConstraint && c.getOp() == ConstraintOp.IN
+                    && ((BagConstraint) c).getQueryNode() instanceof QueryField
+                    && ((QueryField) ((BagConstraint) c).getQueryNode()).getFromElement() == qc) {
+                fieldName = ((QueryField) ((BagConstraint) c).getQueryNode()).getFieldName();
+                if ("identifier".equals(fieldName) && identifiers == null) {
+                    identifiers = ((BagConstraint) c).getBag();
+                    continue;
+                }
+            } else if (c instanceof SimpleConstraint && c.getOp() == ConstraintOp.EQUALS
+                    && ((SimpleConstraint) c).getArg1() instanceof QueryField
+                    && ((SimpleConstraint) c).getArg2() instanceof QueryValue
+                    && ((QueryField) ((SimpleConstraint) c).getArg1()).getFromElement() == qc) {
+                fieldName = ((QueryField) ((SimpleConstraint) c).getArg1()).getFieldName();
+                Object value = ((QueryValue) ((SimpleConstraint) c).getArg2()).getValue();
+                if ("identifier".equals(fieldName) && identifiers == null) {
+                    identifiers = Collections.singleton(value);
+                    continue;
+                } else if ("className".equals(fieldName) && !constrainClass) {
+                    constrainClass = true;
+                    className = (String) value;
+                    continue;
+                }
+            }
+            throw new ObjectStoreException("Query not supported by ObjectStoreItemSpoolImpl: "
+                    + q);
+        }
+        if (identifiers == null) {
+            return constrainClass ? s.getPositions(className) : null;
+        }
+        int classIndex = -1;
+        if (constrainClass) {
+            // Only look the class up, as the Spool is shared by the threads querying it
+            Integer index = s.classIndexes.get(className);
+            if (index == null) {
+                return new int[0];
+            }
+            classIndex = index.intValue();
+        }
+        int[] positions = new int[identifiers.size()];
+        int count = 0;
+        for (Object identifier : identifiers) {
+            int position = s.getPosition((String) identifier);
+            if (position >= 0 && (!constrainClass || s.classes[position] == classIndex)) {
+                positions[count++] = position;
+            }
+        }
+        Arrays.sort(positions, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || positions[distinct - 1] != positions[i]) {
+                positions[distinct++] = positions[i];
+            }
+        }
+        return Arrays.copyOf(positions, distinct);
+    }
+
+    private Item readItem(Spool s, int position) throws ObjectStoreException {
+        try {
+            DataInputStream in = openRecord(s, s.locations[position]);
+            if (in.readByte() != ItemSpoolWriter.ITEM) {
+                throw new ObjectStoreException("Spool is corrupt at item " + position);
+            }
+            Item item = new Item();
+            item.setId(new Integer(position));
+            item.setIdentifier(ItemSpoolWriter.readString(in));
+            item.setClassName(ItemSpoolWriter.readString(in));
+            item.setImplementations(ItemSpoolWriter.readString(in));
+            for (int i = in.readInt(); i > 0; i--) {
+                addField(item, ItemSpoolWriter.ATTRIBUTE, ItemSpoolWriter.readString(in),
+                        ItemSpoolWriter.readString(in));
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                addField(item, ItemSpoolWriter.REFERENCE, ItemSpoolWriter.readString(in),
+                        ItemSpoolWriter.readString(in));
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                addField(item, ItemSpoolWriter.COLLECTION, ItemSpoolWriter.readString(in),
+                        ItemSpoolWriter.readString(in));
+            }
+            long[] patches = s.patches.get(new Integer(position));
+            if (patches != null) {
+                for (long patch : patches) {
+                    in = openRecord(s, patch);
+                    addField(item, in.readByte(), ItemSpoolWriter.readString(in),
+                            ItemSpoolWriter.readString(in));
+                }
+            }
+            return item;
+        } catch (IOException e) {
+            throw new ObjectStoreException("Failed to read item " + position + " from spool "
+                    + spoolDir, e);
+        }
+    }
+
+    private static void addField(Item item, byte type, String name, String value) {
+        if (type == ItemSpoolWriter.ATTRIBUTE) {
+            Attribute a = new Attribute();
+            a.setName(name);
+            a.setValue(value);
+            a.setItem(item);
+            item.addAttributes(a);
+        } else if (type == ItemSpoolWriter.REFERENCE) {
+            Reference r = new Reference();
+            r.setName(name);
+            r.setRefId(value);
+            r.setItem(item);
+            item.addReferences(r);
+        } else {
+            ReferenceList r = new ReferenceList();
+            r.setName(name);
+            r.setRefIds(value);
+            r.setItem(item);
+            item.addCollections(r);
+        }
+    }
+
+    private DataInputStream openRecord(Spool s, long location) throws IOException {
+        int segment = (int) (location >>> SEGMENT_SHIFT);
+        int block = (int) ((location >>> BLOCK_SHIFT) & (MAX_BLOCKS - 1));
+        int offset = (int) (location & (MAX_OFFSET - 1));
+        byte[] bytes = readBlock(s, segment, block);
+        return new DataInputStream(new ByteArrayInputStream(bytes, offset,
+                    bytes.length - offset));
+    }
+
+    private synchronized byte[] readBlock(Spool s, int segment, int block) throws IOException {
+        Long key = new Long((((long) segment) << 32) | block);
+        byte[] bytes = blockCache.get(key);
+        if (bytes == null) {
+            Segment seg = s.segments.get(segment);
+            seg.data.seek(seg.blockOffsets[block]);
+            byte[] compressed = new byte[seg.data.readInt()];
+            bytes = new byte[seg.data.readInt()];
+            seg.data.readFully(compressed);
+            inflater.reset();
+            inflater.setInput(compressed);
+            try {
+                if (inflater.inflate(bytes) != bytes.length) {
+                    throw new IOException("Block " + block + " of " + seg.file + " is truncated");
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Block " + block + " of " + seg.file + " is corrupt", e);
+            }
+            blockCache.put(key, bytes);
+        }
+        return bytes;
+    }
+
+    private synchronized Spool getSpool() throws ObjectStoreException {
+        if (spool == null) {
+            long start = System.currentTimeMillis();
+            try {
+                spool = new Spool();
+            } catch (IOException e) {
+                throw new ObjectStoreException("Failed to read item spool " + spoolDir, e);
+            }
+            LOG.info("Read index of " + spool.size + " items in " + spool.segments.size()
+                    + " segments from " + spoolDir + " in "
+                    + (System.currentTimeMillis() - start) + "ms");
+        }
+        return spool;
+    }
+
+    private synchronized void closeSpool() {
+        if (spool != null) {
+            for (Segment segment : spool.segments) {
+                try {
+                    segment.data.close();
+                } catch (IOException e) {
+                    LOG.warn("Failed to close " + segment.file, e);
+                }
+            }
+            spool = null;
+            blockCache.clear();
+        }
+    }
+
+    /**
+     * One data file of the spool, and the offsets of its blocks.
+     */
+    private static class Segment
+    {
+        File file;
+        RandomAccessFile data;
+        long[] blockOffsets;
+    }
+
+    /**
+     * The numbered identifiers with the same namespace, and the position of each in the spool.
+     */
+    private static class Namespace
+    {
+        int[] positions = new int[16];
+        int max = -1;
+        int highest = -1;
+
+        void put(int number, int position) {
+            if (number >= positions.length) {
+                int[] bigger = new int[Math.max(number + 1, positions.length * 2)];
+                Arrays.fill(bigger, -1);
+                System.arraycopy(positions, 0, bigger, 0, positions.length);
+                positions = bigger;
+            }
+            if (number > max) {
+                Arrays.fill(positions, max + 1, number, -1);
+                max = number;
+            }
+            positions[number] = position;
+        }
+
+        int get(int number) {
+            return (number <= max) ? positions[number] : -1;
+        }
+    }
+
+    /**
+     * The index of every segment in the spool directory.
+     */
+    private class Spool
+    {
+        final List<Segment> segments = new ArrayList<Segment>();
+        long[] locations = new long[1024];
+        int[] classes = new int[1024];
+        int size = 0;
+        final List<String> classNames = new ArrayList<String>();
+        final Map<String, Integer> classIndexes = new HashMap<String, Integer>();
+        final Map<String, int[]> classPositions = new HashMap<String, int[]>();
+        final Map<String, Namespace> namespaces = new HashMap<String, Namespace>();
+        final Map<String, Integer> otherIdentifiers = new HashMap<String, Integer>();
+        final Map<Integer, long[]> patches = new HashMap<Integer, long[]>();
+
+        Spool() throws IOException {
+            File[] files = spoolDir.listFiles(new FilenameFilter() {
+                public boolean accept(File dir, String name) {
+                    return name.startsWith(ItemSpoolWriter.SEGMENT_PREFIX)
+                        && name.endsWith(ItemSpoolWriter.INDEX_SUFFIX);
+                }
+            });
+            if (files == null) {
+                throw new IOException("Item spool directory " + spoolDir + " does not exist");
+            }
+            Map<Integer, File> indexes = new TreeMap<Integer, File>();
+            for (File file : files) {
+                String name = file.getName();
+                indexes.put(new Integer(name.substring(ItemSpoolWriter.SEGMENT_PREFIX.length(),
+                                name.length() - ItemSpoolWriter.INDEX_SUFFIX.length())), file);
+            }
+            for (File file : indexes.values()) {
+                readIndex(file);
+            }
+        }
+
+        private void readIndex(File indexFile) throws IOException {
+            Segment segment = new Segment();
+            segment.file = new File(spoolDir, indexFile.getName().replace(
+                        ItemSpoolWriter.INDEX_SUFFIX, ItemSpoolWriter.DATA_SUFFIX));
+            long segmentNumber = segments.size();
+            int base = size;
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                        new FileInputStream(indexFile)));
+            try {
+                if (in.readInt() != ItemSpoolWriter.MAGIC
+                        || in.readInt() != ItemSpoolWriter.VERSION) {
+                    throw new IOException(indexFile + " is not an item spool index");
+                }
+                byte type = in.readByte();
+                while (type != 0) {
+                    if (type == ItemSpoolWriter.ITEM) {
+                        String identifier = ItemSpoolWriter.readString(in);
+                        String className = ItemSpoolWriter.readString(in);
+                        add(identifier, getClassIndex(className),
+                                location(segmentNumber, in.readInt(), in.readInt()));
+                    } else {
+                        Integer position = new Integer(base + in.readInt());
+                        long location = location(segmentNumber, in.readInt(), in.readInt());
+                        long[] old = patches.get(position);
+                        long[] locs = (old == null) ? new long[1] : Arrays.copyOf(old,
+                                old.length + 1);
+                        locs[locs.length - 1] = location;
+                        patches.put(position, locs);
+                    }
+                    type = in.readByte();
+                }
+                segment.blockOffsets = new long[in.readInt()];
+                for (int i = 0; i < segment.blockOffsets.length; i++) {
+                    segment.blockOffsets[i] = in.readLong();
+                }
+            } finally {
+                in.close();
+            }
+            segment.data = new RandomAccessFile(segment.file, "r");
+            segments.add(segment);
+        }
+
+        private long location(long segment, int block, int offset) throws IOException {
+            if (block >= MAX_BLOCKS || offset >= MAX_OFFSET) {
+                throw new IOException("Item spool segment is too large to index");
+            }
+            return (segment << SEGMENT_SHIFT) | (((long) block) << BLOCK_SHIFT) | offset;
+        }
+
+        private void add(String identifier, int classIndex, long location) {
+            if (size == locations.length) {
+                locations = Arrays.copyOf(locations, size * 2);
+                classes = Arrays.copyOf(classes, size * 2);
+            }
+            locations[size] = location;
+            classes[size] = classIndex;
+            int underscore = (identifier == null) ? -1 : identifier.indexOf('_');
+            int number = (underscore == -1) ? -1 : parseNumber(identifier, underscore + 1);
+            Namespace namespace = null;
+            if (number >= 0) {
+                String name = identifier.substring(0, underscore);
+                namespace = namespaces.get(name);
+                if (namespace == null) {
+                    namespace = new Namespace();
+                    namespaces.put(name, namespace);
+                }
+                namespace.highest = Math.max(namespace.highest, number);
+            }
+            if (namespace != null && number <= 4L * size + MAX_SPARSE_GAP) {
+                namespace.put(number, size);
+            } else {
+                // Not numbered, or so sparsely numbered that an array would waste memory
+                otherIdentifiers.put(identifier, new Integer(size));
+            }
+            size++;
+        }
+
+        int getPosition(String identifier) {
+            int underscore = (identifier == null) ? -1 : identifier.indexOf('_');
+            int number = (underscore == -1) ? -1 : parseNumber(identifier, underscore + 1);
+            if (number >= 0) {
+                Namespace namespace = namespaces.get(identifier.substring(0, underscore));
+                if (namespace == null) {
+                    return -1;
+                }
+                int position = namespace.get(number);
+                if (position >= 0) {
+                    return position;
+                }
+            }
+            Integer position = otherIdentifiers.get(identifier);
+            return (position == null) ? -1 : position.intValue();
+        }
+
+        /**
+         * Returns the number of a class, adding it if it is new. Only for reading the segments, as
+         * the Spool is not changed once it has been read.
+         */
+        int getClassIndex(String className) {
+            Integer index = classIndexes.get(className);
+            if (index == null) {
+                index = new Integer(classNames.size());
+                classNames.add(className);
+                classIndexes.put(className, index);
+            }
+            return index.intValue();
+        }
+
+        synchronized int[] getPositions(String className) {
+            int[] positions = classPositions.get(className);
+            if (positions == null) {
+                Integer index = classIndexes.get(className);
+                int count = 0;
+                positions = new int[size];
+                for (int i = 0; index != null && i < size; i++) {
+                    if (classes[i] == index.intValue()) {
+                        positions[count++] = i;
+                    }
+                }
+                positions = Arrays.copyOf(positions, count);
+                classPositions.put(className, positions);
+            }
+            return positions;
+        }
+    }
+
+    /**
+     * Parses the number at the end of an identifier, as long as it is written the same way
+     * Integer.toString() would write it.
+     *
+     * @param identifier the identifier
+     * @param start the index of the first digit
+     * @return the number, or -1 if the rest of the identifier is not a number of that form
+     */
+    private static int parseNumber(String identifier, int start) {
+        int length = identifier.length() - start;
+        if (length < 1 || length > 9 || (length > 1 && identifier.charAt(start) == '0')) {
+            return -1;
+        }
+        int number = 0;
+        for (int i = start; i < identifier.length(); i++) {
+            char c = identifier.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            number = number * 10 + (c - '0');
+        }
+        return number;
+    }
+}
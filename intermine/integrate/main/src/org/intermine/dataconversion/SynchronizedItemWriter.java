@@ -0,0 +1,80 @@
+package org.intermine.dataconversion;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Collection;
+
+import org.intermine.model.fulldata.Attribute;
+import org.intermine.model.fulldata.Item;
+import org.intermine.model.fulldata.Reference;
+import org.intermine.model.fulldata.ReferenceList;
+import org.intermine.objectstore.ObjectStoreException;
+
+/**
+ * An ItemWriter that passes everything to another ItemWriter while holding a lock, so that a
+ * converter can store Items from several threads at once.
+ */
+public class SynchronizedItemWriter implements ItemWriter
+{
+    private final ItemWriter writer;
+
+    /**
+     * Create a new SynchronizedItemWriter.
+     *
+     * @param writer the ItemWriter to pass Items to
+     */
+    public SynchronizedItemWriter(ItemWriter writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized Integer store(Item item) throws ObjectStoreException {
+        return writer.store(item);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized void store(ReferenceList refList, Integer itemId)
+        throws ObjectStoreException {
+        writer.store(refList, itemId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized void store(Reference ref, Integer itemId) throws ObjectStoreException {
+        writer.store(ref, itemId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized void store(Attribute att, Integer itemId) throws ObjectStoreException {
+        writer.store(att, itemId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized void storeAll(Collection<Item> items) throws ObjectStoreException {
+        writer.storeAll(items);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized void close() throws ObjectStoreException {
+        writer.close();
+    }
+}
@@ -24,7 +24,7 @@ import org.intermine.metadata.ClassDescriptor;
 import org.intermine.metadata.PrimaryKey;
 import org.intermine.model.InterMineObject;
 import org.intermine.objectstore.ObjectStoreException;
-import org.intermine.util.ObjectPipe;
+import org.intermine.util.BatchingObjectPipe;
 
 import org.apache.log4j.Logger;
 
@@ -37,7 +37,7 @@ import org.apache.log4j.Logger;
 public class ParallelBatchingFetcher extends BatchingFetcher
 {
     private static final Logger LOG = Logger.getLogger(ParallelBatchingFetcher.class);
-    private ObjectPipe<WorkUnit> jobs = new ObjectPipe<WorkUnit>();
+    private BatchingObjectPipe<WorkUnit> jobs = new BatchingObjectPipe<WorkUnit>();
 
     /**
      * Constructor
@@ -18,7 +18,14 @@ import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
 
+import org.intermine.dataconversion.ItemSpoolWriter;
+import org.intermine.dataconversion.ItemWriter;
+import org.intermine.dataconversion.ObjectStoreItemSpoolImpl;
+import org.intermine.dataconversion.ObjectStoreItemWriter;
 import org.intermine.objectstore.ObjectStore;
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.objectstore.ObjectStoreWriter;
+import org.intermine.objectstore.ObjectStoreWriterFactory;
 import org.intermine.objectstore.intermine.ObjectStoreInterMineImpl;
 
 /**
@@ -30,6 +37,7 @@ public class ConverterTask extends DynamicAttributeTask
 {
     private String modelName = null;
     private String osName;
+    private String spoolAlias;
     private String excludeList;
 
     /**
@@ -81,6 +89,56 @@ public class ConverterTask extends DynamicAttributeTask
         return osName;
     }
 
+    /**
+     * Set the alias of an ObjectStoreItemSpoolImpl to write the Items to, instead of the
+     * ObjectStore set by setOsName(). An empty alias means write to the ObjectStore.
+     * @param spoolAlias the spool ObjectStore alias
+     */
+    public void setSpoolAlias(String spoolAlias) {
+        this.spoolAlias = spoolAlias;
+    }
+
+    /**
+     * Return the spool ObjectStore alias set by setSpoolAlias().
+     * @return the spool alias
+     */
+    public String getSpoolAlias() {
+        return spoolAlias;
+    }
+
+    /**
+     * Returns a writer for the ObjectStore set by setOsName(), or null if the Items are to be
+     * written to a spool.
+     *
+     * @return an ObjectStoreWriter, or null
+     * @throws ObjectStoreException if the ObjectStoreWriter cannot be created
+     */
+    protected ObjectStoreWriter getObjectStoreWriter() throws ObjectStoreException {
+        if (isSpooling()) {
+            return null;
+        }
+        return ObjectStoreWriterFactory.getObjectStoreWriter(getOsName());
+    }
+
+    /**
+     * Returns the ItemWriter that the converter should write to - an ItemSpoolWriter if a spool
+     * alias has been set, otherwise an ObjectStoreItemWriter.
+     *
+     * @param osw the ObjectStoreWriter returned by getObjectStoreWriter()
+     * @return an ItemWriter
+     * @throws ObjectStoreException if the ItemWriter cannot be created
+     */
+    protected ItemWriter getItemWriter(ObjectStoreWriter osw) throws ObjectStoreException {
+        if (isSpooling()) {
+            return new ItemSpoolWriter(ObjectStoreItemSpoolImpl.getSpoolDir(spoolAlias));
+        }
+        return new ObjectStoreItemWriter(osw);
+    }
+
+    private boolean isSpooling() {
+        return (spoolAlias != null) && (spoolAlias.length() > 0);
+    }
+
     /**
      * Runs various performance-enhancing SQL statements.
      *
@@ -16,10 +16,8 @@ import java.lang.reflect.Constructor;
 import org.apache.tools.ant.BuildException;
 import org.intermine.dataconversion.DirectoryConverter;
 import org.intermine.dataconversion.ItemWriter;
-import org.intermine.dataconversion.ObjectStoreItemWriter;
 import org.intermine.metadata.Model;
 import org.intermine.objectstore.ObjectStoreWriter;
-import org.intermine.objectstore.ObjectStoreWriterFactory;
 
 /**
  * Initiates retrieval and conversion of data from a source directory.
@@ -83,8 +81,8 @@ public class DirectoryConverterTask extends ConverterTask
         ItemWriter writer = null;
         try {
             Model model = Model.getInstanceByName(getModelName());
-            osw = ObjectStoreWriterFactory.getObjectStoreWriter(getOsName());
-            writer = new ObjectStoreItemWriter(osw);
+            osw = getObjectStoreWriter();
+            writer = getItemWriter(osw);
 
             Class c = Class.forName(clsName);
             if (!DirectoryConverter.class.isAssignableFrom(c)) {
@@ -116,7 +114,7 @@ public class DirectoryConverterTask extends ConverterTask
                 if (writer != null) {
                     writer.close();
                 }
-                if (writer != null) {
+                if (osw != null) {
                     osw.close();
                 }
             } catch (Exception e) {
@@ -124,10 +122,12 @@ public class DirectoryConverterTask extends ConverterTask
             }
         }
 
-        try {
-            doSQL(osw.getObjectStore());
-        } catch (Exception e) {
-            throw new BuildException(e);
+        if (osw != null) {
+            try {
+                doSQL(osw.getObjectStore());
+            } catch (Exception e) {
+                throw new BuildException(e);
+            }
         }
     }
 
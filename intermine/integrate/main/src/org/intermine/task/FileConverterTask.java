@@ -10,10 +10,10 @@ package org.intermine.task;
  *
  */
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.log4j.Logger;
 import org.apache.tools.ant.BuildException;
@@ -21,10 +21,8 @@ import org.apache.tools.ant.DirectoryScanner;
 import org.apache.tools.ant.types.FileSet;
 import org.intermine.dataconversion.FileConverter;
 import org.intermine.dataconversion.ItemWriter;
-import org.intermine.dataconversion.ObjectStoreItemWriter;
 import org.intermine.metadata.Model;
 import org.intermine.objectstore.ObjectStoreWriter;
-import org.intermine.objectstore.ObjectStoreWriterFactory;
 
 /**
  * Initiates retrieval and conversion of data from a source file.
@@ -84,8 +82,8 @@ public class FileConverterTask extends ConverterTask
         ItemWriter writer = null;
         try {
             Model model = Model.getInstanceByName(getModelName());
-            osw = ObjectStoreWriterFactory.getObjectStoreWriter(getOsName());
-            writer = new ObjectStoreItemWriter(osw);
+            osw = getObjectStoreWriter();
+            writer = getItemWriter(osw);
 
             Class<?> c = Class.forName(clsName);
             if (!FileConverter.class.isAssignableFrom(c)) {
@@ -104,25 +102,11 @@ public class FileConverterTask extends ConverterTask
             if (files.length == 0) {
                 throw new BuildException("No files found in: " + fileSet.getDir(getProject()));
             }
+            List<File> fileList = new ArrayList<File>();
             for (int i = 0; i < files.length; i++) {
-                File f = new File(ds.getBasedir(), files[i]);
-                System.err .println("Processing file: " + f.getPath());
-                converter.setCurrentFile(f);
-                FileReader fr = null;
-                BufferedReader br = null;
-                try {
-                    fr = new FileReader(f);
-                    br = new BufferedReader(fr);
-                    converter.process(br);
-                } finally {
-                    if (br != null) {
-                        br.close();
-                    }
-                    if (fr != null) {
-                        fr.close();
-                    }
-                }
+                fileList.add(new File(ds.getBasedir(), files[i]));
             }
+            converter.processFiles(fileList);
             converter.close();
         } catch (Exception e) {
             throw new BuildException(e);
@@ -132,7 +116,7 @@ public class FileConverterTask extends ConverterTask
                 if (writer != null) {
                     writer.close();
                 }
-                if (writer != null) {
+                if (osw != null) {
                     osw.close();
                 }
             } catch (Exception e) {
@@ -140,10 +124,12 @@ public class FileConverterTask extends ConverterTask
             }
         }
 
-        try {
-            doSQL(osw.getObjectStore());
-        } catch (Exception e) {
-            throw new BuildException(e);
+        if (osw != null) {
+            try {
+                doSQL(osw.getObjectStore());
+            } catch (Exception e) {
+                throw new BuildException(e);
+            }
         }
     }
 
@@ -82,7 +82,7 @@ public class Attribute
     public boolean equals(Object o) {
         if (o instanceof Attribute) {
             Attribute a = (Attribute) o;
-            return name.equals(a.name) && value.equals(a.value);
+            return getName().equals(a.getName()) && getValue().equals(a.getValue());
         }
         return false;
     }
@@ -92,6 +92,6 @@ public class Attribute
      */
     @Override
     public int hashCode() {
-        return name.hashCode() + 3 * value.hashCode();
+        return getName().hashCode() + 3 * getValue().hashCode();
     }
 }
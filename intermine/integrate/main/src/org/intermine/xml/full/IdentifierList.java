@@ -0,0 +1,188 @@
+package org.intermine.xml.full;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * A List of Item identifiers. Identifiers of the usual form - a prefix ending in an underscore
+ * followed by a number, such as "1_234" - are held as a single long made from the number and the
+ * position of the prefix in a NameTable, rather than as a String each. Any other identifiers are
+ * held as they are.
+ */
+class IdentifierList extends AbstractList<String> implements RandomAccess
+{
+    /** The packed value of an identifier that cannot be packed. */
+    static final long NONE = -1L;
+
+    private static final long[] NO_IDS = new long[0];
+
+    private long[] packed = NO_IDS;
+    private String[] others = null;
+    private int size = 0;
+
+    /**
+     * Turns an identifier into a long, if it has the usual form.
+     *
+     * @param identifier the identifier
+     * @return the packed identifier, or NONE
+     */
+    static long pack(String identifier) {
+        if (identifier == null) {
+            return NONE;
+        }
+        int start = identifier.lastIndexOf('_') + 1;
+        int length = identifier.length() - start;
+        if (start == 0 || length < 1 || length > 9
+                || (length > 1 && identifier.charAt(start) == '0')) {
+            return NONE;
+        }
+        int number = 0;
+        for (int i = start; i < identifier.length(); i++) {
+            char c = identifier.charAt(i);
+            if (c < '0' || c > '9') {
+                return NONE;
+            }
+            number = number * 10 + (c - '0');
+        }
+        int prefix = NameTable.IDENTIFIER_PREFIXES.intern(identifier.substring(0, start));
+        if (prefix < 0) {
+            return NONE;
+        }
+        return (((long) prefix) << 32) | number;
+    }
+
+    /**
+     * Turns a packed identifier back into a String.
+     *
+     * @param packedIdentifier a value returned by pack(), other than NONE
+     * @return the identifier
+     */
+    static String unpack(long packedIdentifier) {
+        return NameTable.IDENTIFIER_PREFIXES.getName((int) (packedIdentifier >>> 32))
+            + ((int) packedIdentifier);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String get(int index) {
+        checkIndex(index, size);
+        return (packed[index] == NONE) ? others[index] : unpack(packed[index]);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String set(int index, String identifier) {
+        String old = get(index);
+        store(index, identifier);
+        return old;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void add(int index, String identifier) {
+        checkIndex(index, size + 1);
+        if (size == packed.length) {
+            int capacity = size + Math.max(4, size / 2);
+            packed = Arrays.copyOf(packed, capacity);
+            if (others != null) {
+                others = Arrays.copyOf(others, capacity);
+            }
+        }
+        System.arraycopy(packed, index, packed, index + 1, size - index);
+        if (others != null) {
+            System.arraycopy(others, index, others, index + 1, size - index);
+        }
+        size++;
+        store(index, identifier);
+        modCount++;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String remove(int index) {
+        String old = get(index);
+        System.arraycopy(packed, index + 1, packed, index, size - index - 1);
+        if (others != null) {
+            System.arraycopy(others, index + 1, others, index, size - index - 1);
+            others[size - 1] = null;
+        }
+        size--;
+        modCount++;
+        return old;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int indexOf(Object o) {
+        if (o != null && !(o instanceof String)) {
+            return -1;
+        }
+        long p = pack((String) o);
+        for (int i = 0; i < size; i++) {
+            if (p == NONE) {
+                if (packed[i] == NONE && (o == null ? others[i] == null : o.equals(others[i]))) {
+                    return i;
+                }
+            } else if (packed[i] == p) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    private void store(int index, String identifier) {
+        long p = pack(identifier);
+        packed[index] = p;
+        if (p == NONE) {
+            if (others == null) {
+                others = new String[packed.length];
+            }
+            others[index] = identifier;
+        } else if (others != null) {
+            others[index] = null;
+        }
+    }
+
+    private static void checkIndex(int index, int limit) {
+        if (index < 0 || index >= limit) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + (limit - 1));
+        }
+    }
+}
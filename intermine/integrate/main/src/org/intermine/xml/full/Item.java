@@ -11,6 +11,7 @@ package org.intermine.xml.full;
  */
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -25,18 +26,36 @@ import org.intermine.metadata.StringUtil;
 import org.intermine.util.XmlUtil;
 
 /**
- * Representation of an object
+ * Representation of an object.
+ *
+ * An Item holds its attributes, references and collections in a pair of small arrays rather than
+ * in maps, keyed by the field name's position in a NameTable, and holds identifiers of the usual
+ * form as a long (see IdentifierList) so that converters can keep millions of Items in memory.
+ * The Attribute and Reference objects returned are therefore made when asked for, as views of
+ * the Item's fields: setting their values sets the Item's.
+ *
  * @author Andrew Varley
  * @author Kim Rutherford
  */
 public class Item implements Comparable<Item>
 {
+    private static final int ATTRIBUTE = 0;
+    private static final int REFERENCE = 1;
+    private static final int COLLECTION = 2;
+    private static final int[] NO_KEYS = new int[0];
+    private static final Object[] NO_VALUES = new Object[0];
+
+    // the identifier, unless it could be packed into packedIdentifier
     private String identifier = "";
+    private long packedIdentifier = IdentifierList.NONE;
     private String className = "";
     private String implementations = "";
-    private Map<String, Attribute> attributes = new HashMap<String, Attribute>();
-    private Map<String, Reference> references = new HashMap<String, Reference>();
-    private Map<String, ReferenceList> collections = new HashMap<String, ReferenceList>();
+    // each field is a key made from the number of its name in NameTable.FIELD_NAMES and its kind,
+    // and a value that is a String for an attribute, a Long or String identifier for a reference
+    // and a ReferenceList for a collection
+    private int[] fieldKeys = NO_KEYS;
+    private Object[] fieldValues = NO_VALUES;
+    private int fieldCount = 0;
     private Model model = null;
     private ClassDescriptor classDescriptor = null;
     private List<ClassDescriptor> implementationClassDescriptors = null;
@@ -58,9 +77,9 @@ public class Item implements Comparable<Item>
      * @param implementations names of implemented classes
      */
     protected Item(Model model, String identifier, String className, String implementations) {
-        this.identifier = identifier;
-        this.className = className;
-        this.implementations = implementations;
+        setIdentifier(identifier);
+        this.className = NameTable.CLASS_NAMES.canonical(className);
+        this.implementations = NameTable.CLASS_NAMES.canonical(implementations);
         setModel(model);
     }
 
@@ -104,7 +123,8 @@ public class Item implements Comparable<Item>
      * @param identifier the identifier
      */
     public void setIdentifier(String identifier) {
-        this.identifier = identifier;
+        packedIdentifier = IdentifierList.pack(identifier);
+        this.identifier = (packedIdentifier == IdentifierList.NONE) ? identifier : null;
     }
 
     /**
@@ -113,7 +133,10 @@ public class Item implements Comparable<Item>
      * @return the identifier
      */
     public String getIdentifier() {
-        return identifier;
+        if (packedIdentifier == IdentifierList.NONE) {
+            return identifier;
+        }
+        return IdentifierList.unpack(packedIdentifier);
     }
 
     /**
@@ -126,7 +149,7 @@ public class Item implements Comparable<Item>
             throw new IllegalArgumentException("className argument cannot be null");
         }
         classDescriptor = getClassDescriptorByName(className);
-        this.className = className;
+        this.className = NameTable.CLASS_NAMES.canonical(className);
     }
 
     /**
@@ -149,7 +172,7 @@ public class Item implements Comparable<Item>
         }
         implementationClassDescriptors = null;
         checkImplementations(implementations);
-        this.implementations = implementations;
+        this.implementations = NameTable.CLASS_NAMES.canonical(implementations);
     }
 
     /**
@@ -181,7 +204,7 @@ public class Item implements Comparable<Item>
                                        + className + "."  + name);
         }
 
-        attributes.put(name, attribute);
+        putField(ATTRIBUTE, name, attribute.getValue());
     }
 
     /**
@@ -194,7 +217,7 @@ public class Item implements Comparable<Item>
             throw new RuntimeException("class \"" + className + "\" has no \""
                                        + attributeName + "\" attribute");
         }
-        attributes.remove(attributeName);
+        removeField(ATTRIBUTE, attributeName);
     }
 
     /**
@@ -203,7 +226,13 @@ public class Item implements Comparable<Item>
      * @return all the attributes
      */
     public Collection<Attribute> getAttributes() {
-        return attributes.values();
+        List<Attribute> attributes = new ArrayList<Attribute>();
+        for (int i = 0; i < fieldCount; i++) {
+            if (getKind(i) == ATTRIBUTE) {
+                attributes.add(new AttributeView(getFieldName(i), (String) fieldValues[i]));
+            }
+        }
+        return attributes;
     }
 
     /**
@@ -217,7 +246,8 @@ public class Item implements Comparable<Item>
             throw new RuntimeException("class \"" + classDescriptor.getName() + "\" has no \""
                                        + attributeName + "\" attribute");
         }
-        return attributes.get(attributeName);
+        int i = findField(ATTRIBUTE, attributeName);
+        return (i < 0) ? null : new AttributeView(attributeName, (String) fieldValues[i]);
     }
 
     /**
@@ -227,7 +257,7 @@ public class Item implements Comparable<Item>
      * @return true if the attribute exists
      */
     public boolean hasAttribute(String attributeName) {
-        return attributes.containsKey(attributeName);
+        return findField(ATTRIBUTE, attributeName) >= 0;
     }
 
     /**
@@ -237,7 +267,7 @@ public class Item implements Comparable<Item>
      */
     public void addReference(Reference reference) {
         checkReference(reference.getName());
-        references.put(reference.getName(), reference);
+        putField(REFERENCE, reference.getName(), packReference(reference.getRefId()));
     }
 
     /**
@@ -247,7 +277,7 @@ public class Item implements Comparable<Item>
      */
     public void removeReference(String referenceName) {
         checkReference(referenceName);
-        references.remove(referenceName);
+        removeField(REFERENCE, referenceName);
     }
 
     /**
@@ -256,7 +286,14 @@ public class Item implements Comparable<Item>
      * @return all the references
      */
     public Collection<Reference> getReferences() {
-        return references.values();
+        List<Reference> references = new ArrayList<Reference>();
+        for (int i = 0; i < fieldCount; i++) {
+            if (getKind(i) == REFERENCE) {
+                references.add(new ReferenceView(getFieldName(i),
+                            unpackReference(fieldValues[i])));
+            }
+        }
+        return references;
     }
 
     /**
@@ -267,7 +304,9 @@ public class Item implements Comparable<Item>
      */
     public Reference getReference(String referenceName) {
         checkReference(referenceName);
-        return references.get(referenceName);
+        int i = findField(REFERENCE, referenceName);
+        return (i < 0) ? null : new ReferenceView(referenceName,
+                unpackReference(fieldValues[i]));
     }
 
     /**
@@ -278,7 +317,7 @@ public class Item implements Comparable<Item>
      */
     public boolean hasReference(String referenceName) {
         checkReference(referenceName);
-        return references.containsKey(referenceName);
+        return findField(REFERENCE, referenceName) >= 0;
     }
 
     /**
@@ -288,7 +327,7 @@ public class Item implements Comparable<Item>
      */
     public void addCollection(ReferenceList collection) {
         checkCollection(collection.getName());
-        collections.put(collection.getName(), collection);
+        putField(COLLECTION, collection.getName(), collection);
     }
 
     /**
@@ -298,7 +337,7 @@ public class Item implements Comparable<Item>
      */
     public void removeCollection(String collectionName) {
         checkCollection(collectionName);
-        collections.remove(collectionName);
+        removeField(COLLECTION, collectionName);
     }
 
     /**
@@ -307,7 +346,13 @@ public class Item implements Comparable<Item>
      * @return all the collections
      */
     public Collection<ReferenceList> getCollections() {
-        return collections.values();
+        List<ReferenceList> collections = new ArrayList<ReferenceList>();
+        for (int i = 0; i < fieldCount; i++) {
+            if (getKind(i) == COLLECTION) {
+                collections.add((ReferenceList) fieldValues[i]);
+            }
+        }
+        return collections;
     }
 
     /**
@@ -318,7 +363,7 @@ public class Item implements Comparable<Item>
      */
     public boolean hasCollection(String collectionName) {
         checkCollection(collectionName);
-        return collections.containsKey(collectionName);
+        return findField(COLLECTION, collectionName) >= 0;
     }
 
     /**
@@ -329,7 +374,8 @@ public class Item implements Comparable<Item>
      */
     public ReferenceList getCollection(String collectionName) {
         checkCollection(collectionName);
-        return collections.get(collectionName);
+        int i = findField(COLLECTION, collectionName);
+        return (i < 0) ? null : (ReferenceList) fieldValues[i];
     }
 
     /**
@@ -366,7 +412,7 @@ public class Item implements Comparable<Item>
      * @param name the name of the attribute
      */
     public void setAttributeToEmptyString(String name) {
-        attributes.put(name, new Attribute(name, ""));
+        putField(ATTRIBUTE, name, "");
     }
 
     /**
@@ -391,9 +437,14 @@ public class Item implements Comparable<Item>
     public void setReference(String name, Item item) {
         if (item == null) {
             throw new IllegalArgumentException("Attempt to set reference '" + name + "' to null"
-                    + " in '" + className + "' item with identifier: " + identifier);
+                    + " in '" + className + "' item with identifier: " + getIdentifier());
+        }
+        checkReference(name);
+        if (item.packedIdentifier == IdentifierList.NONE) {
+            putField(REFERENCE, name, item.identifier);
+        } else {
+            putField(REFERENCE, name, new Long(item.packedIdentifier));
         }
-        addReference(new Reference(name, item.getIdentifier()));
     }
 
     /**
@@ -627,6 +678,65 @@ public class Item implements Comparable<Item>
         return implementationClassDescriptors;
     }
 
+    private int getKind(int field) {
+        return fieldKeys[field] & 3;
+    }
+
+    private String getFieldName(int field) {
+        return NameTable.FIELD_NAMES.getName(fieldKeys[field] >>> 2);
+    }
+
+    private int findKey(int key) {
+        for (int i = 0; i < fieldCount; i++) {
+            if (fieldKeys[i] == key) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int findField(int kind, String name) {
+        int nameId = NameTable.FIELD_NAMES.getId(name);
+        return (nameId < 0) ? -1 : findKey((nameId << 2) | kind);
+    }
+
+    private void putField(int kind, String name, Object value) {
+        int key = (NameTable.FIELD_NAMES.intern(name) << 2) | kind;
+        int i = findKey(key);
+        if (i < 0) {
+            if (fieldCount == fieldKeys.length) {
+                int capacity = fieldCount + Math.max(2, fieldCount / 2);
+                fieldKeys = Arrays.copyOf(fieldKeys, capacity);
+                fieldValues = Arrays.copyOf(fieldValues, capacity);
+            }
+            i = fieldCount++;
+            fieldKeys[i] = key;
+        }
+        fieldValues[i] = value;
+    }
+
+    private void removeField(int kind, String name) {
+        int i = findField(kind, name);
+        if (i >= 0) {
+            fieldCount--;
+            System.arraycopy(fieldKeys, i + 1, fieldKeys, i, fieldCount - i);
+            System.arraycopy(fieldValues, i + 1, fieldValues, i, fieldCount - i);
+            fieldValues[fieldCount] = null;
+        }
+    }
+
+    private static Object packReference(String refId) {
+        long packed = IdentifierList.pack(refId);
+        return (packed == IdentifierList.NONE) ? refId : new Long(packed);
+    }
+
+    private static String unpackReference(Object value) {
+        if (value instanceof Long) {
+            return IdentifierList.unpack(((Long) value).longValue());
+        }
+        return (String) value;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -634,9 +744,26 @@ public class Item implements Comparable<Item>
     public boolean equals(Object o) {
         if (o instanceof Item) {
             Item i = (Item) o;
-            return identifier.equals(i.identifier) && className.equals(i.className)
-                && implementations.equals(i.implementations) && attributes.equals(i.attributes)
-                && references.equals(i.references) && collections.equals(i.collections);
+            if (!(getIdentifier().equals(i.getIdentifier()) && className.equals(i.className)
+                && implementations.equals(i.implementations) && fieldCount == i.fieldCount)) {
+                return false;
+            }
+            for (int f = 0; f < fieldCount; f++) {
+                int other = i.findKey(fieldKeys[f]);
+                if (other < 0) {
+                    return false;
+                }
+                Object value = fieldValues[f];
+                Object otherValue = i.fieldValues[other];
+                if (getKind(f) == REFERENCE) {
+                    value = unpackReference(value);
+                    otherValue = unpackReference(otherValue);
+                }
+                if (!value.equals(otherValue)) {
+                    return false;
+                }
+            }
+            return true;
         }
         return false;
     }
@@ -660,8 +787,25 @@ public class Item implements Comparable<Item>
      */
     @Override
     public int hashCode() {
-        return identifier.hashCode() + 3 * className.hashCode() + 5 * implementations.hashCode()
-            + 7 * attributes.hashCode() + 11 * references.hashCode() + 13 * collections.hashCode();
+        // the same as when the fields were held in one Map per kind of field, summing
+        // Map.Entry.hashCode() of each entry
+        int[] kindHashes = new int[3];
+        for (int i = 0; i < fieldCount; i++) {
+            int nameHash = getFieldName(i).hashCode();
+            int kind = getKind(i);
+            int valueHash;
+            if (kind == COLLECTION) {
+                valueHash = fieldValues[i].hashCode();
+            } else {
+                String value = (kind == REFERENCE) ? unpackReference(fieldValues[i])
+                    : (String) fieldValues[i];
+                valueHash = nameHash + 3 * value.hashCode();
+            }
+            kindHashes[kind] += nameHash ^ valueHash;
+        }
+        return getIdentifier().hashCode() + 3 * className.hashCode()
+            + 5 * implementations.hashCode() + 7 * kindHashes[ATTRIBUTE]
+            + 11 * kindHashes[REFERENCE] + 13 * kindHashes[COLLECTION];
     }
 
     /**
@@ -671,4 +815,109 @@ public class Item implements Comparable<Item>
     public String toString() {
         return XmlUtil.indentXmlSimple(FullRenderer.render(this));
     }
+
+    /**
+     * An Attribute that reads and writes the value of a field of this Item. Once the field is
+     * removed from the Item, or the Attribute is renamed, it keeps the last value it read and no
+     * longer changes the Item.
+     */
+    private class AttributeView extends Attribute
+    {
+        private String name;
+        private String value;
+        private boolean attached = true;
+
+        AttributeView(String name, String value) {
+            this.name = name;
+            this.value = value;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public void setName(String name) {
+            getValue();
+            attached = false;
+            this.name = name;
+        }
+
+        @Override
+        public String getValue() {
+            int i = attached ? findField(ATTRIBUTE, name) : -1;
+            if (i >= 0) {
+                value = (String) fieldValues[i];
+            } else {
+                attached = false;
+            }
+            return value;
+        }
+
+        @Override
+        public void setValue(String value) {
+            if (value == null) {
+                throw new RuntimeException("value null while calling setValue() on " + this);
+            }
+            int i = attached ? findField(ATTRIBUTE, name) : -1;
+            if (i >= 0) {
+                fieldValues[i] = value;
+            } else {
+                attached = false;
+            }
+            this.value = value;
+        }
+    }
+
+    /**
+     * A Reference that reads and writes the identifier held in a field of this Item. Once the
+     * field is removed from the Item, or the Reference is renamed, it keeps the last identifier it
+     * read and no longer changes the Item.
+     */
+    private class ReferenceView extends Reference
+    {
+        private String name;
+        private String refId;
+        private boolean attached = true;
+
+        ReferenceView(String name, String refId) {
+            this.name = name;
+            this.refId = refId;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public void setName(String name) {
+            getRefId();
+            attached = false;
+            this.name = name;
+        }
+
+        @Override
+        public String getRefId() {
+            int i = attached ? findField(REFERENCE, name) : -1;
+            if (i >= 0) {
+                refId = unpackReference(fieldValues[i]);
+            } else {
+                attached = false;
+            }
+            return refId;
+        }
+
+        @Override
+        public void setRefId(String refId) {
+            int i = attached ? findField(REFERENCE, name) : -1;
+            if (i >= 0) {
+                fieldValues[i] = packReference(refId);
+            } else {
+                attached = false;
+            }
+            this.refId = refId;
+        }
+    }
 }
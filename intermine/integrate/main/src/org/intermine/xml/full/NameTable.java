@@ -0,0 +1,106 @@
+package org.intermine.xml.full;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A table of Strings that are each given a small int, so that Items can hold the int instead of
+ * their own copy of a name. Used for field names, class names and the prefixes of identifiers,
+ * of which there are few but which occur in millions of Items.
+ *
+ * @see Item
+ * @see IdentifierList
+ */
+final class NameTable
+{
+    /** The names of attributes, references and collections. */
+    static final NameTable FIELD_NAMES = new NameTable(Integer.MAX_VALUE >> 2);
+    /** Class names and implementations. */
+    static final NameTable CLASS_NAMES = new NameTable(100000);
+    /** The parts of identifiers before the number, for example "1_". */
+    static final NameTable IDENTIFIER_PREFIXES = new NameTable(100000);
+
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+    private final int limit;
+    private volatile String[] names = new String[64];
+    private int size = 0;
+
+    private NameTable(int limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * Returns the number of a name, if it is in the table.
+     *
+     * @param name the name
+     * @return the number, or -1 if the name has not been added
+     */
+    int getId(String name) {
+        Integer id = ids.get(name);
+        return (id == null) ? -1 : id.intValue();
+    }
+
+    /**
+     * Returns the number of a name, adding it to the table if it is not already there.
+     *
+     * @param name the name
+     * @return the number, or -1 if the table is full
+     */
+    int intern(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id.intValue();
+        }
+        synchronized (this) {
+            id = ids.get(name);
+            if (id != null) {
+                return id.intValue();
+            }
+            if (size >= limit) {
+                return -1;
+            }
+            String[] newNames = names;
+            if (size == newNames.length) {
+                newNames = Arrays.copyOf(newNames, size * 2);
+            }
+            newNames[size] = name;
+            names = newNames;
+            ids.put(name, new Integer(size));
+            return size++;
+        }
+    }
+
+    /**
+     * Returns the copy of a name held in the table, so that equal names share one String.
+     *
+     * @param name the name
+     * @return an equal String from the table, or the name itself if the table is full
+     */
+    String canonical(String name) {
+        if (name == null) {
+            return null;
+        }
+        int id = intern(name);
+        return (id < 0) ? name : getName(id);
+    }
+
+    /**
+     * Returns the name with the given number.
+     *
+     * @param id a number returned by intern()
+     * @return the name
+     */
+    String getName(int id) {
+        return names[id];
+    }
+}
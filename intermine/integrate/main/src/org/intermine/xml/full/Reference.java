@@ -80,7 +80,7 @@ public class Reference
     public boolean equals(Object o) {
         if (o instanceof Reference) {
             Reference r = (Reference) o;
-            return name.equals(r.name) && refId.equals(r.refId);
+            return getName().equals(r.getName()) && getRefId().equals(r.getRefId());
         }
         return false;
     }
@@ -90,6 +90,6 @@ public class Reference
      */
     @Override
     public int hashCode() {
-        return name.hashCode() + 3 * refId.hashCode();
+        return getName().hashCode() + 3 * getRefId().hashCode();
     }
 }
@@ -12,7 +12,6 @@ package org.intermine.xml.full;
 
 import java.util.Iterator;
 import java.util.List;
-import java.util.ArrayList;
 
 /**
  * Representation of a field in an object.
@@ -22,7 +21,7 @@ import java.util.ArrayList;
 public class ReferenceList
 {
     protected String name;
-    protected List<String> refIds = new ArrayList<String>();
+    protected List<String> refIds = new IdentifierList();
 
     /**
      * Constructor
@@ -0,0 +1,190 @@
+package org.intermine.dataconversion;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.intermine.metadata.Model;
+import org.intermine.xml.full.Item;
+
+public class FileConverterTest extends TestCase
+{
+    private File dir;
+    private List<File> files = new ArrayList<File>();
+
+    public FileConverterTest(String arg) {
+        super(arg);
+    }
+
+    public void setUp() throws Exception {
+        dir = File.createTempFile("fileconverter", "");
+        dir.delete();
+        dir.mkdir();
+        for (int i = 0; i < 8; i++) {
+            File f = File.createTempFile("fileconverter", ".txt", dir);
+            FileWriter writer = new FileWriter(f);
+            for (int j = 0; j < 500; j++) {
+                writer.write("Employee" + i + "_" + j + "\n");
+            }
+            writer.close();
+            files.add(f);
+        }
+    }
+
+    public void tearDown() {
+        for (File f : files) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    public void testProcessFilesSequentially() throws Exception {
+        checkProcessFiles(null, false);
+    }
+
+    public void testProcessFilesConcurrently() throws Exception {
+        checkProcessFiles("4", true);
+    }
+
+    public void testUnsafeConverterProcessedSequentially() throws Exception {
+        checkProcessFiles("4", false);
+    }
+
+    public void testDirectoryProcessFilesSequentially() throws Exception {
+        checkDirectoryProcessFiles(null, 1);
+    }
+
+    public void testDirectoryProcessFilesConcurrently() throws Exception {
+        checkDirectoryProcessFiles("4", 4);
+    }
+
+    private void checkProcessFiles(String threads, boolean concurrent) throws Exception {
+        Map<String, org.intermine.model.fulldata.Item> stored =
+            new HashMap<String, org.intermine.model.fulldata.Item>();
+        EmployeeConverter converter = new EmployeeConverter(new MockItemWriter(stored),
+                concurrent);
+        if (threads != null) {
+            converter.setConverterThreads(threads);
+        }
+        converter.processFiles(files);
+        converter.close();
+
+        checkStored(stored);
+        assertEquals(concurrent ? 4 : 1, converter.threads.size());
+    }
+
+    private void checkDirectoryProcessFiles(String threads, int threadCount) throws Exception {
+        Map<String, org.intermine.model.fulldata.Item> stored =
+            new HashMap<String, org.intermine.model.fulldata.Item>();
+        EmployeeDirectoryConverter converter =
+            new EmployeeDirectoryConverter(new MockItemWriter(stored));
+        if (threads != null) {
+            converter.setConverterThreads(threads);
+        }
+        converter.process(dir);
+        converter.close();
+
+        checkStored(stored);
+        assertEquals(threadCount, converter.threads.size());
+    }
+
+    private void checkStored(Map<String, org.intermine.model.fulldata.Item> stored) {
+        assertEquals(8 * 500, stored.size());
+        Set<String> names = new HashSet<String>();
+        for (org.intermine.model.fulldata.Item item : stored.values()) {
+            assertEquals("Employee", item.getClassName());
+            names.add(item.getAttributes().iterator().next().getValue());
+        }
+        assertEquals(8 * 500, names.size());
+    }
+
+    private static class EmployeeDirectoryConverter extends DirectoryConverter
+    {
+        final Set<Thread> threads = new HashSet<Thread>();
+
+        EmployeeDirectoryConverter(ItemWriter writer) {
+            super(writer, Model.getInstanceByName("testmodel"));
+        }
+
+        @Override
+        public void process(File dataDir) throws Exception {
+            List<File> files = new ArrayList<File>();
+            for (File f : dataDir.listFiles()) {
+                files.add(f);
+            }
+            processFiles(files, new FileProcessor() {
+                @Override
+                public void process(File f) throws Exception {
+                    synchronized (threads) {
+                        threads.add(Thread.currentThread());
+                    }
+                    BufferedReader br = new BufferedReader(new FileReader(f));
+                    try {
+                        String line;
+                        while ((line = br.readLine()) != null) {
+                            Item item = createItem("Employee");
+                            item.setAttribute("name", line);
+                            store(item);
+                            Thread.yield();
+                        }
+                    } finally {
+                        br.close();
+                    }
+                }
+            });
+        }
+    }
+
+    private static class EmployeeConverter extends FileConverter
+    {
+        private final boolean concurrent;
+        final Set<Thread> threads = new HashSet<Thread>();
+
+        EmployeeConverter(ItemWriter writer, boolean concurrent) {
+            super(writer, Model.getInstanceByName("testmodel"));
+            this.concurrent = concurrent;
+        }
+
+        @Override
+        protected boolean supportsConcurrentProcessing() {
+            return concurrent;
+        }
+
+        @Override
+        public void process(Reader reader) throws Exception {
+            synchronized (threads) {
+                threads.add(Thread.currentThread());
+            }
+            assertTrue(getCurrentFile().getName().startsWith("fileconverter"));
+            BufferedReader br = (BufferedReader) reader;
+            String line;
+            while ((line = br.readLine()) != null) {
+                Item item = createItem("Employee");
+                item.setAttribute("name", line);
+                store(item);
+                // give the other threads a chance to start
+                Thread.yield();
+            }
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package org.intermine.dataconversion;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.intermine.metadata.ConstraintOp;
+import org.intermine.metadata.Model;
+import org.intermine.model.fulldata.Attribute;
+import org.intermine.model.fulldata.Item;
+import org.intermine.model.fulldata.Reference;
+import org.intermine.model.fulldata.ReferenceList;
+import org.intermine.model.testmodel.Company;
+import org.intermine.model.testmodel.Department;
+import org.intermine.objectstore.query.BagConstraint;
+import org.intermine.objectstore.query.ConstraintSet;
+import org.intermine.objectstore.query.Query;
+import org.intermine.objectstore.query.QueryClass;
+import org.intermine.objectstore.query.QueryField;
+import org.intermine.objectstore.query.QueryValue;
+import org.intermine.objectstore.query.ResultsRow;
+import org.intermine.objectstore.query.SimpleConstraint;
+import org.intermine.objectstore.query.SingletonResults;
+import org.intermine.objectstore.translating.ObjectStoreTranslatingImpl;
+
+public class ItemSpoolWriterTest extends TestCase
+{
+    private File spoolDir;
+    private ObjectStoreItemSpoolImpl os;
+
+    public ItemSpoolWriterTest(String arg) {
+        super(arg);
+    }
+
+    public void setUp() throws Exception {
+        spoolDir = File.createTempFile("itemspool", "");
+        spoolDir.delete();
+        os = new ObjectStoreItemSpoolImpl(Model.getInstanceByName("fulldata"), spoolDir);
+
+        ItemSpoolWriter writer = new ItemSpoolWriter(spoolDir);
+        writer.store(makeItem("1_1", "Company", "name", "CompanyA"));
+        Integer id = writer.store(makeItem("1_2", "Company", "name", "CompanyB"));
+        ReferenceList departments = new ReferenceList();
+        departments.setName("departments");
+        departments.setRefIds("2_1 2_2");
+        writer.store(departments, id);
+        writer.close();
+
+        writer = new ItemSpoolWriter(spoolDir);
+        for (int i = 1; i <= 2; i++) {
+            Item department = makeItem("2_" + i, "Department", "name", "Department" + i);
+            Reference company = new Reference();
+            company.setName("company");
+            company.setRefId("1_2");
+            department.addReferences(company);
+            writer.store(department);
+        }
+        writer.close();
+
+        // An unfinished segment, which is ignored
+        writer = new ItemSpoolWriter(spoolDir);
+        writer.store(makeItem("3_1", "Company", "name", "Unfinished"));
+    }
+
+    public void tearDown() throws Exception {
+        os.clear();
+        spoolDir.delete();
+    }
+
+    public void testReadAll() throws Exception {
+        List<Item> items = execute(itemQuery(null));
+        assertEquals(4, items.size());
+        assertEquals(Arrays.asList("1_1", "1_2", "2_1", "2_2"), getIdentifiers(items));
+        Item company = items.get(1);
+        assertEquals("Company", company.getClassName());
+        assertEquals("CompanyB", getAttributes(company).get("name"));
+        assertEquals(1, company.getCollections().size());
+        ReferenceList departments = company.getCollections().iterator().next();
+        assertEquals("departments", departments.getName());
+        assertEquals("2_1 2_2", departments.getRefIds());
+        Item department = items.get(3);
+        assertEquals("1_2", department.getReferences().iterator().next().getRefId());
+    }
+
+    public void testQueries() throws Exception {
+        Query q = itemQuery("Department");
+        assertEquals(Arrays.asList("2_1", "2_2"), getIdentifiers(execute(q)));
+        assertEquals(2, os.count(q, os.getSequence(os.getComponentsForQuery(q))));
+
+        q = new Query();
+        QueryClass qc = new QueryClass(Item.class);
+        q.addFrom(qc);
+        q.addToSelect(qc);
+        q.setConstraint(new BagConstraint(new QueryField(qc, "identifier"), ConstraintOp.IN,
+                    Arrays.asList("2_2", "1_1", "4_1", "3_1")));
+        assertEquals(Arrays.asList("1_1", "2_2"), getIdentifiers(execute(q)));
+
+        assertEquals(Arrays.asList("2_1"), getIdentifiers(execute(identifierQuery("Department",
+                            "2_1"))));
+        assertEquals(Collections.emptyList(), getIdentifiers(execute(identifierQuery("Secretary",
+                            "2_1"))));
+        assertEquals(Collections.emptyList(), getIdentifiers(execute(itemQuery("Secretary"))));
+
+        Map<String, Integer> expected = new HashMap<String, Integer>();
+        expected.put("1", new Integer(2));
+        expected.put("2", new Integer(2));
+        assertEquals(expected, os.getNamespaceMaxima());
+    }
+
+    public void testTranslate() throws Exception {
+        Model model = Model.getInstanceByName("testmodel");
+        ObjectStoreTranslatingImpl translating = new ObjectStoreTranslatingImpl(model, os,
+                new ItemToObjectTranslator(model, os));
+        Query q = new Query();
+        QueryClass qc = new QueryClass(Company.class);
+        q.addFrom(qc);
+        q.addToSelect(qc);
+        SingletonResults res = translating.executeSingleton(q);
+        assertEquals(2, res.size());
+        Company company = (Company) res.get(1);
+        assertEquals("CompanyB", company.getName());
+        List<String> names = new ArrayList<String>();
+        for (Department department : company.getDepartments()) {
+            names.add(department.getName());
+            assertEquals("CompanyB", department.getCompany().getName());
+        }
+        assertEquals(2, names.size());
+        assertTrue(names.containsAll(Arrays.asList("Department1", "Department2")));
+    }
+
+    private static Item makeItem(String identifier, String className, String name,
+            String value) {
+        Item item = new Item();
+        item.setIdentifier(identifier);
+        item.setClassName(className);
+        item.setImplementations("");
+        Attribute attribute = new Attribute();
+        attribute.setName(name);
+        attribute.setValue(value);
+        item.addAttributes(attribute);
+        return item;
+    }
+
+    private static Query itemQuery(String className) {
+        Query q = new Query();
+        QueryClass qc = new QueryClass(Item.class);
+        q.addFrom(qc);
+        q.addToSelect(qc);
+        if (className != null) {
+            q.setConstraint(new SimpleConstraint(new QueryField(qc, "className"),
+                        ConstraintOp.EQUALS, new QueryValue(className)));
+        }
+        return q;
+    }
+
+    private static Query identifierQuery(String className, String identifier) {
+        Query q = itemQuery(className);
+        QueryClass qc = (QueryClass) q.getSelect().get(0);
+        ConstraintSet cs = new ConstraintSet(ConstraintOp.AND);
+        cs.addConstraint(q.getConstraint());
+        cs.addConstraint(new SimpleConstraint(new QueryField(qc, "identifier"),
+                    ConstraintOp.EQUALS, new QueryValue(identifier)));
+        q.setConstraint(cs);
+        return q;
+    }
+
+    private List<Item> execute(Query q) throws Exception {
+        List<Item> items = new ArrayList<Item>();
+        for (ResultsRow<Object> row : os.execute(q, 0, 100, false, false, null)) {
+            items.add((Item) row.get(0));
+        }
+        return items;
+    }
+
+    private static List<String> getIdentifiers(Collection<Item> items) {
+        List<String> identifiers = new ArrayList<String>();
+        for (Item item : items) {
+            identifiers.add(item.getIdentifier());
+        }
+        return identifiers;
+    }
+
+    private static Map<String, String> getAttributes(Item item) {
+        Map<String, String> attributes = new HashMap<String, String>();
+        for (Attribute attribute : item.getAttributes()) {
+            attributes.put(attribute.getName(), attribute.getValue());
+        }
+        return attributes;
+    }
+}
@@ -334,4 +334,89 @@ public class ItemTest extends TestCase
 
         assertTrue(item1.canHaveCollection("departments"));
     }
+
+    public void testIdentifiers() throws Exception {
+        Item item1 = new Item();
+        String[] identifiers = new String[] {"1_23", "contractor_id_0", "1_023", "2_", "3",
+            "4_x", "5_1234567890", null};
+        for (String identifier : identifiers) {
+            item1.setIdentifier(identifier);
+            assertEquals(identifier, item1.getIdentifier());
+            item1.setReference("ref", identifier);
+            assertEquals(identifier, item1.getReference("ref").getRefId());
+        }
+        for (String identifier : identifiers) {
+            item1.addToCollection("col", identifier == null ? "x" : identifier);
+        }
+        List<String> expected = new ArrayList<String>();
+        for (String identifier : identifiers) {
+            expected.add(identifier == null ? "x" : identifier);
+        }
+        assertEquals(expected, item1.getCollection("col").getRefIds());
+        assertTrue(item1.getCollection("col").getRefIds().contains("1_023"));
+        assertFalse(item1.getCollection("col").getRefIds().contains("1_24"));
+    }
+
+    public void testEqualsAndHashCode() throws Exception {
+        Item item1 = new Item("1_1", "Company", "");
+        Item item2 = new Item("1_2", "Department", "");
+        item1.setAttribute("name", "Company1");
+        item1.setAttribute("vatNumber", "10");
+        item1.setReference("address", "2_1");
+        item1.addToCollection("departments", item2);
+
+        Item item3 = new Item("1_1", "Company", "");
+        item3.addToCollection("departments", "1_2");
+        item3.setReference("address", "2_1");
+        item3.setAttribute("vatNumber", "10");
+        item3.setAttribute("name", "Company1");
+        assertEquals(item1, item3);
+        assertEquals(item1.hashCode(), item3.hashCode());
+
+        item3.setReference("address", "2_2");
+        assertFalse(item1.equals(item3));
+        item3.removeReference("address");
+        assertFalse(item1.equals(item3));
+        item3.setReference("address", "2_1");
+        assertEquals(item1, item3);
+        item3.getAttribute("name").setValue("Company2");
+        assertFalse(item1.equals(item3));
+    }
+
+    public void testFieldsWriteThrough() throws Exception {
+        Item item = new Item("1_1", "Company", "");
+        item.setAttribute("name", "Company1");
+        item.setReference("address", "2_1");
+
+        Attribute name = item.getAttribute("name");
+        name.setValue("Company2");
+        assertEquals("Company2", item.getAttribute("name").getValue());
+        item.setAttribute("name", "Company3");
+        assertEquals("Company3", name.getValue());
+        assertEquals(new Attribute("name", "Company3"), name);
+
+        Reference address = item.getReference("address");
+        address.setRefId("2_2");
+        assertEquals("2_2", item.getReference("address").getRefId());
+        address.setRefId("address_x");
+        assertEquals("address_x", item.getReference("address").getRefId());
+
+        for (Attribute attribute : item.getAttributes()) {
+            attribute.setValue("Company4");
+        }
+        assertEquals("Company4", item.getAttribute("name").getValue());
+        for (Reference reference : item.getReferences()) {
+            reference.setRefId("2_3");
+        }
+        assertEquals("2_3", item.getReference("address").getRefId());
+
+        // Once removed from the Item a field is not put back
+        item.removeAttribute("name");
+        name.setValue("Company5");
+        assertFalse(item.hasAttribute("name"));
+        assertEquals("Company5", name.getValue());
+        item.removeReference("address");
+        address.setRefId("2_4");
+        assertFalse(item.hasReference("address"));
+    }
 }
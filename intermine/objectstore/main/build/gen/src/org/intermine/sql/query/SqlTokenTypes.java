@@ -0,0 +1,113 @@
+// $ANTLR 2.7.6 (20060327): "intermine_sql.g" -> "SqlLexer.java"$
+
+package org.intermine.sql.query;
+
+public interface SqlTokenTypes {
+	int EOF = 1;
+	int NULL_TREE_LOOKAHEAD = 3;
+	int SQL_STATEMENT = 4;
+	int SELECT_LIST = 5;
+	int FROM_LIST = 6;
+	int WHERE_CLAUSE = 7;
+	int GROUP_CLAUSE = 8;
+	int HAVING_CLAUSE = 9;
+	int ORDER_CLAUSE = 10;
+	int LIMIT_CLAUSE = 11;
+	int SELECT_VALUE = 12;
+	int TABLE_ALIAS = 13;
+	int FIELD_ALIAS = 14;
+	int TABLE = 15;
+	int TABLE_NAME = 16;
+	int SUBQUERY = 17;
+	int CONSTANT = 18;
+	int FIELD = 19;
+	int FIELD_NAME = 20;
+	int SAFE_FUNCTION = 21;
+	int UNSAFE_FUNCTION = 22;
+	int CONSTRAINT = 23;
+	int NULL_CONSTRAINT = 24;
+	int NOT_CONSTRAINT = 25;
+	int AND_CONSTRAINT_SET = 26;
+	int OR_CONSTRAINT_SET = 27;
+	int SUBQUERY_CONSTRAINT = 28;
+	int INLIST_CONSTRAINT = 29;
+	int ORDER_DESC = 30;
+	int LITERAL_explain = 31;
+	int LITERAL_distinct = 32;
+	int INTEGER = 33;
+	int ALIAS = 34;
+	int IDENTIFIER = 35;
+	int QUOTED_STRING = 36;
+	int ESCAPED_STRING = 37;
+	int FLOAT = 38;
+	int LITERAL_true = 39;
+	int LITERAL_false = 40;
+	int LITERAL_null = 41;
+	int TYPECAST = 42;
+	int LITERAL_boolean = 43;
+	int LITERAL_real = 44;
+	int LITERAL_double = 45;
+	int LITERAL_smallint = 46;
+	int LITERAL_integer = 47;
+	int LITERAL_bigint = 48;
+	int LITERAL_numeric = 49;
+	int LITERAL_text = 50;
+	int LITERAL_count = 51;
+	int LITERAL_max = 52;
+	int LITERAL_min = 53;
+	int LITERAL_sum = 54;
+	int LITERAL_avg = 55;
+	int LITERAL_lower = 56;
+	int LITERAL_upper = 57;
+	int LITERAL_greatest = 58;
+	int LITERAL_least = 59;
+	int LITERAL_strpos = 60;
+	int LITERAL_substr = 61;
+	int LITERAL_coalesce = 62;
+	int LITERAL_stddev = 63;
+	int PLUS = 64;
+	int PERCENT = 65;
+	int ASTERISK = 66;
+	int DIVIDE = 67;
+	int POWER = 68;
+	int MINUS = 69;
+	int NOT_EQ = 70;
+	int GE = 71;
+	int LE = 72;
+	int GT = 73;
+	int LITERAL_not = 74;
+	int LITERAL_like = 75;
+	int EQ = 76;
+	int LT = 77;
+	int GORNULL = 78;
+	int SEMI = 79;
+	int LITERAL_union = 80;
+	int LITERAL_select = 81;
+	int LITERAL_all = 82;
+	int COMMA = 83;
+	int LITERAL_from = 84;
+	int LITERAL_where = 85;
+	int LITERAL_group = 86;
+	int LITERAL_by = 87;
+	int LITERAL_having = 88;
+	int LITERAL_order = 89;
+	int LITERAL_limit = 90;
+	int LITERAL_offset = 91;
+	int LITERAL_as = 92;
+	int LITERAL_desc = 93;
+	int OPEN_PAREN = 94;
+	int CLOSE_PAREN = 95;
+	int DOT = 96;
+	int COLONTYPE = 97;
+	int LITERAL_precision = 98;
+	int LITERAL_or = 99;
+	int LITERAL_is = 100;
+	int LITERAL_and = 101;
+	int LITERAL_in = 102;
+	int AT_SIGN = 103;
+	int OVERLAP = 104;
+	int INSIDE = 105;
+	int SURROUND = 106;
+	int VERTBAR = 107;
+	int WS = 108;
+}
@@ -10,6 +10,10 @@ package org.intermine.objectstore.intermine;
  *
  */
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * An object that holds information about extra queries run during the ResultsConverter operation.
  *
@@ -18,6 +22,7 @@ package org.intermine.objectstore.intermine;
 public class ExtraQueryTime
 {
     private long queryTime = 0;
+    private Map<String, Long> pathExpressionTimes = null;
 
     /**
      * Constructor.
@@ -30,16 +35,43 @@ public class ExtraQueryTime
      *
      * @param time the time taken in milliseconds for the query
      */
-    public void addTime(long time) {
+    public synchronized void addTime(long time) {
         queryTime += time;
     }
 
+    /**
+     * Records the time taken to fetch the data for a path expression.
+     *
+     * @param alias the alias of the path expression in the query
+     * @param time the time taken in milliseconds
+     */
+    public synchronized void addPathExpressionTime(String alias, long time) {
+        if (pathExpressionTimes == null) {
+            pathExpressionTimes = new LinkedHashMap<String, Long>();
+        }
+        pathExpressionTimes.put(alias, new Long(time));
+    }
+
     /**
      * Returns the total amount of time spent in extra queries, in milliseconds.
      *
      * @return a long
      */
-    public long getQueryTime() {
+    public synchronized long getQueryTime() {
         return queryTime;
     }
+
+    /**
+     * Returns the time taken to fetch the data for each path expression, in the order of the
+     * SELECT list. When path expressions are fetched at the same time, their times add up to
+     * more than the time spent in extra queries.
+     *
+     * @return a Map from path expression alias to time in milliseconds
+     */
+    public synchronized Map<String, Long> getPathExpressionTimes() {
+        if (pathExpressionTimes == null) {
+            return Collections.emptyMap();
+        }
+        return new LinkedHashMap<String, Long>(pathExpressionTimes);
+    }
 }
@@ -35,6 +35,9 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.log4j.Logger;
 import org.intermine.metadata.ClassDescriptor;
@@ -133,6 +136,11 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
     protected static final int SEQUENCE_MULTIPLE = 1000000;
     protected boolean logExplains = false;
     protected boolean disableResultsCache = false;
+    // PreparedStatements for parameterised SQL, or null if queries are run as literal SQL
+    protected PreparedStatementCache preparedStatements = null;
+    // runs path expression queries alongside the thread converting results, or null for none
+    private volatile ExecutorService pathExpressionExecutor = null;
+    protected int pathExpressionParallelism = 1;
 
     // don't use a table to represent bags if the bag is smaller than this value
     protected int minBagTableSize = -1;
@@ -347,6 +355,8 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
         String logExplainsString = props.getProperty("logExplains");
         String logBeforeExecuteString = props.getProperty("logBeforeExecute");
         String disableResultsCacheString = props.getProperty("disableResultsCache");
+        String preparedStatementCacheSizeString = props.getProperty("preparedStatementCacheSize");
+        String pathExpressionParallelismString = props.getProperty("pathExpressionParallelism");
 
         synchronized (instances) {
             ObjectStoreInterMineImpl os = instances.get(osAlias);
@@ -520,6 +530,22 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
                 if ("true".equals(disableResultsCacheString)) {
                     os.setDisableResultsCache(true);
                 }
+                if (preparedStatementCacheSizeString != null) {
+                    try {
+                        os.setPreparedStatementCacheSize(
+                                Integer.parseInt(preparedStatementCacheSizeString));
+                    } catch (NumberFormatException e) {
+                        LOG.warn("Error setting preparedStatementCacheSize: " + e);
+                    }
+                }
+                if (pathExpressionParallelismString != null) {
+                    try {
+                        os.setPathExpressionParallelism(
+                                Integer.parseInt(pathExpressionParallelismString));
+                    } catch (NumberFormatException e) {
+                        LOG.warn("Error setting pathExpressionParallelism: " + e);
+                    }
+                }
                 instances.put(osAlias, os);
             }
             return os;
@@ -726,6 +752,117 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
         return minBagTableSize;
     }
 
+    /**
+     * Set the number of PreparedStatements to keep for each database connection. If this is
+     * more than zero, queries that differ only in their constraint values are run with the same
+     * PreparedStatement, so the database can reuse its plan for them.
+     *
+     * @param preparedStatementCacheSize the number of statements, or zero to run all queries as
+     * literal SQL
+     */
+    public synchronized void setPreparedStatementCacheSize(int preparedStatementCacheSize) {
+        if (preparedStatements != null) {
+            preparedStatements.clear();
+        }
+        if (preparedStatementCacheSize > 0) {
+            preparedStatements = new PreparedStatementCache(preparedStatementCacheSize);
+        } else {
+            preparedStatements = null;
+        }
+    }
+
+    /**
+     * Set how many path expression queries may run at once for a batch of results. The thread
+     * converting the results runs one of them, and the rest share a pool of
+     * pathExpressionParallelism - 1 threads, each using its own connection. The pool is shared by
+     * every batch, so path expressions never hold more than pathExpressionParallelism - 1
+     * connections beyond those of the threads converting results.
+     *
+     * @param pathExpressionParallelism the number of queries, or 1 to run them one at a time
+     */
+    public synchronized void setPathExpressionParallelism(int pathExpressionParallelism) {
+        if (pathExpressionExecutor != null) {
+            pathExpressionExecutor.shutdown();
+            pathExpressionExecutor = null;
+        }
+        this.pathExpressionParallelism = Math.max(1, pathExpressionParallelism);
+        if (this.pathExpressionParallelism > 1) {
+            pathExpressionExecutor = Executors.newFixedThreadPool(
+                    this.pathExpressionParallelism - 1, new ThreadFactory() {
+                        private int count = 0;
+
+                        @Override
+                        public synchronized Thread newThread(Runnable r) {
+                            count++;
+                            Thread t = new Thread(r, "Path expression fetcher " + count);
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+        }
+    }
+
+    /**
+     * Returns how many path expression queries may run at once for a batch of results.
+     *
+     * @return an int, which is 1 if they run one at a time
+     */
+    public int getPathExpressionParallelism() {
+        return pathExpressionParallelism;
+    }
+
+    /**
+     * Returns the pool of threads that ResultsConverter uses to run path expression queries.
+     *
+     * @return an ExecutorService, or null if path expression queries run one at a time
+     */
+    protected ExecutorService getPathExpressionExecutor() {
+        return pathExpressionExecutor;
+    }
+
+    /**
+     * Returns the number of PreparedStatements kept for each database connection.
+     *
+     * @return an int, which is zero if queries are run as literal SQL
+     */
+    public int getPreparedStatementCacheSize() {
+        PreparedStatementCache cache = preparedStatements;
+        return (cache == null) ? 0 : cache.getMaxSize();
+    }
+
+    /**
+     * Returns the number of queries run with a PreparedStatement that was already prepared, for
+     * which the database may have reused its plan.
+     *
+     * @return a long
+     */
+    public long getPreparedStatementHits() {
+        PreparedStatementCache cache = preparedStatements;
+        return (cache == null) ? 0 : cache.getHits();
+    }
+
+    /**
+     * Returns the number of queries run with a PreparedStatement that had to be prepared.
+     *
+     * @return a long
+     */
+    public long getPreparedStatementMisses() {
+        PreparedStatementCache cache = preparedStatements;
+        return (cache == null) ? 0 : cache.getMisses();
+    }
+
+    /**
+     * Returns the fraction of queries run with a PreparedStatement that found the statement
+     * already prepared.
+     *
+     * @return a number between 0 and 1
+     */
+    public double getPreparedStatementHitRate() {
+        long hits = getPreparedStatementHits();
+        long total = hits + getPreparedStatementMisses();
+        return (total == 0) ? 0.0 : ((double) hits) / total;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -1062,7 +1199,15 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
                 + ", time spent: Bag Tables: " + statsBagTableTime + ", SQL Gen: " + statsGenTime
                 + ", SQL Optimise: " + statsOptTime + ", Estimate: "
                 + statsEstTime + ", Execute: " + statsExeTime + ", Results Convert: "
-                + statsConTime);
+                + statsConTime + ", prepared statements reused: " + getPreparedStatementHits()
+                + ", prepared: " + getPreparedStatementMisses());
+        if (preparedStatements != null) {
+            preparedStatements.clear();
+        }
+        if (pathExpressionExecutor != null) {
+            pathExpressionExecutor.shutdown();
+            pathExpressionExecutor = null;
+        }
 
         if (logTableBatch != null) {
             try {
@@ -1161,9 +1306,19 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
             flushOldTempBagTables(c);
         }
         long preGenTime = System.currentTimeMillis();
+        PreparedStatementCache statementCache = preparedStatements;
         String sql;
+        ParameterisedSql parameterisedSql = null;
         try {
-            sql = SqlGenerator.generate(q, start, limit, schema, db, bagConstraintTables);
+            if (statementCache != null) {
+                parameterisedSql = SqlGenerator.generateParameterised(q, start, limit, schema, db,
+                        bagConstraintTables);
+            }
+            if (parameterisedSql != null) {
+                sql = parameterisedSql.getLiteralSql();
+            } else {
+                sql = SqlGenerator.generate(q, start, limit, schema, db, bagConstraintTables);
+            }
         } catch (CompletelyFalseException e) {
             return Collections.emptyList();
         }
@@ -1223,18 +1378,42 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
                         + "optimised sql: " + sql);
             }
             long preExecute = System.currentTimeMillis();
-            Statement s = c.createStatement();
-            registerStatement(s);
-            ResultSet sqlResults;
+            PreparedStatement ps = null;
+            // The optimiser works on literal SQL, so only run the parameterised SQL if the
+            // optimiser left the query as it was
+            if ((parameterisedSql != null) && sql.equals(generatedSql)) {
+                ps = statementCache.checkOut(c, parameterisedSql.getSql());
+            }
+            Statement s = (ps == null) ? c.createStatement() : ps;
+            long postExecute;
+            ExtraQueryTime extra = new ExtraQueryTime();
+            List<ResultsRow<Object>> objResults;
+            boolean reusable = false;
             try {
-                sqlResults = s.executeQuery(sql);
+                registerStatement(s);
+                ResultSet sqlResults;
+                try {
+                    if (ps == null) {
+                        sqlResults = s.executeQuery(sql);
+                    } else {
+                        parameterisedSql.setValues(ps);
+                        sqlResults = ps.executeQuery();
+                    }
+                } finally {
+                    deregisterStatement(s);
+                }
+                postExecute = System.currentTimeMillis();
+                objResults = ResultsConverter.convert(sqlResults, q, this, c, sequence, optimise,
+                        extra, goFasterTables, goFasterCache);
+                if (ps != null) {
+                    sqlResults.close();
+                }
+                reusable = true;
             } finally {
-                deregisterStatement(s);
+                if (ps != null) {
+                    statementCache.checkIn(parameterisedSql.getSql(), ps, reusable);
+                }
             }
-            long postExecute = System.currentTimeMillis();
-            ExtraQueryTime extra = new ExtraQueryTime();
-            List<ResultsRow<Object>>  objResults = ResultsConverter.convert(sqlResults, q, this, c,
-                    sequence, optimise, extra, goFasterTables, goFasterCache);
             long postConvert = System.currentTimeMillis();
             long permittedTime = (objResults.size() * 2) + start + (150 * q.getFrom().size())
                     + (sql.length() / 20) - (q.getFrom().size() == 0 ? 0 : 100);
@@ -1293,7 +1472,9 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
                         + " ms, convert results: " + conTime + " ms, extra queries: "
                         + extra.getQueryTime() + " ms, total: "
                         + (postConvert - preBagTableTime) + " ms" + ", rows: "
-                        + objResults.size());
+                        + objResults.size()
+                        + (extra.getPathExpressionTimes().isEmpty() ? ""
+                            : ", path expressions (ms): " + extra.getPathExpressionTimes()));
                 if (getLogExplains() && (!doneExplainLog)) {
                     if (explainResult == null) {
                         explainResult = ExplainResult.getInstance(sql, c);
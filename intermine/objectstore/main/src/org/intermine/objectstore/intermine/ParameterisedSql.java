@@ -0,0 +1,95 @@
+package org.intermine.objectstore.intermine;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An SQL statement with a "?" for each value, and the values to bind to them, as generated by
+ * SqlGenerator.generateParameterised().
+ */
+public class ParameterisedSql
+{
+    private final String sql;
+    private final List<Object> values;
+    private final String literalSql;
+
+    /**
+     * Constructor.
+     *
+     * @param sql the SQL, with a "?" for each value
+     * @param values the values, in the order they appear in the SQL
+     * @param literalSql the same SQL with the values written into it
+     */
+    public ParameterisedSql(String sql, List<Object> values, String literalSql) {
+        this.sql = sql;
+        this.values = Collections.unmodifiableList(values);
+        this.literalSql = literalSql;
+    }
+
+    /**
+     * Returns the SQL, which is the same for every Query of the same shape.
+     *
+     * @return a String
+     */
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * Returns the values to bind to the SQL.
+     *
+     * @return a List of Strings, Numbers and Booleans
+     */
+    public List<Object> getValues() {
+        return values;
+    }
+
+    /**
+     * Returns the SQL with the values written into it, as SqlGenerator.generate() would write it.
+     *
+     * @return a String
+     */
+    public String getLiteralSql() {
+        return literalSql;
+    }
+
+    /**
+     * Binds the values to a PreparedStatement made from the SQL.
+     *
+     * @param ps the PreparedStatement
+     * @throws SQLException if a value cannot be set
+     */
+    public void setValues(PreparedStatement ps) throws SQLException {
+        for (int i = 0; i < values.size(); i++) {
+            Object value = values.get(i);
+            if (value instanceof String) {
+                // Leave the type of a String for the database to work out, as it does for a
+                // quoted constant, rather than sending it as a varchar
+                ps.setObject(i + 1, value, Types.OTHER);
+            } else {
+                ps.setObject(i + 1, value);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return sql + " " + values;
+    }
+}
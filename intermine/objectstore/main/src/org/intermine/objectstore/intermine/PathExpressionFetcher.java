@@ -0,0 +1,232 @@
+package org.intermine.objectstore.intermine;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.intermine.objectstore.ObjectStoreException;
+
+/**
+ * Runs the queries for the path expressions of a batch of results, on the calling thread and
+ * on helper threads from a shared pool. Each helper takes one connection and fetches path
+ * expressions from a shared queue until it is empty, so a batch never uses more than maxHelpers
+ * extra connections however many path expressions it has, and a helper that only starts once
+ * the others have finished takes no connection at all.
+ *
+ * If a fetch fails, the queue is emptied, and every helper has finished and released its
+ * connection before the exception is thrown.
+ *
+ * Helper threads fetch serially, as a thread from the pool must not wait for further threads
+ * from the same pool.
+ *
+ * @param <T> the type of the path expressions
+ */
+abstract class PathExpressionFetcher<T>
+{
+    // set in helper threads, which must not wait for further threads from the same pool
+    private static final ThreadLocal<Boolean> IN_PATH_EXPRESSION_THREAD
+        = new ThreadLocal<Boolean>();
+
+    private boolean concurrent = false;
+
+    /**
+     * Fetches the data for one path expression.
+     *
+     * @param pathExpression the path expression
+     * @param c the Connection to use
+     * @return the time spent in queries, in milliseconds
+     * @throws ObjectStoreException if something goes wrong
+     */
+    protected abstract long fetch(T pathExpression, Connection c) throws ObjectStoreException;
+
+    /**
+     * Takes a connection for a helper thread.
+     *
+     * @return a Connection
+     * @throws SQLException if there is no connection to be had
+     */
+    protected abstract Connection getConnection() throws SQLException;
+
+    /**
+     * Gives back a connection taken by getConnection().
+     *
+     * @param c the Connection, or null if getConnection() failed
+     */
+    protected abstract void releaseConnection(Connection c);
+
+    /**
+     * Returns whether the calling thread is a helper thread of a PathExpressionFetcher.
+     *
+     * @return true in a helper thread
+     */
+    static boolean isPathExpressionThread() {
+        return IN_PATH_EXPRESSION_THREAD.get() != null;
+    }
+
+    /**
+     * Returns whether the last call to fetchAll() used helper threads.
+     *
+     * @return a boolean
+     */
+    boolean wasConcurrent() {
+        return concurrent;
+    }
+
+    /**
+     * Fetches the data for all of the given path expressions.
+     *
+     * @param pathExpressions the path expressions
+     * @param c the Connection for the calling thread
+     * @param executor the pool of helper threads, or null to fetch on the calling thread only
+     * @param maxHelpers the most helper threads, and so extra connections, to use
+     * @return the time spent in queries for each path expression, in the order given
+     * @throws ObjectStoreException if something goes wrong
+     */
+    Map<T, Long> fetchAll(List<T> pathExpressions, Connection c, ExecutorService executor,
+            int maxHelpers) throws ObjectStoreException {
+        Map<T, Long> times = new ConcurrentHashMap<T, Long>();
+        int helpers = Math.min(pathExpressions.size() - 1, maxHelpers);
+        concurrent = (executor != null) && (helpers > 0) && !isPathExpressionThread();
+        final Queue<T> queue = new ConcurrentLinkedQueue<T>(pathExpressions);
+        if (!concurrent) {
+            fetchQueued(queue, c, times);
+            return inOrder(pathExpressions, times);
+        }
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        Throwable failure = null;
+        try {
+            for (int i = 0; i < helpers; i++) {
+                futures.add(executor.submit(new Helper(queue, times)));
+            }
+            fetchQueued(queue, c, times);
+        } catch (ObjectStoreException e) {
+            failure = e;
+        } catch (RuntimeException e) {
+            failure = e;
+        } catch (Error e) {
+            failure = e;
+        } finally {
+            // Wait for every helper, so that none is still using a connection or writing
+            // results once this returns
+            for (Future<Void> future : futures) {
+                Throwable helperFailure = waitFor(future);
+                if (failure == null) {
+                    failure = helperFailure;
+                }
+            }
+        }
+        if (failure instanceof ObjectStoreException) {
+            throw (ObjectStoreException) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        } else if (failure != null) {
+            throw new ObjectStoreException("Error fetching path expression", failure);
+        }
+        return inOrder(pathExpressions, times);
+    }
+
+    private void fetchQueued(Queue<T> queue, Connection c, Map<T, Long> times)
+        throws ObjectStoreException {
+        T pathExpression;
+        while ((pathExpression = queue.poll()) != null) {
+            boolean done = false;
+            try {
+                times.put(pathExpression, Long.valueOf(fetch(pathExpression, c)));
+                done = true;
+            } finally {
+                if (!done) {
+                    // Stop the other threads fetching any more
+                    queue.clear();
+                }
+            }
+        }
+    }
+
+    private Map<T, Long> inOrder(List<T> pathExpressions, Map<T, Long> times) {
+        Map<T, Long> retval = new LinkedHashMap<T, Long>();
+        for (T pathExpression : pathExpressions) {
+            Long time = times.get(pathExpression);
+            if (time != null) {
+                retval.put(pathExpression, time);
+            }
+        }
+        return retval;
+    }
+
+    /**
+     * Waits for a helper, and returns what it threw, if anything.
+     */
+    private static Throwable waitFor(Future<Void> future) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    future.get();
+                    return null;
+                } catch (InterruptedException e) {
+                    // The helper holds a connection, so it must be waited for regardless
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    return e.getCause();
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private class Helper implements Callable<Void>
+    {
+        private final Queue<T> queue;
+        private final Map<T, Long> times;
+
+        Helper(Queue<T> queue, Map<T, Long> times) {
+            this.queue = queue;
+            this.times = times;
+        }
+
+        @Override
+        public Void call() throws ObjectStoreException {
+            if (queue.isEmpty()) {
+                return null;
+            }
+            IN_PATH_EXPRESSION_THREAD.set(Boolean.TRUE);
+            Connection c = null;
+            try {
+                c = getConnection();
+                fetchQueued(queue, c, times);
+            } catch (SQLException e) {
+                queue.clear();
+                throw new ObjectStoreException("Could not get connection to database", e);
+            } finally {
+                releaseConnection(c);
+                IN_PATH_EXPRESSION_THREAD.remove();
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package org.intermine.objectstore.intermine;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A cache of PreparedStatements for each database connection, so that SQL that is run again and
+ * again does not have to be planned by the database each time. When a connection has more than
+ * the given number of statements, the least recently used one is closed.
+ *
+ * Statements are kept against the physical connection underneath any connection pool, because a
+ * pool closes the statements of a connection each time the connection is given back. A statement
+ * is taken out of the cache while it is being used, so that it is never used twice at once, for
+ * example by the extra queries made while converting its results.
+ */
+class PreparedStatementCache
+{
+    private static final Logger LOG = Logger.getLogger(PreparedStatementCache.class);
+
+    private final int maxSize;
+    private final Map<Connection, Map<String, PreparedStatement>> statements
+        = new IdentityHashMap<Connection, Map<String, PreparedStatement>>();
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param maxSize the maximum number of statements to keep for each connection
+     */
+    PreparedStatementCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the maximum number of statements kept for each connection.
+     *
+     * @return an int
+     */
+    int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Takes a PreparedStatement for the given SQL out of the cache, or prepares a new one. The
+     * statement must be given back with checkIn().
+     *
+     * @param c the Connection to run the statement on
+     * @param sql the SQL
+     * @return a PreparedStatement, or null if statements cannot be cached for the connection
+     * @throws SQLException if the statement cannot be prepared
+     */
+    PreparedStatement checkOut(Connection c, String sql) throws SQLException {
+        Connection physical = getPhysicalConnection(c);
+        if (physical == null) {
+            return null;
+        }
+        synchronized (this) {
+            Map<String, PreparedStatement> cache = statements.get(physical);
+            if (cache != null) {
+                PreparedStatement ps = cache.remove(sql);
+                if (ps != null) {
+                    hits++;
+                    return ps;
+                }
+            } else {
+                // A new connection - the pool has probably closed one of the old ones
+                removeClosedConnections();
+            }
+            misses++;
+        }
+        return physical.prepareStatement(sql);
+    }
+
+    /**
+     * Gives back a PreparedStatement taken out with checkOut().
+     *
+     * @param sql the SQL of the statement
+     * @param ps the PreparedStatement
+     * @param reusable false if the statement failed, in which case it is closed
+     */
+    void checkIn(String sql, PreparedStatement ps, boolean reusable) {
+        if (reusable) {
+            try {
+                Connection physical = ps.getConnection();
+                if (!physical.isClosed()) {
+                    synchronized (this) {
+                        Map<String, PreparedStatement> cache = statements.get(physical);
+                        if (cache == null) {
+                            cache = new LinkedHashMap<String, PreparedStatement>(16, 0.75F, true) {
+                                @Override
+                                protected boolean removeEldestEntry(
+                                        Map.Entry<String, PreparedStatement> eldest) {
+                                    if (size() > maxSize) {
+                                        close(eldest.getValue());
+                                        return true;
+                                    }
+                                    return false;
+                                }
+                            };
+                            statements.put(physical, cache);
+                        }
+                        if (!cache.containsKey(sql)) {
+                            cache.put(sql, ps);
+                            return;
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                LOG.warn("Could not check connection of cached statement: " + e);
+            }
+        }
+        close(ps);
+    }
+
+    /**
+     * Closes all the statements in the cache.
+     */
+    synchronized void clear() {
+        for (Map<String, PreparedStatement> cache : statements.values()) {
+            for (PreparedStatement ps : cache.values()) {
+                close(ps);
+            }
+        }
+        statements.clear();
+    }
+
+    /**
+     * Returns the number of times a statement was found in the cache.
+     *
+     * @return a long
+     */
+    synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of times a statement had to be prepared.
+     *
+     * @return a long
+     */
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    private void removeClosedConnections() {
+        Iterator<Map.Entry<Connection, Map<String, PreparedStatement>>> iter
+            = statements.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<Connection, Map<String, PreparedStatement>> entry = iter.next();
+            boolean closed;
+            try {
+                closed = entry.getKey().isClosed();
+            } catch (SQLException e) {
+                closed = true;
+            }
+            if (closed) {
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the physical connection underneath a connection from the pool.
+     *
+     * @param c the Connection
+     * @return the physical Connection, or null if the pool does not give it out
+     */
+    Connection getPhysicalConnection(Connection c) {
+        try {
+            Connection physical = c.unwrap(Connection.class);
+            // A pool that doesn't give out the real connection closes the statements with it
+            return Proxy.isProxyClass(physical.getClass()) ? null : physical;
+        } catch (SQLException e) {
+            return null;
+        }
+    }
+
+    private static void close(PreparedStatement ps) {
+        try {
+            ps.close();
+        } catch (SQLException e) {
+            LOG.warn("Could not close cached statement: " + e);
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package org.intermine.objectstore.intermine;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.intermine.objectstore.query.BagConstraint;
+import org.intermine.objectstore.query.Constraint;
+import org.intermine.objectstore.query.ConstraintSet;
+import org.intermine.objectstore.query.FromElement;
+import org.intermine.objectstore.query.MultipleInBagConstraint;
+import org.intermine.objectstore.query.Query;
+import org.intermine.objectstore.query.QueryClassBag;
+import org.intermine.objectstore.query.QueryNode;
+import org.intermine.objectstore.query.QueryObjectPathExpression;
+import org.intermine.objectstore.query.QueryOrderable;
+import org.intermine.objectstore.query.QuerySelectable;
+import org.intermine.objectstore.query.QueryValue;
+import org.intermine.objectstore.query.SimpleConstraint;
+import org.intermine.objectstore.query.SubqueryConstraint;
+import org.intermine.objectstore.query.SubqueryExistsConstraint;
+import org.intermine.objectstore.query.iql.IqlQuery;
+
+/**
+ * The structure of a Query with its constant values taken out, so that Queries that differ only
+ * in the values they are constrained to are equal. The values taken out are the QueryValues on
+ * the right hand side of SimpleConstraints and the ObjectStoreBags of BagConstraints in the
+ * WHERE clause of the top level query. Everything else, including the contents of collection
+ * bags and any values in subqueries, is part of the shape.
+ *
+ * Two Queries with equal shapes produce the same SQL apart from the text of their parameters,
+ * which is what allows SqlGenerator to cache SQL between different Query objects.
+ */
+final class QueryShape
+{
+    private static final Logger LOG = Logger.getLogger(QueryShape.class);
+
+    private final String shape;
+    private final List<Object> fixedParameters;
+    private final List<Object> parameters;
+
+    private QueryShape(String shape, List<Object> fixedParameters, List<Object> parameters) {
+        this.shape = shape;
+        this.fixedParameters = fixedParameters;
+        this.parameters = parameters;
+    }
+
+    /**
+     * Work out the shape of a Query.
+     *
+     * @param q the Query
+     * @param bagTableNames a Map from BagConstraints to table names, where the table contains the
+     *        contents of the bag that are relevant for the BagConstraint
+     * @return the shape, or null if the Query can't be described or uses a temporary bag table,
+     * whose name would otherwise end up in SQL used for other Queries
+     */
+    static QueryShape create(Query q, Map<Object, String> bagTableNames) {
+        if ((bagTableNames != null) && (!bagTableNames.isEmpty())
+                && usesBagTable(q, bagTableNames)) {
+            return null;
+        }
+        try {
+            Builder builder = new Builder(q);
+            return builder.build();
+        } catch (RuntimeException e) {
+            // The shape is only an optimisation, so any Query that can't be written as IQL just
+            // doesn't get one
+            LOG.debug("Could not work out the shape of query " + q, e);
+            return null;
+        }
+    }
+
+    private static boolean usesBagTable(Query q, Map<Object, String> bagTableNames) {
+        for (FromElement fe : q.getFrom()) {
+            if (((fe instanceof QueryClassBag) && bagTableNames.containsKey(fe))
+                    || ((fe instanceof Query) && usesBagTable((Query) fe, bagTableNames))) {
+                return true;
+            }
+        }
+        return (q.getConstraint() != null) && usesBagTable(q.getConstraint(), bagTableNames);
+    }
+
+    private static boolean usesBagTable(Constraint c, Map<Object, String> bagTableNames) {
+        if (c instanceof ConstraintSet) {
+            for (Constraint subC : ((ConstraintSet) c).getConstraints()) {
+                if (usesBagTable(subC, bagTableNames)) {
+                    return true;
+                }
+            }
+            return false;
+        } else if ((c instanceof BagConstraint) || (c instanceof MultipleInBagConstraint)) {
+            return bagTableNames.containsKey(c);
+        } else if (c instanceof SubqueryConstraint) {
+            return usesBagTable(((SubqueryConstraint) c).getQuery(), bagTableNames);
+        } else if (c instanceof SubqueryExistsConstraint) {
+            return usesBagTable(((SubqueryExistsConstraint) c).getQuery(), bagTableNames);
+        }
+        return false;
+    }
+
+    /**
+     * Returns the values taken out of the Query, in a fixed order. Each is either a QueryValue or
+     * an ObjectStoreBag, and is the very object from the Query.
+     *
+     * @return a List of QueryValue and ObjectStoreBag objects
+     */
+    List<Object> getParameters() {
+        return parameters;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof QueryShape) {
+            QueryShape other = (QueryShape) o;
+            return shape.equals(other.shape) && fixedParameters.equals(other.fixedParameters);
+        }
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return shape.hashCode() + 3 * fixedParameters.hashCode();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return shape + " " + fixedParameters;
+    }
+
+    private static class Builder
+    {
+        private final Query q;
+        private final StringBuilder shape = new StringBuilder();
+        private final List<Object> fixedParameters = new ArrayList<Object>();
+        private final List<Object> parameters = new ArrayList<Object>();
+        private final Set<Object> seen =
+            Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+        private boolean valid = true;
+
+        Builder(Query q) {
+            this.q = q;
+        }
+
+        QueryShape build() {
+            shape.append(q.isDistinct() ? "SELECT DISTINCT " : "SELECT ");
+            Set<QueryObjectPathExpression> pathList = new HashSet<QueryObjectPathExpression>();
+            for (QuerySelectable qs : q.getSelect()) {
+                shape.append(IqlQuery.nodeToString(q, qs, fixedParameters, pathList))
+                    .append(" AS ")
+                    .append(q.getAliases().get(qs))
+                    .append(", ");
+            }
+            shape.append("FROM ");
+            for (FromElement fe : q.getFrom()) {
+                shape.append(q.getAliases().get(fe)).append(": ");
+                if (fe instanceof Query) {
+                    IqlQuery subquery = ((Query) fe).getIqlQuery();
+                    shape.append("(").append(subquery.getQueryString()).append(")");
+                    fixedParameters.addAll(subquery.getParameters());
+                } else {
+                    shape.append(fe.toString());
+                    if (fe instanceof QueryClassBag) {
+                        Collection<?> bag = ((QueryClassBag) fe).getBag();
+                        if (bag != null) {
+                            fixedParameters.add(bag);
+                        }
+                    }
+                }
+                shape.append(", ");
+            }
+            if (q.getConstraint() != null) {
+                shape.append("WHERE ");
+                appendConstraint(q.getConstraint());
+            }
+            shape.append(" GROUP BY ");
+            for (QueryNode qn : q.getGroupBy()) {
+                shape.append(IqlQuery.nodeToString(q, qn, fixedParameters, null)).append(", ");
+            }
+            shape.append("ORDER BY ");
+            for (QueryOrderable qo : q.getOrderBy()) {
+                shape.append(IqlQuery.nodeToString(q, qo, fixedParameters, null)).append(", ");
+            }
+            shape.append("LIMIT ").append(q.getLimit());
+            for (QueryObjectPathExpression qope : pathList) {
+                shape.append(" PATH ")
+                    .append(IqlQuery.nodeToString(q, qope, fixedParameters, null))
+                    .append(" AS ")
+                    .append(q.getAliases().get(qope));
+            }
+            return valid ? new QueryShape(shape.toString(), fixedParameters, parameters) : null;
+        }
+
+        private void appendConstraint(Constraint c) {
+            if (c instanceof SimpleConstraint) {
+                SimpleConstraint sc = (SimpleConstraint) c;
+                shape.append(IqlQuery.nodeToString(q, sc.getArg1(), fixedParameters, null))
+                    .append(" ")
+                    .append(sc.getOp());
+                if (sc.getArg2() instanceof QueryValue) {
+                    QueryValue value = (QueryValue) sc.getArg2();
+                    appendParameter(value, value.getType());
+                } else if (sc.getArg2() != null) {
+                    shape.append(" ")
+                        .append(IqlQuery.nodeToString(q, sc.getArg2(), fixedParameters, null));
+                }
+            } else if (c instanceof ConstraintSet) {
+                ConstraintSet cs = (ConstraintSet) c;
+                shape.append(cs.getOp()).append(" (");
+                for (Constraint subC : cs.getConstraints()) {
+                    appendConstraint(subC);
+                    shape.append(", ");
+                }
+                shape.append(")");
+            } else if ((c instanceof BagConstraint) && (((BagConstraint) c).getBag() == null)) {
+                BagConstraint bc = (BagConstraint) c;
+                shape.append(IqlQuery.nodeToString(q, bc.getQueryNode(), fixedParameters, null))
+                    .append(" ")
+                    .append(bc.getOp())
+                    .append(" BAG");
+                appendParameter(bc.getOsb(), Integer.class);
+            } else {
+                shape.append(IqlQuery.constraintToString(q, c, fixedParameters));
+            }
+        }
+
+        private void appendParameter(Object parameter, Class<?> type) {
+            // SqlGenerator finds parameters by identity, so one object cannot be two parameters
+            if (!seen.add(parameter)) {
+                valid = false;
+            }
+            shape.append(" ?").append(type.getName());
+            parameters.add(parameter);
+        }
+    }
+}
@@ -24,6 +24,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import org.intermine.metadata.AttributeDescriptor;
 import org.intermine.metadata.CollectionDescriptor;
@@ -33,6 +34,7 @@ import org.intermine.metadata.ReferenceDescriptor;
 import org.intermine.model.FastPathObject;
 import org.intermine.model.InterMineObject;
 import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.objectstore.ObjectStoreWriter;
 import org.intermine.objectstore.proxy.ProxyCollection;
 import org.intermine.objectstore.proxy.ProxyReference;
 import org.intermine.objectstore.query.BagConstraint;
@@ -220,29 +222,8 @@ public final class ResultsConverter
             }
             // resolve outer join queries
             if (needPathExpressions) {
-                HashSet<QuerySelectable> done = new HashSet<QuerySelectable>();
-                for (QuerySelectable node : q.getSelect()) {
-                    if (node instanceof QueryObjectPathExpression) {
-                        // TODO: Fetch the objects
-                        if (!done.contains(node)) {
-                            fetchObjectPathExpression(os, c, sequence, q,
-                                    (QueryObjectPathExpression) node, retval, optimise, extra,
-                                    goFasterTables, goFasterCache);
-                            done.add(node);
-                        }
-                    } else if (node instanceof QueryCollectionPathExpression) {
-                        fetchCollectionPathExpression(os, c, sequence, q,
-                                (QueryCollectionPathExpression) node, retval, optimise, extra,
-                                goFasterTables, goFasterCache);
-                    } else if (node instanceof PathExpressionField) {
-                        if (!done.contains(((PathExpressionField) node).getQope())) {
-                            fetchObjectPathExpression(os, c, sequence, q,
-                                    ((PathExpressionField) node).getQope(), retval, optimise,
-                                    extra, goFasterTables, goFasterCache);
-                            done.add(((PathExpressionField) node).getQope());
-                        }
-                    }
-                }
+                fetchPathExpressions(os, c, sequence, q, retval, optimise, extra, goFasterTables,
+                        goFasterCache);
             }
             return retval;
         } catch (SQLException e) {
@@ -351,6 +332,93 @@ public final class ResultsConverter
         return retval;
     }
 
+    /**
+     * Fetches the data for all the path expressions in the SELECT list of a query. If the
+     * ObjectStore has a pool of threads for path expressions, the queries for different path
+     * expressions run at the same time, each on its own connection apart from the first, which
+     * runs on this thread and connection. Each path expression fills in only its own columns, so
+     * the results do not depend on the order in which the queries finish.
+     *
+     * @param os the ObjectStoreInterMineImpl
+     * @param c the Connection
+     * @param sequence an object representing the state of the database
+     * @param q the Query
+     * @param retval the array of results that will be returned
+     * @param optimise whether to optimise the queries
+     * @param extra object to record extra query execution time
+     * @param goFasterTables a Set of PrecomputedTables that may help with extra queries
+     * @param goFasterCache an OptimiserCache that may help with extra queries
+     * @throws ObjectStoreException if something goes wrong
+     */
+    protected static void fetchPathExpressions(final ObjectStoreInterMineImpl os, Connection c,
+            final Map<Object, Integer> sequence, final Query q,
+            final List<ResultsRow<Object>> retval, final boolean optimise, ExtraQueryTime extra,
+            final Set<PrecomputedTable> goFasterTables,
+            final OptimiserCache goFasterCache) throws ObjectStoreException {
+        List<QueryPathExpression> toFetch = new ArrayList<QueryPathExpression>();
+        Set<QueryPathExpression> done = new HashSet<QueryPathExpression>();
+        for (QuerySelectable node : q.getSelect()) {
+            QueryPathExpression qpe = null;
+            if ((node instanceof QueryObjectPathExpression)
+                    || (node instanceof QueryCollectionPathExpression)) {
+                qpe = (QueryPathExpression) node;
+            } else if (node instanceof PathExpressionField) {
+                qpe = ((PathExpressionField) node).getQope();
+            }
+            if ((qpe != null) && done.add(qpe)) {
+                toFetch.add(qpe);
+            }
+        }
+        // A writer has only the one connection, which may be in a transaction
+        ExecutorService executor = (os instanceof ObjectStoreWriter) ? null
+            : os.getPathExpressionExecutor();
+        PathExpressionFetcher<QueryPathExpression> fetcher
+            = new PathExpressionFetcher<QueryPathExpression>() {
+                @Override
+                protected long fetch(QueryPathExpression qpe, Connection pathConnection)
+                    throws ObjectStoreException {
+                    return fetchPathExpression(os, pathConnection, sequence, q, qpe, retval,
+                            optimise, goFasterTables, goFasterCache);
+                }
+
+                @Override
+                protected Connection getConnection() throws SQLException {
+                    return os.getConnection();
+                }
+
+                @Override
+                protected void releaseConnection(Connection pathConnection) {
+                    os.releaseConnection(pathConnection);
+                }
+            };
+        long startTime = System.currentTimeMillis();
+        Map<QueryPathExpression, Long> times = fetcher.fetchAll(toFetch, c, executor,
+                os.getPathExpressionParallelism() - 1);
+        long total = 0;
+        for (Map.Entry<QueryPathExpression, Long> entry : times.entrySet()) {
+            extra.addPathExpressionTime(q.getAliases().get(entry.getKey()),
+                    entry.getValue().longValue());
+            total += entry.getValue().longValue();
+        }
+        extra.addTime(fetcher.wasConcurrent() ? System.currentTimeMillis() - startTime : total);
+    }
+
+    private static long fetchPathExpression(ObjectStoreInterMineImpl os, Connection c,
+            Map<Object, Integer> sequence, Query q, QueryPathExpression qpe,
+            List<ResultsRow<Object>> retval, boolean optimise,
+            Set<PrecomputedTable> goFasterTables,
+            OptimiserCache goFasterCache) throws ObjectStoreException {
+        ExtraQueryTime time = new ExtraQueryTime();
+        if (qpe instanceof QueryObjectPathExpression) {
+            fetchObjectPathExpression(os, c, sequence, q, (QueryObjectPathExpression) qpe, retval,
+                    optimise, time, goFasterTables, goFasterCache);
+        } else {
+            fetchCollectionPathExpression(os, c, sequence, q, (QueryCollectionPathExpression) qpe,
+                    retval, optimise, time, goFasterTables, goFasterCache);
+        }
+        return time.getQueryTime();
+    }
+
     /**
      * Fetches the contents of a QueryObjectPathExpression for a query.
      *
@@ -24,6 +24,7 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
@@ -133,6 +134,14 @@ public final class SqlGenerator
         = new WeakHashMap<DatabaseSchema, Map<Query, CacheEntry>>();
     protected static Map<DatabaseSchema, Map<Query, Set<Object>>> tablenamesCache
         = new WeakHashMap<DatabaseSchema, Map<Query, Set<Object>>>();
+    protected static Map<DatabaseSchema, Map<QueryShape, SqlTemplate>> templateCache
+        = new WeakHashMap<DatabaseSchema, Map<QueryShape, SqlTemplate>>();
+
+    /** The number of query shapes for which SQL is remembered, for each DatabaseSchema */
+    public static final int TEMPLATE_CACHE_SIZE = 1000;
+    // marks the start and end of a parameter number in SQL generated for a SqlTemplate. Postgres
+    // does not allow this character in text, so it cannot be confused with a value.
+    private static final char PARAMETER_MARKER = '\u0000';
 
     /**
      * Generates a query to retrieve a single object from the database, by id.
@@ -402,7 +411,7 @@ public final class SqlGenerator
                     }
                 }
             }
-            String sql = generate(q, schema, db, null, QUERY_NORMAL, bagTableNames);
+            String sql = generateFromTemplate(q, schema, db, bagTableNames);
             /*if (cached == null) {
                 cached = new TreeMap();
                 schemaCache.put(q, cached);
@@ -414,6 +423,141 @@ public final class SqlGenerator
         }
     }
 
+    /**
+     * Converts a Query object into an SQL String, reusing the SQL generated for an earlier Query
+     * of the same shape if there is one. Queries built afresh for each request, for example from
+     * a template, differ only in their constraint values, so most of the work of generating their
+     * SQL can be saved.
+     *
+     * @param q the Query to convert
+     * @param schema the DatabaseSchema in which to look up metadata
+     * @param db the Database that the ObjectStore uses
+     * @param bagTableNames a Map from BagConstraints to table names, where the table contains the
+     *        contents of the bag that are relevant for the BagConstraint
+     * @return a String suitable for passing to an SQL server
+     * @throws ObjectStoreException if something goes wrong
+     */
+    protected static String generateFromTemplate(Query q, DatabaseSchema schema, Database db,
+            Map<Object, String> bagTableNames) throws ObjectStoreException {
+        QueryShape shape = QueryShape.create(q, bagTableNames);
+        if (shape == null) {
+            return generate(q, schema, db, null, QUERY_NORMAL, bagTableNames);
+        }
+        SqlTemplate template = getTemplate(shape, q, schema, db, bagTableNames);
+        if (template == SqlTemplate.NONE) {
+            return generate(q, schema, db, null, QUERY_NORMAL, bagTableNames);
+        }
+        return template.render(shape.getParameters());
+    }
+
+    /**
+     * Converts a Query object into SQL with a "?" in place of each of the values that the
+     * QueryShape of the Query takes out, along with the values to bind to them. The SQL is the
+     * same for every Query of the same shape, so the database can reuse its plan for it if it is
+     * run through a PreparedStatement. The LIMIT and OFFSET are bound as values too, so every
+     * page of a query has the same SQL. The SQL returned by generate() with the same arguments
+     * comes with it, so that the Query need not be generated twice.
+     *
+     * @param q the Query to convert
+     * @param start the number of the first row for the query to return, numbered from zero
+     * @param limit the maximum number of rows for the query to return
+     * @param schema the DatabaseSchema in which to look up metadata
+     * @param db the Database that the ObjectStore uses
+     * @param bagTableNames a Map from BagConstraints to table names, where the table contains the
+     *        contents of the bag that are relevant for the BagConstraint
+     * @return the SQL and values, or null if the Query cannot be written in this way
+     * @throws ObjectStoreException if something goes wrong
+     */
+    public static ParameterisedSql generateParameterised(Query q, int start, int limit,
+            DatabaseSchema schema, Database db,
+            Map<Object, String> bagTableNames) throws ObjectStoreException {
+        synchronized (q) {
+            if ((q.getSelect().size() == 1) && (q.getSelect().get(0) instanceof Clob)) {
+                return null;
+            }
+            // generate() may use a version of the SQL constrained to speed up large offsets
+            if (getCacheForSchema(schema).get(q) != null) {
+                return null;
+            }
+            QueryShape shape = QueryShape.create(q, bagTableNames);
+            if (shape == null) {
+                return null;
+            }
+            SqlTemplate template = getTemplate(shape, q, schema, db, bagTableNames);
+            if (template == SqlTemplate.NONE) {
+                return null;
+            }
+            List<Object> values = new ArrayList<Object>();
+            String sql = template.renderParameterised(shape.getParameters(), values);
+            if (sql == null) {
+                return null;
+            }
+            // Bind the LIMIT and OFFSET too, so that every page of a query uses the same SQL
+            if (limit != Integer.MAX_VALUE) {
+                sql += " LIMIT ? OFFSET ?";
+                values.add(Integer.valueOf(limit));
+                values.add(Integer.valueOf(start));
+            } else if (start != 0) {
+                sql += " OFFSET ?";
+                values.add(Integer.valueOf(start));
+            }
+            String literalSql = template.render(shape.getParameters())
+                + (limit == Integer.MAX_VALUE ? "" : " LIMIT " + limit)
+                + (start == 0 ? "" : " OFFSET " + start);
+            return new ParameterisedSql(sql, values, literalSql);
+        }
+    }
+
+    /**
+     * Returns the SqlTemplate for a QueryShape, generating it from the given Query if there is
+     * not one in the cache.
+     *
+     * @param shape the QueryShape of the Query
+     * @param q the Query
+     * @param schema the DatabaseSchema in which to look up metadata
+     * @param db the Database that the ObjectStore uses
+     * @param bagTableNames a Map from BagConstraints to table names
+     * @return a SqlTemplate, which is SqlTemplate.NONE if the SQL cannot be reused
+     * @throws ObjectStoreException if something goes wrong
+     */
+    private static SqlTemplate getTemplate(QueryShape shape, Query q, DatabaseSchema schema,
+            Database db, Map<Object, String> bagTableNames) throws ObjectStoreException {
+        Map<QueryShape, SqlTemplate> schemaCache = getTemplateCacheForSchema(schema);
+        SqlTemplate template = schemaCache.get(shape);
+        if (template == null) {
+            State state = new State();
+            state.setParameters(shape.getParameters());
+            String sql = generate(q, schema, db, null, QUERY_NORMAL, bagTableNames, state);
+            template = state.allParametersUsedOnce() ? new SqlTemplate(sql) : SqlTemplate.NONE;
+            schemaCache.put(shape, template);
+        }
+        return template;
+    }
+
+    /**
+     * Returns a cache of SqlTemplates specific to a particular DatabaseSchema.
+     *
+     * @param schema the DatabaseSchema
+     * @return a Map
+     */
+    private static Map<QueryShape, SqlTemplate> getTemplateCacheForSchema(DatabaseSchema schema) {
+        synchronized (templateCache) {
+            Map<QueryShape, SqlTemplate> retval = templateCache.get(schema);
+            if (retval == null) {
+                retval = Collections.synchronizedMap(
+                        new LinkedHashMap<QueryShape, SqlTemplate>(16, 0.75F, true) {
+                            @Override
+                            protected boolean removeEldestEntry(
+                                    Map.Entry<QueryShape, SqlTemplate> eldest) {
+                                return size() > TEMPLATE_CACHE_SIZE;
+                            }
+                        });
+                templateCache.put(schema, retval);
+            }
+            return retval;
+        }
+    }
+
     /**
      * Returns a cache specific to a particular DatabaseSchema.
      *
@@ -447,7 +591,12 @@ public final class SqlGenerator
     public static String generate(Query q, DatabaseSchema schema, Database db,
             Constraint offsetCon, int kind,
             Map<Object, String> bagTableNames) throws ObjectStoreException {
-        State state = new State();
+        return generate(q, schema, db, offsetCon, kind, bagTableNames, new State());
+    }
+
+    private static String generate(Query q, DatabaseSchema schema, Database db,
+            Constraint offsetCon, int kind, Map<Object, String> bagTableNames,
+            State state) throws ObjectStoreException {
         List<QuerySelectable> selectList = q.getSelect();
         if ((selectList.size() == 1) && (selectList.get(0) instanceof ObjectStoreBag)) {
             // Special case - we are fetching the contents of an ObjectStoreBag.
@@ -1785,12 +1934,18 @@ public final class SqlGenerator
                 state.addToFrom(INT_BAG_TABLE_NAME + " AS "
                         + indirectTableAlias);
                 buffer.append(" = " + indirectTableAlias + "." + BAGVAL_COLUMN);
-                buffer.append(" AND " + indirectTableAlias + "." + BAGID_COLUMN + " = "
-                        + osb.getBagId());
+                buffer.append(" AND " + indirectTableAlias + "." + BAGID_COLUMN + " = ");
+                if (!state.appendParameter(buffer, osb)) {
+                    buffer.append(osb.getBagId());
+                }
             } else {
                 buffer.append(" IN (SELECT " + BAGVAL_COLUMN + " FROM ");
                 buffer.append(INT_BAG_TABLE_NAME);
-                buffer.append(" WHERE " + BAGID_COLUMN + " = " + osb.getBagId() + ")");
+                buffer.append(" WHERE " + BAGID_COLUMN + " = ");
+                if (!state.appendParameter(buffer, osb)) {
+                    buffer.append(osb.getBagId());
+                }
+                buffer.append(")");
             }
             if (c.getOp() == ConstraintOp.NOT_IN) {
                 buffer.append("))");
@@ -2433,7 +2588,9 @@ public final class SqlGenerator
             QueryValue nodeV = (QueryValue) node;
             Object value = nodeV.getValue();
 
-            objectToString(buffer, value);
+            if ((state == null) || (!state.appendParameter(buffer, nodeV))) {
+                objectToString(buffer, value);
+            }
         } else if (node instanceof QueryCast) {
             buffer.append("(");
             queryEvaluableToString(buffer, ((QueryCast) node).getValue(), q, state);
@@ -2692,6 +2849,11 @@ public final class SqlGenerator
         // bag that are relevant for the BagConstraint
         private Map<Object, String> bagTableNames = new HashMap<Object, String>();
 
+        // the QueryValues and ObjectStoreBags to write as parameter markers, and how many times
+        // each has been written
+        private Map<Object, Integer> parameterNumbers = null;
+        private int[] parameterUses = null;
+
         /**
          * Constructor
          */
@@ -2837,6 +2999,56 @@ public final class SqlGenerator
             return bagTableNames;
         }
 
+        /**
+         * Sets the objects that are written as numbered parameter markers instead of as values,
+         * for making a SqlTemplate.
+         *
+         * @param parameters a List of QueryValues and ObjectStoreBags
+         */
+        public void setParameters(List<Object> parameters) {
+            parameterNumbers = new IdentityHashMap<Object, Integer>();
+            for (int i = 0; i < parameters.size(); i++) {
+                parameterNumbers.put(parameters.get(i), new Integer(i));
+            }
+            parameterUses = new int[parameters.size()];
+        }
+
+        /**
+         * Writes a parameter marker for the given QueryValue or ObjectStoreBag, if it is one of
+         * the parameters.
+         *
+         * @param buffer the StringBuffer to add text to
+         * @param parameter the QueryValue or ObjectStoreBag
+         * @return true if a marker was written, false if the caller should write the value
+         */
+        public boolean appendParameter(StringBuffer buffer, Object parameter) {
+            if (parameterNumbers == null) {
+                return false;
+            }
+            Integer number = parameterNumbers.get(parameter);
+            if (number == null) {
+                return false;
+            }
+            parameterUses[number.intValue()]++;
+            buffer.append(PARAMETER_MARKER).append(number).append(PARAMETER_MARKER);
+            return true;
+        }
+
+        /**
+         * Returns true if every parameter has been written exactly once, which means the SQL is
+         * a template for any Query of the same shape.
+         *
+         * @return a boolean
+         */
+        public boolean allParametersUsedOnce() {
+            for (int uses : parameterUses) {
+                if (uses != 1) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
         /**
          *
          * @param db database
@@ -2883,6 +3095,93 @@ public final class SqlGenerator
         }
     }
 
+    /**
+     * SQL generated for a QueryShape, with markers where the parameters go.
+     */
+    private static class SqlTemplate
+    {
+        /** Marks a QueryShape whose SQL cannot be reused. */
+        static final SqlTemplate NONE = new SqlTemplate("");
+
+        private final List<String> fragments = new ArrayList<String>();
+        private final List<Integer> parameterNumbers = new ArrayList<Integer>();
+
+        public SqlTemplate(String sql) {
+            int start = 0;
+            int marker = sql.indexOf(PARAMETER_MARKER);
+            while (marker != -1) {
+                int end = sql.indexOf(PARAMETER_MARKER, marker + 1);
+                fragments.add(sql.substring(start, marker));
+                parameterNumbers.add(Integer.valueOf(sql.substring(marker + 1, end)));
+                start = end + 1;
+                marker = sql.indexOf(PARAMETER_MARKER, start);
+            }
+            fragments.add(sql.substring(start));
+        }
+
+        public String render(List<Object> parameters) throws ObjectStoreException {
+            StringBuffer retval = new StringBuffer();
+            for (int i = 0; i < parameterNumbers.size(); i++) {
+                retval.append(fragments.get(i));
+                Object parameter = parameters.get(parameterNumbers.get(i).intValue());
+                if (parameter instanceof ObjectStoreBag) {
+                    retval.append(((ObjectStoreBag) parameter).getBagId());
+                } else {
+                    objectToString(retval, ((QueryValue) parameter).getValue());
+                }
+            }
+            return retval.append(fragments.get(fragments.size() - 1)).toString();
+        }
+
+        /**
+         * Writes the SQL with a "?" for each parameter, adding the value to bind to it to the
+         * given List.
+         *
+         * @param parameters the parameters of the QueryShape
+         * @param values a List to add the values to
+         * @return the SQL, or null if a parameter has a value that cannot be bound
+         */
+        public String renderParameterised(List<Object> parameters, List<Object> values) {
+            StringBuffer retval = new StringBuffer();
+            for (int i = 0; i < parameterNumbers.size(); i++) {
+                retval.append(fragments.get(i));
+                Object parameter = parameters.get(parameterNumbers.get(i).intValue());
+                Object value;
+                if (parameter instanceof ObjectStoreBag) {
+                    value = new Integer(((ObjectStoreBag) parameter).getBagId());
+                } else {
+                    value = toBindValue(((QueryValue) parameter).getValue());
+                }
+                if (value == null) {
+                    return null;
+                }
+                retval.append("?");
+                values.add(value);
+            }
+            return retval.append(fragments.get(fragments.size() - 1)).toString();
+        }
+
+        /**
+         * Converts a value the same way as objectToString(), but into an object to bind to a
+         * PreparedStatement rather than into SQL text.
+         */
+        private static Object toBindValue(Object value) {
+            if (value instanceof InterMineObject) {
+                return ((InterMineObject) value).getId();
+            } else if (value instanceof Date) {
+                return new Long(((Date) value).getTime());
+            } else if (value instanceof Class<?>) {
+                return ((Class<?>) value).getName();
+            } else if (value instanceof CharSequence) {
+                return value.toString();
+            } else if ((value instanceof Number) || (value instanceof Boolean)) {
+                return value;
+            }
+            // UnknownTypeValues are written as text that the database works out the type of
+            return null;
+        }
+    }
+
     private static class ClassDescriptorAndAlias
     {
         private ClassDescriptor cld;
@@ -71,6 +71,10 @@ public class ProxyCollection<E> extends AbstractSet<E> implements LazyCollection
         noExplain = true;
         createdCount++;
         maybeLog();
+        ProxyLoadBatch batch = ProxyLoadBatch.getCurrent();
+        if (batch != null) {
+            batch.addCollection(this);
+        }
     }
 
     /**
@@ -82,6 +86,24 @@ public class ProxyCollection<E> extends AbstractSet<E> implements LazyCollection
         return os;
     }
 
+    /**
+     * Returns the object that this collection belongs to.
+     *
+     * @return an InterMineObject
+     */
+    InterMineObject getOwner() {
+        return o;
+    }
+
+    /**
+     * Returns the name of the collection.
+     *
+     * @return a field name
+     */
+    String getFieldName() {
+        return fieldName;
+    }
+
     /**
      * Gets the number of elements in this collection
      *
@@ -158,11 +180,22 @@ public class ProxyCollection<E> extends AbstractSet<E> implements LazyCollection
     }
 
     /**
-     * Gets (or creates) a SingletonResults object to which requests are delegated.
+     * Gets (or creates) a SingletonResults object to which requests are delegated. If this
+     * collection is waiting in a ProxyLoadBatch, then it is loaded along with the rest of the
+     * batch first. That happens outside the lock on this collection, as loading the batch takes
+     * the locks of the other collections in it.
      *
      * @return a SingletonResults object
      */
-    private synchronized Collection<E> getCollection() {
+    private Collection<E> getCollection() {
+        ProxyLoadBatch batch = ProxyLoadBatch.getCurrent();
+        if (batch != null) {
+            batch.loadCollections(this);
+        }
+        return getOrExecuteCollection();
+    }
+
+    private synchronized Collection<E> getOrExecuteCollection() {
         Collection<E> collection = null;
         if (collectionRef == null) {
             usedCount++;
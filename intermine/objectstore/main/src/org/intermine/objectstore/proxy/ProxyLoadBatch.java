@@ -0,0 +1,345 @@
+package org.intermine.objectstore.proxy;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.intermine.metadata.CollectionDescriptor;
+import org.intermine.metadata.ConstraintOp;
+import org.intermine.metadata.FieldDescriptor;
+import org.intermine.model.InterMineObject;
+import org.intermine.objectstore.ObjectStore;
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.objectstore.query.BagConstraint;
+import org.intermine.objectstore.query.ConstraintSet;
+import org.intermine.objectstore.query.ContainsConstraint;
+import org.intermine.objectstore.query.Query;
+import org.intermine.objectstore.query.QueryClass;
+import org.intermine.objectstore.query.QueryCollectionReference;
+import org.intermine.objectstore.query.QueryField;
+import org.intermine.objectstore.query.Results;
+import org.intermine.objectstore.query.ResultsRow;
+
+/**
+ * Gathers the ProxyCollections and ProxyReferences created by one Thread during a unit of work,
+ * such as rendering a page, so that they can be loaded in bulk rather than one query each.
+ *
+ * While a batch is open on a Thread, every ProxyCollection and ProxyReference created on that
+ * Thread is registered with it. The first time one of them is used, every pending proxy of the
+ * same kind is loaded with it: all the pending collections with the same field of the same
+ * class are fetched together with an IN list of the owning objects' IDs, and all the pending
+ * references are fetched together with getObjectsByIds() and placed in the ObjectStore's object
+ * cache.
+ *
+ * A collection is only loaded in bulk if the collections of at least two objects are pending,
+ * and only while the collections together hold at most MAX_LOADED_ROWS objects. Otherwise each
+ * collection is left to run its own lazy query when it is used. Proxies are dropped from the
+ * batch once their kind has been loaded, and the batch does not stop unused proxies from being
+ * garbage collected. Usage:
+ *
+ * <pre>
+ * ProxyLoadBatch.open();
+ * try {
+ *     // materialise objects and use their collections and references
+ * } finally {
+ *     ProxyLoadBatch.close();
+ * }
+ * </pre>
+ */
+public final class ProxyLoadBatch
+{
+    private static final Logger LOG = Logger.getLogger(ProxyLoadBatch.class);
+    private static final int IDS_PER_QUERY = 1000;
+    /** The most objects loaded in bulk for one kind of collection */
+    static final int MAX_LOADED_ROWS = 10000;
+    private static final ThreadLocal<ProxyLoadBatch> CURRENT = new ThreadLocal<ProxyLoadBatch>();
+
+    // ProxyCollections are Sets, so their equals() and hashCode() would load them - hence a list
+    private final Map<CollectionKey, List<WeakReference<ProxyCollection<?>>>> pendingCollections
+        = new HashMap<CollectionKey, List<WeakReference<ProxyCollection<?>>>>();
+    private final Map<ObjectStore, Set<Integer>> pendingReferences
+        = new IdentityHashMap<ObjectStore, Set<Integer>>();
+    private int depth = 0;
+    private int queryCount = 0;
+    private int loadedCount = 0;
+
+    private ProxyLoadBatch() {
+    }
+
+    /**
+     * Opens a batch on the current Thread. Batches may be nested, in which case the batch stays
+     * open until the outermost one is closed.
+     */
+    public static void open() {
+        ProxyLoadBatch batch = CURRENT.get();
+        if (batch == null) {
+            batch = new ProxyLoadBatch();
+            CURRENT.set(batch);
+        }
+        batch.depth++;
+    }
+
+    /**
+     * Closes the batch on the current Thread, discarding any proxies that were never used.
+     */
+    public static void close() {
+        ProxyLoadBatch batch = CURRENT.get();
+        if (batch != null) {
+            batch.depth--;
+            if (batch.depth <= 0) {
+                CURRENT.remove();
+                if (batch.queryCount > 0) {
+                    LOG.debug("Loaded " + batch.loadedCount + " proxies in " + batch.queryCount
+                            + " queries");
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the batch open on the current Thread.
+     *
+     * @return a ProxyLoadBatch, or null if there isn't one open
+     */
+    static ProxyLoadBatch getCurrent() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Registers a ProxyCollection to be loaded with others of the same kind.
+     *
+     * @param pc the ProxyCollection
+     */
+    void addCollection(ProxyCollection<?> pc) {
+        CollectionKey key = new CollectionKey(pc.getObjectStore(), pc.getOwner().getClass(),
+                pc.getFieldName());
+        List<WeakReference<ProxyCollection<?>>> pending = pendingCollections.get(key);
+        if (pending == null) {
+            pending = new ArrayList<WeakReference<ProxyCollection<?>>>();
+            pendingCollections.put(key, pending);
+        }
+        pending.add(new WeakReference<ProxyCollection<?>>(pc));
+    }
+
+    /**
+     * Registers a ProxyReference to be loaded with the other pending references.
+     *
+     * @param pr the ProxyReference
+     */
+    void addReference(ProxyReference pr) {
+        Set<Integer> pending = pendingReferences.get(pr.getObjectStore());
+        if (pending == null) {
+            pending = new HashSet<Integer>();
+            pendingReferences.put(pr.getObjectStore(), pending);
+        }
+        pending.add(pr.getId());
+    }
+
+    /**
+     * Loads the given ProxyCollection, together with every other pending ProxyCollection for the
+     * same field of the same class, and gives each of them its materialised contents. Nothing is
+     * loaded if the given collection is the only one of its kind pending, or if the collections
+     * hold more than MAX_LOADED_ROWS objects between them, and all the collections of the kind
+     * are then left to load themselves. Either way, they are no longer pending.
+     *
+     * @param pc the ProxyCollection that is being used
+     * @return false if the collection has not been loaded
+     */
+    boolean loadCollections(ProxyCollection<?> pc) {
+        CollectionKey key = new CollectionKey(pc.getObjectStore(), pc.getOwner().getClass(),
+                pc.getFieldName());
+        List<WeakReference<ProxyCollection<?>>> pending = pendingCollections.get(key);
+        if (pending == null) {
+            return false;
+        }
+        Map<Integer, List<ProxyCollection<?>>> byOwnerId
+            = new HashMap<Integer, List<ProxyCollection<?>>>();
+        boolean found = false;
+        for (WeakReference<ProxyCollection<?>> ref : pending) {
+            ProxyCollection<?> proxy = ref.get();
+            if (proxy == pc) {
+                found = true;
+            }
+            if ((proxy == null) || (proxy.getMaterialisedCollection() != null)) {
+                // Garbage collected, or already filled in by the ObjectStore, for example by the
+                // fast collections code
+                continue;
+            }
+            Integer id = proxy.getOwner().getId();
+            List<ProxyCollection<?>> proxies = byOwnerId.get(id);
+            if (proxies == null) {
+                proxies = new ArrayList<ProxyCollection<?>>();
+                byOwnerId.put(id, proxies);
+            }
+            proxies.add(proxy);
+        }
+        if (!found) {
+            return false;
+        }
+        pendingCollections.remove(key);
+        if ((byOwnerId.size() < 2) || !byOwnerId.containsKey(pc.getOwner().getId())) {
+            return false;
+        }
+        ObjectStore os = pc.getObjectStore();
+        FieldDescriptor field = os.getModel().getFieldDescriptorsForClass(key.ownerClass)
+            .get(key.fieldName);
+        if (!(field instanceof CollectionDescriptor)) {
+            return false;
+        }
+        Map<Integer, Collection<Object>> contents = fetchCollections(os,
+                (CollectionDescriptor) field, byOwnerId.keySet());
+        if (contents == null) {
+            return false;
+        }
+        for (Map.Entry<Integer, List<ProxyCollection<?>>> entry : byOwnerId.entrySet()) {
+            Collection<Object> c = contents.get(entry.getKey());
+            for (ProxyCollection<?> proxy : entry.getValue()) {
+                @SuppressWarnings("unchecked")
+                ProxyCollection<Object> objectProxy = (ProxyCollection<Object>) proxy;
+                objectProxy.setMaterialisedCollection(c);
+                loadedCount++;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Fetches the contents of a collection for each of the given owners.
+     *
+     * @return a Map from owner ID to contents, or null if the collections hold too many objects
+     * or the query failed
+     */
+    private Map<Integer, Collection<Object>> fetchCollections(ObjectStore os,
+            CollectionDescriptor coll, Collection<Integer> ownerIds) {
+        Map<Integer, Collection<Object>> contents = new HashMap<Integer, Collection<Object>>();
+        for (Integer id : ownerIds) {
+            contents.put(id, new HashSet<Object>());
+        }
+        List<Integer> ids = new ArrayList<Integer>(ownerIds);
+        int rowCount = 0;
+        try {
+            for (int i = 0; i < ids.size(); i += IDS_PER_QUERY) {
+                Query q = new Query();
+                q.setDistinct(false);
+                QueryClass qc1 = new QueryClass(coll.getClassDescriptor().getType());
+                QueryClass qc2 = new QueryClass(coll.getReferencedClassDescriptor().getType());
+                q.addFrom(qc1);
+                q.addFrom(qc2);
+                q.addToSelect(new QueryField(qc1, "id"));
+                q.addToSelect(qc2);
+                ConstraintSet cs = new ConstraintSet(ConstraintOp.AND);
+                q.setConstraint(cs);
+                cs.addConstraint(new ContainsConstraint(new QueryCollectionReference(qc1,
+                                coll.getName()), ConstraintOp.CONTAINS, qc2));
+                cs.addConstraint(new BagConstraint(new QueryField(qc1, "id"), ConstraintOp.IN,
+                            ids.subList(i, Math.min(i + IDS_PER_QUERY, ids.size()))));
+                Results results = os.execute(q, IDS_PER_QUERY * 10, false, false, false);
+                queryCount++;
+                @SuppressWarnings({ "unchecked", "rawtypes" })
+                Collection<ResultsRow<Object>> rows = (Collection) results;
+                for (ResultsRow<Object> row : rows) {
+                    if (++rowCount > MAX_LOADED_ROWS) {
+                        LOG.debug("Not bulk loading collection " + coll.getName() + " of "
+                                + ids.size() + " objects, as it holds more than "
+                                + MAX_LOADED_ROWS + " objects");
+                        return null;
+                    }
+                    Collection<Object> c = contents.get(row.get(0));
+                    if (c != null) {
+                        c.add(row.get(1));
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            // Leave the collections to load themselves one by one
+            LOG.warn("Failed to bulk load collection " + coll.getName() + " of "
+                    + ids.size() + " objects", e);
+            return null;
+        }
+        return contents;
+    }
+
+    /**
+     * Loads every pending ProxyReference in the same ObjectStore as the given one into the
+     * ObjectStore's object cache.
+     *
+     * @param pr the ProxyReference that is being used
+     */
+    void loadReferences(ProxyReference pr) {
+        ObjectStore os = pr.getObjectStore();
+        Set<Integer> pending = pendingReferences.get(os);
+        if ((pending == null) || (!pending.contains(pr.getId()))) {
+            return;
+        }
+        pendingReferences.remove(os);
+        List<Integer> ids = new ArrayList<Integer>();
+        for (Integer id : pending) {
+            if (os.pilferObjectById(id) == null) {
+                ids.add(id);
+            }
+        }
+        try {
+            for (int i = 0; i < ids.size(); i += IDS_PER_QUERY) {
+                List<InterMineObject> objects = os.getObjectsByIds(ids.subList(i,
+                            Math.min(i + IDS_PER_QUERY, ids.size())));
+                for (InterMineObject o : objects) {
+                    os.cacheObjectById(o.getId(), o);
+                    loadedCount++;
+                }
+                queryCount++;
+            }
+        } catch (ObjectStoreException e) {
+            // Leave the references to load themselves one by one
+            LOG.warn("Failed to bulk load " + ids.size() + " references", e);
+        }
+    }
+
+    /**
+     * Identifies a kind of collection - a field of a class in an ObjectStore.
+     */
+    private static class CollectionKey
+    {
+        final ObjectStore os;
+        final Class<?> ownerClass;
+        final String fieldName;
+
+        CollectionKey(ObjectStore os, Class<?> ownerClass, String fieldName) {
+            this.os = os;
+            this.ownerClass = ownerClass;
+            this.fieldName = fieldName;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (other instanceof CollectionKey) {
+                CollectionKey key = (CollectionKey) other;
+                return (os == key.os) && ownerClass.equals(key.ownerClass)
+                    && fieldName.equals(key.fieldName);
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(os) + 3 * ownerClass.hashCode()
+                + 5 * fieldName.hashCode();
+        }
+    }
+}
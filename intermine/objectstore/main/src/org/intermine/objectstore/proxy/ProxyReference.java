@@ -40,14 +40,23 @@ public class ProxyReference implements InterMineObject, Lazy
         this.os = os;
         this.id = id;
         this.clazz = clazz;
+        ProxyLoadBatch batch = ProxyLoadBatch.getCurrent();
+        if (batch != null) {
+            batch.addReference(this);
+        }
     }
 
     /**
-     * Gets the real object from the database.
+     * Gets the real object from the database. If this reference is waiting in a ProxyLoadBatch,
+     * then all the references in the batch are fetched into the ObjectStore's cache first.
      *
      * @return a InterMineObject
      */
     public InterMineObject getObject() {
+        ProxyLoadBatch batch = ProxyLoadBatch.getCurrent();
+        if (batch != null) {
+            batch.loadReferences(this);
+        }
         try {
             InterMineObject retval = os.getObjectById(id, clazz);
             if (retval == null) {
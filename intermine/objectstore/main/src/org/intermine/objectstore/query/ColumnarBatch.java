@@ -0,0 +1,427 @@
+package org.intermine.objectstore.query;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+import org.intermine.model.FastPathObject;
+
+/**
+ * A batch of results rows held column by column, for queries that select only attribute values.
+ * Numbers, booleans and dates are held in primitive arrays, strings are held as codes into a
+ * dictionary of the distinct strings of the column, and nulls are held in a bitmap. This takes
+ * much less memory than a List of ResultsRows of boxed values, and code that knows about it can
+ * read values without boxing them at all.
+ *
+ * As a List, this holds ResultsRows, which are made each time a row is fetched. Changes to a
+ * fetched row are therefore not kept. Reading rows this way costs more than reading them from a
+ * List of ResultsRows, so ResultsBatches only holds batches this way when
+ * ResultsBatches.setColumnar() asks it to.
+ */
+public class ColumnarBatch extends AbstractList<Object> implements RandomAccess
+{
+    private final int size;
+    private final Column[] columns;
+
+    private ColumnarBatch(int size, Column[] columns) {
+        this.size = size;
+        this.columns = columns;
+    }
+
+    /**
+     * Returns true if the results of a query can be held in a ColumnarBatch, which is when the
+     * query selects only values, not objects or path expressions.
+     *
+     * @param q the Query
+     * @return a boolean
+     */
+    public static boolean canHold(Query q) {
+        if (q.getSelect().isEmpty()) {
+            return false;
+        }
+        for (QuerySelectable qs : q.getSelect()) {
+            if (!(qs instanceof QueryEvaluable)) {
+                return false;
+            }
+            Class<?> type = qs.getType();
+            if ((type == null) || FastPathObject.class.isAssignableFrom(type)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Builds a ColumnarBatch from rows of results of a query for which canHold() is true.
+     *
+     * @param rows a List of Lists, one for each row of results
+     * @param select the SELECT list of the query
+     * @return a ColumnarBatch holding the same values
+     */
+    public static ColumnarBatch create(List<?> rows, List<QuerySelectable> select) {
+        int size = rows.size();
+        Column[] columns = new Column[select.size()];
+        for (int column = 0; column < columns.length; column++) {
+            Class<?> type = select.get(column).getType();
+            Column built = null;
+            if (Integer.class.equals(type) || Short.class.equals(type)) {
+                built = IntColumn.build(rows, column, type);
+            } else if (Long.class.equals(type) || Date.class.equals(type)) {
+                built = LongColumn.build(rows, column, type);
+            } else if (Double.class.equals(type) || Float.class.equals(type)) {
+                built = DoubleColumn.build(rows, column, type);
+            } else if (Boolean.class.equals(type)) {
+                built = BooleanColumn.build(rows, column);
+            } else if (String.class.equals(type)) {
+                built = StringColumn.build(rows, column);
+            }
+            // Values that are not of the selected type, for example from an aggregate function,
+            // are kept as they are
+            columns[column] = (built == null) ? ObjectColumn.build(rows, column) : built;
+        }
+        return new ColumnarBatch(size, columns);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns a newly made ResultsRow holding the values of a row.
+     *
+     * @param row the row number
+     * @return a ResultsRow
+     */
+    @Override
+    public ResultsRow<Object> get(int row) {
+        checkRow(row);
+        ResultsRow<Object> retval = new ResultsRow<Object>();
+        for (Column column : columns) {
+            retval.add(column.isNull(row) ? null : column.get(row));
+        }
+        return retval;
+    }
+
+    /**
+     * Returns the number of columns.
+     *
+     * @return an int
+     */
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    /**
+     * Returns a value.
+     *
+     * @param row the row number
+     * @param column the column number
+     * @return the value, of the same type as it was in the original row
+     */
+    public Object getValue(int row, int column) {
+        checkRow(row);
+        Column c = columns[column];
+        return c.isNull(row) ? null : c.get(row);
+    }
+
+    /**
+     * Returns true if a value is null.
+     *
+     * @param row the row number
+     * @param column the column number
+     * @return a boolean
+     */
+    public boolean isNull(int row, int column) {
+        checkRow(row);
+        return columns[column].isNull(row);
+    }
+
+    /**
+     * Returns a value of an Integer or Short column without boxing it.
+     *
+     * @param row the row number
+     * @param column the column number
+     * @return the value, or 0 if it is null
+     * @throws UnsupportedOperationException if the column does not hold ints
+     */
+    public int getInt(int row, int column) {
+        checkRow(row);
+        return columns[column].getInt(row);
+    }
+
+    /**
+     * Returns a value of a Long or Date column without boxing it. Dates are returned as
+     * milliseconds since the epoch.
+     *
+     * @param row the row number
+     * @param column the column number
+     * @return the value, or 0 if it is null
+     * @throws UnsupportedOperationException if the column does not hold longs
+     */
+    public long getLong(int row, int column) {
+        checkRow(row);
+        return columns[column].getLong(row);
+    }
+
+    /**
+     * Returns a value of a Double or Float column without boxing it.
+     *
+     * @param row the row number
+     * @param column the column number
+     * @return the value, or 0 if it is null
+     * @throws UnsupportedOperationException if the column does not hold doubles
+     */
+    public double getDouble(int row, int column) {
+        checkRow(row);
+        return columns[column].getDouble(row);
+    }
+
+    private void checkRow(int row) {
+        if ((row < 0) || (row >= size)) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+        }
+    }
+
+    private abstract static class Column
+    {
+        protected final BitSet nulls = new BitSet();
+
+        boolean isNull(int row) {
+            return nulls.get(row);
+        }
+
+        abstract Object get(int row);
+
+        int getInt(int row) {
+            throw new UnsupportedOperationException("Column does not hold ints");
+        }
+
+        long getLong(int row) {
+            throw new UnsupportedOperationException("Column does not hold longs");
+        }
+
+        double getDouble(int row) {
+            throw new UnsupportedOperationException("Column does not hold doubles");
+        }
+    }
+
+    private static class IntColumn extends Column
+    {
+        private final int[] values;
+        private final boolean isShort;
+
+        IntColumn(int size, boolean isShort) {
+            values = new int[size];
+            this.isShort = isShort;
+        }
+
+        static Column build(List<?> rows, int column, Class<?> type) {
+            IntColumn retval = new IntColumn(rows.size(), Short.class.equals(type));
+            for (int row = 0; row < rows.size(); row++) {
+                Object value = ((List<?>) rows.get(row)).get(column);
+                if (value == null) {
+                    retval.nulls.set(row);
+                } else if (type.equals(value.getClass())) {
+                    retval.values[row] = ((Number) value).intValue();
+                } else {
+                    return null;
+                }
+            }
+            return retval;
+        }
+
+        @Override
+        Object get(int row) {
+            return isShort ? (Object) new Short((short) values[row]) : new Integer(values[row]);
+        }
+
+        @Override
+        int getInt(int row) {
+            return values[row];
+        }
+    }
+
+    private static class LongColumn extends Column
+    {
+        private final long[] values;
+        private final boolean isDate;
+
+        LongColumn(int size, boolean isDate) {
+            values = new long[size];
+            this.isDate = isDate;
+        }
+
+        static Column build(List<?> rows, int column, Class<?> type) {
+            LongColumn retval = new LongColumn(rows.size(), Date.class.equals(type));
+            for (int row = 0; row < rows.size(); row++) {
+                Object value = ((List<?>) rows.get(row)).get(column);
+                if (value == null) {
+                    retval.nulls.set(row);
+                } else if (!type.equals(value.getClass())) {
+                    return null;
+                } else if (retval.isDate) {
+                    retval.values[row] = ((Date) value).getTime();
+                } else {
+                    retval.values[row] = ((Long) value).longValue();
+                }
+            }
+            return retval;
+        }
+
+        @Override
+        Object get(int row) {
+            return isDate ? (Object) new Date(values[row]) : new Long(values[row]);
+        }
+
+        @Override
+        long getLong(int row) {
+            return values[row];
+        }
+    }
+
+    private static class DoubleColumn extends Column
+    {
+        private final double[] values;
+        private final boolean isFloat;
+
+        DoubleColumn(int size, boolean isFloat) {
+            values = new double[size];
+            this.isFloat = isFloat;
+        }
+
+        static Column build(List<?> rows, int column, Class<?> type) {
+            DoubleColumn retval = new DoubleColumn(rows.size(), Float.class.equals(type));
+            for (int row = 0; row < rows.size(); row++) {
+                Object value = ((List<?>) rows.get(row)).get(column);
+                if (value == null) {
+                    retval.nulls.set(row);
+                } else if (type.equals(value.getClass())) {
+                    retval.values[row] = ((Number) value).doubleValue();
+                } else {
+                    return null;
+                }
+            }
+            return retval;
+        }
+
+        @Override
+        Object get(int row) {
+            return isFloat ? (Object) new Float((float) values[row]) : new Double(values[row]);
+        }
+
+        @Override
+        double getDouble(int row) {
+            return values[row];
+        }
+    }
+
+    private static class BooleanColumn extends Column
+    {
+        private final BitSet values = new BitSet();
+
+        static Column build(List<?> rows, int column) {
+            BooleanColumn retval = new BooleanColumn();
+            for (int row = 0; row < rows.size(); row++) {
+                Object value = ((List<?>) rows.get(row)).get(column);
+                if (value == null) {
+                    retval.nulls.set(row);
+                } else if (value instanceof Boolean) {
+                    retval.values.set(row, ((Boolean) value).booleanValue());
+                } else {
+                    return null;
+                }
+            }
+            return retval;
+        }
+
+        @Override
+        Object get(int row) {
+            return Boolean.valueOf(values.get(row));
+        }
+    }
+
+    private static class StringColumn extends Column
+    {
+        private final int[] codes;
+        private String[] dictionary;
+
+        StringColumn(int size) {
+            codes = new int[size];
+        }
+
+        static Column build(List<?> rows, int column) {
+            StringColumn retval = new StringColumn(rows.size());
+            Map<String, Integer> codeForString = new HashMap<String, Integer>();
+            List<String> strings = new ArrayList<String>();
+            for (int row = 0; row < rows.size(); row++) {
+                Object value = ((List<?>) rows.get(row)).get(column);
+                if (value == null) {
+                    retval.nulls.set(row);
+                } else if (value instanceof String) {
+                    Integer code = codeForString.get(value);
+                    if (code == null) {
+                        code = new Integer(strings.size());
+                        codeForString.put((String) value, code);
+                        strings.add((String) value);
+                    }
+                    retval.codes[row] = code.intValue();
+                } else {
+                    return null;
+                }
+            }
+            retval.dictionary = strings.toArray(new String[strings.size()]);
+            return retval;
+        }
+
+        @Override
+        Object get(int row) {
+            return dictionary[codes[row]];
+        }
+    }
+
+    private static class ObjectColumn extends Column
+    {
+        private final Object[] values;
+
+        ObjectColumn(int size) {
+            values = new Object[size];
+        }
+
+        static Column build(List<?> rows, int column) {
+            ObjectColumn retval = new ObjectColumn(rows.size());
+            for (int row = 0; row < rows.size(); row++) {
+                retval.values[row] = ((List<?>) rows.get(row)).get(column);
+            }
+            return retval;
+        }
+
+        @Override
+        boolean isNull(int row) {
+            return values[row] == null;
+        }
+
+        @Override
+        Object get(int row) {
+            return values[row];
+        }
+    }
+}
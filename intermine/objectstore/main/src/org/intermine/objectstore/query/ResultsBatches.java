@@ -41,6 +41,8 @@ public class ResultsBatches
     protected int maxSize = Integer.MAX_VALUE;
     protected int batchSize = DEFAULT_BATCH_SIZE;
     protected boolean initialised = false;
+    // whether to hold batches as ColumnarBatches
+    protected boolean columnar = false;
 
     protected ResultsInfo info;
 
@@ -192,6 +194,9 @@ public class ResultsBatches
             @SuppressWarnings("unchecked") List<Object> tmpRows =
                 (List) os.execute(query, start, limit, optimise, explain, sequence);
             rows = tmpRows;
+            if (columnar) {
+                rows = ColumnarBatch.create(rows, query.getSelect());
+            }
 
             synchronized (this) {
                 // Now deal with a partial batch, so we can update the maximum size
@@ -328,6 +333,27 @@ public class ResultsBatches
         return row / batchSize;
     }
 
+    /**
+     * Sets whether batches fetched from now on are held as ColumnarBatches. This is only worth
+     * turning on for code that reads the batches through the column accessors of ColumnarBatch,
+     * as a ColumnarBatch makes a new ResultsRow each time a row is read as a List. It cannot be
+     * turned on for queries that select objects, as ColumnarBatch.canHold() describes.
+     *
+     * @param columnar true to hold batches as ColumnarBatches
+     */
+    public void setColumnar(boolean columnar) {
+        this.columnar = columnar && ColumnarBatch.canHold(query);
+    }
+
+    /**
+     * Returns true if batches fetched from now on are held as ColumnarBatches.
+     *
+     * @return a boolean
+     */
+    public boolean isColumnar() {
+        return columnar;
+    }
+
     /**
      * Returns true if the results are known to fit entirely within the first batch.
      *
@@ -347,6 +373,7 @@ public class ResultsBatches
     public ResultsBatches makeWithDifferentBatchSize(int newBatchSize) {
         ResultsBatches retval = new ResultsBatches(query, os, sequence);
         retval.setBatchSize(newBatchSize);
+        retval.columnar = columnar;
         List<Object> firstBatch = batches.get(new Integer(0));
         if ((firstBatch != null) && (isSingleBatch() || (firstBatch.size() >= newBatchSize))) {
             if (firstBatch.size() > newBatchSize) {
@@ -366,14 +393,17 @@ public class ResultsBatches
     }
 
     /**
-     * Returns the given batch, if it is already in the batch cache.
+     * Returns the given batch, if it is already in the batch cache. A batch held as a
+     * ColumnarBatch is returned as it is, as it cannot be changed.
      *
      * @param batchNo the batch number to return
      * @return a batch of rows
      */
     public List<Object> getBatchFromCache(int batchNo) {
         List<Object> retval = batches.get(batchNo);
-        if (retval != null) {
+        if (retval instanceof ColumnarBatch) {
+            return retval;
+        } else if (retval != null) {
             return Collections.unmodifiableList(retval);
         } else {
             return null;
@@ -0,0 +1,413 @@
+package org.intermine.util;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A lock-free replacement for ObjectPipe, for passing objects from producer Threads to consumer
+ * Threads. Objects are handed off in chunks through a bounded ring buffer, so a call to putAll()
+ * costs one handoff per chunk rather than one per object, and no monitor is ever taken on the
+ * put(), hasNext() or next() paths. Any number of Threads may put objects into the pipe, and any
+ * number of Threads may read from it.
+ *
+ * <p>The pipe has the same contract as ObjectPipe: producers wait while the buffer is full,
+ * consumers wait while it is empty, and once finish() has been called consumers will drain the
+ * buffer and then see hasNext() return false. A Thread that has to wait spins briefly, then
+ * records itself and parks until a Thread that changes what it is waiting for unparks it, rather
+ * than using wait/notify.</p>
+ *
+ * <p>Each consumer Thread takes a whole chunk at a time, so the objects of a chunk are always
+ * returned to the same consumer, in order. hasNext() and next() must therefore be called by the
+ * same Thread.</p>
+ *
+ * @param <E> The element type of the object pipe.
+ */
+public class BatchingObjectPipe<E> implements Iterator<E>
+{
+    /** The default maximum number of objects buffered in the pipe */
+    public static final int DEFAULT_MAX_BUFFER = 1024;
+    /** The default maximum number of objects handed off together by putAll() */
+    public static final int DEFAULT_CHUNK_SIZE = 256;
+
+    private static final int SPINS_BEFORE_PARK = 64;
+
+    private final int maxBuffer;
+    private final int chunkSize;
+    private final int mask;
+    private final AtomicReferenceArray<Object[]> slots;
+    private final AtomicLongArray sequences;
+    private final AtomicLong head = new AtomicLong(0);
+    private final AtomicLong tail = new AtomicLong(0);
+    private final AtomicInteger depth = new AtomicInteger(0);
+    private final AtomicInteger putters = new AtomicInteger(0);
+    private final AtomicBoolean finishing = new AtomicBoolean(false);
+    private volatile boolean finished = false;
+    // Consumers waiting for a chunk or for finish()
+    private final Waiters consumers = new Waiters();
+    // Producers waiting for the buffer to have space
+    private final Waiters producers = new Waiters();
+    // Threads in finish() waiting for producers to leave put() and putAll()
+    private final Waiters finishers = new Waiters();
+    private final ThreadLocal<Chunk> current = new ThreadLocal<Chunk>() {
+        @Override
+        protected Chunk initialValue() {
+            return new Chunk();
+        }
+    };
+
+    /**
+     * Construct a BatchingObjectPipe with a default maximum buffer size and chunk size.
+     */
+    public BatchingObjectPipe() {
+        this(DEFAULT_MAX_BUFFER, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Construct a BatchingObjectPipe with a certain maximum buffer size, and the default chunk
+     * size.
+     *
+     * @param maxBuffer the maximum buffer size, in objects
+     */
+    public BatchingObjectPipe(int maxBuffer) {
+        this(maxBuffer, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Construct a BatchingObjectPipe with a certain maximum buffer size and chunk size.
+     *
+     * @param maxBuffer the maximum buffer size, in objects
+     * @param chunkSize the maximum number of objects handed off together by putAll()
+     */
+    public BatchingObjectPipe(int maxBuffer, int chunkSize) {
+        if (maxBuffer < 1) {
+            throw new IllegalArgumentException("Illegal value for maxBuffer: " + maxBuffer);
+        }
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Illegal value for chunkSize: " + chunkSize);
+        }
+        this.maxBuffer = maxBuffer;
+        this.chunkSize = chunkSize;
+        // Every chunk holds at least one object, so maxBuffer slots is always enough
+        int capacity = 2;
+        while (capacity < maxBuffer) {
+            capacity <<= 1;
+        }
+        mask = capacity - 1;
+        slots = new AtomicReferenceArray<Object[]>(capacity);
+        sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Adds an Object onto the end of the queue.
+     *
+     * @param o an Object
+     */
+    public void put(E o) {
+        enterPut("put");
+        try {
+            waitForSpace();
+            offer(new Object[] {o});
+        } finally {
+            leavePut();
+        }
+    }
+
+    /**
+     * Adds a whole Collection of Objects onto the end of the queue, in the order that the
+     * Collection's Iterator presents them. The Objects are handed off in chunks of at most
+     * chunkSize. As with ObjectPipe, all of the objects are added if at the beginning the buffer
+     * is not full, even if that over-fills the buffer. Objects from one call to putAll() will not
+     * be interleaved with objects from other producers within a chunk, but chunks from different
+     * producers may be interleaved.
+     *
+     * @param col a Collection
+     */
+    public void putAll(Collection<? extends E> col) {
+        enterPut("putAll");
+        try {
+            if (col.isEmpty()) {
+                return;
+            }
+            waitForSpace();
+            Object[] all = col.toArray();
+            if (all.length <= chunkSize) {
+                offer(all);
+            } else {
+                for (int start = 0; start < all.length; start += chunkSize) {
+                    Object[] chunk = new Object[Math.min(chunkSize, all.length - start)];
+                    System.arraycopy(all, start, chunk, 0, chunk.length);
+                    offer(chunk);
+                }
+            }
+        } finally {
+            leavePut();
+        }
+    }
+
+    /**
+     * Marks the pipe as finished - that is, no further Objects will be put into the pipe. The
+     * hasNext() method will return false and the next() method will throw a
+     * NoSuchElementException once the buffer is emptied, instead of blocking for input.
+     * This method will wait until no other Threads are executing in put() or putAll().
+     */
+    public void finish() {
+        if (!finishing.compareAndSet(false, true)) {
+            throw new IllegalArgumentException("Can't finish a finished BatchingObjectPipe");
+        }
+        int spins = 0;
+        try {
+            while (putters.get() > 0) {
+                spins = finishers.backOff(spins);
+            }
+        } finally {
+            finishers.leave(spins);
+        }
+        finished = true;
+        consumers.wake();
+    }
+
+    /**
+     * Returns the number of objects that have been put into the pipe and not yet taken by a
+     * consumer. Objects in a chunk that a consumer has taken but not yet returned from next() are
+     * not counted.
+     *
+     * @return the current queue depth, in objects
+     */
+    public int getQueueDepth() {
+        return depth.get();
+    }
+
+    /**
+     * Returns the maximum number of objects buffered before producers wait.
+     *
+     * @return the maximum buffer size, in objects
+     */
+    public int getMaxBuffer() {
+        return maxBuffer;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasNext() {
+        Chunk chunk = current.get();
+        if (chunk.hasRemaining()) {
+            return true;
+        }
+        int spins = 0;
+        try {
+            while (true) {
+                // Read finished before polling, so that a final empty poll means the pipe is
+                // drained
+                boolean done = finished;
+                Object[] objects = poll();
+                if (objects != null) {
+                    depth.addAndGet(-objects.length);
+                    producers.wake();
+                    chunk.reset(objects);
+                    return true;
+                }
+                if (done) {
+                    return false;
+                }
+                spins = consumers.backOff(spins);
+            }
+        } finally {
+            consumers.leave(spins);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public E next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return (E) current.get().take();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Remove is not supported on a "
+                + "BatchingObjectPipe");
+    }
+
+    private void enterPut(String method) {
+        putters.incrementAndGet();
+        if (finishing.get()) {
+            leavePut();
+            throw new IllegalArgumentException("Can't " + method + " onto a finished "
+                    + "BatchingObjectPipe");
+        }
+    }
+
+    private void leavePut() {
+        if (putters.decrementAndGet() == 0) {
+            finishers.wake();
+        }
+    }
+
+    private void waitForSpace() {
+        int spins = 0;
+        try {
+            while (depth.get() >= maxBuffer) {
+                spins = producers.backOff(spins);
+            }
+        } finally {
+            producers.leave(spins);
+        }
+    }
+
+    /**
+     * Places a chunk into the ring buffer, waiting if every slot is in use.
+     */
+    private void offer(Object[] chunk) {
+        depth.addAndGet(chunk.length);
+        int spins = 0;
+        try {
+            while (true) {
+                long pos = tail.get();
+                int index = (int) (pos & mask);
+                long diff = sequences.get(index) - pos;
+                if (diff == 0) {
+                    if (tail.compareAndSet(pos, pos + 1)) {
+                        slots.set(index, chunk);
+                        sequences.set(index, pos + 1);
+                        consumers.wake();
+                        return;
+                    }
+                } else if (diff < 0) {
+                    spins = producers.backOff(spins);
+                }
+            }
+        } finally {
+            producers.leave(spins);
+        }
+    }
+
+    /**
+     * Takes the next chunk from the ring buffer, or returns null if it is empty.
+     */
+    private Object[] poll() {
+        while (true) {
+            long pos = head.get();
+            int index = (int) (pos & mask);
+            long diff = sequences.get(index) - (pos + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    Object[] chunk = slots.get(index);
+                    slots.set(index, null);
+                    sequences.set(index, pos + mask + 1);
+                    return chunk;
+                }
+            } else if (diff < 0) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * The Threads parked waiting for one kind of change to the pipe. A waiting Thread calls
+     * backOff() each time it finds that the change has not happened, and leave() once it stops
+     * waiting, and a Thread that makes the change calls wake() afterwards.
+     */
+    private static class Waiters
+    {
+        private final Queue<Thread> threads = new ConcurrentLinkedQueue<Thread>();
+
+        /**
+         * Yields for the first few calls, then records the current Thread, and parks it on each
+         * call after that. The Thread is recorded a call before it first parks, so that it looks
+         * for the change again after recording itself, and a change made before wake() could see
+         * it is not missed.
+         *
+         * @param spins the number of earlier calls in this wait
+         * @return the new number of calls
+         */
+        int backOff(int spins) {
+            if (spins < SPINS_BEFORE_PARK) {
+                Thread.yield();
+            } else if (spins == SPINS_BEFORE_PARK) {
+                threads.add(Thread.currentThread());
+            } else {
+                LockSupport.park(this);
+            }
+            return spins + 1;
+        }
+
+        /**
+         * Forgets the current Thread, if backOff() recorded it.
+         *
+         * @param spins the number of calls to backOff() in this wait
+         */
+        void leave(int spins) {
+            if (spins > SPINS_BEFORE_PARK) {
+                threads.remove(Thread.currentThread());
+            }
+        }
+
+        /**
+         * Unparks all the recorded Threads, so that they look for the change again.
+         */
+        void wake() {
+            if (!threads.isEmpty()) {
+                for (Thread thread : threads) {
+                    LockSupport.unpark(thread);
+                }
+            }
+        }
+    }
+
+    /**
+     * The chunk a consumer Thread is currently reading from.
+     */
+    private static class Chunk
+    {
+        private Object[] objects = null;
+        private int position = 0;
+
+        boolean hasRemaining() {
+            return (objects != null) && (position < objects.length);
+        }
+
+        void reset(Object[] newObjects) {
+            objects = newObjects;
+            position = 0;
+        }
+
+        Object take() {
+            Object retval = objects[position];
+            objects[position++] = null;
+            return retval;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package org.intermine.objectstore.intermine;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.intermine.objectstore.ObjectStoreException;
+
+/**
+ * Tests for PathExpressionFetcher, with connections that are never used for anything.
+ */
+public class PathExpressionFetcherTest extends TestCase
+{
+    private ExecutorService executor;
+
+    public PathExpressionFetcherTest(String arg) {
+        super(arg);
+    }
+
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    public void testConcurrentSameAsSerial() throws Exception {
+        List<Integer> pathExpressions = numbers(20);
+        CountingFetcher serial = new CountingFetcher();
+        Map<Integer, Long> serialTimes = serial.fetchAll(pathExpressions, newConnection(), null,
+                3);
+        assertFalse(serial.wasConcurrent());
+        assertEquals(0, serial.taken.get());
+
+        CountingFetcher concurrent = new CountingFetcher();
+        Map<Integer, Long> concurrentTimes = concurrent.fetchAll(pathExpressions,
+                newConnection(), executor, 3);
+        assertTrue(concurrent.wasConcurrent());
+        assertEquals(serialTimes, concurrentTimes);
+        assertEquals(pathExpressions, new ArrayList<Integer>(concurrentTimes.keySet()));
+        assertEquals(concurrent.taken.get(), concurrent.released.get());
+    }
+
+    public void testOnePathExpressionNeedsNoHelper() throws Exception {
+        CountingFetcher fetcher = new CountingFetcher();
+        fetcher.fetchAll(numbers(1), newConnection(), executor, 3);
+        assertFalse(fetcher.wasConcurrent());
+        assertEquals(0, fetcher.taken.get());
+    }
+
+    public void testConnectionsCapped() throws Exception {
+        CountingFetcher fetcher = new CountingFetcher();
+        fetcher.delay = 5;
+        Map<Integer, Long> times = fetcher.fetchAll(numbers(50), newConnection(), executor, 2);
+        assertEquals(50, times.size());
+        assertTrue("Took " + fetcher.maxOpen.get() + " connections at once",
+                fetcher.maxOpen.get() <= 2);
+        assertEquals(fetcher.taken.get(), fetcher.released.get());
+    }
+
+    public void testFailureReleasesConnections() throws Exception {
+        final ObjectStoreException failure = new ObjectStoreException("failed");
+        CountingFetcher fetcher = new CountingFetcher() {
+            @Override
+            protected long fetch(Integer pathExpression, Connection c)
+                throws ObjectStoreException {
+                if (pathExpression.intValue() == 5) {
+                    throw failure;
+                }
+                return super.fetch(pathExpression, c);
+            }
+        };
+        fetcher.delay = 5;
+        try {
+            fetcher.fetchAll(numbers(40), newConnection(), executor, 3);
+            fail("Expected an ObjectStoreException");
+        } catch (ObjectStoreException e) {
+            assertSame(failure, e);
+        }
+        // Every helper has finished with its connection by the time the exception is thrown
+        assertEquals(0, fetcher.running.get());
+        assertEquals(fetcher.taken.get(), fetcher.released.get());
+        assertTrue(fetcher.fetched.get() < 40);
+    }
+
+    public void testNestedCallRunsSerially() throws Exception {
+        // One helper thread, which would wait forever for a further helper from its own pool
+        executor.shutdownNow();
+        executor = Executors.newFixedThreadPool(1);
+        final CountDownLatch helperStarted = new CountDownLatch(1);
+        final List<Boolean> nestedConcurrent = new ArrayList<Boolean>();
+        CountingFetcher fetcher = new CountingFetcher() {
+            @Override
+            protected long fetch(Integer pathExpression, Connection c)
+                throws ObjectStoreException {
+                if (!PathExpressionFetcher.isPathExpressionThread()) {
+                    // Leave something in the queue for the helper
+                    try {
+                        helperStarted.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        throw new ObjectStoreException(e);
+                    }
+                    return super.fetch(pathExpression, c);
+                }
+                helperStarted.countDown();
+                CountingFetcher nested = new CountingFetcher();
+                nested.fetchAll(numbers(3), c, executor, 3);
+                synchronized (nestedConcurrent) {
+                    nestedConcurrent.add(Boolean.valueOf(nested.wasConcurrent()));
+                }
+                return super.fetch(pathExpression, c);
+            }
+        };
+        fetcher.fetchAll(numbers(4), newConnection(), executor, 1);
+        assertTrue(fetcher.wasConcurrent());
+        assertFalse(nestedConcurrent.isEmpty());
+        assertFalse(nestedConcurrent.contains(Boolean.TRUE));
+        assertFalse(PathExpressionFetcher.isPathExpressionThread());
+    }
+
+    private static List<Integer> numbers(int count) {
+        List<Integer> retval = new ArrayList<Integer>();
+        for (int i = 0; i < count; i++) {
+            retval.add(Integer.valueOf(i));
+        }
+        return retval;
+    }
+
+    private static Connection newConnection() {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] {Connection.class}, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if ("equals".equals(method.getName())) {
+                            return Boolean.valueOf(proxy == args[0]);
+                        } else if ("hashCode".equals(method.getName())) {
+                            return Integer.valueOf(System.identityHashCode(proxy));
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private static class CountingFetcher extends PathExpressionFetcher<Integer>
+    {
+        final AtomicInteger taken = new AtomicInteger();
+        final AtomicInteger released = new AtomicInteger();
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxOpen = new AtomicInteger();
+        final AtomicInteger fetched = new AtomicInteger();
+        int delay = 0;
+
+        @Override
+        protected long fetch(Integer pathExpression, Connection c) throws ObjectStoreException {
+            running.incrementAndGet();
+            try {
+                if (delay > 0) {
+                    Thread.sleep(delay);
+                }
+            } catch (InterruptedException e) {
+                throw new ObjectStoreException(e);
+            } finally {
+                running.decrementAndGet();
+            }
+            fetched.incrementAndGet();
+            return pathExpression.intValue() * 10L;
+        }
+
+        @Override
+        protected Connection getConnection() {
+            int open = taken.incrementAndGet() - released.get();
+            int max;
+            while ((max = maxOpen.get()) < open && !maxOpen.compareAndSet(max, open)) {
+                // try again
+            }
+            return newConnection();
+        }
+
+        @Override
+        protected void releaseConnection(Connection c) {
+            if (c != null) {
+                released.incrementAndGet();
+            }
+        }
+    }
+}
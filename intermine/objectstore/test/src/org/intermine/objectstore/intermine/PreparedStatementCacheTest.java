@@ -0,0 +1,189 @@
+package org.intermine.objectstore.intermine;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for PreparedStatementCache, with connections and statements that only know whether they
+ * have been closed.
+ */
+public class PreparedStatementCacheTest extends TestCase
+{
+    private PreparedStatementCache cache;
+
+    public PreparedStatementCacheTest(String arg) {
+        super(arg);
+    }
+
+    public void setUp() {
+        cache = new TestCache(2);
+    }
+
+    public void testCheckOutAndCheckIn() throws Exception {
+        Connection c = newConnection(null);
+        PreparedStatement ps1 = cache.checkOut(c, "A");
+        assertEquals(1, cache.getMisses());
+        cache.checkIn("A", ps1, true);
+
+        PreparedStatement ps2 = cache.checkOut(c, "A");
+        assertSame(ps1, ps2);
+        assertEquals(1, cache.getHits());
+        assertFalse(ps1.isClosed());
+
+        // A statement that is checked out is never given out again until it is checked in
+        PreparedStatement ps3 = cache.checkOut(c, "A");
+        assertNotSame(ps1, ps3);
+        cache.checkIn("A", ps1, true);
+        // There is already a statement for the SQL, so the second one is closed
+        cache.checkIn("A", ps3, true);
+        assertTrue(ps3.isClosed());
+        assertSame(ps1, cache.checkOut(c, "A"));
+    }
+
+    public void testFailedStatementClosed() throws Exception {
+        Connection c = newConnection(null);
+        PreparedStatement ps = cache.checkOut(c, "A");
+        cache.checkIn("A", ps, false);
+        assertTrue(ps.isClosed());
+        assertNotSame(ps, cache.checkOut(c, "A"));
+    }
+
+    public void testEvictionClosesStatement() throws Exception {
+        Connection c = newConnection(null);
+        PreparedStatement a = cache.checkOut(c, "A");
+        PreparedStatement b = cache.checkOut(c, "B");
+        PreparedStatement d = cache.checkOut(c, "D");
+        cache.checkIn("A", a, true);
+        cache.checkIn("B", b, true);
+        cache.checkIn("D", d, true);
+        // A was the least recently used
+        assertTrue(a.isClosed());
+        assertFalse(b.isClosed());
+        assertFalse(d.isClosed());
+        assertNotSame(a, cache.checkOut(c, "A"));
+        assertSame(b, cache.checkOut(c, "B"));
+    }
+
+    public void testKeyedByPhysicalConnection() throws Exception {
+        Connection physical1 = newConnection(null);
+        Connection physical2 = newConnection(null);
+        // Two connections from the pool, one after the other, with the same physical connection
+        Connection logical1 = newConnection(physical1);
+        Connection logical2 = newConnection(physical1);
+        Connection other = newConnection(physical2);
+
+        PreparedStatement ps = cache.checkOut(logical1, "A");
+        cache.checkIn("A", ps, true);
+        assertSame(ps, cache.checkOut(logical2, "A"));
+        cache.checkIn("A", ps, true);
+        assertNotSame(ps, cache.checkOut(other, "A"));
+    }
+
+    public void testClearClosesStatements() throws Exception {
+        Connection c = newConnection(null);
+        PreparedStatement a = cache.checkOut(c, "A");
+        cache.checkIn("A", a, true);
+        cache.clear();
+        assertTrue(a.isClosed());
+        assertNotSame(a, cache.checkOut(c, "A"));
+    }
+
+    public void testClosedConnectionNotCached() throws Exception {
+        Connection c = newConnection(null);
+        PreparedStatement ps = cache.checkOut(c, "A");
+        c.close();
+        cache.checkIn("A", ps, true);
+        assertTrue(ps.isClosed());
+    }
+
+    /**
+     * Returns a Connection whose unwrap() returns the given physical connection, or itself if
+     * that is null.
+     */
+    private static Connection newConnection(final Connection physical) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] {Connection.class}, new Closeable() {
+                    @Override
+                    protected Object invoke(Object proxy, String name, Object[] args) {
+                        if ("unwrap".equals(name)) {
+                            return physical == null ? proxy : physical;
+                        } else if ("prepareStatement".equals(name)) {
+                            return newStatement((Connection) proxy);
+                        }
+                        return super.invoke(proxy, name, args);
+                    }
+                });
+    }
+
+    private static PreparedStatement newStatement(final Connection c) {
+        return (PreparedStatement) Proxy.newProxyInstance(
+                PreparedStatement.class.getClassLoader(),
+                new Class<?>[] {PreparedStatement.class}, new Closeable() {
+                    @Override
+                    protected Object invoke(Object proxy, String name, Object[] args) {
+                        if ("getConnection".equals(name)) {
+                            return c;
+                        }
+                        return super.invoke(proxy, name, args);
+                    }
+                });
+    }
+
+    private static class Closeable implements InvocationHandler
+    {
+        private boolean closed = false;
+
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            return invoke(proxy, method.getName(), args);
+        }
+
+        protected Object invoke(Object proxy, String name, Object[] args) {
+            if ("close".equals(name)) {
+                closed = true;
+                return null;
+            } else if ("isClosed".equals(name)) {
+                return Boolean.valueOf(closed);
+            } else if ("equals".equals(name)) {
+                return Boolean.valueOf(proxy == args[0]);
+            } else if ("hashCode".equals(name)) {
+                return Integer.valueOf(System.identityHashCode(proxy));
+            }
+            throw new UnsupportedOperationException(name);
+        }
+    }
+
+    /**
+     * A PreparedStatementCache that accepts the proxies above as physical connections.
+     */
+    private static class TestCache extends PreparedStatementCache
+    {
+        TestCache(int maxSize) {
+            super(maxSize);
+        }
+
+        @Override
+        Connection getPhysicalConnection(Connection c) {
+            try {
+                return c.unwrap(Connection.class);
+            } catch (SQLException e) {
+                return null;
+            }
+        }
+    }
+}
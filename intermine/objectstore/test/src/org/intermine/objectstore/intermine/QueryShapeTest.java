@@ -0,0 +1,170 @@
+package org.intermine.objectstore.intermine;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.intermine.metadata.ConstraintOp;
+import org.intermine.metadata.Model;
+import org.intermine.model.testmodel.Employee;
+import org.intermine.objectstore.query.BagConstraint;
+import org.intermine.objectstore.query.ConstraintSet;
+import org.intermine.objectstore.query.ObjectStoreBag;
+import org.intermine.objectstore.query.Query;
+import org.intermine.objectstore.query.QueryClass;
+import org.intermine.objectstore.query.QueryField;
+import org.intermine.objectstore.query.QueryValue;
+import org.intermine.objectstore.query.SimpleConstraint;
+
+public class QueryShapeTest extends TestCase
+{
+    private static final Map<Object, String> NO_BAGS = Collections.emptyMap();
+
+    private DatabaseSchema schema;
+
+    public QueryShapeTest(String arg) {
+        super(arg);
+    }
+
+    public void setUp() throws Exception {
+        schema = new DatabaseSchema(Model.getInstanceByName("testmodel"),
+                Collections.EMPTY_LIST, false, Collections.EMPTY_SET, 1, false, false);
+    }
+
+    private Query makeQuery(String name, int age, int bagId, ConstraintOp op) {
+        Query q = new Query();
+        QueryClass qc = new QueryClass(Employee.class);
+        q.addFrom(qc);
+        q.addToSelect(qc);
+        ConstraintSet cs = new ConstraintSet(ConstraintOp.AND);
+        cs.addConstraint(new SimpleConstraint(new QueryField(qc, "name"), op,
+                    new QueryValue(name)));
+        cs.addConstraint(new SimpleConstraint(new QueryField(qc, "age"),
+                    ConstraintOp.GREATER_THAN, new QueryValue(new Integer(age))));
+        cs.addConstraint(new BagConstraint(qc, ConstraintOp.IN, new ObjectStoreBag(bagId)));
+        q.setConstraint(cs);
+        return q;
+    }
+
+    public void testShapeIgnoresValues() throws Exception {
+        QueryShape shape1 = QueryShape.create(makeQuery("Fred", 20, 1, ConstraintOp.EQUALS),
+                NO_BAGS);
+        QueryShape shape2 = QueryShape.create(makeQuery("Bob's", 30, 2, ConstraintOp.EQUALS),
+                NO_BAGS);
+        QueryShape shape3 = QueryShape.create(makeQuery("Fred", 20, 1, ConstraintOp.MATCHES),
+                NO_BAGS);
+
+        assertEquals(shape1, shape2);
+        assertEquals(shape1.hashCode(), shape2.hashCode());
+        assertFalse(shape1.equals(shape3));
+        assertEquals(3, shape1.getParameters().size());
+    }
+
+    public void testShapeIncludesCollectionBags() throws Exception {
+        Query q1 = makeQuery("Fred", 20, 1, ConstraintOp.EQUALS);
+        ((ConstraintSet) q1.getConstraint()).addConstraint(new BagConstraint(
+                    new QueryField((QueryClass) q1.getSelect().get(0), "name"), ConstraintOp.IN,
+                    Arrays.asList("a", "b")));
+        Query q2 = makeQuery("Fred", 20, 1, ConstraintOp.EQUALS);
+        ((ConstraintSet) q2.getConstraint()).addConstraint(new BagConstraint(
+                    new QueryField((QueryClass) q2.getSelect().get(0), "name"), ConstraintOp.IN,
+                    Arrays.asList("a", "c")));
+
+        assertFalse(QueryShape.create(q1, NO_BAGS).equals(QueryShape.create(q2, NO_BAGS)));
+    }
+
+    public void testBagTableHasNoShape() throws Exception {
+        Query q = makeQuery("Fred", 20, 1, ConstraintOp.EQUALS);
+        BagConstraint bc = new BagConstraint(
+                new QueryField((QueryClass) q.getSelect().get(0), "name"), ConstraintOp.IN,
+                Arrays.asList("a", "b"));
+        ((ConstraintSet) q.getConstraint()).addConstraint(bc);
+        Map<Object, String> bagTableNames = new HashMap<Object, String>();
+        bagTableNames.put(new BagConstraint(new QueryClass(Employee.class), ConstraintOp.IN,
+                    Arrays.asList("x")), "bag_other");
+
+        assertNotNull(QueryShape.create(q, bagTableNames));
+        bagTableNames.put(bc, "bag_table");
+        assertNull(QueryShape.create(q, bagTableNames));
+    }
+
+    public void testRepeatedValueHasNoShape() throws Exception {
+        Query q = new Query();
+        QueryClass qc = new QueryClass(Employee.class);
+        q.addFrom(qc);
+        q.addToSelect(qc);
+        QueryValue value = new QueryValue("Fred");
+        ConstraintSet cs = new ConstraintSet(ConstraintOp.OR);
+        cs.addConstraint(new SimpleConstraint(new QueryField(qc, "name"), ConstraintOp.EQUALS,
+                    value));
+        cs.addConstraint(new SimpleConstraint(new QueryField(qc, "end"),
+                    ConstraintOp.EQUALS, value));
+        q.setConstraint(cs);
+
+        assertNull(QueryShape.create(q, NO_BAGS));
+    }
+
+    public void testTemplateSql() throws Exception {
+        Query q1 = makeQuery("Fred", 20, 1, ConstraintOp.EQUALS);
+        Query q2 = makeQuery("Bob's", 30, 2, ConstraintOp.EQUALS);
+
+        String sql1 = SqlGenerator.generateFromTemplate(q1, schema, null,
+                new HashMap<Object, String>());
+        // q2 is generated from the SQL remembered for q1
+        String sql2 = SqlGenerator.generateFromTemplate(q2, schema, null,
+                new HashMap<Object, String>());
+
+        assertEquals(SqlGenerator.generate(q1, schema, null, null, SqlGenerator.QUERY_NORMAL,
+                    new HashMap<Object, String>()), sql1);
+        assertEquals(SqlGenerator.generate(q2, schema, null, null, SqlGenerator.QUERY_NORMAL,
+                    new HashMap<Object, String>()), sql2);
+        assertTrue(sql2.indexOf("'Bob''s'") != -1);
+        assertTrue(sql2.indexOf("> 30") != -1);
+    }
+
+    public void testParameterisedSql() throws Exception {
+        ParameterisedSql sql1 = SqlGenerator.generateParameterised(
+                makeQuery("Fred", 20, 1, ConstraintOp.EQUALS), 0, 10, schema, null, NO_BAGS);
+        ParameterisedSql sql2 = SqlGenerator.generateParameterised(
+                makeQuery("Bob's", 30, 2, ConstraintOp.EQUALS), 0, 10, schema, null, NO_BAGS);
+
+        assertEquals(sql1.getSql(), sql2.getSql());
+        assertEquals(Arrays.asList("Bob's", new Integer(30), new Integer(2), new Integer(10),
+                    new Integer(0)), sql2.getValues());
+        assertTrue(sql2.getSql().endsWith(" LIMIT ? OFFSET ?"));
+        assertEquals(-1, sql2.getSql().indexOf("Bob"));
+    }
+
+    public void testParameterisedSqlSameForEveryPage() throws Exception {
+        Query q = makeQuery("Fred", 20, 1, ConstraintOp.EQUALS);
+        ParameterisedSql page1 = SqlGenerator.generateParameterised(q, 0, 10, schema, null,
+                NO_BAGS);
+        ParameterisedSql page2 = SqlGenerator.generateParameterised(q, 10, 10, schema, null,
+                NO_BAGS);
+
+        assertEquals(page1.getSql(), page2.getSql());
+        assertEquals(Arrays.asList("Fred", new Integer(20), new Integer(1), new Integer(10),
+                    new Integer(10)), page2.getValues());
+        assertEquals(SqlGenerator.generate(q, 10, 10, schema, null, NO_BAGS),
+                page2.getLiteralSql());
+
+        ParameterisedSql all = SqlGenerator.generateParameterised(q, 0, Integer.MAX_VALUE,
+                schema, null, NO_BAGS);
+        assertEquals(3, all.getValues().size());
+        assertEquals(SqlGenerator.generate(q, 0, Integer.MAX_VALUE, schema, null, NO_BAGS),
+                all.getLiteralSql());
+    }
+}
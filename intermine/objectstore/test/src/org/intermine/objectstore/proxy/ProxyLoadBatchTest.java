@@ -0,0 +1,146 @@
+package org.intermine.objectstore.proxy;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.intermine.metadata.Model;
+import org.intermine.model.testmodel.Department;
+import org.intermine.model.testmodel.Employee;
+import org.intermine.objectstore.dummy.ObjectStoreDummyImpl;
+import org.intermine.objectstore.query.SingletonResults;
+import org.intermine.objectstore.query.ResultsRow;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ProxyLoadBatchTest {
+
+    private ObjectStoreDummyImpl os;
+    private Department d1, d2, d3;
+    private Employee e1, e2, e3;
+
+    @Before
+    public void setUp() {
+        os = new ObjectStoreDummyImpl();
+        os.setModel(Model.getInstanceByName("testmodel"));
+        d1 = department(1);
+        d2 = department(2);
+        d3 = department(3);
+        e1 = employee(11);
+        e2 = employee(12);
+        e3 = employee(13);
+        // The rows the bulk query returns: owner id, element
+        os.addRow(new ResultsRow<Object>(Arrays.<Object>asList(1, e1)));
+        os.addRow(new ResultsRow<Object>(Arrays.<Object>asList(2, e2)));
+        os.addRow(new ResultsRow<Object>(Arrays.<Object>asList(2, e3)));
+        os.setResultsSize(3);
+    }
+
+    @After
+    public void tearDown() {
+        ProxyLoadBatch.close();
+    }
+
+    @Test
+    public void testCollectionsLoadedTogether() {
+        ProxyLoadBatch.open();
+        ProxyCollection<Employee> c1 = collection(d1);
+        ProxyCollection<Employee> c2 = collection(d2);
+        ProxyCollection<Employee> c3 = collection(d3);
+
+        assertEquals(Collections.singleton(e1), c1);
+        assertEquals(1, os.getExecuteCalls());
+        assertEquals(2, c2.size());
+        assertEquals(0, c3.size());
+        assertNotNull(c3.getMaterialisedCollection());
+        assertEquals(1, os.getExecuteCalls());
+    }
+
+    @Test
+    public void testSingleOwnerNotBulkLoaded() {
+        ProxyLoadBatch.open();
+        ProxyCollection<Employee> c1 = collection(d1);
+        // Another proxy for the same owner doesn't make a second owner
+        collection(d1);
+
+        c1.size();
+        assertNull(c1.getMaterialisedCollection());
+        assertTrue(isSingletonResults(c1));
+        // No longer pending
+        assertFalse(ProxyLoadBatch.getCurrent().loadCollections(c1));
+    }
+
+    @Test
+    public void testTooManyRowsNotBulkLoaded() {
+        for (int i = 0; i < ProxyLoadBatch.MAX_LOADED_ROWS; i++) {
+            os.addRow(new ResultsRow<Object>(Arrays.<Object>asList(1, employee(100 + i))));
+        }
+        os.setResultsSize(ProxyLoadBatch.MAX_LOADED_ROWS + 3);
+        ProxyLoadBatch.open();
+        ProxyCollection<Employee> c1 = collection(d1);
+        ProxyCollection<Employee> c2 = collection(d2);
+
+        assertFalse(ProxyLoadBatch.getCurrent().loadCollections(c1));
+        assertNull(c1.getMaterialisedCollection());
+        assertTrue(isSingletonResults(c1));
+        assertTrue(isSingletonResults(c2));
+    }
+
+    @Test
+    public void testNoBatch() {
+        ProxyCollection<Employee> c1 = collection(d1);
+        assertNull(c1.getMaterialisedCollection());
+        ProxyLoadBatch.open();
+        // Created before the batch was opened, so not part of it
+        assertFalse(ProxyLoadBatch.getCurrent().loadCollections(c1));
+    }
+
+    @Test
+    public void testNesting() {
+        ProxyLoadBatch.open();
+        ProxyLoadBatch batch = ProxyLoadBatch.getCurrent();
+        ProxyLoadBatch.open();
+        assertEquals(batch, ProxyLoadBatch.getCurrent());
+        ProxyLoadBatch.close();
+        assertEquals(batch, ProxyLoadBatch.getCurrent());
+        ProxyLoadBatch.close();
+        assertNull(ProxyLoadBatch.getCurrent());
+    }
+
+    private static boolean isSingletonResults(ProxyCollection<Employee> c) {
+        Object list = c.asList();
+        return list instanceof SingletonResults;
+    }
+
+    private ProxyCollection<Employee> collection(Department d) {
+        return new ProxyCollection<Employee>(os, d, "employees", Employee.class);
+    }
+
+    private static Department department(int id) {
+        Department d = new Department();
+        d.setId(id);
+        return d;
+    }
+
+    private static Employee employee(int id) {
+        Employee e = new Employee();
+        e.setId(id);
+        return e;
+    }
+}
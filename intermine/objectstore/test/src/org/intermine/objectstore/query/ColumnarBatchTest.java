@@ -0,0 +1,134 @@
+package org.intermine.objectstore.query;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.intermine.model.testmodel.Employee;
+import org.intermine.model.testmodel.Types;
+import org.intermine.objectstore.ObjectStore;
+import org.intermine.objectstore.dummy.ObjectStoreDummyImpl;
+
+public class ColumnarBatchTest extends TestCase
+{
+    public ColumnarBatchTest(String arg) {
+        super(arg);
+    }
+
+    private Query makeQuery() {
+        Query q = new Query();
+        QueryClass qc = new QueryClass(Types.class);
+        q.addFrom(qc);
+        q.addToSelect(new QueryField(qc, "name"));
+        q.addToSelect(new QueryField(qc, "intObjType"));
+        q.addToSelect(new QueryField(qc, "longObjType"));
+        q.addToSelect(new QueryField(qc, "doubleObjType"));
+        q.addToSelect(new QueryField(qc, "floatObjType"));
+        q.addToSelect(new QueryField(qc, "booleanObjType"));
+        q.addToSelect(new QueryField(qc, "shortObjType"));
+        q.addToSelect(new QueryField(qc, "dateObjType"));
+        q.addToSelect(new QueryField(qc, "bigDecimalObjType"));
+        return q;
+    }
+
+    private ResultsRow<Object> makeRow(Object... values) {
+        return new ResultsRow<Object>(Arrays.asList(values));
+    }
+
+    public void testCanHold() throws Exception {
+        assertTrue(ColumnarBatch.canHold(makeQuery()));
+        Query q = new Query();
+        QueryClass qc = new QueryClass(Employee.class);
+        q.addFrom(qc);
+        q.addToSelect(new QueryField(qc, "name"));
+        q.addToSelect(qc);
+        assertFalse(ColumnarBatch.canHold(q));
+    }
+
+    public void testValues() throws Exception {
+        List<Object> rows = new ArrayList<Object>();
+        rows.add(makeRow("Fred", new Integer(1), new Long(2L), new Double(3.5), new Float(4.25F),
+                    Boolean.TRUE, new Short((short) 5), new Date(6L), new BigDecimal("7.1")));
+        rows.add(makeRow(null, null, null, null, null, null, null, null, null));
+        rows.add(makeRow("Fred", new Integer(-1), new Long(Long.MAX_VALUE), new Double(-0.5),
+                    new Float(0.1F), Boolean.FALSE, new Short((short) -5), new Date(0L),
+                    new BigDecimal("0")));
+
+        ColumnarBatch batch = ColumnarBatch.create(rows, makeQuery().getSelect());
+
+        assertEquals(rows, batch);
+        assertEquals(3, batch.size());
+        assertEquals(9, batch.getColumnCount());
+        assertEquals(-1, batch.getInt(2, 1));
+        assertEquals(Long.MAX_VALUE, batch.getLong(2, 2));
+        assertEquals(6L, batch.getLong(0, 7));
+        assertEquals(-0.5, batch.getDouble(2, 3), 0.0);
+        assertTrue(batch.isNull(1, 0));
+        assertFalse(batch.isNull(0, 8));
+        assertEquals(new Short((short) 5), batch.getValue(0, 6));
+        try {
+            batch.getInt(0, 0);
+            fail("Expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            batch.get(3);
+            fail("Expected IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+    }
+
+    public void testUnexpectedType() throws Exception {
+        Query q = new Query();
+        QueryClass qc = new QueryClass(Types.class);
+        q.addFrom(qc);
+        q.addToSelect(new QueryField(qc, "intObjType"));
+        List<Object> rows = new ArrayList<Object>();
+        rows.add(makeRow(new Integer(1)));
+        rows.add(makeRow(new Long(2L)));
+
+        ColumnarBatch batch = ColumnarBatch.create(rows, q.getSelect());
+
+        assertEquals(rows, batch);
+        assertEquals(new Long(2L), batch.getValue(1, 0));
+    }
+
+    public void testResultsBatchesColumnarOnlyWhenAsked() throws Exception {
+        ObjectStoreDummyImpl os = new ObjectStoreDummyImpl();
+        os.setResultsSize(3);
+        for (int i = 0; i < 3; i++) {
+            os.addRow(makeRow("Name" + i));
+        }
+        Query q = new Query();
+        QueryClass qc = new QueryClass(Employee.class);
+        q.addFrom(qc);
+        q.addToSelect(new QueryField(qc, "name"));
+
+        ResultsBatches rows = new ResultsBatches(q, os, ObjectStore.SEQUENCE_IGNORE);
+        assertFalse(rows.isColumnar());
+        List<Object> expected = rows.getRowsFromBatch(0, 0, 2, false, false);
+        assertFalse(rows.getBatchFromCache(0) instanceof ColumnarBatch);
+
+        ResultsBatches columns = new ResultsBatches(q, os, ObjectStore.SEQUENCE_IGNORE);
+        columns.setColumnar(true);
+        assertTrue(columns.isColumnar());
+        assertEquals(expected, columns.getRowsFromBatch(0, 0, 2, false, false));
+        assertTrue(columns.getBatchFromCache(0) instanceof ColumnarBatch);
+    }
+}
@@ -0,0 +1,283 @@
+package org.intermine.util;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import junit.framework.TestCase;
+
+public class BatchingObjectPipeTest extends TestCase
+{
+    private volatile int progress;
+    private BatchingObjectPipe<Integer> op;
+
+    public BatchingObjectPipeTest(String arg) {
+        super(arg);
+    }
+
+    public void test() throws Exception {
+        op = new BatchingObjectPipe<Integer>();
+
+        op.put(new Integer(1));
+        op.put(new Integer(2));
+        assertEquals(2, op.getQueueDepth());
+        assertTrue(op.hasNext());
+        assertEquals(new Integer(1), op.next());
+        assertEquals(1, op.getQueueDepth());
+        op.finish();
+        assertTrue(op.hasNext());
+        assertEquals(new Integer(2), op.next());
+        assertFalse(op.hasNext());
+        assertEquals(0, op.getQueueDepth());
+        try {
+            op.next();
+            fail("Expected: NoSuchElementException");
+        } catch (NoSuchElementException e) {
+        }
+    }
+
+    public void testChunks() throws Exception {
+        op = new BatchingObjectPipe<Integer>(100, 3);
+        List<Integer> l = new ArrayList<Integer>();
+        for (int i = 1; i <= 10; i++) {
+            l.add(new Integer(i));
+        }
+        op.putAll(l);
+        assertEquals(10, op.getQueueDepth());
+        assertTrue(op.hasNext());
+        // The consumer has taken the first chunk of three
+        assertEquals(7, op.getQueueDepth());
+        op.finish();
+        for (int i = 1; i <= 10; i++) {
+            assertTrue(op.hasNext());
+            assertEquals(new Integer(i), op.next());
+        }
+        assertFalse(op.hasNext());
+    }
+
+    public void testMultiThreaded() throws Exception {
+        op = new BatchingObjectPipe<Integer>(2);
+        progress = 0;
+
+        Thread receiver = new Thread() {
+            @Override
+            public void run() {
+                while (op.hasNext()) {
+                    int i = op.next().intValue();
+                    if (i == progress + 1) {
+                        progress = i;
+                    } else {
+                        progress = 3000;
+                    }
+                }
+                if (progress != 3000) {
+                    progress = 2000;
+                }
+            }
+        };
+
+        receiver.start();
+
+        assertEquals(0, progress);
+        op.put(new Integer(1));
+        for (int i = 0; (i < 40) && (progress < 1); i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(1, progress);
+        op.put(new Integer(2));
+        for (int i = 0; (i < 40) && (progress < 2); i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(2, progress);
+
+        List<Integer> l = new ArrayList<Integer>();
+        l.add(new Integer(3));
+        l.add(new Integer(4));
+        l.add(new Integer(5));
+        l.add(new Integer(6));
+        op.putAll(l);
+        for (int i = 0; (i < 40) && (progress < 6); i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(6, progress);
+
+        op.finish();
+        for (int i = 0; (i < 40) && (progress < 2000); i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(2000, progress);
+    }
+
+    public void testBlocksWhenFull() throws Exception {
+        op = new BatchingObjectPipe<Integer>(2);
+        progress = 0;
+
+        Thread sender = new Thread() {
+            @Override
+            public void run() {
+                op.put(new Integer(1));
+                op.put(new Integer(2));
+                progress = 2;
+                op.put(new Integer(3));
+                progress = 3;
+                op.finish();
+                progress = 2000;
+            }
+        };
+
+        sender.start();
+
+        for (int i = 0; (i < 40) && (progress < 2); i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(2, progress);
+        Thread.sleep(200);
+        assertEquals(2, progress);
+        assertTrue(op.hasNext());
+        assertEquals(new Integer(1), op.next());
+        for (int i = 0; (i < 40) && (progress < 2000); i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(2000, progress);
+        assertEquals(new Integer(2), op.next());
+        assertEquals(new Integer(3), op.next());
+        assertFalse(op.hasNext());
+    }
+
+    public void testIdleConsumerParks() throws Exception {
+        op = new BatchingObjectPipe<Integer>();
+        progress = 0;
+
+        Thread receiver = new Thread() {
+            @Override
+            public void run() {
+                while (op.hasNext()) {
+                    progress = op.next().intValue();
+                }
+                progress = 2000;
+            }
+        };
+        receiver.start();
+
+        // Once it has stopped spinning, the consumer parks until it is unparked
+        for (int i = 0; (i < 40) && (receiver.getState() != Thread.State.WAITING); i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(Thread.State.WAITING, receiver.getState());
+        op.put(new Integer(1));
+        for (int i = 0; (i < 40) && (progress < 1); i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(1, progress);
+
+        for (int i = 0; (i < 40) && (receiver.getState() != Thread.State.WAITING); i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(Thread.State.WAITING, receiver.getState());
+        op.finish();
+        receiver.join(2000);
+        assertEquals(2000, progress);
+    }
+
+    public void testMultipleProducersAndConsumers() throws Exception {
+        op = new BatchingObjectPipe<Integer>(16, 4);
+        final int producerCount = 4;
+        final int perProducer = 5000;
+        final int[] seen = new int[producerCount * perProducer];
+
+        Thread[] producers = new Thread[producerCount];
+        for (int p = 0; p < producerCount; p++) {
+            final int base = p * perProducer;
+            producers[p] = new Thread() {
+                @Override
+                public void run() {
+                    List<Integer> batch = new ArrayList<Integer>();
+                    for (int i = 0; i < perProducer; i++) {
+                        if (i % 2 == 0) {
+                            op.put(new Integer(base + i));
+                        } else {
+                            batch.add(new Integer(base + i));
+                            if (batch.size() == 7) {
+                                op.putAll(batch);
+                                batch.clear();
+                            }
+                        }
+                    }
+                    op.putAll(batch);
+                }
+            };
+            producers[p].start();
+        }
+        Thread[] consumers = new Thread[3];
+        for (int c = 0; c < consumers.length; c++) {
+            consumers[c] = new Thread() {
+                @Override
+                public void run() {
+                    while (op.hasNext()) {
+                        int i = op.next().intValue();
+                        synchronized (seen) {
+                            seen[i]++;
+                        }
+                    }
+                }
+            };
+            consumers[c].start();
+        }
+        for (Thread producer : producers) {
+            producer.join(20000);
+        }
+        op.finish();
+        for (Thread consumer : consumers) {
+            consumer.join(20000);
+        }
+        synchronized (seen) {
+            for (int i = 0; i < seen.length; i++) {
+                assertEquals("Object " + i, 1, seen[i]);
+            }
+        }
+        assertEquals(0, op.getQueueDepth());
+    }
+
+    public void testPutFinished() throws Exception {
+        op = new BatchingObjectPipe<Integer>();
+        op.finish();
+        try {
+            op.put(new Integer(1));
+            fail("Expected: IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    public void testFinishFinished() throws Exception {
+        op = new BatchingObjectPipe<Integer>();
+        op.finish();
+        try {
+            op.finish();
+            fail("Expected: IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    public void testMaxBufferTooSmall() throws Exception {
+        try {
+            op = new BatchingObjectPipe<Integer>(0);
+            fail("Expected: IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            op = new BatchingObjectPipe<Integer>(10, 0);
+            fail("Expected: IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+}
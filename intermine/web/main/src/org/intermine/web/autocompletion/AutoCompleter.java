@@ -9,52 +9,61 @@ package org.intermine.web.autocompletion;
  * information or http://www.gnu.org/copyleft/lesser.html.
  *
  */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.util.Arrays;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
 
 import org.apache.log4j.Logger;
-import org.apache.lucene.document.Document;
-import org.apache.lucene.queryParser.ParseException;
-import org.apache.lucene.search.ScoreDoc;
-import org.apache.lucene.search.TopDocs;
-import org.apache.lucene.store.FSDirectory;
-import org.apache.lucene.store.RAMDirectory;
 import org.intermine.metadata.ClassDescriptor;
 import org.intermine.objectstore.ObjectStore;
 import org.intermine.objectstore.ObjectStoreException;
 import org.intermine.objectstore.query.Query;
 import org.intermine.objectstore.query.QueryClass;
 import org.intermine.objectstore.query.QueryField;
+import org.intermine.objectstore.query.QueryFunction;
 import org.intermine.objectstore.query.Results;
 import org.intermine.objectstore.query.ResultsRow;
 
 /**
  * Autocompleter class for initializing and using the autocompletion
  *
+ * There is one CompletionIndex for each class and field, named for example "Gene.symbol". The
+ * indexes are built at release time, in parallel, and stored in the database as a zip file. When
+ * the webapp starts they are unpacked into a directory and read through memory maps, so they do
+ * not take up the heap.
+ *
  * @author Dominik Grimm
  * @author Michael Menden
  */
 public class AutoCompleter
 {
-    private  HashMap<String, String> fieldIndexMap = new HashMap<String, String>();
-    private HashMap<String, LuceneSearchEngine> ramIndexMap =
-                                        new HashMap<String, LuceneSearchEngine>();
-    private HashMap<String, RAMDirectory> blobMap = new HashMap<String, RAMDirectory>();
+    private Map<String, CompletionIndex> indexes = new HashMap<String, CompletionIndex>();
     private Properties prob;
-    private LuceneSearchEngine search = null;
 
     private static final File TEMP_DIR =
         new File("build" + File.separatorChar + "autocompleteIndexes");
+    private static final int BATCH_SIZE = 10000;
+    private static final int BUFFER_SIZE = 8192;
 
     private static final Logger LOG = Logger.getLogger(AutoCompleter.class);
 
@@ -84,127 +93,137 @@ public class AutoCompleter
     }
 
     /**
-     * Autocompleter rebuild constructor.
+     * Autocompleter rebuild constructor, which unpacks the indexes into a new temporary
+     * directory.
      * @param blobInput InputStream from database
      */
-    @SuppressWarnings("unchecked")
     public AutoCompleter(InputStream blobInput) {
-        try {
-            ObjectInputStream objectInput = new ObjectInputStream(blobInput);
-
-            Object object = objectInput.readObject();
-
-            blobInput.close();
-
-            if (object instanceof HashMap<?, ?>) {
-                blobMap = (HashMap<String, RAMDirectory>) object;
+        this(blobInput, null);
+    }
 
-                for (Iterator<Map.Entry<String, RAMDirectory>> iter = blobMap.entrySet().iterator();
-                        iter.hasNext();) {
-                    Map.Entry<String, RAMDirectory> entry =
-                        iter.next();
-                    String key = entry.getKey();
-                    RAMDirectory value = null;
-                    value = entry.getValue();
-                    search = null;
-                    search = new LuceneSearchEngine(value);
-                    ramIndexMap.put(key, search);
-                    fieldIndexMap.put(key, key);
-                    LOG.info("AutoCompleter read index for: " + key);
-                }
+    /**
+     * Autocompleter rebuild constructor.
+     * @param blobInput InputStream from database
+     * @param indexDir the directory to unpack the indexes into, or null for a new temporary
+     * directory. Any files already in it are deleted.
+     */
+    public AutoCompleter(InputStream blobInput, File indexDir) {
+        try {
+            File dir = indexDir;
+            if (dir == null) {
+                dir = File.createTempFile("autocomplete", "");
+                dir.delete();
             }
-
+            readIndexes(blobInput, dir);
         } catch (IOException e) {
-            e.printStackTrace();
-        } catch (ClassNotFoundException e) {
-            e.printStackTrace();
+            LOG.error("Could not read the autocompletion indexes", e);
         }
     }
 
-    /**
-     * create the RAMIndex for the search engine
-     * @param classDes String of the class and the field (e.g. GOTerm.name)
-     */
-    public void createRAMIndex(String classDes) {
-        if (ramIndexMap.get(classDes) != null) {
-            search = null;
-            search = ramIndexMap.get(classDes);
-        } else {
-            try {
-                String indexFile = TEMP_DIR.toString() + File.separatorChar + classDes;
-                RAMDirectory ram = new RAMDirectory(FSDirectory.open(new File(indexFile)));
-                search = new LuceneSearchEngine(ram);
-                ramIndexMap.put(classDes, search);
-                blobMap.put(classDes, ram);
-            } catch (IOException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
+    private void readIndexes(InputStream blobInput, File dir) throws IOException {
+        InputStream in = new BufferedInputStream(blobInput);
+        try {
+            in.mark(2);
+            if (in.read() != 'P' || in.read() != 'K') {
+                LOG.warn("The autocompletion indexes in the database are in an old format."
+                        + " Run the create-autocomplete-index postprocess to rebuild them.");
+                return;
+            }
+            in.reset();
+            if (dir.exists()) {
+                File[] oldFiles = dir.listFiles();
+                if (oldFiles != null) {
+                    for (File file : oldFiles) {
+                        file.delete();
+                    }
+                }
+            } else if (!dir.mkdirs()) {
+                throw new IOException("Could not create " + dir);
             }
+            ZipInputStream zipIn = new ZipInputStream(in);
+            ZipEntry entry;
+            while ((entry = zipIn.getNextEntry()) != null) {
+                String classAndField = entry.getName();
+                if (!isIndexName(classAndField)) {
+                    LOG.warn("Ignoring autocompletion index with bad name: " + classAndField);
+                    continue;
+                }
+                File file = new File(dir, classAndField);
+                copy(zipIn, new FileOutputStream(file));
+                file.deleteOnExit();
+                indexes.put(classAndField, CompletionIndex.open(file));
+                LOG.info("AutoCompleter read index for: " + classAndField);
+            }
+        } finally {
+            in.close();
         }
     }
 
     /**
-     * returns a string array with the search results of the query in the field
-     * @param query is the string used for search
-     * @param field is the field in which you like to search (e.g. name)
-     * @return stringList string array with the whole search results including
-     *           an error flag at position 0
+     * Returns whether the name of an entry in the indexes from the database can be used as the
+     * name of a file in the index directory. Index names are of the form "Class.field", so a
+     * name with a path separator, a drive letter or "..", which could name a file outside the
+     * directory, is never one of ours.
+     *
+     * @param name the name of the zip entry
+     * @return true if the name is safe to use
      */
-    public String[] getList(String query, String field) {
-        String[] stringList = null;
-        String status = "true";
-        int counter = 1;
-
-        TopDocs topDocs = null;
-        try {
-            topDocs = search.performSearch(query, field);
-        } catch (IOException e) {
-
-        } catch (ParseException e) {
-            status = "Please type in more characters to get results.";
+    static boolean isIndexName(String name) {
+        if ((name.length() == 0) || name.contains("..")) {
+            return false;
         }
-
-        if (topDocs != null) {
-            stringList = new String[topDocs.totalHits + 1];
-
-            for (int i = 0; i < topDocs.totalHits; i++) {
-                ScoreDoc scoreDoc = topDocs.scoreDocs[i];
-                Document doc;
-                try {
-                    doc = search.getIndexSearch().doc(scoreDoc.doc);
-
-                    stringList[counter] = doc.get(field);
-                    counter++;
-                } catch (IOException e) {
-                    //TODO: shouldn't this go outside the for loop?
-                    status = "No results! Please try again.";
-                }
+        for (char c : new char[] {'/', '\\', ':', '\0'}) {
+            if (name.indexOf(c) != -1) {
+                return false;
             }
         }
-        stringList[0] = status;
+        return true;
+    }
 
-        return stringList;
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        OutputStream bufferedOut = new BufferedOutputStream(out, BUFFER_SIZE);
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                bufferedOut.write(buffer, 0, count);
+            }
+        } finally {
+            bufferedOut.close();
+        }
     }
 
     /**
      * Returns n search results
      * @param query is the string used for search
+     * @param className the unqualified name of the class to search (e.g. GOTerm)
      * @param field is the field in which you like to search (e.g. name)
      * @param n number of the first n search results
      * @return string array with search results and an error flag at position 0
      */
-    public String[] getFastList(String query, String field, int n) {
-        return search.fastSearch(query, field, n);
+    public String[] getFastList(String query, String className, String field, int n) {
+        CompletionIndex index = indexes.get(className + "." + field);
+        if (index == null) {
+            return new String[] {"No results! Please try again."};
+        }
+        List<String> values = index.complete(query, n);
+        String[] retval = new String[values.size() + 1];
+        retval[0] = "true";
+        for (int i = 0; i < values.size(); i++) {
+            retval[i + 1] = values.get(i);
+        }
+        return retval;
     }
 
     /**
-     * Build the index from the database blob
+     * Build the indexes for the fields configured in the properties, one at a time for each
+     * processor.
      * @param os Objectstore
      * @throws IOException IOException
      * @throws ObjectStoreException ObjectStoreException
      * @throws ClassNotFoundException ClassNotFoundException
      */
-    public void buildIndex(ObjectStore os)
+    public void buildIndex(final ObjectStore os)
         throws IOException, ObjectStoreException, ClassNotFoundException {
 
         if (TEMP_DIR.exists()) {
@@ -215,6 +234,7 @@ public class AutoCompleter
             TEMP_DIR.mkdirs();
         }
 
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
         for (Map.Entry<Object, Object> entry: prob.entrySet()) {
             String key = (String) entry.getKey();
             String value = (String) entry.getValue();
@@ -227,54 +247,108 @@ public class AutoCompleter
                 throw new RuntimeException("a class mentioned in ObjectStore summary properties "
                                            + "file (" + className + ") is not in the model");
             }
-            List<String> fieldNames = Arrays.asList(value.split(" "));
-            for (Iterator<String> i = fieldNames.iterator(); i.hasNext();) {
-
-                String fieldName = i.next();
-                String classAndField = cld.getUnqualifiedName() + "." + fieldName;
-                System.out .println("Indexing " + classAndField);
-                fieldIndexMap.put(classAndField, classAndField);
-
-
-                Query q = new Query();
-                q.setDistinct(true);
-                QueryClass qc = new QueryClass(Class.forName(cld.getName()));
-                q.addToSelect(new QueryField(qc, fieldName));
-                q.addFrom(qc);
-                Results results = os.execute(q);
-
-                LuceneObjectClass objectClass = new LuceneObjectClass(classAndField);
-                objectClass.addField(fieldName);
-
-                for (Object resRow: results) {
-                    @SuppressWarnings("rawtypes")
-                    Object fieldValue = ((ResultsRow) resRow).get(0);
-                    if (fieldValue != null) {
-                        objectClass.addValueToField(objectClass.getFieldName(0), fieldValue
-                                .toString());
+            final Class<?> cls = Class.forName(cld.getName());
+            for (final String fieldName : value.split(" ")) {
+                final String classAndField = cld.getUnqualifiedName() + "." + fieldName;
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        buildFieldIndex(os, cls, fieldName, classAndField);
+                        return null;
                     }
-                }
+                });
+            }
+        }
+        if (tasks.isEmpty()) {
+            return;
+        }
 
-                String indexFileName = TEMP_DIR.getPath() + File.separatorChar + classAndField;
-                LuceneIndex indexer = new LuceneIndex(indexFileName);
-                indexer.addClass(objectClass);
-                indexer.rebuildClassIndexes();
+        int threads = Math.min(tasks.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while building autocompletion indexes", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ObjectStoreException) {
+                throw (ObjectStoreException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new RuntimeException("Error building autocompletion indexes", cause);
+        } finally {
+            executor.shutdown();
+        }
+    }
 
-                createRAMIndex(classAndField);
+    private void buildFieldIndex(ObjectStore os, Class<?> cls, String fieldName,
+            String classAndField) throws IOException {
+        System.out .println("Indexing " + classAndField);
+        long start = System.currentTimeMillis();
+
+        // Count how many objects have each value, to put the common values first
+        Query q = new Query();
+        QueryClass qc = new QueryClass(cls);
+        QueryField qf = new QueryField(qc, fieldName);
+        q.addFrom(qc);
+        q.addToSelect(qf);
+        q.addToSelect(new QueryFunction());
+        q.addToGroupBy(qf);
+        Results results = os.execute(q, BATCH_SIZE, true, false, false);
+
+        Map<String, Integer> valueCounts = new HashMap<String, Integer>();
+        for (Object resRow: results) {
+            @SuppressWarnings("rawtypes")
+            ResultsRow row = (ResultsRow) resRow;
+            Object fieldValue = row.get(0);
+            if (fieldValue != null) {
+                String value = fieldValue.toString();
+                int count = ((Number) row.get(1)).intValue();
+                Integer previous = valueCounts.get(value);
+                if (previous != null) {
+                    count += previous.intValue();
+                }
+                valueCounts.put(value, new Integer(count));
             }
         }
+
+        File file = new File(TEMP_DIR, classAndField);
+        CompletionIndex.write(file, valueCounts);
+        CompletionIndex index = CompletionIndex.open(file);
+        synchronized (indexes) {
+            indexes.put(classAndField, index);
+        }
+        LOG.info("Indexed " + valueCounts.size() + " values of " + classAndField + " in "
+                + (System.currentTimeMillis() - start) + "ms");
     }
 
     /**
-     * Returns byte array of the RAMIndexMap
-     * @return Returns byte array of the RAMIndexMap
+     * Returns the indexes as a zip file, to be stored in the database
+     * @return Returns the bytes of a zip file, with an entry for each index
      * @throws IOException IOException
      */
     public byte[] getBinaryIndexMap() throws IOException {
         ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-        ObjectOutputStream objectStream = new ObjectOutputStream(byteStream);
-        objectStream.writeObject(blobMap);
-        objectStream.close();
+        ZipOutputStream zipOut = new ZipOutputStream(byteStream);
+        for (String classAndField : indexes.keySet()) {
+            zipOut.putNextEntry(new ZipEntry(classAndField));
+            InputStream in = new FileInputStream(new File(TEMP_DIR, classAndField));
+            try {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int count;
+                while ((count = in.read(buffer)) != -1) {
+                    zipOut.write(buffer, 0, count);
+                }
+            } finally {
+                in.close();
+            }
+            zipOut.closeEntry();
+        }
+        zipOut.close();
 
         return byteStream.toByteArray();
     }
@@ -286,11 +360,6 @@ public class AutoCompleter
      * @return whether an autocompletion exists
      */
     public boolean hasAutocompleter(String type, String field) {
-        if (fieldIndexMap.get(type + "." + field) != null) {
-            return true;
-        }
-        return false;
+        return indexes.containsKey(type + "." + field);
     }
-
-
 }
@@ -0,0 +1,447 @@
+package org.intermine.web.autocompletion;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * A prefix completion index for the values of one field, held in a file that is read through a
+ * memory map, so that it takes no space on the heap.
+ *
+ * Every word of every value is a key, so a query matches the values that have a word starting
+ * with each of the words of the query, as the Lucene indexes this replaces did. The keys are
+ * sorted, so the keys that start with the first word of a query form a range that is found by
+ * binary search. Each value has a weight, the number of objects that have it, and a segment tree
+ * over the keys gives the key of greatest weight in any range, so the best completions are
+ * found without reading every key in the range.
+ *
+ * The file holds, in order: a header of six ints; the offsets of the values and of their
+ * normalised forms; the weights of the values; the value and start of each key; the segment
+ * tree; and the characters of the values and of their normalised forms.
+ */
+public final class CompletionIndex
+{
+    private static final int MAGIC = 0x494d4143;
+    private static final int VERSION = 1;
+    private static final int HEADER_INTS = 6;
+    /** The most words of one value that are used as keys */
+    private static final int MAX_WORDS = 32;
+    /** The most keys to look at when looking for values that match every word of a query */
+    private static final int MAX_CANDIDATES = 10000;
+
+    private final int valueCount;
+    private final int keyCount;
+    private final IntBuffer displayOffsets;
+    private final IntBuffer normalOffsets;
+    private final IntBuffer weights;
+    private final IntBuffer keyValues;
+    private final IntBuffer keyStarts;
+    private final IntBuffer tree;
+    private final CharBuffer displayChars;
+    private final CharBuffer normalChars;
+
+    private CompletionIndex(ByteBuffer buffer) throws IOException {
+        IntBuffer header = slice(buffer, 0, HEADER_INTS * 4).asIntBuffer();
+        if (header.get(0) != MAGIC || header.get(1) != VERSION) {
+            throw new IOException("Not an autocompletion index of version " + VERSION);
+        }
+        valueCount = header.get(2);
+        keyCount = header.get(3);
+        int displayLength = header.get(4);
+        int normalLength = header.get(5);
+        int position = HEADER_INTS * 4;
+        displayOffsets = slice(buffer, position, (valueCount + 1) * 4).asIntBuffer();
+        position += (valueCount + 1) * 4;
+        normalOffsets = slice(buffer, position, (valueCount + 1) * 4).asIntBuffer();
+        position += (valueCount + 1) * 4;
+        weights = slice(buffer, position, valueCount * 4).asIntBuffer();
+        position += valueCount * 4;
+        keyValues = slice(buffer, position, keyCount * 4).asIntBuffer();
+        position += keyCount * 4;
+        keyStarts = slice(buffer, position, keyCount * 4).asIntBuffer();
+        position += keyCount * 4;
+        tree = slice(buffer, position, keyCount * 2 * 4).asIntBuffer();
+        position += keyCount * 2 * 4;
+        displayChars = slice(buffer, position, displayLength * 2).asCharBuffer();
+        position += displayLength * 2;
+        normalChars = slice(buffer, position, normalLength * 2).asCharBuffer();
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int position, int length) {
+        ByteBuffer retval = buffer.duplicate();
+        retval.position(position);
+        retval.limit(position + length);
+        return retval.slice();
+    }
+
+    /**
+     * Opens an index file.
+     *
+     * @param file the file, as written by write()
+     * @return a CompletionIndex
+     * @throws IOException if the file cannot be read, or is not an index
+     */
+    public static CompletionIndex open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Autocompletion index " + file + " is too large");
+            }
+            // The mapping stays valid after the file is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+            return new CompletionIndex(buffer);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Returns the number of distinct values in this index.
+     *
+     * @return an int
+     */
+    public int size() {
+        return valueCount;
+    }
+
+    /**
+     * Returns the values that have a word starting with each of the words of a query, the most
+     * common values first. Case, hyphens and repeated spaces are ignored.
+     *
+     * @param query the words typed so far
+     * @param n the maximum number of values to return
+     * @return a List of values
+     */
+    public List<String> complete(String query, int n) {
+        List<String> retval = new ArrayList<String>();
+        String normalised = normalise(query);
+        if (normalised.length() == 0 || n <= 0 || keyCount == 0) {
+            return retval;
+        }
+        String[] words = normalised.split(" ");
+        int lo = lowerBound(words[0], false);
+        int hi = lowerBound(words[0], true);
+        if (lo >= hi) {
+            return retval;
+        }
+        // Take ranges of keys in order of their best key, splitting each range around it
+        PriorityQueue<int[]> ranges = new PriorityQueue<int[]>(16, new Comparator<int[]>() {
+            @Override
+            public int compare(int[] a, int[] b) {
+                return better(a[2], b[2]) == a[2] ? -1 : 1;
+            }
+        });
+        ranges.add(new int[] {lo, hi, best(lo, hi)});
+        Set<Integer> seen = new HashSet<Integer>();
+        int candidates = 0;
+        while (!ranges.isEmpty() && retval.size() < n && candidates < MAX_CANDIDATES) {
+            int[] range = ranges.poll();
+            int key = range[2];
+            candidates++;
+            int value = keyValues.get(key);
+            if (seen.add(new Integer(value)) && matchesAll(value, words)) {
+                retval.add(getChars(displayChars, displayOffsets, value));
+            }
+            if (range[0] < key) {
+                ranges.add(new int[] {range[0], key, best(range[0], key)});
+            }
+            if (key + 1 < range[1]) {
+                ranges.add(new int[] {key + 1, range[1], best(key + 1, range[1])});
+            }
+        }
+        return retval;
+    }
+
+    /**
+     * Returns the first key that does not sort before the prefix, or if after is true, the first
+     * key that sorts after all the keys starting with the prefix.
+     */
+    private int lowerBound(String prefix, boolean after) {
+        int lo = 0;
+        int hi = keyCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareKey(mid, prefix);
+            if (cmp < 0 || (after && cmp == 0)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Compares a key with a prefix, returning 0 if the key starts with the prefix.
+     */
+    private int compareKey(int key, String prefix) {
+        int value = keyValues.get(key);
+        int start = normalOffsets.get(value) + keyStarts.get(key);
+        int end = normalOffsets.get(value + 1);
+        for (int i = 0; i < prefix.length(); i++) {
+            if (start + i >= end) {
+                return -1;
+            }
+            int diff = normalChars.get(start + i) - prefix.charAt(i);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return 0;
+    }
+
+    private boolean matchesAll(int value, String[] words) {
+        if (words.length == 1) {
+            return true;
+        }
+        String normalised = getChars(normalChars, normalOffsets, value);
+        for (int i = 1; i < words.length; i++) {
+            boolean found = false;
+            for (int start : wordStarts(normalised)) {
+                if (normalised.startsWith(words[i], start)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String getChars(CharBuffer chars, IntBuffer offsets, int value) {
+        int start = offsets.get(value);
+        int end = offsets.get(value + 1);
+        char[] retval = new char[end - start];
+        for (int i = start; i < end; i++) {
+            retval[i - start] = chars.get(i);
+        }
+        return new String(retval);
+    }
+
+    /**
+     * Returns the key in the range from lo (inclusive) to hi (exclusive) of greatest weight.
+     */
+    private int best(int lo, int hi) {
+        int retval = -1;
+        for (int l = lo + keyCount, h = hi + keyCount; l < h; l >>= 1, h >>= 1) {
+            if ((l & 1) == 1) {
+                retval = better(retval, tree.get(l++));
+            }
+            if ((h & 1) == 1) {
+                retval = better(retval, tree.get(--h));
+            }
+        }
+        return retval;
+    }
+
+    private int better(int a, int b) {
+        return better(a, b, weights, keyValues);
+    }
+
+    /**
+     * Returns whichever of two keys has the greater weight, or the first in sort order if they
+     * have the same weight. A key of -1 is worse than any other.
+     */
+    private static int better(int a, int b, IntBuffer weights, IntBuffer keyValues) {
+        if (a < 0) {
+            return b;
+        }
+        if (b < 0) {
+            return a;
+        }
+        int weightA = weights.get(keyValues.get(a));
+        int weightB = weights.get(keyValues.get(b));
+        if (weightA != weightB) {
+            return weightA > weightB ? a : b;
+        }
+        return a < b ? a : b;
+    }
+
+    /**
+     * Returns a value as it is compared to queries: in lower case, with hyphens as spaces and no
+     * repeated spaces.
+     *
+     * @param value a value or query
+     * @return the normalised String
+     */
+    static String normalise(String value) {
+        String lower = value.toLowerCase(Locale.ENGLISH).replace('-', ' ');
+        StringBuilder sb = new StringBuilder(lower.length());
+        for (int i = 0; i < lower.length(); i++) {
+            char c = lower.charAt(i);
+            if (Character.isWhitespace(c)) {
+                if (sb.length() > 0 && sb.charAt(sb.length() - 1) != ' ') {
+                    sb.append(' ');
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+        int length = sb.length();
+        if (length > 0 && sb.charAt(length - 1) == ' ') {
+            sb.setLength(length - 1);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the positions at which words start in a normalised value: the start of the value,
+     * and every letter or digit that follows some other character.
+     */
+    static List<Integer> wordStarts(String normalised) {
+        List<Integer> retval = new ArrayList<Integer>();
+        for (int i = 0; i < normalised.length() && retval.size() < MAX_WORDS; i++) {
+            if (i == 0 || (Character.isLetterOrDigit(normalised.charAt(i))
+                        && !Character.isLetterOrDigit(normalised.charAt(i - 1)))) {
+                retval.add(new Integer(i));
+            }
+        }
+        return retval;
+    }
+
+    /**
+     * Writes an index file.
+     *
+     * @param file the file to write
+     * @param valueCounts the values to index, and the number of objects that have each
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(File file, Map<String, Integer> valueCounts) throws IOException {
+        int valueCount = valueCounts.size();
+        String[] display = new String[valueCount];
+        final String[] normal = new String[valueCount];
+        int[] weightArray = new int[valueCount];
+        int displayLength = 0;
+        int normalLength = 0;
+        int keyCount = 0;
+        int index = 0;
+        for (Map.Entry<String, Integer> entry : valueCounts.entrySet()) {
+            display[index] = entry.getKey();
+            normal[index] = normalise(entry.getKey());
+            weightArray[index] = entry.getValue().intValue();
+            displayLength += display[index].length();
+            normalLength += normal[index].length();
+            keyCount += wordStarts(normal[index]).size();
+            index++;
+        }
+
+        final int[] keyValueArray = new int[keyCount];
+        final int[] keyStartArray = new int[keyCount];
+        Integer[] order = new Integer[keyCount];
+        int key = 0;
+        for (int value = 0; value < valueCount; value++) {
+            for (Integer start : wordStarts(normal[value])) {
+                keyValueArray[key] = value;
+                keyStartArray[key] = start.intValue();
+                order[key] = new Integer(key);
+                key++;
+            }
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                String aValue = normal[keyValueArray[a.intValue()]];
+                String bValue = normal[keyValueArray[b.intValue()]];
+                int aStart = keyStartArray[a.intValue()];
+                int bStart = keyStartArray[b.intValue()];
+                int length = Math.min(aValue.length() - aStart, bValue.length() - bStart);
+                for (int i = 0; i < length; i++) {
+                    int diff = aValue.charAt(aStart + i) - bValue.charAt(bStart + i);
+                    if (diff != 0) {
+                        return diff;
+                    }
+                }
+                return (aValue.length() - aStart) - (bValue.length() - bStart);
+            }
+        });
+        int[] sortedValues = new int[keyCount];
+        int[] sortedStarts = new int[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            sortedValues[i] = keyValueArray[order[i].intValue()];
+            sortedStarts[i] = keyStartArray[order[i].intValue()];
+        }
+
+        // Leaf i of the tree is at keyCount + i, and every node holds the better of its children
+        int[] treeArray = new int[keyCount * 2];
+        IntBuffer weightBuffer = IntBuffer.wrap(weightArray);
+        IntBuffer keyValueBuffer = IntBuffer.wrap(sortedValues);
+        for (int i = 0; i < keyCount; i++) {
+            treeArray[keyCount + i] = i;
+        }
+        for (int i = keyCount - 1; i > 0; i--) {
+            treeArray[i] = better(treeArray[2 * i], treeArray[2 * i + 1], weightBuffer,
+                    keyValueBuffer);
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(valueCount);
+            out.writeInt(keyCount);
+            out.writeInt(displayLength);
+            out.writeInt(normalLength);
+            writeOffsets(out, display);
+            writeOffsets(out, normal);
+            writeInts(out, weightArray);
+            writeInts(out, sortedValues);
+            writeInts(out, sortedStarts);
+            writeInts(out, treeArray);
+            for (String value : display) {
+                out.writeChars(value);
+            }
+            for (String value : normal) {
+                out.writeChars(value);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void writeOffsets(DataOutputStream out, String[] values) throws IOException {
+        int offset = 0;
+        out.writeInt(offset);
+        for (String value : values) {
+            offset += value.length();
+            out.writeInt(offset);
+        }
+    }
+
+    private static void writeInts(DataOutputStream out, int[] ints) throws IOException {
+        for (int i : ints) {
+            out.writeInt(i);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package org.intermine.web.filters;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.IOException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.intermine.objectstore.proxy.ProxyLoadBatch;
+
+/**
+ * A Filter that opens a ProxyLoadBatch for the length of a request, so that the collections and
+ * references of the objects displayed on a page are loaded a whole table at a time rather than
+ * one query per object.
+ */
+public class ProxyLoadBatchFilter implements Filter
+{
+    /**
+     * Do the filtering.
+     * {@inheritDoc}
+     */
+    @Override
+    public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain)
+        throws IOException, ServletException {
+        ProxyLoadBatch.open();
+        try {
+            chain.doFilter(req, res);
+        } finally {
+            ProxyLoadBatch.close();
+        }
+    }
+
+    /**
+     * Initialise this Filter.
+     * {@inheritDoc}
+     */
+    @Override
+    public void init(FilterConfig filterConfig) {
+        // empty
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void destroy() {
+       // empty
+    }
+}
@@ -143,10 +143,16 @@ public final class Constants
     public static final String REPORT_OBJECT_CACHE = "REPORT_OBJECT_CACHE";
 
     /**
-     * Session attribute that holds cache of table identifiers to PagedTable objects.
+     * Session attribute that holds the SessionTables, which map table identifiers to PagedTable
+     * objects.
      */
     public static final String TABLE_MAP = "TABLE_MAP";
 
+    /**
+     * Session attribute that holds the RowWindowCache.Client shared by the session's tables.
+     */
+    public static final String ROW_CACHE_CLIENT = "ROW_CACHE_CLIENT";
+
     /**
      * Session attribute.  A Map from query id to QueryMonitor.
      */
@@ -50,9 +50,22 @@ public abstract class HttpExporterBase
         executor = im.getPathQueryExecutor(profile);
         executor.setBatchSize(BATCH_SIZE);
         try {
+            if (isValuesOnly()) {
+                return executor.executeValues(pathQuery);
+            }
             return executor.execute(pathQuery);
         } catch (ObjectStoreException e) {
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * Returns true if the exporter writes only the values in the view, so the objects that hold
+     * them need not be fetched.
+     *
+     * @return false unless overridden
+     */
+    protected boolean isValuesOnly() {
+        return false;
+    }
 }
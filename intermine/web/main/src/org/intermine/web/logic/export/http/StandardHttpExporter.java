@@ -60,6 +60,16 @@ public abstract class StandardHttpExporter extends HttpExporterBase implements T
         return true;
     }
 
+    /**
+     * Tab and comma separated exports write only the values of the cells.
+     *
+     * @return true
+     */
+    @Override
+    protected boolean isValuesOnly() {
+        return true;
+    }
+
     /**
      * Perform export.
      * @param pt exported PagedTable
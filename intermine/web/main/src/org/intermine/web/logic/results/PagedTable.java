@@ -90,6 +90,8 @@ public class PagedTable
     private String selectedClass;
     private int selectedColumn;
 
+    private RowWindowCache.Client cacheClient = null;
+
     /**
      * Construct a PagedTable with a list of column names
      * @param webTable the WebTable that this PagedTable will display
@@ -352,7 +354,7 @@ public class PagedTable
      * @return the number of resultElementRows
      */
     public int getExactSize() {
-        return webTable.size();
+        return RowWindowCache.getInstance().getSize(webTable);
     }
 
     /**
@@ -747,36 +749,39 @@ public class PagedTable
 
     /**
      * Set the rows fields to be a List of Lists of values from ResultElement objects from
-     * getResultElementRows().
+     * getResultElementRows().  The rows come from the RowWindowCache, so they are shared with
+     * other tables for the same query.
      */
     private void updateRows() {
-        final List<MultiRow<ResultsRow<MultiRowValue<ResultElement>>>> newRows
-            = new ArrayList<MultiRow<ResultsRow<MultiRowValue<ResultElement>>>>();
         final String invalidStartMessage = "Invalid start row of table: " + startRow;
         if (startRow < 0) {
             throw new PageOutOfRangeException(invalidStartMessage);
         }
 
-        try {
-            if (startRow == 0) {
-                // no problem - 0 is always valid
-            } else {
-                webTable.getResultElements(startRow);
-            }
-        } catch (final IndexOutOfBoundsException e) {
+        final List<MultiRow<ResultsRow<MultiRowValue<ResultElement>>>> newRows
+            = RowWindowCache.getInstance().getRows(webTable, getCacheClient(), startRow, pageSize);
+        // 0 is always a valid start row, even for an empty table
+        if (startRow > 0 && newRows.isEmpty()) {
             throw new PageOutOfRangeException(invalidStartMessage);
         }
+        rows = newRows;
+    }
 
-        final int max = startRow + pageSize;
-        for (int i = startRow; i < max; i++) {
-            try {
-                newRows.add(webTable.getResultElements(i));
-            } catch (final IndexOutOfBoundsException e) {
-                // we're probably at the end of the results object, so stop looping
-                break;
-            }
+    RowWindowCache.Client getCacheClient() {
+        if (cacheClient == null) {
+            cacheClient = RowWindowCache.getInstance().newClient();
         }
-        rows = newRows;
+        return cacheClient;
+    }
+
+    /**
+     * Set the client that accounts for the rows of this table in the RowWindowCache, so that
+     * all the tables of a session share a limit.
+     *
+     * @param cacheClient the client of the session
+     */
+    public void setCacheClient(final RowWindowCache.Client cacheClient) {
+        this.cacheClient = cacheClient;
     }
 
     /**
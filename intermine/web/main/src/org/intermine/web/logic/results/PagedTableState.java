@@ -0,0 +1,80 @@
+package org.intermine.web.logic.results;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+
+/**
+ * The page and selection of a PagedTable, saved when the PagedTableStore drops the table so that
+ * they can be given to the table made again in its place.
+ */
+@SuppressWarnings("deprecation")
+public class PagedTableState implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private boolean saved = false;
+    private int page;
+    private int pageSize;
+    private LinkedHashMap<Integer, String> selectionIds;
+    private int allSelected;
+    private String selectedClass;
+    private int selectedColumn;
+
+    /**
+     * Saves the page and selection of a table.
+     *
+     * @param table the table
+     */
+    public synchronized void save(PagedTable table) {
+        page = table.getPage();
+        pageSize = table.getPageSize();
+        selectionIds = new LinkedHashMap<Integer, String>(table.getSelectionIds());
+        allSelected = table.getAllSelected();
+        selectedClass = table.getSelectedClass();
+        selectedColumn = table.getSelectedColumn();
+        saved = true;
+    }
+
+    /**
+     * Gives a table the page and selection saved from the table it replaces. Does nothing if no
+     * table has been saved.
+     *
+     * @param table the new table
+     */
+    public synchronized void restore(PagedTable table) {
+        if (!saved) {
+            return;
+        }
+        if (allSelected >= 0 && allSelected < table.getColumns().size()) {
+            table.setAllSelectedColumn(allSelected);
+        }
+        table.setSelectionIds(new LinkedHashMap<Integer, String>(selectionIds));
+        table.setSelectedClass(selectedClass);
+        table.setSelectedColumn(selectedColumn);
+        try {
+            table.setPageAndPageSize(page, pageSize);
+        } catch (PageOutOfRangeException e) {
+            // The table has fewer rows now
+            table.setPageAndPageSize(0, pageSize);
+        }
+    }
+
+    /**
+     * Returns whether the state of a table has been saved.
+     *
+     * @return a boolean
+     */
+    public synchronized boolean isSaved() {
+        return saved;
+    }
+}
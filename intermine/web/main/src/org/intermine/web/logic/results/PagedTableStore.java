@@ -0,0 +1,261 @@
+package org.intermine.web.logic.results;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+
+import org.apache.log4j.Logger;
+import org.intermine.util.PropertiesUtil;
+
+/**
+ * Holds the PagedTables of all sessions, so that a session only needs to keep the ID of each of
+ * its tables. At most sessionStore.maxTables tables are kept, and when there are more the table
+ * used least recently is dropped. Sessions are expected to keep no more than
+ * sessionStore.maxSessionTables of their tables here, and to be able to make a table again from
+ * its query if it has gone. The page and selection of a table are saved in its PagedTableState
+ * when it is dropped, for the table made again in its place.
+ */
+@SuppressWarnings("deprecation")
+public final class PagedTableStore
+{
+    private static final Logger LOG = Logger.getLogger(PagedTableStore.class);
+
+    /** Property for the number of tables to keep for all sessions */
+    public static final String MAX_TABLES_PROPERTY = "sessionStore.maxTables";
+    /** Property for the number of tables to keep for one session */
+    public static final String MAX_SESSION_TABLES_PROPERTY = "sessionStore.maxSessionTables";
+
+    private static final int DEFAULT_MAX_TABLES = 1000;
+    private static final int DEFAULT_MAX_SESSION_TABLES = 10;
+
+    private final int maxTables;
+    private final int maxSessionTables;
+    private final LinkedHashMap<String, Entry> tables
+        = new LinkedHashMap<String, Entry>(16, 0.75F, true);
+    private long evictions = 0;
+
+    /**
+     * Returns the store, sized by the sessionStore properties the first time it is called.
+     *
+     * @return the PagedTableStore
+     */
+    public static PagedTableStore getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * Holds the store. The class loader makes it the first time getInstance() is called, so
+     * getInstance() needs no lock.
+     */
+    private static class InstanceHolder
+    {
+        static final PagedTableStore INSTANCE = create();
+
+        private static PagedTableStore create() {
+            Properties props = PropertiesUtil.getProperties();
+            return new PagedTableStore(
+                    getIntProperty(props, MAX_TABLES_PROPERTY, DEFAULT_MAX_TABLES),
+                    getIntProperty(props, MAX_SESSION_TABLES_PROPERTY,
+                        DEFAULT_MAX_SESSION_TABLES));
+        }
+    }
+
+    private static int getIntProperty(Properties props, String name, int defaultValue) {
+        String value = props.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Math.max(Integer.parseInt(value.trim()), 1);
+        } catch (NumberFormatException e) {
+            LOG.warn("Invalid value for " + name + ": " + value);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param maxTables the number of tables to keep for all sessions
+     * @param maxSessionTables the number of tables to keep for one session
+     */
+    PagedTableStore(int maxTables, int maxSessionTables) {
+        this.maxTables = maxTables;
+        this.maxSessionTables = maxSessionTables;
+    }
+
+    /**
+     * Adds a table to the store.
+     *
+     * @param table the table
+     * @param owner the name of the user the table belongs to, for the footprint statistics
+     * @param state where to save the page and selection of the table when it is dropped
+     * @return the ID to get the table back with
+     */
+    public synchronized String put(PagedTable table, String owner, PagedTableState state) {
+        String id = UUID.randomUUID().toString();
+        tables.put(id, new Entry(table, owner, state));
+        Iterator<Entry> iter = tables.values().iterator();
+        while (tables.size() > maxTables) {
+            iter.next().saveState();
+            iter.remove();
+            evictions++;
+        }
+        return id;
+    }
+
+    /**
+     * Returns a table.
+     *
+     * @param id the ID of the table
+     * @return the PagedTable, or null if it has been dropped
+     */
+    public synchronized PagedTable get(String id) {
+        Entry entry = tables.get(id);
+        return (entry == null) ? null : entry.table;
+    }
+
+    /**
+     * Returns whether a table is still in the store, without counting as a use of it.
+     *
+     * @param id the ID of the table
+     * @return true if the table is in the store
+     */
+    public synchronized boolean contains(String id) {
+        return tables.containsKey(id);
+    }
+
+    /**
+     * Removes a table from the store.
+     *
+     * @param id the ID of the table
+     */
+    public synchronized void remove(String id) {
+        Entry entry = tables.remove(id);
+        if (entry != null) {
+            entry.saveState();
+        }
+    }
+
+    /**
+     * Returns the number of tables that one session should keep in the store.
+     *
+     * @return an int
+     */
+    public int getMaxSessionTables() {
+        return maxSessionTables;
+    }
+
+    /**
+     * Returns the number of tables in the store.
+     *
+     * @return an int
+     */
+    public synchronized int size() {
+        return tables.size();
+    }
+
+    /**
+     * Returns the number of tables that have been dropped because the store was full.
+     *
+     * @return a long
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Returns what each user is holding in memory: the tables in the store and the rows those
+     * tables hold in the RowWindowCache.
+     *
+     * @return a Map from user name to Footprint
+     */
+    public synchronized Map<String, Footprint> getFootprints() {
+        Map<String, Footprint> retval = new HashMap<String, Footprint>();
+        Map<String, Set<RowWindowCache.Client>> clients
+            = new HashMap<String, Set<RowWindowCache.Client>>();
+        for (Entry entry : tables.values()) {
+            Footprint footprint = retval.get(entry.owner);
+            if (footprint == null) {
+                footprint = new Footprint();
+                retval.put(entry.owner, footprint);
+                clients.put(entry.owner, Collections.newSetFromMap(
+                            new IdentityHashMap<RowWindowCache.Client, Boolean>()));
+            }
+            footprint.tables++;
+            // Tables of the same session share a client, so count its rows once
+            RowWindowCache.Client client = entry.table.getCacheClient();
+            if (clients.get(entry.owner).add(client)) {
+                footprint.rows += client.getRowCount();
+            }
+        }
+        return retval;
+    }
+
+    private static class Entry
+    {
+        private final PagedTable table;
+        private final String owner;
+        private final PagedTableState state;
+
+        Entry(PagedTable table, String owner, PagedTableState state) {
+            this.table = table;
+            this.owner = owner;
+            this.state = state;
+        }
+
+        void saveState() {
+            if (state != null) {
+                state.save(table);
+            }
+        }
+    }
+
+    /**
+     * What one user is holding in memory.
+     */
+    public static final class Footprint
+    {
+        private int tables = 0;
+        private int rows = 0;
+
+        /**
+         * Returns the number of tables the user has in the store.
+         *
+         * @return an int
+         */
+        public int getTables() {
+            return tables;
+        }
+
+        /**
+         * Returns the number of rows of results the user's tables hold in the RowWindowCache.
+         *
+         * @return an int
+         */
+        public int getRows() {
+            return rows;
+        }
+
+        @Override
+        public String toString() {
+            return "tables: " + tables + ", rows: " + rows;
+        }
+    }
+}
@@ -0,0 +1,401 @@
+package org.intermine.web.logic.results;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import javax.servlet.http.HttpSessionBindingEvent;
+import javax.servlet.http.HttpSessionBindingListener;
+
+import org.apache.commons.collections.keyvalue.MultiKey;
+import org.apache.commons.collections.map.LRUMap;
+import org.apache.log4j.Logger;
+import org.intermine.api.results.ResultElement;
+import org.intermine.api.results.WebResults;
+import org.intermine.api.results.WebTable;
+import org.intermine.api.results.flatouterjoins.MultiRow;
+import org.intermine.api.results.flatouterjoins.MultiRowValue;
+import org.intermine.objectstore.query.Results;
+import org.intermine.objectstore.query.ResultsRow;
+import org.intermine.util.PropertiesUtil;
+
+/**
+ * A cache of the rows of results tables, shared by the tables of all sessions.
+ *
+ * Rows are fetched and kept in windows of WINDOW_SIZE rows, so that moving between the pages of
+ * a table, or changing its page size, does not go back to the database, and sessions that run the
+ * same query share the rows. A table is identified by its ObjectStore query, the sequence numbers
+ * of the database tables that the query reads and its view, so rows are never reused once the
+ * data they came from has changed.
+ *
+ * The cache holds at most resultsCache.maxRows rows, and the windows used by one session count
+ * towards at most resultsCache.maxSessionRows of them. When a session goes over its limit it lets
+ * go of the windows it used least recently, which are dropped unless another session is using
+ * them. When the cache is full the windows used least recently by anyone are dropped.
+ */
+public final class RowWindowCache
+{
+    private static final Logger LOG = Logger.getLogger(RowWindowCache.class);
+
+    /** Property for the number of rows to keep for all sessions */
+    public static final String MAX_ROWS_PROPERTY = "resultsCache.maxRows";
+    /** Property for the number of rows to keep for one session */
+    public static final String MAX_SESSION_ROWS_PROPERTY = "resultsCache.maxSessionRows";
+
+    /** The number of rows that are fetched and kept together */
+    static final int WINDOW_SIZE = 100;
+
+    private static final int DEFAULT_MAX_ROWS = 100000;
+    private static final int DEFAULT_MAX_SESSION_ROWS = 10000;
+    private static final int MAX_SIZES = 1000;
+
+    private final int maxRows;
+    private final int maxSessionRows;
+    private final LinkedHashMap<MultiKey, Window> windows
+        = new LinkedHashMap<MultiKey, Window>(16, 0.75F, true);
+    private int rowCount = 0;
+    private long hits = 0;
+    private long misses = 0;
+    @SuppressWarnings("unchecked")
+    private final Map<Object, Integer> sizes = Collections.synchronizedMap(new LRUMap(MAX_SIZES));
+
+    /**
+     * Returns the cache, sized by the resultsCache properties the first time it is called.
+     *
+     * @return the RowWindowCache
+     */
+    public static RowWindowCache getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * Holds the cache. The class loader makes it the first time getInstance() is called, so
+     * getInstance() needs no lock.
+     */
+    private static class InstanceHolder
+    {
+        static final RowWindowCache INSTANCE = create();
+
+        private static RowWindowCache create() {
+            Properties props = PropertiesUtil.getProperties();
+            return new RowWindowCache(
+                    getIntProperty(props, MAX_ROWS_PROPERTY, DEFAULT_MAX_ROWS),
+                    getIntProperty(props, MAX_SESSION_ROWS_PROPERTY, DEFAULT_MAX_SESSION_ROWS));
+        }
+    }
+
+    private static int getIntProperty(Properties props, String name, int defaultValue) {
+        String value = props.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Math.max(Integer.parseInt(value.trim()), WINDOW_SIZE);
+        } catch (NumberFormatException e) {
+            LOG.warn("Invalid value for " + name + ": " + value);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param maxRows the number of rows to keep for all sessions
+     * @param maxSessionRows the number of rows to keep for one session
+     */
+    RowWindowCache(int maxRows, int maxSessionRows) {
+        this.maxRows = maxRows;
+        this.maxSessionRows = maxSessionRows;
+    }
+
+    /**
+     * Returns a new Client, to account for the rows used by one session.
+     *
+     * @return a Client
+     */
+    public Client newClient() {
+        return new Client(this);
+    }
+
+    /**
+     * Returns some rows of a table. Fewer rows are returned if the table ends first.
+     *
+     * @param table the table
+     * @param client the Client of the session that is reading the table
+     * @param start the index of the first row
+     * @param count the number of rows
+     * @return a new List of rows
+     */
+    public List<MultiRow<ResultsRow<MultiRowValue<ResultElement>>>> getRows(WebTable table,
+            Client client, int start, int count) {
+        Object queryKey = getQueryKey(table);
+        if (queryKey == null) {
+            return fetch(table, start, start + count);
+        }
+        return getRows(queryKey, table, client, start, count);
+    }
+
+    /**
+     * Returns some rows of a table, which is identified by the given key.
+     */
+    List<MultiRow<ResultsRow<MultiRowValue<ResultElement>>>> getRows(Object queryKey,
+            WebTable table, Client client, int start, int count) {
+        List<MultiRow<ResultsRow<MultiRowValue<ResultElement>>>> retval
+            = new ArrayList<MultiRow<ResultsRow<MultiRowValue<ResultElement>>>>();
+        int end = start + count;
+        for (int windowNo = start / WINDOW_SIZE; windowNo * WINDOW_SIZE < end; windowNo++) {
+            int windowStart = windowNo * WINDOW_SIZE;
+            List<MultiRow<ResultsRow<MultiRowValue<ResultElement>>>> windowRows
+                = getWindow(new MultiKey(queryKey, Integer.valueOf(windowNo)), table, windowStart,
+                        client);
+            int from = Math.max(start - windowStart, 0);
+            int to = Math.min(end - windowStart, windowRows.size());
+            if (from >= to) {
+                break;
+            }
+            retval.addAll(windowRows.subList(from, to));
+            if (windowRows.size() < WINDOW_SIZE) {
+                break;
+            }
+        }
+        return retval;
+    }
+
+    /**
+     * Returns the exact number of rows of a table. The size is shared with other tables for the
+     * same query, so it is only counted once.
+     *
+     * @param table the table
+     * @return the number of rows
+     */
+    public int getSize(WebTable table) {
+        Object queryKey = getQueryKey(table);
+        if (queryKey == null) {
+            return table.size();
+        }
+        Integer size = sizes.get(queryKey);
+        if (size == null) {
+            size = Integer.valueOf(table.size());
+            sizes.put(queryKey, size);
+        }
+        return size.intValue();
+    }
+
+    /**
+     * Returns the number of rows in the cache.
+     *
+     * @return an int
+     */
+    public synchronized int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Returns the number of windows of rows that were found in the cache.
+     *
+     * @return a long
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of windows of rows that were fetched from the database.
+     *
+     * @return a long
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    private static Object getQueryKey(WebTable table) {
+        if (!(table instanceof WebResults)) {
+            return null;
+        }
+        Results results = ((WebResults) table).getInterMineResults();
+        // The IqlQuery includes the contents of any bags, unlike the query string
+        return new MultiKey(results.getObjectStore(), results.getQuery().getIqlQuery(),
+                results.getSequence(), new ArrayList<String>(table.getPathQuery().getView()));
+    }
+
+    private List<MultiRow<ResultsRow<MultiRowValue<ResultElement>>>> getWindow(MultiKey key,
+            WebTable table, int windowStart, Client client) {
+        Window window;
+        synchronized (this) {
+            window = windows.get(key);
+            if (window == null) {
+                window = new Window();
+                window.cached = true;
+                windows.put(key, window);
+            }
+        }
+        boolean hit;
+        List<MultiRow<ResultsRow<MultiRowValue<ResultElement>>>> rows;
+        // Only one session fetches a window, and the others wait for it
+        synchronized (window) {
+            hit = window.rows != null;
+            if (!hit) {
+                window.rows = Collections.unmodifiableList(
+                        fetch(table, windowStart, windowStart + WINDOW_SIZE));
+            }
+            rows = window.rows;
+        }
+        synchronized (this) {
+            if (hit) {
+                hits++;
+            } else {
+                misses++;
+            }
+            if (window.cached) {
+                use(key, window, client);
+            }
+        }
+        return rows;
+    }
+
+    private static List<MultiRow<ResultsRow<MultiRowValue<ResultElement>>>> fetch(WebTable table,
+            int start, int end) {
+        List<MultiRow<ResultsRow<MultiRowValue<ResultElement>>>> rows
+            = new ArrayList<MultiRow<ResultsRow<MultiRowValue<ResultElement>>>>();
+        for (int i = start; i < end; i++) {
+            try {
+                rows.add(table.getResultElements(i));
+            } catch (IndexOutOfBoundsException e) {
+                // we're at the end of the results
+                break;
+            }
+        }
+        return rows;
+    }
+
+    private void use(MultiKey key, Window window, Client client) {
+        int size = window.rows.size();
+        if (!window.counted) {
+            window.counted = true;
+            rowCount += size;
+        }
+        if (client.windows.put(key, window) == null) {
+            window.clients.add(client);
+            client.rowCount += size;
+        }
+        // The window that has just been used is the last in both maps, so it is kept
+        Iterator<Map.Entry<MultiKey, Window>> clientIter = client.windows.entrySet().iterator();
+        while (client.rowCount > maxSessionRows && client.windows.size() > 1) {
+            Map.Entry<MultiKey, Window> eldest = clientIter.next();
+            clientIter.remove();
+            release(eldest.getKey(), eldest.getValue(), client);
+        }
+        Iterator<Map.Entry<MultiKey, Window>> iter = windows.entrySet().iterator();
+        while (rowCount > maxRows && windows.size() > 1) {
+            Map.Entry<MultiKey, Window> eldest = iter.next();
+            iter.remove();
+            evicted(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    /**
+     * Stops a client using a window, which has already been removed from its windows.
+     */
+    private void release(MultiKey key, Window window, Client client) {
+        window.clients.remove(client);
+        client.rowCount -= window.rows.size();
+        if (window.clients.isEmpty() && window.cached) {
+            windows.remove(key);
+            evicted(key, window);
+        }
+    }
+
+    /**
+     * Tidies up after a window has been removed from the cache.
+     */
+    private void evicted(MultiKey key, Window window) {
+        window.cached = false;
+        if (window.counted) {
+            rowCount -= window.rows.size();
+            for (Client client : window.clients) {
+                client.windows.remove(key);
+                client.rowCount -= window.rows.size();
+            }
+        }
+        window.clients.clear();
+    }
+
+    private synchronized void releaseAll(Client client) {
+        Iterator<Map.Entry<MultiKey, Window>> iter = client.windows.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<MultiKey, Window> entry = iter.next();
+            iter.remove();
+            release(entry.getKey(), entry.getValue(), client);
+        }
+    }
+
+    /**
+     * Some rows of a table. The rows are null until they have been fetched.
+     */
+    private static class Window
+    {
+        private List<MultiRow<ResultsRow<MultiRowValue<ResultElement>>>> rows = null;
+        private boolean cached = false;
+        private boolean counted = false;
+        private final Set<Client> clients = new HashSet<Client>();
+    }
+
+    /**
+     * The windows used by one session. A Client that is stored in a session lets go of its
+     * windows when the session ends.
+     */
+    public static final class Client implements HttpSessionBindingListener
+    {
+        private final RowWindowCache cache;
+        private final LinkedHashMap<MultiKey, Window> windows
+            = new LinkedHashMap<MultiKey, Window>(16, 0.75F, true);
+        private int rowCount = 0;
+
+        private Client(RowWindowCache cache) {
+            this.cache = cache;
+        }
+
+        /**
+         * Returns the number of rows that this client is using.
+         *
+         * @return an int
+         */
+        public int getRowCount() {
+            synchronized (cache) {
+                return rowCount;
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void valueBound(HttpSessionBindingEvent event) {
+            // nothing to do
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void valueUnbound(HttpSessionBindingEvent event) {
+            cache.releaseAll(this);
+        }
+    }
+}
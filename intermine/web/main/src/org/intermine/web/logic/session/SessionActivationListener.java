@@ -36,8 +36,12 @@ public class SessionActivationListener implements HttpSessionActivationListener,
     public void sessionWillPassivate(HttpSessionEvent event) {
         //System. out.println("sessionWillPassivate");
         HttpSession session = event.getSession();
-        // Get rid of the tables
-        session.removeAttribute(Constants.TABLE_MAP);
+        // Get rid of the tables, keeping the descriptors to make them again with
+        SessionTables tables = (SessionTables) session.getAttribute(Constants.TABLE_MAP);
+        if (tables != null) {
+            tables.releaseAll();
+        }
+        session.removeAttribute(Constants.ROW_CACHE_CLIENT);
         // Save the username if one exists
         Profile profile = SessionMethods.getProfile(session);
         if (profile != null && profile.getUsername() != null) {
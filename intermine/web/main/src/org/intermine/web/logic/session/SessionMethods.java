@@ -26,7 +26,6 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 
-import org.apache.commons.collections.map.LRUMap;
 import org.apache.log4j.Logger;
 import org.apache.struts.Globals;
 import org.apache.struts.util.MessageResources;
@@ -61,7 +60,9 @@ import org.intermine.web.logic.query.PageTableQueryMonitor;
 import org.intermine.web.logic.query.QueryMonitor;
 import org.intermine.web.logic.query.QueryMonitorTimeout;
 import org.intermine.web.logic.results.PagedTable;
+import org.intermine.web.logic.results.PagedTableState;
 import org.intermine.web.logic.results.ReportObjectFactory;
+import org.intermine.web.logic.results.RowWindowCache;
 import org.intermine.web.logic.results.WebState;
 import org.intermine.web.struts.LoadQueryAction;
 import org.intermine.web.struts.TemplateAction;
@@ -727,37 +728,78 @@ public final class SessionMethods
     }
 
     /**
-     * Given a table identifier, return the cached PagedTable.
+     * Given a table identifier, return the cached PagedTable.  If the table has been dropped to
+     * save memory it is made again by running its query, and is given the page and selection it
+     * had when it was dropped.
      *
      * @param session the current session
      * @param identifier table identifier
      * @return PagedTable identified by identifier
      */
     public static PagedTable getResultsTable(HttpSession session, String identifier) {
-        Map<?, ?> tables = (Map<?, ?>) session.getAttribute(Constants.TABLE_MAP);
-        if (tables != null) {
-            return (PagedTable) tables.get(identifier);
+        SessionTables tables = (SessionTables) session.getAttribute(Constants.TABLE_MAP);
+        if (tables == null) {
+            return null;
         }
-        return null;
+        PagedTable table = tables.getTable(identifier);
+        if (table == null) {
+            PathQuery query = tables.getQuery(identifier);
+            if (query != null) {
+                try {
+                    WebResultsExecutor executor = getInterMineAPI(session)
+                        .getWebResultsExecutor(getProfile(session));
+                    PagedTableState state = tables.getState(identifier);
+                    table = new PagedTable(executor.execute(query));
+                    setResultsTable(session, identifier, table);
+                    if (state != null) {
+                        state.restore(table);
+                    }
+                } catch (ObjectStoreException e) {
+                    LOG.warn("Could not remake results table " + identifier, e);
+                    tables.remove(identifier);
+                }
+            }
+        }
+        return table;
     }
 
     /**
-     *
+     * Register a table in the session.  Only a descriptor of the table is kept in the session,
+     * and the table itself is kept in the PagedTableStore.
      *
      * @param session the current session
      * @param identifier table identifier
      * @param table table to register
      */
-    @SuppressWarnings("unchecked")
     public static void setResultsTable(HttpSession session, String identifier, PagedTable table) {
-        @SuppressWarnings("rawtypes")
-        Map<String, PagedTable> tables = (Map) session.getAttribute(Constants.TABLE_MAP);
+        SessionTables tables = (SessionTables) session.getAttribute(Constants.TABLE_MAP);
         if (tables == null) {
-            tables = Collections.synchronizedMap(new LRUMap(100));
+            tables = new SessionTables();
             session.setAttribute(Constants.TABLE_MAP, tables);
         }
-        tables.put(identifier, table);
         table.setTableid(identifier);
+        table.setCacheClient(getRowCacheClient(session));
+        Profile profile = getProfile(session);
+        String owner = (profile == null || profile.getUsername() == null) ? "anonymous"
+            : profile.getUsername();
+        tables.put(identifier, table, owner);
+    }
+
+    /**
+     * Return the client that accounts for the rows that the tables of a session hold in the
+     * RowWindowCache, creating it if necessary.
+     *
+     * @param session the current session
+     * @return the RowWindowCache.Client
+     */
+    public static RowWindowCache.Client getRowCacheClient(HttpSession session) {
+        RowWindowCache.Client client
+            = (RowWindowCache.Client) session.getAttribute(Constants.ROW_CACHE_CLIENT);
+        if (client == null) {
+            client = RowWindowCache.getInstance().newClient();
+            session.setAttribute(Constants.ROW_CACHE_CLIENT, client);
+        }
+        return client;
     }
 
     /**
@@ -766,7 +808,7 @@ public final class SessionMethods
      * @param name the bag name
      */
     public static void invalidateBagTable(HttpSession session, String name) {
-        Map<?, ?> tables = (Map<?, ?>) session.getAttribute(Constants.TABLE_MAP);
+        SessionTables tables = (SessionTables) session.getAttribute(Constants.TABLE_MAP);
         if (tables != null) {
             tables.remove("bag." + name);
         }
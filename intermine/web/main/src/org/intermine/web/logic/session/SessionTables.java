@@ -0,0 +1,221 @@
+package org.intermine.web.logic.session;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.StringReader;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.servlet.http.HttpSessionBindingEvent;
+import javax.servlet.http.HttpSessionBindingListener;
+
+import org.intermine.pathquery.PathQuery;
+import org.intermine.pathquery.PathQueryBinding;
+import org.intermine.web.logic.results.PagedTableState;
+import org.intermine.web.logic.results.PagedTableStore;
+
+/**
+ * The results tables of a session. The tables themselves are kept in the PagedTableStore, and
+ * the session only holds a small descriptor for each: the ID of the table in the store, the
+ * query it shows, and the page and selection the table had when the store dropped it, so that the
+ * table can be made again as it was. Only the tables used most recently by the session are kept
+ * in the store.
+ *
+ * This class can be serialised with the session, as the queries are written out as XML.
+ */
+@SuppressWarnings("deprecation")
+public class SessionTables implements Serializable, HttpSessionBindingListener
+{
+    // PagedTable is written out in full below, as a warning for importing a deprecated class
+    // can't be suppressed
+
+    private static final long serialVersionUID = 1L;
+    private static final int MAX_DESCRIPTORS = 100;
+
+    private final LinkedHashMap<String, TableDescriptor> descriptors
+        = new LinkedHashMap<String, TableDescriptor>(16, 0.75F, true);
+
+    /**
+     * Returns a table, if it is still in the PagedTableStore.
+     *
+     * @param identifier the identifier of the table in this session
+     * @return the PagedTable, or null
+     */
+    public synchronized org.intermine.web.logic.results.PagedTable getTable(String identifier) {
+        TableDescriptor descriptor = descriptors.get(identifier);
+        if (descriptor == null || descriptor.storeId == null) {
+            return null;
+        }
+        return PagedTableStore.getInstance().get(descriptor.storeId);
+    }
+
+    /**
+     * Returns the query that a table shows, to make the table again with.
+     *
+     * @param identifier the identifier of the table in this session
+     * @return the PathQuery, or null if there is no such table
+     */
+    public synchronized PathQuery getQuery(String identifier) {
+        TableDescriptor descriptor = descriptors.get(identifier);
+        return (descriptor == null) ? null : descriptor.getQuery();
+    }
+
+    /**
+     * Returns the page and selection a table had when it was dropped from the PagedTableStore.
+     *
+     * @param identifier the identifier of the table in this session
+     * @return the PagedTableState, or null if there is no such table
+     */
+    public synchronized PagedTableState getState(String identifier) {
+        TableDescriptor descriptor = descriptors.get(identifier);
+        return (descriptor == null) ? null : descriptor.state;
+    }
+
+    /**
+     * Adds a table, replacing any table with the same identifier.
+     *
+     * @param identifier the identifier of the table in this session
+     * @param table the table
+     * @param owner the name of the user, for the PagedTableStore footprint statistics
+     */
+    public synchronized void put(String identifier,
+            org.intermine.web.logic.results.PagedTable table, String owner) {
+        PagedTableStore store = PagedTableStore.getInstance();
+        remove(identifier);
+        PagedTableState state = new PagedTableState();
+        descriptors.put(identifier,
+                new TableDescriptor(store.put(table, owner, state), table.getPathQuery(), state));
+
+        // Let go of the tables used least recently, keeping their descriptors
+        int live = 0;
+        for (TableDescriptor descriptor : descriptors.values()) {
+            if (descriptor.storeId != null && store.contains(descriptor.storeId)) {
+                live++;
+            }
+        }
+        Iterator<TableDescriptor> iter = descriptors.values().iterator();
+        while (live > store.getMaxSessionTables() && iter.hasNext()) {
+            TableDescriptor descriptor = iter.next();
+            if (descriptor.storeId != null && store.contains(descriptor.storeId)) {
+                store.remove(descriptor.storeId);
+                live--;
+            }
+            descriptor.storeId = null;
+        }
+        iter = descriptors.values().iterator();
+        while (descriptors.size() > MAX_DESCRIPTORS) {
+            release(iter.next());
+            iter.remove();
+        }
+    }
+
+    /**
+     * Removes a table.
+     *
+     * @param identifier the identifier of the table in this session
+     */
+    public synchronized void remove(String identifier) {
+        TableDescriptor descriptor = descriptors.remove(identifier);
+        if (descriptor != null) {
+            release(descriptor);
+        }
+    }
+
+    /**
+     * Removes all the tables from the PagedTableStore, keeping their descriptors. This is done
+     * when the session is passivated, as the tables cannot be serialised.
+     */
+    public synchronized void releaseAll() {
+        for (TableDescriptor descriptor : descriptors.values()) {
+            release(descriptor);
+        }
+    }
+
+    /**
+     * Returns the number of tables this session has in the PagedTableStore.
+     *
+     * @return an int
+     */
+    public synchronized int getLiveTableCount() {
+        PagedTableStore store = PagedTableStore.getInstance();
+        int count = 0;
+        for (Map.Entry<String, TableDescriptor> entry : descriptors.entrySet()) {
+            String storeId = entry.getValue().storeId;
+            if (storeId != null && store.contains(storeId)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void release(TableDescriptor descriptor) {
+        if (descriptor.storeId != null) {
+            PagedTableStore.getInstance().remove(descriptor.storeId);
+            descriptor.storeId = null;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void valueBound(HttpSessionBindingEvent event) {
+        // nothing to do
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void valueUnbound(HttpSessionBindingEvent event) {
+        releaseAll();
+    }
+
+    /**
+     * What the session keeps for a table.
+     */
+    private static class TableDescriptor implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        private String storeId;
+        private transient PathQuery query;
+        private String queryXml = null;
+        private final PagedTableState state;
+
+        TableDescriptor(String storeId, PathQuery query, PagedTableState state) {
+            this.storeId = storeId;
+            this.query = query;
+            this.state = state;
+        }
+
+        PathQuery getQuery() {
+            if (query == null && queryXml != null) {
+                query = PathQueryBinding.unmarshalPathQuery(new StringReader(queryXml),
+                        PathQuery.USERPROFILE_VERSION);
+            }
+            return query;
+        }
+
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            if (query != null) {
+                // The query may have been changed since the table was made, eg. by adding columns
+                queryXml = PathQueryBinding.marshal(query, "", query.getModel().getName(),
+                        PathQuery.USERPROFILE_VERSION);
+            }
+            out.defaultWriteObject();
+        }
+    }
+}
@@ -10,6 +10,7 @@ package org.intermine.web.struts;
  *
  */
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -422,7 +423,10 @@ public class InitialiserPlugin implements PlugIn
                 AutoCompleter ac;
 
                 if (is != null) {
-                    ac = new AutoCompleter(is);
+                    File tempDir = (File) servletContext.getAttribute(
+                            "javax.servlet.context.tempdir");
+                    File indexDir = (tempDir == null) ? null : new File(tempDir, "autocomplete");
+                    ac = new AutoCompleter(is, indexDir);
                     SessionMethods.setAutoCompleter(servletContext, ac);
                 } else {
                     ac = null;
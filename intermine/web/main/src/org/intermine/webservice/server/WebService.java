@@ -48,6 +48,7 @@ import org.intermine.web.logic.profile.LoginHandler;
 import org.intermine.web.security.KeyStorePublicKeySource;
 import org.intermine.web.security.PublicKeySource;
 import org.intermine.webservice.server.core.ListManager;
+import org.intermine.webservice.server.core.ServiceRateLimiter;
 import org.intermine.webservice.server.exceptions.BadRequestException;
 import org.intermine.webservice.server.exceptions.MissingParameterException;
 import org.intermine.webservice.server.exceptions.NotAcceptableException;
@@ -344,6 +345,7 @@ public abstract class WebService
                 initOutput();
                 checkEnabled();
                 authenticate();
+                checkRateLimits();
                 initialised = true;
                 postInit();
                 validateState();
@@ -406,6 +408,11 @@ public abstract class WebService
         }
     }
 
+    private void checkRateLimits() {
+        String user = isAuthenticated() ? getPermission().getProfile().getUsername() : null;
+        ServiceRateLimiter.getInstance(webProperties).checkRequest(request.getRemoteAddr(), user);
+    }
+
     private void checkEnabled() {
         if ("true".equalsIgnoreCase(webProperties
                 .getProperty(WEB_SERVICE_DISABLED_PROPERTY))) {
@@ -10,23 +10,34 @@ package org.intermine.webservice.server.core;
  *
  */
 
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Iterator;
-import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * A class for making sure that certain resources don't get hammered.
+ *
+ * Requests are counted per id with a sliding window: the count for the current period plus a
+ * share of the count for the previous period in proportion to how much of it still falls inside
+ * the window. Counts are kept in atomic counters in a concurrent map, so checking and recording
+ * requests from different clients never contend for a common lock. Ids that have made no requests
+ * for two periods are evicted.
+ *
  * @author Alex Kalderimis
  */
 public class RateLimitHistory implements Predicate<String>
 {
+    private static final int SWEEP_INTERVAL = 1024;
 
-    private final Map<String, List<Long>> historyOfRequests = new HashMap<String, List<Long>>();
-
-    private int periodLength;
-    private int maxRequests;
+    private final ConcurrentMap<String, AtomicReference<Window>> historyOfRequests;
+    private final long periodMillis;
+    private final int maxRequests;
+    private final AtomicLong requests = new AtomicLong(0);
+    private final AtomicLong denials = new AtomicLong(0);
+    private final AtomicInteger untilSweep = new AtomicInteger(SWEEP_INTERVAL);
 
     /**
      * Constructor
@@ -34,28 +45,13 @@ public class RateLimitHistory implements Predicate<String>
      * @param maxRequestsPerPeriod The maximum number of requests in any given period.
      */
     public RateLimitHistory(int periodInSeconds, int maxRequestsPerPeriod) {
-        periodLength = periodInSeconds;
-        maxRequests = maxRequestsPerPeriod;
-    }
-
-    private synchronized List<Long> getRequestHistory(String id) {
-        List<Long> requestHistory = new ArrayList<Long>();
-        if (id != null) {
-            if (historyOfRequests.containsKey(id)) {
-                requestHistory = historyOfRequests.get(id);
-                // Cull all records of requests made outside time period.
-                for (Iterator<Long> it = requestHistory.iterator(); it.hasNext();) {
-                    Long timestamp = it.next();
-                    if (timestamp == null
-                            || System.currentTimeMillis() - timestamp > (periodLength * 1000)) {
-                        it.remove();
-                    }
-                }
-            } else {
-                historyOfRequests.put(id, requestHistory);
-            }
+        if (periodInSeconds < 1) {
+            throw new IllegalArgumentException("Illegal rate limit period: " + periodInSeconds);
         }
-        return requestHistory;
+        periodMillis = periodInSeconds * 1000L;
+        maxRequests = maxRequestsPerPeriod;
+        historyOfRequests = new ConcurrentHashMap<String, AtomicReference<Window>>(64, 0.75F,
+                Runtime.getRuntime().availableProcessors() * 4);
     }
 
     /**
@@ -63,9 +59,15 @@ public class RateLimitHistory implements Predicate<String>
      * @param id The ID to key their requests against.
      * @return true or false.
      */
-    public synchronized boolean isWithinLimit(String id) {
-        List<Long> requests = getRequestHistory(id);
-        return requests.size() < maxRequests;
+    public boolean isWithinLimit(String id) {
+        if (id == null) {
+            return true;
+        }
+        boolean within = getUsage(id) < maxRequests;
+        if (!within) {
+            denials.incrementAndGet();
+        }
+        return within;
     }
 
     @Override
@@ -78,9 +80,160 @@ public class RateLimitHistory implements Predicate<String>
      * @param id The id to key this request against.
      */
     public void recordRequest(String id) {
-        List<Long> requests = getRequestHistory(id);
-        synchronized (requests) {
-            requests.add(Long.valueOf(System.currentTimeMillis()));
+        if (id != null) {
+            getCurrentWindow(id, System.currentTimeMillis()).current.incrementAndGet();
+            requests.incrementAndGet();
+        }
+        maybeSweep();
+    }
+
+    /**
+     * Check that this requester is within their limit, and if they are record the request, in
+     * one step. Concurrent requests from the same id can never take it over its limit.
+     * @param id The id to key this request against.
+     * @return true if the request is allowed, false if it should be denied.
+     */
+    public boolean tryRequest(String id) {
+        maybeSweep();
+        if (id == null) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        Window window = getCurrentWindow(id, now);
+        int count = window.current.incrementAndGet();
+        if (window.estimate(count, now, periodMillis) > maxRequests) {
+            window.current.decrementAndGet();
+            denials.incrementAndGet();
+            return false;
+        }
+        requests.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Get the number of requests this id has made within the current period.
+     * @param id The id to look up.
+     * @return An estimate of the requests in the sliding window.
+     */
+    public int getUsage(String id) {
+        if (id == null) {
+            return 0;
+        }
+        long now = System.currentTimeMillis();
+        Window window = getCurrentWindow(id, now);
+        return (int) Math.ceil(window.estimate(window.current.get(), now, periodMillis));
+    }
+
+    /**
+     * @return The maximum number of requests in any given period.
+     */
+    public int getMaxRequests() {
+        return maxRequests;
+    }
+
+    /**
+     * @return The length of the period, in seconds.
+     */
+    public int getPeriodInSeconds() {
+        return (int) (periodMillis / 1000L);
+    }
+
+    /**
+     * @return The number of requests that have been allowed.
+     */
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * @return The number of requests that have been denied.
+     */
+    public long getDenialCount() {
+        return denials.get();
+    }
+
+    /**
+     * @return The number of ids being tracked.
+     */
+    public int getTrackedIdCount() {
+        return historyOfRequests.size();
+    }
+
+    /**
+     * Remove the history of every id that has made no requests for two periods.
+     * @return The number of ids removed.
+     */
+    public int evictIdle() {
+        long now = System.currentTimeMillis();
+        int evicted = 0;
+        Iterator<AtomicReference<Window>> it = historyOfRequests.values().iterator();
+        while (it.hasNext()) {
+            Window window = it.next().get();
+            if (now - window.start >= 2 * periodMillis) {
+                it.remove();
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    @Override
+    public String toString() {
+        return "RateLimitHistory(" + maxRequests + " per " + getPeriodInSeconds() + "s: "
+            + getRequestCount() + " allowed, " + getDenialCount() + " denied, "
+            + getTrackedIdCount() + " ids tracked)";
+    }
+
+    private void maybeSweep() {
+        if (untilSweep.decrementAndGet() <= 0) {
+            untilSweep.set(SWEEP_INTERVAL);
+            evictIdle();
+        }
+    }
+
+    private Window getCurrentWindow(String id, long now) {
+        AtomicReference<Window> ref = historyOfRequests.get(id);
+        if (ref == null) {
+            AtomicReference<Window> newRef = new AtomicReference<Window>(
+                    new Window(now - (now % periodMillis), 0));
+            ref = historyOfRequests.putIfAbsent(id, newRef);
+            if (ref == null) {
+                ref = newRef;
+            }
+        }
+        while (true) {
+            Window window = ref.get();
+            if (now < window.start + periodMillis) {
+                return window;
+            }
+            // Move on to the period that now falls in. The current count becomes the previous
+            // count if the periods are adjacent.
+            long start = now - (now % periodMillis);
+            int previous = (start - window.start == periodMillis) ? window.current.get() : 0;
+            Window next = new Window(start, previous);
+            if (ref.compareAndSet(window, next)) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * The request counts of one id for one period.
+     */
+    private static class Window
+    {
+        final long start;
+        final int previous;
+        final AtomicInteger current = new AtomicInteger(0);
+
+        Window(long start, int previous) {
+            this.start = start;
+            this.previous = previous;
+        }
+
+        double estimate(int currentCount, long now, long periodMillis) {
+            double remainingOfPrevious = 1.0 - ((double) (now - start) / periodMillis);
+            return currentCount + previous * Math.max(0.0, remainingOfPrevious);
         }
     }
 }
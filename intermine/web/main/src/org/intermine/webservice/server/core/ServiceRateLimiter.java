@@ -0,0 +1,150 @@
+package org.intermine.webservice.server.core;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.intermine.webservice.server.exceptions.RateLimitException;
+
+/**
+ * Limits the rate at which any one client can make web service requests. Anonymous requests are
+ * counted against the IP address they come from, and authenticated requests against the user
+ * their token belongs to. Each limit is switched off unless it is configured:
+ *
+ * <pre>
+ * webservice.ratelimit.period = 60
+ * webservice.ratelimit.ip = 600
+ * webservice.ratelimit.token = 3000
+ * </pre>
+ *
+ * The numbers of allowed and denied requests are written to the log every
+ * <code>webservice.ratelimit.log-interval</code> requests (default 10000).
+ */
+public final class ServiceRateLimiter
+{
+    private static final Logger LOG = Logger.getLogger(ServiceRateLimiter.class);
+
+    /** The length of the rate limiting period, in seconds. */
+    public static final String PERIOD_PROPERTY = "webservice.ratelimit.period";
+    /** The number of requests per period allowed for each IP address. */
+    public static final String IP_LIMIT_PROPERTY = "webservice.ratelimit.ip";
+    /** The number of requests per period allowed for each authenticated user. */
+    public static final String TOKEN_LIMIT_PROPERTY = "webservice.ratelimit.token";
+    /** The number of requests between summaries in the log. */
+    public static final String LOG_INTERVAL_PROPERTY = "webservice.ratelimit.log-interval";
+
+    private static volatile ServiceRateLimiter instance = null;
+
+    private final RateLimitHistory ipHistory;
+    private final RateLimitHistory tokenHistory;
+    private final long logInterval;
+    private final AtomicLong untilLog;
+
+    /**
+     * Constructor.
+     * @param periodInSeconds The period we take into consideration.
+     * @param ipLimit The maximum requests per period per IP address, or 0 for no limit.
+     * @param tokenLimit The maximum requests per period per user, or 0 for no limit.
+     * @param logInterval The number of requests between summaries in the log.
+     */
+    public ServiceRateLimiter(int periodInSeconds, int ipLimit, int tokenLimit,
+            long logInterval) {
+        ipHistory = (ipLimit > 0) ? new RateLimitHistory(periodInSeconds, ipLimit) : null;
+        tokenHistory = (tokenLimit > 0) ? new RateLimitHistory(periodInSeconds, tokenLimit) : null;
+        this.logInterval = logInterval;
+        untilLog = new AtomicLong(logInterval);
+    }
+
+    /**
+     * Get the rate limiter for this web application, configuring it from the web properties the
+     * first time it is asked for.
+     * @param webProperties The web properties.
+     * @return The rate limiter.
+     */
+    public static ServiceRateLimiter getInstance(Properties webProperties) {
+        // Double-checked, so that requests only take the lock until the limiter exists
+        ServiceRateLimiter retval = instance;
+        if (retval == null) {
+            synchronized (ServiceRateLimiter.class) {
+                retval = instance;
+                if (retval == null) {
+                    int period = getInt(webProperties, PERIOD_PROPERTY, 60);
+                    int ipLimit = getInt(webProperties, IP_LIMIT_PROPERTY, 0);
+                    int tokenLimit = getInt(webProperties, TOKEN_LIMIT_PROPERTY, 0);
+                    int logInterval = getInt(webProperties, LOG_INTERVAL_PROPERTY, 10000);
+                    retval = new ServiceRateLimiter(period, ipLimit, tokenLimit, logInterval);
+                    instance = retval;
+                }
+            }
+        }
+        return retval;
+    }
+
+    /**
+     * Check and record a request.
+     * @param ipAddress The address the request came from.
+     * @param user The user the request is authenticated as, or null if it is anonymous.
+     * @throws RateLimitException if the client has exceeded its limit.
+     */
+    public void checkRequest(String ipAddress, String user) {
+        if (untilLog.decrementAndGet() == 0) {
+            untilLog.set(logInterval);
+            LOG.info(this);
+        }
+        if (user == null) {
+            if (ipHistory != null && !ipHistory.tryRequest(ipAddress)) {
+                throw new RateLimitException("IP address " + ipAddress,
+                        ipHistory.getMaxRequests(), ipHistory.getPeriodInSeconds());
+            }
+        } else {
+            if (tokenHistory != null && !tokenHistory.tryRequest(user)) {
+                throw new RateLimitException("user " + user, tokenHistory.getMaxRequests(),
+                        tokenHistory.getPeriodInSeconds());
+            }
+        }
+    }
+
+    /**
+     * @return The per-IP address history, or null if there is no per-IP limit.
+     */
+    public RateLimitHistory getIpHistory() {
+        return ipHistory;
+    }
+
+    /**
+     * @return The per-user history, or null if there is no per-user limit.
+     */
+    public RateLimitHistory getTokenHistory() {
+        return tokenHistory;
+    }
+
+    @Override
+    public String toString() {
+        return "Web service rate limits - by IP address: " + ipHistory + ", by token: "
+            + tokenHistory;
+    }
+
+    private static int getInt(Properties props, String name, int defaultValue) {
+        String value = props.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            LOG.error("Configured value of " + name + " is not a valid integer. Defaulting to "
+                    + defaultValue, e);
+            return defaultValue;
+        }
+    }
+}
@@ -20,6 +20,7 @@ public class RateLimitException extends ServiceForbiddenException
 {
 
     private static final String MSG = "Rate limit (%d per hour) exceeded for IP address %s";
+    private static final String PERIOD_MSG = "Rate limit (%d per %d seconds) exceeded for %s";
     /**
      * Generated serial version UID, for Serializable
      */
@@ -33,4 +34,14 @@ public class RateLimitException extends ServiceForbiddenException
     public RateLimitException(String remoteAddr, int limitPerHour) {
         super(String.format(MSG, limitPerHour, remoteAddr));
     }
+
+    /**
+     * Constructor
+     * @param client A description of the client this rate limit is associated with.
+     * @param limit The maximum number of requests that can be made in any one period.
+     * @param periodInSeconds The length of the period.
+     */
+    public RateLimitException(String client, int limit, int periodInSeconds) {
+        super(String.format(PERIOD_MSG, limit, periodInSeconds, client));
+    }
 }
@@ -53,7 +53,10 @@ public class IdResolutionService extends JSONService
 
         final BagQueryRunner runner = im.getBagQueryRunner();
 
-        Job job = IDResolver.getInstance().submit(runner, in);
+        // Jobs of the same user take turns with the jobs of other users
+        String owner = isAuthenticated() ? getPermission().getProfile().getUsername()
+            : request.getRemoteAddr();
+        Job job = IDResolver.getInstance().submit(runner, in, owner);
 
         addResultValue(job.getUid(), false);
     }
@@ -19,6 +19,7 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
+import org.intermine.api.idresolution.IDResolver;
 import org.intermine.webservice.server.WebService;
 import org.intermine.webservice.server.core.NoServiceException;
 import org.intermine.webservice.server.core.WebServiceServlet;
@@ -55,6 +56,7 @@ public class IdResolutionServlet extends WebServiceServlet
         if (janitorThread != null) {
             janitorThread.interrupt();
         }
+        IDResolver.getInstance().shutdown();
         super.destroy();
     }
 
@@ -40,6 +40,7 @@ public class JobStatusService extends JSONService
             if (job.getStatus() == JobStatus.ERROR) {
                 this.addOutputInfo("message", job.getError().getMessage());
             }
+            this.addOutputInfo("progress", String.valueOf(job.getProgress()));
             addResultValue(job.getStatus().name(), false);
         } else {
             throw new ResourceNotFoundException("No such job: " + jobId);
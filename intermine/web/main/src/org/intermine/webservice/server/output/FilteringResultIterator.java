@@ -19,7 +19,6 @@ import org.apache.log4j.Logger;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.ObjectUtils;
 import org.intermine.api.results.ResultElement;
-import org.intermine.objectstore.query.Results;
 
 /**
  * A result iterator that skips things we aren't interested in.
@@ -37,25 +36,25 @@ public class FilteringResultIterator implements Iterator<List<ResultElement>>
     private String filterTerm = null;
     private List<ResultElement> nextRow = null;
 
-    private final Iterator<Object> subIter;
+    private final Iterator<?> subIter;
 
     /**
      * Construct a new iterator which does no filtering.
-     * @param res The results to wrap.
+     * @param res The results to wrap, which are Results or a List of rows.
      */
-    public FilteringResultIterator(Results res) {
+    public FilteringResultIterator(List<?> res) {
         this.subIter = res.iterator();
     }
 
     /**
      * Construct a new iterator which filters to things that match a filter term
      * and only returns results in a given window.
-     * @param res The results to wrap.
+     * @param res The results to wrap, which are Results or a List of rows.
      * @param start The index of the first result to return.
      * @param size The maximum number of results to return.
      * @param filterTerm A filter term.
      */
-    public FilteringResultIterator(Results res, int start, int size, String filterTerm) {
+    public FilteringResultIterator(List<?> res, int start, int size, String filterTerm) {
         this(res);
         this.start = start;
         this.end = start + size;
@@ -312,12 +312,23 @@ public class QueryResultService extends AbstractQueryService
             boolean occurancesOnly = (uniqs == null) || (uniqs < 2);
             try {
                 String filterTerm = getOptionalParameter("filterTerm");
-                Results r = executor.summariseQuery(pq, summaryPath, filterTerm, occurancesOnly);
-                try {
-                    // causes query to be strictly evaluated, and errors to surface here.
-                    r.range(0, 0);
-                } catch (IndexOutOfBoundsException e) {
-                    // Ignore, it just means it's empty.
+                // Results too big to summarise exactly are summarised approximately
+                List<List<Object>> approximate = executor.summariseApproximately(pq, summaryPath,
+                        filterTerm, occurancesOnly);
+                List<?> r;
+                if (approximate != null) {
+                    attributes.put("approximate", Boolean.TRUE);
+                    r = approximate;
+                } else {
+                    Results results = executor.summariseQuery(pq, summaryPath, filterTerm,
+                            occurancesOnly);
+                    try {
+                        // causes query to be strictly evaluated, and errors to surface here.
+                        results.range(0, 0);
+                    } catch (IndexOutOfBoundsException e) {
+                        // Ignore, it just means it's empty.
+                    }
+                    r = results;
                 }
                 if (filterTerm != null) {
                     attributes.put("filteredCount", r.size());
@@ -333,7 +344,12 @@ public class QueryResultService extends AbstractQueryService
             canGoFaster = maxResults > (BATCH_SIZE * 2);
             executor.setBatchSize(BATCH_SIZE);
             try {
-                it = executor.execute(pq, firstResult, maxResults);
+                if (formatIsFlatFile()) {
+                    // Flat files hold only the values, so don't fetch the objects
+                    it = executor.executeValues(pq, firstResult, maxResults);
+                } else {
+                    it = executor.execute(pq, firstResult, maxResults);
+                }
             } catch (ObjectStoreQueryDurationException e) {
                 throw new ServiceException("Query would take too long to run");
             } catch (ObjectStoreException e) {
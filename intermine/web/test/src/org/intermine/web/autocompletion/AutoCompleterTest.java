@@ -0,0 +1,97 @@
+package org.intermine.web.autocompletion;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+public class AutoCompleterTest extends TestCase
+{
+    private File parent;
+    private File indexDir;
+    private File indexFile;
+
+    public AutoCompleterTest(String arg) {
+        super(arg);
+    }
+
+    public void setUp() throws Exception {
+        super.setUp();
+        parent = File.createTempFile("autocompletertest", "");
+        parent.delete();
+        parent.mkdirs();
+        indexDir = new File(parent, "indexes");
+        indexFile = File.createTempFile("completion", ".idx");
+        CompletionIndex.write(indexFile, Collections.singletonMap("protein kinase", 5));
+    }
+
+    public void tearDown() throws Exception {
+        indexFile.delete();
+        delete(parent);
+        super.tearDown();
+    }
+
+    public void testIsIndexName() throws Exception {
+        assertTrue(AutoCompleter.isIndexName("Gene.symbol"));
+        assertFalse(AutoCompleter.isIndexName(""));
+        assertFalse(AutoCompleter.isIndexName(".."));
+        assertFalse(AutoCompleter.isIndexName("../Gene.symbol"));
+        assertFalse(AutoCompleter.isIndexName("..\\Gene.symbol"));
+        assertFalse(AutoCompleter.isIndexName("/tmp/Gene.symbol"));
+        assertFalse(AutoCompleter.isIndexName("sub/Gene.symbol"));
+        assertFalse(AutoCompleter.isIndexName("C:Gene.symbol"));
+    }
+
+    public void testBadEntryNamesIgnored() throws Exception {
+        ByteArrayOutputStream blob = new ByteArrayOutputStream();
+        ZipOutputStream zipOut = new ZipOutputStream(blob);
+        for (String name : new String[] {"../Escaped.name", "sub/Gene.name", "Gene.symbol"}) {
+            zipOut.putNextEntry(new ZipEntry(name));
+            InputStream in = new FileInputStream(indexFile);
+            try {
+                byte[] buffer = new byte[4096];
+                int count;
+                while ((count = in.read(buffer)) != -1) {
+                    zipOut.write(buffer, 0, count);
+                }
+            } finally {
+                in.close();
+            }
+            zipOut.closeEntry();
+        }
+        zipOut.close();
+
+        AutoCompleter ac = new AutoCompleter(new ByteArrayInputStream(blob.toByteArray()),
+                indexDir);
+        assertTrue(ac.hasAutocompleter("Gene", "symbol"));
+        assertFalse(ac.hasAutocompleter("Gene", "name"));
+        assertFalse(new File(parent, "Escaped.name").exists());
+        assertEquals(1, indexDir.listFiles().length);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,101 @@
+package org.intermine.web.autocompletion;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class CompletionIndexTest extends TestCase
+{
+    private File file;
+    private CompletionIndex index;
+
+    public CompletionIndexTest(String arg) {
+        super(arg);
+    }
+
+    public void setUp() throws Exception {
+        super.setUp();
+        Map<String, Integer> values = new LinkedHashMap<String, Integer>();
+        values.put("protein kinase activity", 50);
+        values.put("Protein binding", 200);
+        values.put("kinase inhibitor", 10);
+        values.put("DNA-binding transcription factor", 30);
+        values.put("protein", 5);
+        file = File.createTempFile("completion", ".idx");
+        CompletionIndex.write(file, values);
+        index = CompletionIndex.open(file);
+    }
+
+    public void tearDown() throws Exception {
+        file.delete();
+        super.tearDown();
+    }
+
+    public void testPrefix() throws Exception {
+        assertEquals(5, index.size());
+        assertEquals(Arrays.asList("Protein binding", "protein kinase activity", "protein"),
+                index.complete("prot", 10));
+        assertEquals(Arrays.asList("Protein binding"), index.complete("PROT", 1));
+        assertEquals(Collections.emptyList(), index.complete("zebra", 10));
+        assertEquals(Collections.emptyList(), index.complete("  ", 10));
+    }
+
+    public void testWords() throws Exception {
+        // Any word of a value can match
+        assertEquals(Arrays.asList("Protein binding", "DNA-binding transcription factor"),
+                index.complete("bind", 10));
+        assertEquals(Arrays.asList("protein kinase activity", "kinase inhibitor"),
+                index.complete("kin", 10));
+        // Every word of the query must match
+        assertEquals(Arrays.asList("protein kinase activity"), index.complete("kin prot", 10));
+        assertEquals(Arrays.asList("DNA-binding transcription factor"),
+                index.complete("dna-bind", 10));
+    }
+
+    public void testNormalise() throws Exception {
+        assertEquals("dna binding factor", CompletionIndex.normalise("  DNA-Binding   factor "));
+        assertEquals(Arrays.asList(0, 4), CompletionIndex.wordStarts("dna binding"));
+        assertEquals(Arrays.asList(0, 3), CompletionIndex.wordStarts("go:0001"));
+    }
+
+    public void testEmpty() throws Exception {
+        File empty = File.createTempFile("completion", ".idx");
+        try {
+            CompletionIndex.write(empty, new HashMap<String, Integer>());
+            assertEquals(Collections.emptyList(), CompletionIndex.open(empty).complete("a", 10));
+        } finally {
+            empty.delete();
+        }
+    }
+
+    public void testLarge() throws Exception {
+        Map<String, Integer> values = new HashMap<String, Integer>();
+        for (int i = 0; i < 100000; i++) {
+            values.put("GENE" + i, i);
+        }
+        File large = File.createTempFile("completion", ".idx");
+        try {
+            CompletionIndex.write(large, values);
+            List<String> top = CompletionIndex.open(large).complete("gene9", 3);
+            assertEquals(Arrays.asList("GENE99999", "GENE99998", "GENE99997"), top);
+        } finally {
+            large.delete();
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package org.intermine.web.logic.results;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.intermine.api.bag.BagQueryResult;
+import org.intermine.api.results.Column;
+import org.intermine.api.results.ResultElement;
+import org.intermine.api.results.WebTable;
+import org.intermine.api.results.flatouterjoins.MultiRow;
+import org.intermine.api.results.flatouterjoins.MultiRowFirstValue;
+import org.intermine.api.results.flatouterjoins.MultiRowValue;
+import org.intermine.objectstore.query.ResultsInfo;
+import org.intermine.objectstore.query.ResultsRow;
+import org.intermine.pathquery.Path;
+import org.intermine.pathquery.PathQuery;
+
+public class RowWindowCacheTest extends TestCase
+{
+    private static final int WINDOW = RowWindowCache.WINDOW_SIZE;
+
+    public RowWindowCacheTest(String arg) {
+        super(arg);
+    }
+
+    public void testPages() throws Exception {
+        RowWindowCache cache = new RowWindowCache(10 * WINDOW, 5 * WINDOW);
+        RowWindowCache.Client client = cache.newClient();
+        CountingTable table = new CountingTable(WINDOW * 2 + 50);
+
+        List<MultiRow<ResultsRow<MultiRowValue<ResultElement>>>> rows
+            = cache.getRows("q", table, client, 10, 10);
+        assertEquals(10, rows.size());
+        assertEquals(new Integer(10), valueOf(rows.get(0)));
+        assertEquals(WINDOW, table.fetched);
+
+        // Other pages in the same window come from the cache
+        rows = cache.getRows("q", table, client, 20, 25);
+        assertEquals(25, rows.size());
+        assertEquals(new Integer(44), valueOf(rows.get(24)));
+        assertEquals(WINDOW, table.fetched);
+
+        // A page across two windows, and a page past the end
+        rows = cache.getRows("q", table, client, WINDOW - 5, 10);
+        assertEquals(new Integer(WINDOW - 5), valueOf(rows.get(0)));
+        assertEquals(new Integer(WINDOW + 4), valueOf(rows.get(9)));
+        rows = cache.getRows("q", table, client, WINDOW * 2 + 40, 20);
+        assertEquals(10, rows.size());
+        assertEquals(0, cache.getRows("q", table, client, WINDOW * 3, 10).size());
+        assertEquals(WINDOW * 2 + 50, cache.getRowCount());
+        assertEquals(WINDOW * 2 + 50, client.getRowCount());
+    }
+
+    public void testShared() throws Exception {
+        RowWindowCache cache = new RowWindowCache(10 * WINDOW, 5 * WINDOW);
+        CountingTable table1 = new CountingTable(1000);
+        CountingTable table2 = new CountingTable(1000);
+        cache.getRows("q", table1, cache.newClient(), 0, 10);
+        cache.getRows("q", table2, cache.newClient(), 0, 10);
+        assertEquals(WINDOW, table1.fetched);
+        assertEquals(0, table2.fetched);
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        cache.getRows("other", table2, cache.newClient(), 0, 10);
+        assertEquals(WINDOW, table2.fetched);
+    }
+
+    public void testLimits() throws Exception {
+        RowWindowCache cache = new RowWindowCache(4 * WINDOW, 2 * WINDOW);
+        RowWindowCache.Client client1 = cache.newClient();
+        RowWindowCache.Client client2 = cache.newClient();
+        CountingTable table = new CountingTable(WINDOW * 10);
+
+        // A session keeps only its most recent windows
+        for (int i = 0; i < 5; i++) {
+            cache.getRows("q", table, client1, i * WINDOW, 10);
+        }
+        assertEquals(2 * WINDOW, client1.getRowCount());
+        assertEquals(2 * WINDOW, cache.getRowCount());
+
+        // A window used by another session is kept when the first lets go of it
+        cache.getRows("q", table, client2, 4 * WINDOW, 10);
+        cache.getRows("q", table, client1, 5 * WINDOW, 10);
+        cache.getRows("q", table, client1, 6 * WINDOW, 10);
+        assertEquals(2 * WINDOW, client1.getRowCount());
+        assertEquals(3 * WINDOW, cache.getRowCount());
+        int fetched = table.fetched;
+        cache.getRows("q", table, client2, 4 * WINDOW, 10);
+        assertEquals(fetched, table.fetched);
+
+        // The cache as a whole keeps the most recently used windows
+        cache.getRows("q", table, client2, 7 * WINDOW, 10);
+        cache.getRows("q", table, client2, 8 * WINDOW, 10);
+        assertEquals(4 * WINDOW, cache.getRowCount());
+
+        client1.valueUnbound(null);
+        client2.valueUnbound(null);
+        assertEquals(0, cache.getRowCount());
+    }
+
+    private static Object valueOf(MultiRow<ResultsRow<MultiRowValue<ResultElement>>> row) {
+        return row.get(0).get(0).getValue().getField();
+    }
+
+    private static class CountingTable
+        extends AbstractList<MultiRow<ResultsRow<MultiRowValue<ResultElement>>>>
+        implements WebTable
+    {
+        private final int size;
+        private int fetched = 0;
+
+        CountingTable(int size) {
+            this.size = size;
+        }
+
+        public MultiRow<ResultsRow<MultiRowValue<ResultElement>>> getResultElements(int index) {
+            if (index >= size) {
+                throw new IndexOutOfBoundsException();
+            }
+            fetched++;
+            ResultsRow<MultiRowValue<ResultElement>> row
+                = new ResultsRow<MultiRowValue<ResultElement>>();
+            row.add(new MultiRowFirstValue<ResultElement>(new ResultElement(new Integer(index)),
+                        1));
+            MultiRow<ResultsRow<MultiRowValue<ResultElement>>> retval
+                = new MultiRow<ResultsRow<MultiRowValue<ResultElement>>>();
+            retval.add(row);
+            return retval;
+        }
+
+        public MultiRow<ResultsRow<MultiRowValue<ResultElement>>> get(int index) {
+            return getResultElements(index);
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public boolean isSingleBatch() {
+            return false;
+        }
+
+        public List<Column> getColumns() {
+            return null;
+        }
+
+        public boolean isSizeEstimate() {
+            return false;
+        }
+
+        public int getEstimatedSize() {
+            return size;
+        }
+
+        public int getMaxRetrievableIndex() {
+            return Integer.MAX_VALUE;
+        }
+
+        public Map<String, BagQueryResult> getPathToBagQueryResult() {
+            return null;
+        }
+
+        public PathQuery getPathQuery() {
+            return null;
+        }
+
+        public ResultsInfo getInfo() {
+            return null;
+        }
+
+        public List<Path> getColumnsPath() {
+            return null;
+        }
+
+        public void addColumns(List<Path> columnPaths) {
+            // not needed
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package org.intermine.web.logic.session;
+
+/*
+ * Copyright (C) 2002-2016 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import static org.easymock.EasyMock.anyInt;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.intermine.api.results.ResultElement;
+import org.intermine.api.results.WebTable;
+import org.intermine.api.results.flatouterjoins.MultiRow;
+import org.intermine.api.results.flatouterjoins.MultiRowValue;
+import org.intermine.metadata.Model;
+import org.intermine.objectstore.query.ResultsRow;
+import org.intermine.pathquery.PathQuery;
+import org.intermine.web.logic.results.PagedTable;
+import org.intermine.web.logic.results.PagedTableState;
+import org.intermine.web.logic.results.PagedTableStore;
+
+public class SessionTablesTest extends TestCase
+{
+    private PathQuery query;
+
+    public SessionTablesTest(String arg) {
+        super(arg);
+    }
+
+    public void setUp() throws Exception {
+        super.setUp();
+        query = new PathQuery(Model.getInstanceByName("testmodel"));
+        query.addViews("Employee.name", "Employee.age");
+    }
+
+    @SuppressWarnings("deprecation")
+    private PagedTable makeTable() {
+        WebTable webTable = createMock(WebTable.class);
+        expect(webTable.getPathQuery()).andReturn(query).anyTimes();
+        expect(webTable.getResultElements(anyInt())).andReturn(
+                new MultiRow<ResultsRow<MultiRowValue<ResultElement>>>()).anyTimes();
+        replay(webTable);
+        return new PagedTable(webTable);
+    }
+
+    public void testSessionLimit() throws Exception {
+        SessionTables tables = new SessionTables();
+        int max = PagedTableStore.getInstance().getMaxSessionTables();
+        PagedTable first = makeTable();
+        tables.put("t0", first, "anonymous");
+        assertSame(first, tables.getTable("t0"));
+        for (int i = 1; i <= max; i++) {
+            tables.put("t" + i, makeTable(), "anonymous");
+        }
+        assertEquals(max, tables.getLiveTableCount());
+        // The oldest table has been dropped, but can be made again from its query
+        assertNull(tables.getTable("t0"));
+        assertSame(query, tables.getQuery("t0"));
+        assertNotNull(tables.getTable("t" + max));
+
+        tables.remove("t" + max);
+        assertNull(tables.getQuery("t" + max));
+        tables.valueUnbound(null);
+        assertEquals(0, tables.getLiveTableCount());
+    }
+
+    @SuppressWarnings("deprecation")
+    public void testDroppedTableKeepsPageAndSelection() throws Exception {
+        SessionTables tables = new SessionTables();
+        PagedTable table = makeTable();
+        tables.put("t0", table, "anonymous");
+        table.setPageAndPageSize(2, 10);
+        Map<Integer, String> selection = new LinkedHashMap<Integer, String>();
+        selection.put(new Integer(1), "EmployeeA1");
+        table.setSelectionIds(selection);
+        table.setSelectedColumn(1);
+        table.setSelectedClass("Employee");
+        assertFalse(tables.getState("t0").isSaved());
+
+        // Push t0 out of the store
+        int max = PagedTableStore.getInstance().getMaxSessionTables();
+        for (int i = 1; i <= max; i++) {
+            tables.put("t" + i, makeTable(), "anonymous");
+        }
+        assertNull(tables.getTable("t0"));
+        PagedTableState state = tables.getState("t0");
+        assertTrue(state.isSaved());
+
+        PagedTable remade = makeTable();
+        state.restore(remade);
+        assertEquals(2, remade.getPage());
+        assertEquals(10, remade.getPageSize());
+        assertEquals(selection, remade.getSelectionIds());
+        assertEquals(1, remade.getSelectedColumn());
+        assertEquals("Employee", remade.getSelectedClass());
+        tables.releaseAll();
+    }
+
+    public void testSerialise() throws Exception {
+        SessionTables tables = new SessionTables();
+        tables.put("results.1", makeTable(), "anonymous");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(tables);
+        out.close();
+        SessionTables read = (SessionTables) new ObjectInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+        PathQuery readQuery = read.getQuery("results.1");
+        assertNotSame(query, readQuery);
+        assertEquals(Arrays.asList("Employee.name", "Employee.age"), readQuery.getView());
+        tables.releaseAll();
+        assertNull(read.getTable("results.1"));
+    }
+}
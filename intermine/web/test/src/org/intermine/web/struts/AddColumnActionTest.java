@@ -8,9 +8,7 @@ import static org.junit.Assert.assertEquals;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpServletRequest;
@@ -25,6 +23,7 @@ import org.intermine.metadata.Model;
 import org.intermine.pathquery.Path;
 import org.intermine.pathquery.PathQuery;
 import org.intermine.web.logic.results.PagedTable;
+import org.intermine.web.logic.session.SessionTables;
 import org.junit.Test;
 
 
@@ -42,9 +41,7 @@ public class AddColumnActionTest {
         // Real objects.
         @SuppressWarnings("deprecation")
         PagedTable table = new PagedTable(webTable);
-        @SuppressWarnings("deprecation")
-        Map<String, PagedTable> tableMap = new HashMap<String, PagedTable>();
-        tableMap.put("y", table);
+        SessionTables tableMap = new SessionTables();
         Model model = Model.getInstanceByName("testmodel");
         PathQuery pathQuery = new PathQuery(model);
         pathQuery.addView("Employee.name");
@@ -62,7 +59,7 @@ public class AddColumnActionTest {
         expect(request.getParameter("table")).andReturn("y");
         expect(request.getParameter("trail")).andReturn("zoom");
         expect(session.getAttribute("TABLE_MAP")).andReturn(tableMap);
-        expect(webTable.getPathQuery()).andReturn(pathQuery).times(2);
+        expect(webTable.getPathQuery()).andReturn(pathQuery).times(3);
         expect(session.getServletContext()).andReturn(servletContext);
         expect(servletContext.getAttribute("INTERMINE_API")).andReturn(api);
         expect(api.getModel()).andReturn(model);
@@ -76,6 +73,8 @@ public class AddColumnActionTest {
         replay(api);
         replay(servletContext);
 
+        tableMap.put("y", table, "anonymous");
+
         ActionForward fwd = action.execute(mapping, null, request, null);
 
         // Check all the mocks.
@@ -0,0 +1,76 @@
+package org.intermine.webservice.server.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class RateLimitHistoryTest {
+
+    @Test
+    public void testLimit() {
+        RateLimitHistory history = new RateLimitHistory(3600, 3);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(history.isWithinLimit("a"));
+            history.recordRequest("a");
+        }
+        assertFalse(history.isWithinLimit("a"));
+        assertTrue(history.isWithinLimit("b"));
+        assertTrue(history.isWithinLimit(null));
+        assertEquals(3, history.getUsage("a"));
+        assertEquals(0, history.getUsage("b"));
+        assertEquals(3, history.getRequestCount());
+        assertEquals(1, history.getDenialCount());
+    }
+
+    @Test
+    public void testTryRequest() {
+        RateLimitHistory history = new RateLimitHistory(3600, 2);
+        assertTrue(history.tryRequest("a"));
+        assertTrue(history.tryRequest("a"));
+        assertFalse(history.tryRequest("a"));
+        assertTrue(history.tryRequest("b"));
+        assertEquals(2, history.getUsage("a"));
+        assertEquals(3, history.getRequestCount());
+        assertEquals(1, history.getDenialCount());
+    }
+
+    @Test
+    public void testConcurrentRequests() throws Exception {
+        final RateLimitHistory history = new RateLimitHistory(3600, 1000);
+        final AtomicInteger allowed = new AtomicInteger(0);
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 500; j++) {
+                        if (history.tryRequest("client")) {
+                            allowed.incrementAndGet();
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(1000, allowed.get());
+        assertEquals(3000, history.getDenialCount());
+    }
+
+    @Test
+    public void testEvictIdle() throws Exception {
+        RateLimitHistory history = new RateLimitHistory(1, 5);
+        history.recordRequest("a");
+        history.recordRequest("b");
+        assertEquals(2, history.getTrackedIdCount());
+        Thread.sleep(2100);
+        assertEquals(2, history.evictIdle());
+        assertEquals(0, history.getTrackedIdCount());
+    }
+}